@@ -8,6 +8,7 @@
 package java.lang;
 
 import sun.misc.FloatingDecimal;
+import java.nio.CharBuffer;
 import java.util.Arrays;
 
 /**
@@ -459,12 +460,37 @@ abstract class AbstractStringBuilder implements Appendable, CharSequence {
 	int newCount = count + len;
 	if (newCount > value.length)
 	    expandCapacity(newCount);
-        for (int i=start; i<end; i++)
-            value[count++] = s.charAt(i);
+        getChars(s, start, end, value, count);
         count = newCount;
 	return this;
     }
 
+    /**
+     * Copies the characters of <code>s</code> from index
+     * <code>start</code> (inclusive) to <code>end</code> (exclusive)
+     * into <code>dst</code> starting at <code>dstBegin</code>.  Strings,
+     * string builders and array-backed <code>CharBuffer</code>s are
+     * copied in bulk; other sequences one <code>charAt</code> at a time.
+     * The caller must already have checked the bounds.
+     */
+    static void getChars(CharSequence s, int start, int end,
+                         char[] dst, int dstBegin) {
+        if (s instanceof String) {
+            ((String)s).getChars(start, end, dst, dstBegin);
+        } else if (s instanceof AbstractStringBuilder) {
+            ((AbstractStringBuilder)s).getChars(start, end, dst, dstBegin);
+        } else if (s instanceof ChunkedStringBuilder) {
+            ((ChunkedStringBuilder)s).getChars(start, end, dst, dstBegin);
+        } else if (s instanceof CharBuffer && ((CharBuffer)s).hasArray()) {
+            CharBuffer cb = (CharBuffer)s;
+            System.arraycopy(cb.array(), cb.arrayOffset() + cb.position() + start,
+                             dst, dstBegin, end - start);
+        } else {
+            for (int i = start; i < end; i++)
+                dst[dstBegin++] = s.charAt(i);
+        }
+    }
+
     /**
      * Appends the string representation of the <code>char</code> array 
      * argument to this sequence. 
@@ -0,0 +1,567 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.lang;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * An append-only sequence of characters that stores its contents in a
+ * list of chunks rather than in a single array.  It is intended for
+ * building large strings, such as generated documents, in one pass.
+ * <p>
+ * A {@link StringBuilder} keeps its characters in one array, which it
+ * replaces with a larger copy whenever it fills up, and its
+ * <code>toString</code> method copies the array once more.  A
+ * <code>ChunkedStringBuilder</code> instead adds a new chunk when the
+ * current one is full, so characters already appended are never moved.
+ * Its {@link #toString() toString} method copies each character
+ * exactly once, into storage that the resulting <code>String</code>
+ * uses directly, and {@link #writeTo(Writer) writeTo} hands the chunks
+ * to a <code>Writer</code> without building a string at all.
+ * <p>
+ * Each new chunk is at least as large as everything appended before
+ * it, so the number of chunks grows only logarithmically with the
+ * length.  Appending a number, a <code>boolean</code> or a
+ * <code>char</code> allocates nothing unless a new chunk is needed.
+ * The {@link #ChunkedStringBuilder(int) initial capacity} and {@link
+ * #ensureCapacity(int) ensureCapacity} may be used to size the chunks
+ * in advance when the final length can be estimated.
+ * <p>
+ * Characters can be read back with {@link #charAt(int) charAt}, {@link
+ * #getChars getChars} and {@link #subSequence subSequence}, but cannot
+ * be changed other than by appending or by {@link #setLength
+ * setLength}.
+ * <p>
+ * Unless otherwise noted, passing a <tt>null</tt> argument to a method
+ * of this class will cause a {@link NullPointerException} to be thrown,
+ * except that the <code>append</code> methods append the four
+ * characters <code>"null"</code> for a <tt>null</tt> reference.
+ * <p>
+ * Instances of <code>ChunkedStringBuilder</code> are not safe for use
+ * by multiple threads.
+ *
+ * @see     java.lang.StringBuilder
+ * @since   1.7
+ */
+public final class ChunkedStringBuilder implements Appendable, CharSequence {
+
+    /** The capacity of the first chunk when none is specified. */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** The chunks in use; only the first chunkCount entries are valid. */
+    private char[][] chunks;
+
+    /**
+     * The number of characters used in each chunk.  The last chunk's
+     * entry is kept in pos instead, and is only brought up to date
+     * when a new chunk is started.
+     */
+    private int[] chunkLengths;
+
+    /** The number of chunks in use. */
+    private int chunkCount;
+
+    /** The current (last) chunk, into which characters are appended. */
+    private char[] current;
+
+    /** The number of characters used in the current chunk. */
+    private int pos;
+
+    /** The total number of characters. */
+    private int count;
+
+    /**
+     * Constructs an empty builder with an initial capacity of 16
+     * characters.
+     */
+    public ChunkedStringBuilder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty builder whose first chunk has the specified
+     * capacity.
+     *
+     * @param      capacity  the initial capacity.
+     * @throws     NegativeArraySizeException  if the <code>capacity</code>
+     *               argument is less than <code>0</code>.
+     */
+    public ChunkedStringBuilder(int capacity) {
+        current = new char[capacity];
+        chunks = new char[4][];
+        chunkLengths = new int[4];
+        chunks[0] = current;
+        chunkCount = 1;
+    }
+
+    /**
+     * Returns the length (character count).
+     *
+     * @return  the length of the sequence of characters currently
+     *          represented by this object
+     */
+    public int length() {
+        return count;
+    }
+
+    /**
+     * Returns the current capacity: the number of characters that can
+     * be held before another chunk must be allocated.
+     *
+     * @return  the current capacity
+     */
+    public int capacity() {
+        return count + (current.length - pos);
+    }
+
+    /**
+     * Ensures that the capacity is at least equal to the specified
+     * minimum, allocating one further chunk if necessary.  No
+     * characters are copied.  If the <code>minimumCapacity</code>
+     * argument is no greater than the current capacity, this method
+     * takes no action and simply returns.
+     *
+     * @param   minimumCapacity   the minimum desired capacity.
+     */
+    public void ensureCapacity(int minimumCapacity) {
+        int room = current.length - pos;
+        if (minimumCapacity - count > room)
+            newChunk(minimumCapacity - count);
+    }
+
+    /**
+     * Starts a new chunk with room for at least <code>minSize</code>
+     * characters.  Any room left in the current chunk is abandoned.
+     */
+    private void newChunk(int minSize) {
+        if (minSize > Integer.MAX_VALUE - count)
+            throw new OutOfMemoryError();
+        int size = Math.max(minSize, Math.max(count, DEFAULT_CAPACITY));
+        if (size > Integer.MAX_VALUE - count)
+            size = Math.max(minSize, Integer.MAX_VALUE - count);
+        if (pos == 0) {
+            // Replace the current chunk rather than leave an empty one
+            current = new char[size];
+            chunks[chunkCount - 1] = current;
+            return;
+        }
+        if (chunkCount == chunks.length) {
+            int n = chunkCount * 2;
+            char[][] c = new char[n][];
+            System.arraycopy(chunks, 0, c, 0, chunkCount);
+            chunks = c;
+            int[] l = new int[n];
+            System.arraycopy(chunkLengths, 0, l, 0, chunkCount);
+            chunkLengths = l;
+        }
+        chunkLengths[chunkCount - 1] = pos;
+        current = new char[size];
+        chunks[chunkCount++] = current;
+        pos = 0;
+    }
+
+    /**
+     * Returns room for <code>len</code> contiguous characters at the
+     * end of the current chunk, starting a new chunk if necessary,
+     * and accounts for them in the length.  The caller must fill the
+     * space, which starts at <code>pos - len</code>.
+     */
+    private void reserve(int len) {
+        if (len > current.length - pos)
+            newChunk(len);
+        pos += len;
+        count += len;
+    }
+
+    /**
+     * Returns the number of characters used in chunk <code>i</code>.
+     */
+    private int chunkLength(int i) {
+        return (i == chunkCount - 1) ? pos : chunkLengths[i];
+    }
+
+    /**
+     * Appends the string representation of the <code>Object</code>
+     * argument.
+     * <p>
+     * The argument is converted to a string as if by the method
+     * <code>String.valueOf</code>, and the characters of that
+     * string are then appended to this sequence.
+     *
+     * @param   obj   an <code>Object</code>.
+     * @return  a reference to this object.
+     */
+    public ChunkedStringBuilder append(Object obj) {
+        return append(String.valueOf(obj));
+    }
+
+    /**
+     * Appends the specified string to this character sequence.
+     * <p>
+     * The characters of the <code>String</code> argument are appended, in
+     * order, increasing the length of this sequence by the length of the
+     * argument. If <code>str</code> is <code>null</code>, then the four
+     * characters <code>"null"</code> are appended.
+     *
+     * @param   str   a string.
+     * @return  a reference to this object.
+     */
+    public ChunkedStringBuilder append(String str) {
+        if (str == null)
+            str = "null";
+        return append(str, 0, str.length());
+    }
+
+    /**
+     * Appends the specified character sequence to this sequence.
+     * Strings, string builders and array-backed
+     * <code>CharBuffer</code>s are copied in bulk.
+     * <p>
+     * If <code>s</code> is <code>null</code>, then the four characters
+     * <code>"null"</code> are appended.
+     *
+     * @param   s the sequence to append.
+     * @return  a reference to this object.
+     */
+    public ChunkedStringBuilder append(CharSequence s) {
+        if (s == null)
+            s = "null";
+        return append(s, 0, s.length());
+    }
+
+    /**
+     * Appends a subsequence of the specified <code>CharSequence</code> to
+     * this sequence.
+     * <p>
+     * Characters of the argument <code>s</code>, starting at index
+     * <code>start</code>, are appended, in order, to the contents of this
+     * sequence up to the (exclusive) index <code>end</code>. The length
+     * of this sequence is increased by the value of
+     * <code>end - start</code>.
+     * <p>
+     * If <code>s</code> is <code>null</code>, then this method appends
+     * characters as if the s parameter was a sequence containing the four
+     * characters <code>"null"</code>.
+     *
+     * @param   s the sequence to append.
+     * @param   start   the starting index of the subsequence to be appended.
+     * @param   end     the end index of the subsequence to be appended.
+     * @return  a reference to this object.
+     * @throws     IndexOutOfBoundsException if
+     *                  <code>start</code> or <code>end</code> are negative, or
+     *             <code>start</code> is greater than <code>end</code> or
+     *             <code>end</code> is greater than <code>s.length()</code>
+     */
+    public ChunkedStringBuilder append(CharSequence s, int start, int end) {
+        if (s == null)
+            s = "null";
+        if ((start < 0) || (start > end) || (end > s.length()))
+            throw new IndexOutOfBoundsException(
+                "start " + start + ", end " + end + ", s.length() "
+                + s.length());
+        if (s == this) {
+            // Appending from ourselves: the source must not grow under us
+            s = subSequence(start, end);
+            end -= start;
+            start = 0;
+        }
+        while (start < end) {
+            int room = current.length - pos;
+            if (room == 0) {
+                newChunk(end - start);
+                room = current.length;
+            }
+            int n = Math.min(room, end - start);
+            AbstractStringBuilder.getChars(s, start, start + n, current, pos);
+            pos += n;
+            count += n;
+            start += n;
+        }
+        return this;
+    }
+
+    /**
+     * Appends the characters of the <code>char</code> array argument to
+     * this sequence.
+     *
+     * @param   str   the characters to be appended.
+     * @return  a reference to this object.
+     */
+    public ChunkedStringBuilder append(char[] str) {
+        return append(str, 0, str.length);
+    }
+
+    /**
+     * Appends the characters of a subarray of the <code>char</code>
+     * array argument to this sequence.
+     *
+     * @param   str      the characters to be appended.
+     * @param   offset   the index of the first <code>char</code> to append.
+     * @param   len      the number of <code>char</code>s to append.
+     * @return  a reference to this object.
+     * @throws  IndexOutOfBoundsException if <code>offset</code> or
+     *          <code>len</code> is negative, or <code>offset+len</code> is
+     *          greater than <code>str.length</code>
+     */
+    public ChunkedStringBuilder append(char[] str, int offset, int len) {
+        if (offset < 0 || len < 0 || offset > str.length - len)
+            throw new IndexOutOfBoundsException(
+                "offset " + offset + ", len " + len + ", str.length "
+                + str.length);
+        while (len > 0) {
+            int room = current.length - pos;
+            if (room == 0) {
+                newChunk(len);
+                room = current.length;
+            }
+            int n = Math.min(room, len);
+            System.arraycopy(str, offset, current, pos, n);
+            pos += n;
+            count += n;
+            offset += n;
+            len -= n;
+        }
+        return this;
+    }
+
+    /**
+     * Appends the string representation of the <code>boolean</code>
+     * argument to the sequence.
+     *
+     * @param   b   a <code>boolean</code>.
+     * @return  a reference to this object.
+     */
+    public ChunkedStringBuilder append(boolean b) {
+        return append(b ? "true" : "false");
+    }
+
+    /**
+     * Appends the string representation of the <code>char</code>
+     * argument to this sequence.
+     *
+     * @param   c   a <code>char</code>.
+     * @return  a reference to this object.
+     */
+    public ChunkedStringBuilder append(char c) {
+        if (pos == current.length)
+            newChunk(1);
+        current[pos++] = c;
+        count++;
+        return this;
+    }
+
+    /**
+     * Appends the string representation of the <code>int</code>
+     * argument to this sequence.
+     *
+     * @param   i   an <code>int</code>.
+     * @return  a reference to this object.
+     */
+    public ChunkedStringBuilder append(int i) {
+        if (i == Integer.MIN_VALUE)
+            return append("-2147483648");
+        int appendedLength = (i < 0) ? Integer.stringSize(-i) + 1
+                                     : Integer.stringSize(i);
+        reserve(appendedLength);
+        Integer.getChars(i, pos, current);
+        return this;
+    }
+
+    /**
+     * Appends the string representation of the <code>long</code>
+     * argument to this sequence.
+     *
+     * @param   l   a <code>long</code>.
+     * @return  a reference to this object.
+     */
+    public ChunkedStringBuilder append(long l) {
+        if (l == Long.MIN_VALUE)
+            return append("-9223372036854775808");
+        int appendedLength = (l < 0) ? Long.stringSize(-l) + 1
+                                     : Long.stringSize(l);
+        reserve(appendedLength);
+        Long.getChars(l, pos, current);
+        return this;
+    }
+
+    /**
+     * Appends the string representation of the <code>float</code>
+     * argument to this sequence.
+     *
+     * @param   f   a <code>float</code>.
+     * @return  a reference to this object.
+     */
+    public ChunkedStringBuilder append(float f) {
+        return append(String.valueOf(f));
+    }
+
+    /**
+     * Appends the string representation of the <code>double</code>
+     * argument to this sequence.
+     *
+     * @param   d   a <code>double</code>.
+     * @return  a reference to this object.
+     */
+    public ChunkedStringBuilder append(double d) {
+        return append(String.valueOf(d));
+    }
+
+    /**
+     * Returns the <code>char</code> value in this sequence at the
+     * specified index.  This takes time proportional to the number of
+     * chunks, which is logarithmic in the length.
+     *
+     * @param      index   the index of the desired <code>char</code> value.
+     * @return     the <code>char</code> value at the specified index.
+     * @throws     IndexOutOfBoundsException  if <code>index</code> is
+     *             negative or greater than or equal to <code>length()</code>.
+     */
+    public char charAt(int index) {
+        if ((index < 0) || (index >= count))
+            throw new StringIndexOutOfBoundsException(index);
+        for (int i = 0; ; i++) {
+            int len = chunkLength(i);
+            if (index < len)
+                return chunks[i][index];
+            index -= len;
+        }
+    }
+
+    /**
+     * Characters are copied from this sequence into the destination
+     * character array <code>dst</code>. The first character to be copied
+     * is at index <code>srcBegin</code>; the last character to be copied
+     * is at index <code>srcEnd-1</code>.
+     *
+     * @param      srcBegin   start copying at this offset.
+     * @param      srcEnd     stop copying at this offset.
+     * @param      dst        the array to copy the data into.
+     * @param      dstBegin   offset into <code>dst</code>.
+     * @throws     NullPointerException if <code>dst</code> is
+     *             <code>null</code>.
+     * @throws     IndexOutOfBoundsException  if <code>srcBegin</code> or
+     *             <code>dstBegin</code> is negative, <code>srcBegin</code>
+     *             is greater than <code>srcEnd</code>, <code>srcEnd</code>
+     *             is greater than <code>this.length()</code>, or
+     *             <code>dstBegin+srcEnd-srcBegin</code> is greater than
+     *             <code>dst.length</code>
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        if (srcBegin < 0)
+            throw new StringIndexOutOfBoundsException(srcBegin);
+        if ((srcEnd < 0) || (srcEnd > count))
+            throw new StringIndexOutOfBoundsException(srcEnd);
+        if (srcBegin > srcEnd)
+            throw new StringIndexOutOfBoundsException("srcBegin > srcEnd");
+        if (dstBegin < 0 || dstBegin > dst.length - (srcEnd - srcBegin))
+            throw new ArrayIndexOutOfBoundsException(dstBegin);
+        int chunkStart = 0;
+        for (int i = 0; i < chunkCount && srcBegin < srcEnd; i++) {
+            int len = chunkLength(i);
+            int chunkEnd = chunkStart + len;
+            if (srcBegin < chunkEnd) {
+                int n = Math.min(chunkEnd, srcEnd) - srcBegin;
+                System.arraycopy(chunks[i], srcBegin - chunkStart,
+                                 dst, dstBegin, n);
+                srcBegin += n;
+                dstBegin += n;
+            }
+            chunkStart = chunkEnd;
+        }
+    }
+
+    /**
+     * Returns a new <code>String</code> that contains a subsequence of
+     * the characters currently contained in this sequence.
+     *
+     * @param      start    the start index, inclusive.
+     * @param      end      the end index, exclusive.
+     * @return     the specified subsequence.
+     * @throws  IndexOutOfBoundsException
+     *          if <tt>start</tt> or <tt>end</tt> are negative,
+     *          if <tt>end</tt> is greater than <tt>length()</tt>,
+     *          or if <tt>start</tt> is greater than <tt>end</tt>
+     */
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0)
+            throw new StringIndexOutOfBoundsException(start);
+        if (end > count)
+            throw new StringIndexOutOfBoundsException(end);
+        if (start > end)
+            throw new StringIndexOutOfBoundsException(end - start);
+        char[] buf = new char[end - start];
+        getChars(start, end, buf, 0);
+        return new String(0, buf.length, buf);
+    }
+
+    /**
+     * Sets the length of the character sequence.  If
+     * <code>newLength</code> is less than the current length, the
+     * sequence is truncated, and chunks that are no longer needed are
+     * released; otherwise null characters <code>'&#92;u0000'</code> are
+     * appended until the sequence has the specified length.  In
+     * particular, <code>setLength(0)</code> prepares the builder for
+     * reuse while keeping its first chunk.
+     *
+     * @param      newLength   the new length
+     * @throws     IndexOutOfBoundsException  if the
+     *               <code>newLength</code> argument is negative.
+     */
+    public void setLength(int newLength) {
+        if (newLength < 0)
+            throw new StringIndexOutOfBoundsException(newLength);
+        if (newLength >= count) {
+            while (count < newLength)
+                append('\0');
+            return;
+        }
+        // Find the chunk holding the new last character
+        int remaining = newLength;
+        int i = 0;
+        while (i < chunkCount - 1 && remaining > chunkLengths[i]) {
+            remaining -= chunkLengths[i];
+            i++;
+        }
+        for (int j = i + 1; j < chunkCount; j++)
+            chunks[j] = null;
+        chunkCount = i + 1;
+        current = chunks[i];
+        pos = remaining;
+        count = newLength;
+    }
+
+    /**
+     * Writes the characters of this sequence to the specified writer,
+     * one chunk at a time and without creating a <code>String</code>.
+     *
+     * @param      out   the writer
+     * @throws     IOException  if an I/O error occurs
+     */
+    public void writeTo(Writer out) throws IOException {
+        for (int i = 0; i < chunkCount; i++) {
+            int len = chunkLength(i);
+            if (len > 0)
+                out.write(chunks[i], 0, len);
+        }
+    }
+
+    /**
+     * Returns a string representing the data in this sequence.  The
+     * characters are copied once, into storage that the new
+     * <code>String</code> uses directly.  Subsequent changes to this
+     * sequence do not affect the contents of the <code>String</code>.
+     *
+     * @return  a string representation of this sequence of characters.
+     */
+    public String toString() {
+        char[] buf = new char[count];
+        getChars(0, count, buf, 0);
+        return new String(0, count, buf);
+    }
+}
@@ -1936,8 +1936,10 @@ public final class String
 	if (beginIndex > endIndex) {
 	    throw new StringIndexOutOfBoundsException(endIndex - beginIndex);
 	}
+	// Copy rather than share the value array, so that a short substring
+	// does not keep a much larger parent string's characters reachable.
 	return ((beginIndex == 0) && (endIndex == count)) ? this :
-	    new String(offset + beginIndex, endIndex - beginIndex, value);
+	    new String(value, offset + beginIndex, endIndex - beginIndex);
     }
 
     /**
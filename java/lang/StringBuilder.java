@@ -49,6 +49,7 @@ package java.lang;
  * @author	Michael McCloskey
  * @version 	%I%, %G%
  * @see         java.lang.StringBuffer
+ * @see         java.lang.ChunkedStringBuilder
  * @see         java.lang.String
  * @since	1.5
  */
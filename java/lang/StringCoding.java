@@ -92,6 +92,38 @@ class StringCoding {
 	return null;
     }
 
+    /*
+     * The charsets that the coders below handle with hand-written loops
+     * rather than through the general CharsetDecoder and CharsetEncoder
+     * machinery.  The loops cover only input whose meaning is unambiguous;
+     * at the first byte or char that would need replacement (or, for
+     * UTF-8, a surrogate or an unusual sequence) the rest of the input is
+     * handed to the general coder, so the results are identical.
+     */
+    private static final int SLOW       = 0;
+    private static final int ISO_8859_1 = 1;
+    private static final int US_ASCII   = 2;
+    private static final int UTF_8      = 3;
+
+    // Only the platform's own implementations of these charsets qualify;
+    // a charset from elsewhere that merely uses one of these names does not.
+    private static int fastPathFor(Charset cs) {
+	if (cs.getClass().getClassLoader0() != null)
+	    return SLOW;
+	String n = cs.name();
+	if (n.equals("ISO-8859-1"))
+	    return ISO_8859_1;
+	if (n.equals("US-ASCII"))
+	    return US_ASCII;
+	if (n.equals("UTF-8"))
+	    return UTF_8;
+	return SLOW;
+    }
+
+    private static boolean isSurrogate(char c) {
+	return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
     private static void warnUnsupportedCharset(String csn) {
 	if (warnUnsupportedCharset) {
 	    // Use sun.misc.MessageUtils rather than the Logging API or
@@ -109,10 +141,12 @@ class StringCoding {
 	private final String requestedCharsetName;
 	private final Charset cs;
 	private final CharsetDecoder cd;
+	private final int fastPath;
 
 	private StringDecoder(Charset cs, String rcn) {
             this.requestedCharsetName = rcn;
 	    this.cs = cs;
+	    this.fastPath = fastPathFor(cs);
 	    this.cd = cs.newDecoder()
 		.onMalformedInput(CodingErrorAction.REPLACE)
 		.onUnmappableCharacter(CodingErrorAction.REPLACE);
@@ -133,9 +167,53 @@ class StringCoding {
 	    char[] ca = new char[en];
 	    if (len == 0)
 		return ca;
+	    int sp = off;
+	    int sl = off + len;
+	    int dp = 0;
+	    switch (fastPath) {
+	    case ISO_8859_1:
+		while (sp < sl)
+		    ca[dp++] = (char)(ba[sp++] & 0xff);
+		break;
+	    case US_ASCII:
+		while (sp < sl && ba[sp] >= 0)
+		    ca[dp++] = (char)ba[sp++];
+		break;
+	    case UTF_8:
+		while (sp < sl) {
+		    int b1 = ba[sp];
+		    if (b1 >= 0) {
+			ca[dp++] = (char)b1;
+			sp++;
+		    } else if ((b1 >> 5) == -2 && (b1 & 0x1e) != 0
+			       && sp + 1 < sl && isContinuation(ba[sp + 1])) {
+			// 110xxxxx 10xxxxxx, excluding overlong C0 and C1
+			ca[dp++] = (char)(((b1 & 0x1f) << 6) |
+					  (ba[sp + 1] & 0x3f));
+			sp += 2;
+		    } else if ((b1 >> 4) == -2 && sp + 2 < sl
+			       && isContinuation(ba[sp + 1])
+			       && isContinuation(ba[sp + 2])) {
+			// 1110xxxx 10xxxxxx 10xxxxxx
+			char c = (char)(((b1 & 0x0f) << 12) |
+					((ba[sp + 1] & 0x3f) << 6) |
+					(ba[sp + 2] & 0x3f));
+			if (c < '\u0800' || isSurrogate(c))
+			    break;
+			ca[dp++] = c;
+			sp += 3;
+		    } else {
+			break;
+		    }
+		}
+		break;
+	    }
+	    if (sp == sl)
+		return safeTrim(ca, dp, cs);
+
 	    cd.reset();
-	    ByteBuffer bb = ByteBuffer.wrap(ba, off, len);
-	    CharBuffer cb = CharBuffer.wrap(ca);
+	    ByteBuffer bb = ByteBuffer.wrap(ba, sp, sl - sp);
+	    CharBuffer cb = CharBuffer.wrap(ca, dp, ca.length - dp);
 	    try {
 		CoderResult cr = cd.decode(bb, cb, true);
 		if (!cr.isUnderflow())
@@ -151,6 +229,13 @@ class StringCoding {
 	    return safeTrim(ca, cb.position(), cs);
 	}
 
+	private static boolean isContinuation(byte b) {
+	    return (b & 0xc0) == 0x80;
+	}
+
+	final boolean hasFastPath() {
+	    return fastPath != SLOW;
+	}
     }
 
     static char[] decode(String charsetName, byte[] ba, int off, int len)
@@ -175,6 +260,9 @@ class StringCoding {
 
     static char[] decode(Charset cs, byte[] ba, int off, int len) {
  	StringDecoder sd = new StringDecoder(cs, cs.name());
+	// Only a charset from outside the platform could hold on to the array
+	if (sd.hasFastPath())
+	    return sd.decode(ba, off, len);
 	byte[] b = Arrays.copyOf(ba, ba.length);
 	return sd.decode(b, off, len);
     }
@@ -208,10 +296,12 @@ class StringCoding {
 	private Charset cs;
 	private CharsetEncoder ce;
 	private final String requestedCharsetName;
+	private final int fastPath;
 
 	private StringEncoder(Charset cs, String rcn) {
 	    this.requestedCharsetName = rcn;
 	    this.cs = cs;
+	    this.fastPath = fastPathFor(cs);
 	    this.ce = cs.newEncoder()
 		.onMalformedInput(CodingErrorAction.REPLACE)
 		.onUnmappableCharacter(CodingErrorAction.REPLACE);
@@ -233,9 +323,43 @@ class StringCoding {
 	    if (len == 0)
 		return ba;
 
+	    int sp = off;
+	    int sl = off + len;
+	    int dp = 0;
+	    switch (fastPath) {
+	    case ISO_8859_1:
+		while (sp < sl && ca[sp] <= '\u00ff')
+		    ba[dp++] = (byte)ca[sp++];
+		break;
+	    case US_ASCII:
+		while (sp < sl && ca[sp] < '\u0080')
+		    ba[dp++] = (byte)ca[sp++];
+		break;
+	    case UTF_8:
+		while (sp < sl) {
+		    char c = ca[sp];
+		    if (c < '\u0080') {
+			ba[dp++] = (byte)c;
+		    } else if (c < '\u0800') {
+			ba[dp++] = (byte)(0xc0 | (c >> 6));
+			ba[dp++] = (byte)(0x80 | (c & 0x3f));
+		    } else if (!isSurrogate(c)) {
+			ba[dp++] = (byte)(0xe0 | (c >> 12));
+			ba[dp++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+			ba[dp++] = (byte)(0x80 | (c & 0x3f));
+		    } else {
+			break;
+		    }
+		    sp++;
+		}
+		break;
+	    }
+	    if (sp == sl)
+		return safeTrim(ba, dp, cs);
+
 	    ce.reset();
-	    ByteBuffer bb = ByteBuffer.wrap(ba);
-	    CharBuffer cb = CharBuffer.wrap(ca, off, len);
+	    ByteBuffer bb = ByteBuffer.wrap(ba, dp, ba.length - dp);
+	    CharBuffer cb = CharBuffer.wrap(ca, sp, sl - sp);
 	    try {
 		CoderResult cr = ce.encode(cb, bb, true);
 		if (!cr.isUnderflow())
@@ -250,6 +374,10 @@ class StringCoding {
 	    }
 	    return safeTrim(ba, bb.position(), cs);
 	}
+
+	final boolean hasFastPath() {
+	    return fastPath != SLOW;
+	}
     }
 
     static byte[] encode(String charsetName, char[] ca, int off, int len)
@@ -274,6 +402,9 @@ class StringCoding {
 
     static byte[] encode(Charset cs, char[] ca, int off, int len) {
 	StringEncoder se = new StringEncoder(cs, cs.name());
+	// Only a charset from outside the platform could hold on to the array
+	if (se.hasFastPath())
+	    return se.encode(ca, off, len);
 	char[] c = Arrays.copyOf(ca, ca.length);
 	return se.encode(c, off, len);
     }
@@ -0,0 +1,127 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.lang.management;
+
+/**
+ * The management interface for a pool of direct buffers.
+ *
+ * <p> A Java virtual machine has one instance of the implementation
+ * class of this interface for each open {@link
+ * java.nio.DirectBufferPool DirectBufferPool}.  An instance
+ * implementing this interface is an <a
+ * href="ManagementFactory.html#MXBean">MXBean</a> that can be
+ * obtained by calling the {@link ManagementFactory#getBufferPoolMXBeans}
+ * method or from the {@link ManagementFactory#getPlatformMBeanServer
+ * platform <tt>MBeanServer</tt>} method.
+ *
+ * <p>The <tt>ObjectName</tt> for uniquely identifying the MXBean for
+ * a buffer pool within an <tt>MBeanServer</tt> is:
+ * <blockquote>
+ *    {@link ManagementFactory#BUFFER_POOL_MXBEAN_DOMAIN_TYPE
+ *    <tt>java.nio:type=BufferPool</tt>}<tt>,name=</tt><i>pool's name</i>
+ * </blockquote>
+ *
+ * <h4>Statistics</h4>
+ *
+ * A buffer is <em>owned</em> by the pool from the time the pool
+ * allocates it until the pool discards it, whether it is cached in
+ * the pool or has been acquired and not yet released.  Counters are
+ * maintained without locking, so the values returned are estimates
+ * that are not atomic snapshots with respect to one another.
+ *
+ * @see java.nio.DirectBufferPool
+ * @see <a href="../../../javax/management/package-summary.html">
+ *      JMX Specification.</a>
+ * @see <a href="package-summary.html#examples">
+ *      Ways to Access MXBeans</a>
+ *
+ * @since 1.7
+ */
+public interface BufferPoolMXBean {
+    /**
+     * Returns the name representing this buffer pool.
+     *
+     * @return the name of this buffer pool.
+     */
+    public String getName();
+
+    /**
+     * Returns an estimate of the number of buffers owned by the pool.
+     *
+     * @return the number of buffers owned by the pool.
+     */
+    public long getCount();
+
+    /**
+     * Returns an estimate of the total capacity of the buffers owned
+     * by the pool.
+     *
+     * @return the total capacity in bytes of the buffers owned by the
+     * pool.
+     */
+    public long getTotalCapacity();
+
+    /**
+     * Returns an estimate of the direct memory that the Java virtual
+     * machine is using for the buffers owned by the pool.
+     *
+     * @return an estimate of the memory, in bytes, used by the pool,
+     * or <tt>-1L</tt> if an estimate is not available.
+     */
+    public long getMemoryUsed();
+
+    /**
+     * Returns an estimate of the total capacity of the buffers that
+     * are cached by the pool, ready to be acquired.
+     *
+     * @return the total capacity in bytes of the cached buffers.
+     */
+    public long getCachedCapacity();
+
+    /**
+     * Returns the number of buffers acquired from the pool.
+     *
+     * @return the number of acquired buffers.
+     */
+    public long getAcquireCount();
+
+    /**
+     * Returns the number of acquisitions that were satisfied by a
+     * cached buffer.
+     *
+     * @return the number of cache hits.
+     */
+    public long getHitCount();
+
+    /**
+     * Returns the number of acquisitions that required a new buffer
+     * to be allocated.
+     *
+     * @return the number of cache misses.
+     */
+    public long getMissCount();
+
+    /**
+     * Returns the number of buffers released to the pool.
+     *
+     * @return the number of released buffers.
+     */
+    public long getReleaseCount();
+
+    /**
+     * Returns the number of buffers that the pool has stopped owning
+     * without handing them out again.  This counts released buffers that
+     * were not cached, because they were larger than the largest size
+     * class, because the cache was full or because the pool was closed,
+     * and cached buffers that were dropped when the pool was closed or
+     * when the private cache of a terminated thread was flushed.
+     *
+     * @return the number of discarded buffers.
+     */
+    public long getDiscardCount();
+}
@@ -12,6 +12,7 @@ import javax.management.MBeanServerPermission;
 import javax.management.ObjectName;
 import javax.management.InstanceNotFoundException;
 import javax.management.MalformedObjectNameException;
+import java.util.ArrayList;
 import java.util.List;
 import java.security.AccessController;
 import java.security.Permission;
@@ -253,6 +254,16 @@ import javax.management.JMX;
  * <td> {@link #MEMORY_POOL_MXBEAN_DOMAIN_TYPE
  *    <tt>java.lang:type=MemoryPool</tt>}<tt>,name=</tt><i>pool's name</i></td>
  * </tr>
+ * <tr>
+ * <td> {@link ThreadPoolMXBean} </td>
+ * <td> {@link #THREAD_POOL_MXBEAN_DOMAIN_TYPE
+ *    <tt>java.util.concurrent:type=ThreadPool</tt>}<tt>,name=</tt><i>pool's name</i></td>
+ * </tr>
+ * <tr>
+ * <td> {@link BufferPoolMXBean} </td>
+ * <td> {@link #BUFFER_POOL_MXBEAN_DOMAIN_TYPE
+ *    <tt>java.nio:type=BufferPool</tt>}<tt>,name=</tt><i>pool's name</i></td>
+ * </tr>
  * </table>
  * </blockquote>
  *
@@ -343,6 +354,30 @@ public class ManagementFactory {
     public final static String MEMORY_POOL_MXBEAN_DOMAIN_TYPE= 
         "java.lang:type=MemoryPool";
 
+    /**
+     * The domain name and the type key property in 
+     * the <tt>ObjectName</tt> for a {@link ThreadPoolMXBean}. 
+     * The unique <tt>ObjectName</tt> for a <tt>ThreadPoolMXBean</tt>
+     * can be formed by appending this string with
+     * <tt>,name=</tt><i>pool's name</i>.
+     *
+     * @since 1.7
+     */
+    public final static String THREAD_POOL_MXBEAN_DOMAIN_TYPE= 
+        "java.util.concurrent:type=ThreadPool";
+
+    /**
+     * The domain name and the type key property in 
+     * the <tt>ObjectName</tt> for a {@link BufferPoolMXBean}. 
+     * The unique <tt>ObjectName</tt> for a <tt>BufferPoolMXBean</tt>
+     * can be formed by appending this string with
+     * <tt>,name=</tt><i>pool's name</i>.
+     *
+     * @since 1.7
+     */
+    public final static String BUFFER_POOL_MXBEAN_DOMAIN_TYPE= 
+        "java.nio:type=BufferPool";
+
     /**
      * Returns the managed bean for the class loading system of 
      * the Java virtual machine.
@@ -451,6 +486,72 @@ public class ManagementFactory {
         return sun.management.ManagementFactory.getGarbageCollectorMXBeans();
     }
 
+    /**
+     * Returns a list of {@link ThreadPoolMXBean} objects for the
+     * {@link java.util.concurrent.ThreadPoolExecutor thread pools}
+     * of the Java virtual machine whose statistics are enabled.
+     * Thread pools are added when their statistics are enabled and
+     * removed when they are disabled or the pool terminates.
+     * The returned objects are proxies forwarding to the MXBeans
+     * registered in the {@link #getPlatformMBeanServer platform
+     * <tt>MBeanServer</tt>}.
+     *
+     * @return a list of <tt>ThreadPoolMXBean</tt> objects.
+     *
+     * @exception SecurityException if there is a security manager 
+     * and the caller does not have the permission required by 
+     * {@link #getPlatformMBeanServer}.
+     *
+     * @since 1.7
+     */
+    public static List<ThreadPoolMXBean> getThreadPoolMXBeans() {
+        MBeanServer server = getPlatformMBeanServer();
+        List<ThreadPoolMXBean> list = new ArrayList<ThreadPoolMXBean>();
+        try {
+            ObjectName pattern =
+                new ObjectName(THREAD_POOL_MXBEAN_DOMAIN_TYPE + ",*");
+            for (ObjectName name : server.queryNames(pattern, null))
+                list.add(JMX.newMXBeanProxy(server, name,
+                                            ThreadPoolMXBean.class));
+        } catch (MalformedObjectNameException e) {
+            // the pattern is constant and well formed
+            throw new AssertionError(e);
+        }
+        return list;
+    }
+
+    /**
+     * Returns a list of {@link BufferPoolMXBean} objects for the
+     * {@link java.nio.DirectBufferPool direct buffer pools} of the
+     * Java virtual machine.  Pools are added when they are created
+     * and removed when they are closed.  The returned objects are
+     * proxies forwarding to the MXBeans registered in the {@link
+     * #getPlatformMBeanServer platform <tt>MBeanServer</tt>}.
+     *
+     * @return a list of <tt>BufferPoolMXBean</tt> objects.
+     *
+     * @exception SecurityException if there is a security manager 
+     * and the caller does not have the permission required by 
+     * {@link #getPlatformMBeanServer}.
+     *
+     * @since 1.7
+     */
+    public static List<BufferPoolMXBean> getBufferPoolMXBeans() {
+        MBeanServer server = getPlatformMBeanServer();
+        List<BufferPoolMXBean> list = new ArrayList<BufferPoolMXBean>();
+        try {
+            ObjectName pattern =
+                new ObjectName(BUFFER_POOL_MXBEAN_DOMAIN_TYPE + ",*");
+            for (ObjectName name : server.queryNames(pattern, null))
+                list.add(JMX.newMXBeanProxy(server, name,
+                                            BufferPoolMXBean.class));
+        } catch (MalformedObjectNameException e) {
+            // the pattern is constant and well formed
+            throw new AssertionError(e);
+        }
+        return list;
+    }
+
     private static MBeanServer platformMBeanServer;
     /**
      * Returns the platform {@link javax.management.MBeanServer MBeanServer}.
@@ -0,0 +1,219 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.lang.management;
+
+import java.util.Map;
+
+/**
+ * The management interface for a thread pool executor.
+ *
+ * <p> A Java virtual machine has one instance of the implementation
+ * class of this interface for each {@link
+ * java.util.concurrent.ThreadPoolExecutor ThreadPoolExecutor} whose
+ * statistics have been enabled with {@link
+ * java.util.concurrent.ThreadPoolExecutor#setStatisticsEnabled
+ * setStatisticsEnabled(true)}.  An instance implementing this
+ * interface is an <a href="ManagementFactory.html#MXBean">MXBean</a>
+ * that can be obtained by calling the {@link
+ * java.util.concurrent.ThreadPoolExecutor#getStatistics} method, the
+ * {@link ManagementFactory#getThreadPoolMXBeans} method, or from the
+ * {@link ManagementFactory#getPlatformMBeanServer platform
+ * <tt>MBeanServer</tt>} method.
+ *
+ * <p>The <tt>ObjectName</tt> for uniquely identifying the MXBean for
+ * a thread pool within an <tt>MBeanServer</tt> is:
+ * <blockquote>
+ *    {@link ManagementFactory#THREAD_POOL_MXBEAN_DOMAIN_TYPE
+ *    <tt>java.util.concurrent:type=ThreadPool</tt>}<tt>,name=</tt><i>pool's name</i>
+ * </blockquote>
+ *
+ * <h4>Statistics</h4>
+ *
+ * All counters are maintained in striped form so that updating them
+ * does not introduce contention among worker threads, and reading
+ * them never acquires the pool's internal locks.  Consequently, the
+ * values returned are estimates that are not atomic snapshots with
+ * respect to one another: concurrent task submission and execution
+ * may be reflected in some attributes but not in others.
+ *
+ * <p> Times are measured in nanoseconds using {@link
+ * System#nanoTime}.  The <em>queue wait time</em> of a task is the
+ * time between its insertion into the work queue and the start of
+ * its execution by a worker; tasks that are handed directly to a new
+ * worker thread are recorded with no queue wait time.  The <em>run
+ * time</em> of a task is the time spent in its <tt>run</tt> method.
+ * The <em>idle time</em> of a worker is the time it spends waiting
+ * for a task to become available.
+ *
+ * <p> Queue wait and run times are also recorded in histograms with
+ * {@link #getHistogramBounds exponentially growing buckets}: bucket
+ * <tt>0</tt> counts durations less than <tt>bounds[0]</tt>, and
+ * bucket <tt>i</tt> counts durations at least <tt>bounds[i-1]</tt>
+ * and less than <tt>bounds[i]</tt>.
+ *
+ * @see java.util.concurrent.ThreadPoolExecutor
+ * @see <a href="../../../javax/management/package-summary.html">
+ *      JMX Specification.</a>
+ * @see <a href="package-summary.html#examples">
+ *      Ways to Access MXBeans</a>
+ *
+ * @since 1.7
+ */
+public interface ThreadPoolMXBean {
+    /**
+     * Returns the name representing this thread pool.
+     *
+     * @return the name of this thread pool.
+     */
+    public String getName();
+
+    /**
+     * Returns the current number of threads in the pool.
+     *
+     * @return the number of threads.
+     */
+    public int getPoolSize();
+
+    /**
+     * Returns the core number of threads of the pool.
+     *
+     * @return the core number of threads.
+     */
+    public int getCorePoolSize();
+
+    /**
+     * Returns the maximum allowed number of threads of the pool.
+     *
+     * @return the maximum allowed number of threads.
+     */
+    public int getMaximumPoolSize();
+
+    /**
+     * Returns the approximate number of threads that are actively
+     * executing tasks.  Unlike {@link
+     * java.util.concurrent.ThreadPoolExecutor#getActiveCount}, this
+     * method does not acquire any lock.
+     *
+     * @return the number of active threads.
+     */
+    public int getActiveCount();
+
+    /**
+     * Returns the number of tasks currently held in the work queue.
+     *
+     * @return the number of queued tasks.
+     */
+    public int getQueueSize();
+
+    /**
+     * Returns the number of tasks submitted for execution since
+     * statistics were enabled or last reset, including those that
+     * were rejected.
+     *
+     * @return the number of submitted tasks.
+     */
+    public long getSubmittedTaskCount();
+
+    /**
+     * Returns the number of tasks that have finished running,
+     * whether normally or abruptly, since statistics were enabled or
+     * last reset.
+     *
+     * @return the number of completed tasks.
+     */
+    public long getCompletedTaskCount();
+
+    /**
+     * Returns the number of tasks that were passed to the rejected
+     * execution handler since statistics were enabled or last reset.
+     *
+     * @return the number of rejected tasks.
+     */
+    public long getRejectedTaskCount();
+
+    /**
+     * Returns the number of rejected tasks keyed by the class name of
+     * the {@link java.util.concurrent.RejectedExecutionHandler} that
+     * handled them.
+     *
+     * @return a map from handler class name to number of rejected
+     * tasks.
+     */
+    public Map<String, Long> getRejectedTaskCounts();
+
+    /**
+     * Returns the total time, in nanoseconds, that executed tasks
+     * spent waiting in the work queue.
+     *
+     * @return the total queue wait time in nanoseconds.
+     */
+    public long getTotalQueueWaitTime();
+
+    /**
+     * Returns the total time, in nanoseconds, that workers spent
+     * running tasks.
+     *
+     * @return the total run time in nanoseconds.
+     */
+    public long getTotalRunTime();
+
+    /**
+     * Returns the total time, in nanoseconds, that workers spent
+     * waiting for tasks.
+     *
+     * @return the total idle time in nanoseconds.
+     */
+    public long getTotalIdleTime();
+
+    /**
+     * Returns the fraction of worker time spent running tasks, that
+     * is, total run time divided by the sum of total run time and
+     * total idle time.
+     *
+     * @return the busy ratio of the workers, between <tt>0.0</tt> and
+     * <tt>1.0</tt>, or <tt>0.0</tt> if nothing has been recorded.
+     */
+    public double getBusyRatio();
+
+    /**
+     * Returns the exclusive upper bounds, in nanoseconds, of the
+     * buckets of the queue wait time and run time histograms.  The
+     * last bound is {@link Long#MAX_VALUE}.
+     *
+     * @return the histogram bucket bounds.
+     */
+    public long[] getHistogramBounds();
+
+    /**
+     * Returns the number of executed tasks in each bucket of the
+     * queue wait time histogram.
+     *
+     * @return the queue wait time histogram.
+     * @see #getHistogramBounds
+     */
+    public long[] getQueueWaitTimeHistogram();
+
+    /**
+     * Returns the number of executed tasks in each bucket of the run
+     * time histogram.
+     *
+     * @return the run time histogram.
+     * @see #getHistogramBounds
+     */
+    public long[] getRunTimeHistogram();
+
+    /**
+     * Resets all counters, accumulated times and histograms of this
+     * thread pool to zero.
+     *
+     * @throws java.lang.SecurityException if a security manager
+     *         exists and the caller does not have
+     *         ManagementPermission("control").
+     */
+    public void resetStatistics();
+}
@@ -8,6 +8,8 @@ package java.nio;
 
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import sun.misc.Unsafe;
 import sun.misc.VM;
 
@@ -601,45 +603,84 @@ class Bits {				// package-private
     // direct buffer memory.  This value may be changed during VM
     // initialization if it is launched with "-XX:MaxDirectMemorySize=<size>".
     private static volatile long maxMemory = VM.maxDirectMemory();
-    private static volatile long reservedMemory = 0;
-    private static boolean memoryLimitSet = false;
+    private static final AtomicLong reservedMemory = new AtomicLong();
+    private static volatile boolean memoryLimitSet = false;
+
+    // Set while some thread has a collection in progress on behalf of a
+    // failed reservation, so that concurrent failures wait for that
+    // collection instead of each requesting their own
+    private static final AtomicBoolean gcPending = new AtomicBoolean();
+
+    // Maximum number of sleeps, with exponentially increasing delay,
+    // before a reservation gives up: 1, 2, 4, ... 256 ms (511 ms in all)
+    private static final int MAX_SLEEPS = 9;
 
     // These methods should be called whenever direct memory is allocated or
     // freed.  They allow the user to control the amount of direct memory
     // which a process may access.  All sizes are specified in bytes.
+    //
+    // Reservations are accounted with compare-and-set rather than under a
+    // lock, so concurrent allocations do not serialize on this class.  Only
+    // a reservation that would exceed the limit falls back to requesting a
+    // collection (so that unreachable buffers are freed by their cleaners)
+    // and retrying with a bounded back-off.
     static void reserveMemory(long size) {
 
-	synchronized (Bits.class) {
-	    if (!memoryLimitSet && VM.isBooted()) {
-		maxMemory = VM.maxDirectMemory();
-		memoryLimitSet = true;
-	    }
-	    if (size <= maxMemory - reservedMemory) {
-		reservedMemory += size;
-		return;
+	if (!memoryLimitSet && VM.isBooted()) {
+	    maxMemory = VM.maxDirectMemory();
+	    memoryLimitSet = true;
+	}
+	if (tryReserveMemory(size))
+	    return;
+
+	if (gcPending.compareAndSet(false, true)) {
+	    try {
+		System.gc();
+	    } finally {
+		gcPending.set(false);
 	    }
 	}
 
-	System.gc();
+	boolean interrupted = false;
 	try {
-	    Thread.sleep(100);
-	} catch (InterruptedException x) {
-	    // Restore interrupt status
-	    Thread.currentThread().interrupt();
-	}
-	synchronized (Bits.class) {
-	    if (reservedMemory + size > maxMemory)
-		throw new OutOfMemoryError("Direct buffer memory");
-	    reservedMemory += size;
+	    long sleepTime = 1;
+	    int sleeps = 0;
+	    while (true) {
+		if (tryReserveMemory(size))
+		    return;
+		if (sleeps >= MAX_SLEEPS)
+		    break;
+		try {
+		    Thread.sleep(sleepTime);
+		} catch (InterruptedException x) {
+		    interrupted = true;
+		}
+		// Count interrupted sleeps too, so that an interrupted
+		// thread still gives up after MAX_SLEEPS attempts
+		sleepTime <<= 1;
+		sleeps++;
+	    }
+	    throw new OutOfMemoryError("Direct buffer memory");
+	} finally {
+	    if (interrupted) {
+		// Restore interrupt status
+		Thread.currentThread().interrupt();
+	    }
 	}
-
     }
 
-    static synchronized void unreserveMemory(long size) {
-	if (reservedMemory > 0) {
-	    reservedMemory -= size;
-	    assert (reservedMemory > -1);
+    private static boolean tryReserveMemory(long size) {
+	long reserved;
+	while (size <= maxMemory - (reserved = reservedMemory.get())) {
+	    if (reservedMemory.compareAndSet(reserved, reserved + size))
+		return true;
 	}
+	return false;
+    }
+
+    static void unreserveMemory(long size) {
+	long reserved = reservedMemory.addAndGet(-size);
+	assert (reserved > -1);
     }
 
     static {
@@ -0,0 +1,583 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.nio;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.ref.WeakReference;
+import java.lang.management.ManagementFactory;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A pool of reusable direct byte buffers.
+ *
+ * <p> Allocating a direct buffer is considerably more expensive than
+ * allocating a heap buffer: the memory must be reserved against the
+ * {@linkplain ByteBuffer#allocateDirect direct memory limit}, obtained
+ * from the operating system and zeroed, and it is only returned once the
+ * garbage collector finds the buffer unreachable.  Applications that
+ * repeatedly need short-lived direct buffers, such as I/O buffers for
+ * network connections, can instead {@link #acquire acquire} them from a
+ * pool and {@link #release release} them explicitly when done, so that
+ * the same memory is reused without involving the allocator or the
+ * garbage collector.
+ *
+ * <p> Buffers are pooled in <em>size classes</em> that are powers of
+ * two, from 1 KB up to the pool's {@linkplain #getMaxBufferSize maximum
+ * buffer size}.  A request is served by a buffer of the smallest class
+ * that can hold it, so the buffer returned by <tt>acquire</tt> may have
+ * a capacity larger than requested; its limit is set to the requested
+ * size.  Requests larger than the maximum buffer size are served by
+ * newly allocated buffers that are not cached when released.
+ *
+ * <p> Each thread keeps a small private cache of buffers of the smaller
+ * size classes, so that a thread that repeatedly acquires and releases
+ * buffers does not contend with other threads at all.  Other buffers are
+ * cached in lock-free queues shared by all threads, whose total capacity
+ * is bounded by the pool's {@linkplain #getMaxCachedBytes cache limit}.
+ * A released buffer that does not fit in the cache is discarded, and
+ * its memory is freed by the garbage collector once it is unreachable.
+ * The buffers in the private cache of a thread that has terminated are
+ * discarded the next time the pool's statistics are read, a thread first
+ * uses the pool, or the pool is closed.
+ *
+ * <p> A buffer must be released at most once, and only to the pool it
+ * was acquired from.  After a buffer has been released it must no longer
+ * be used, nor may any buffer derived from it by {@link ByteBuffer#slice
+ * slice}, {@link ByteBuffer#duplicate duplicate} or a view method, since
+ * the pool may hand the same memory to another caller.  Failing to
+ * release a buffer is harmless apart from losing the benefit of pooling.
+ *
+ * <p> Each open pool is registered in the {@linkplain
+ * ManagementFactory#getPlatformMBeanServer platform <tt>MBeanServer</tt>}
+ * as a {@link BufferPoolMXBean} with the name given at construction,
+ * quoted if it contains characters that may not appear in an unquoted
+ * <tt>ObjectName</tt> value, and is unregistered when it is {@linkplain
+ * #close closed}.  A pool whose name is already registered, by another
+ * pool or MBean, is not registered itself.
+ *
+ * <p> This class is safe for use by multiple concurrent threads.
+ *
+ * @see BufferPoolMXBean
+ * @since 1.7
+ */
+public final class DirectBufferPool implements BufferPoolMXBean {
+
+    /** The shift of the smallest size class, 1 KB. */
+    private static final int MIN_SHIFT = 10;
+
+    /** The shift of the largest permitted size class, 1 GB. */
+    private static final int MAX_SHIFT = 30;
+
+    /** The largest size class cached per thread, 64 KB. */
+    private static final int THREAD_CACHE_MAX_SHIFT = 16;
+
+    /** The number of buffers of each size class cached per thread. */
+    private static final int THREAD_CACHE_SIZE = 8;
+
+    /** The default maximum buffer size, 1 MB. */
+    private static final int DEFAULT_MAX_BUFFER_SIZE = 1 << 20;
+
+    /** The default limit on the capacity of the shared cache, 64 MB. */
+    private static final long DEFAULT_MAX_CACHED_BYTES = 64L << 20;
+
+    private final String name;
+    private final int maxShift;
+    private final long maxCachedBytes;
+
+    /** The number of size classes cached per thread. */
+    private final int threadCachedClasses;
+
+    /** The shared caches, indexed by size class. */
+    private final ConcurrentLinkedQueue<ByteBuffer>[] shared;
+
+    /** The total capacity of the buffers in the shared caches. */
+    private final AtomicLong sharedBytes = new AtomicLong();
+
+    /** The total capacity of the buffers in per-thread caches. */
+    private final LongAdder threadCachedBytes = new LongAdder();
+
+    // The buffers owned by the pool; updated only when a buffer is
+    // allocated or discarded, which pooling makes infrequent
+    private final AtomicLong ownedCount = new AtomicLong();
+    private final AtomicLong ownedCapacity = new AtomicLong();
+
+    private final LongAdder acquires = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder releases = new LongAdder();
+    private final LongAdder discards = new LongAdder();
+
+    private volatile boolean closed;
+
+    /** The name under which this pool was registered, or null. */
+    private volatile ObjectName registeredName;
+
+    /**
+     * A thread's private cache: a small stack of buffers for each of
+     * the smaller size classes.  It is used without synchronization by
+     * its owner, and by other threads only once the owner has terminated.
+     */
+    private static final class ThreadCache {
+        final WeakReference<Thread> owner;
+        final ByteBuffer[][] stacks;
+        final int[] sizes;
+
+        ThreadCache(int classes) {
+            owner = new WeakReference<Thread>(Thread.currentThread());
+            stacks = new ByteBuffer[classes][THREAD_CACHE_SIZE];
+            sizes = new int[classes];
+        }
+
+        boolean isOwnerTerminated() {
+            Thread t = owner.get();
+            return t == null || !t.isAlive();
+        }
+    }
+
+    private final ThreadLocal<ThreadCache> threadCache =
+        new ThreadLocal<ThreadCache>() {
+            protected ThreadCache initialValue() {
+                sweepThreadCaches();
+                ThreadCache tc = new ThreadCache(threadCachedClasses);
+                threadCaches.offer(tc);
+                return tc;
+            }
+        };
+
+    /** The private caches of the threads that have used this pool. */
+    private final ConcurrentLinkedQueue<ThreadCache> threadCaches =
+        new ConcurrentLinkedQueue<ThreadCache>();
+
+    /**
+     * Creates a pool with a maximum buffer size of 1 MB and a shared
+     * cache limit of 64 MB.
+     *
+     * @param  name
+     *         The name of the pool
+     *
+     * @throws NullPointerException
+     *         If <tt>name</tt> is <tt>null</tt>
+     */
+    public DirectBufferPool(String name) {
+        this(name, DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_CACHED_BYTES);
+    }
+
+    /**
+     * Creates a pool with the given maximum buffer size and shared cache
+     * limit.
+     *
+     * @param  name
+     *         The name of the pool
+     *
+     * @param  maxBufferSize
+     *         The size of the largest buffers to pool; it is rounded up to
+     *         a power of two, and must not exceed 2<sup>30</sup>
+     *
+     * @param  maxCachedBytes
+     *         The maximum total capacity of the buffers held in the shared
+     *         cache; if zero, buffers are only cached per thread
+     *
+     * @throws NullPointerException
+     *         If <tt>name</tt> is <tt>null</tt>
+     *
+     * @throws IllegalArgumentException
+     *         If <tt>maxBufferSize</tt> is not positive or exceeds
+     *         2<sup>30</sup>, or <tt>maxCachedBytes</tt> is negative
+     */
+    @SuppressWarnings("unchecked")
+    public DirectBufferPool(String name, int maxBufferSize,
+                            long maxCachedBytes) {
+        if (name == null)
+            throw new NullPointerException();
+        if (maxBufferSize <= 0 || maxBufferSize > (1 << MAX_SHIFT) ||
+            maxCachedBytes < 0)
+            throw new IllegalArgumentException();
+        this.name = name;
+        this.maxShift = Math.max(MIN_SHIFT, shiftFor(maxBufferSize));
+        this.maxCachedBytes = maxCachedBytes;
+        int classes = maxShift - MIN_SHIFT + 1;
+        this.threadCachedClasses =
+            Math.min(classes, THREAD_CACHE_MAX_SHIFT - MIN_SHIFT + 1);
+        this.shared = (ConcurrentLinkedQueue<ByteBuffer>[])
+            new ConcurrentLinkedQueue[classes];
+        for (int i = 0; i < classes; i++)
+            shared[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+        register();
+    }
+
+    /**
+     * Returns the smallest shift such that <tt>1 &lt;&lt; shift</tt> is
+     * at least the given positive size.
+     */
+    private static int shiftFor(int size) {
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    /**
+     * Returns the size class for a request of the given size, which must
+     * not exceed the maximum buffer size.
+     */
+    private static int sizeClass(int size) {
+        return size <= (1 << MIN_SHIFT) ? 0 : shiftFor(size) - MIN_SHIFT;
+    }
+
+    /**
+     * Acquires a direct buffer with room for at least the given number of
+     * bytes.  The buffer's position is zero, its limit is
+     * <tt>capacity</tt>, its mark is undefined and its byte order is
+     * {@link ByteOrder#BIG_ENDIAN BIG_ENDIAN}.  Its contents are undefined:
+     * a reused buffer retains whatever it held when it was released.
+     *
+     * @param  capacity
+     *         The number of bytes required
+     *
+     * @return  A direct byte buffer whose capacity is at least
+     *          <tt>capacity</tt>
+     *
+     * @throws IllegalArgumentException
+     *         If <tt>capacity</tt> is negative
+     *
+     * @throws IllegalStateException
+     *         If this pool has been closed
+     *
+     * @throws OutOfMemoryError
+     *         If a new buffer is needed and the direct memory limit would
+     *         be exceeded
+     */
+    public ByteBuffer acquire(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException();
+        if (closed) {
+            flush(threadCache.get());
+            throw new IllegalStateException("Pool closed");
+        }
+        acquires.increment();
+        if (capacity > (1 << maxShift)) {
+            misses.increment();
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        int c = sizeClass(capacity);
+        ByteBuffer b = null;
+        if (c < threadCachedClasses) {
+            ThreadCache tc = threadCache.get();
+            int n = tc.sizes[c];
+            if (n > 0) {
+                ByteBuffer[] stack = tc.stacks[c];
+                b = stack[--n];
+                stack[n] = null;
+                tc.sizes[c] = n;
+                threadCachedBytes.add(-b.capacity());
+            }
+        }
+        if (b == null && (b = shared[c].poll()) != null)
+            sharedBytes.addAndGet(-b.capacity());
+        if (b != null) {
+            hits.increment();
+            b.clear();
+            b.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            misses.increment();
+            int size = 1 << (c + MIN_SHIFT);
+            b = ByteBuffer.allocateDirect(size);
+            ownedCount.incrementAndGet();
+            ownedCapacity.addAndGet(size);
+        }
+        b.limit(capacity);
+        return b;
+    }
+
+    /**
+     * Releases a buffer to this pool.  The buffer must have been returned
+     * by {@link #acquire acquire} on this pool and not released since; it,
+     * and any buffer derived from it, must not be used afterwards.
+     *
+     * <p> If this pool has been closed, or the buffer is larger than the
+     * maximum buffer size, or the cache is full, the buffer is discarded.
+     *
+     * @param  buffer
+     *         The buffer to release
+     *
+     * @throws NullPointerException
+     *         If <tt>buffer</tt> is <tt>null</tt>
+     *
+     * @throws IllegalArgumentException
+     *         If <tt>buffer</tt> is not a writable direct buffer whose
+     *         capacity is one of this pool's size classes or larger than
+     *         the maximum buffer size
+     */
+    public void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.isReadOnly())
+            throw new IllegalArgumentException();
+        int size = buffer.capacity();
+        if (size > (1 << maxShift)) {
+            releases.increment();
+            discards.increment();
+            return;
+        }
+        if (size < (1 << MIN_SHIFT) || (size & (size - 1)) != 0)
+            throw new IllegalArgumentException();
+        releases.increment();
+        if (closed) {
+            discard(size);
+            flush(threadCache.get());
+            return;
+        }
+        int c = sizeClass(size);
+        if (c < threadCachedClasses) {
+            ThreadCache tc = threadCache.get();
+            int n = tc.sizes[c];
+            if (n < THREAD_CACHE_SIZE) {
+                tc.stacks[c][n] = buffer;
+                tc.sizes[c] = n + 1;
+                threadCachedBytes.add(size);
+                if (closed)
+                    flush(tc);      // raced with close
+                return;
+            }
+        }
+        long cached;
+        do {
+            cached = sharedBytes.get();
+            if (size > maxCachedBytes - cached) {
+                discard(size);
+                return;
+            }
+        } while (!sharedBytes.compareAndSet(cached, cached + size));
+        shared[c].offer(buffer);
+        if (closed)
+            drainShared(c);         // raced with close
+    }
+
+    /**
+     * Records that a pooled buffer of the given size is no longer owned
+     * by the pool.  Its memory is left to be freed by its cleaner once the
+     * buffer is unreachable, rather than freed eagerly, so that a buffer
+     * mistakenly used after release can never access freed memory.
+     */
+    private void discard(int size) {
+        discards.increment();
+        ownedCount.decrementAndGet();
+        ownedCapacity.addAndGet(-size);
+    }
+
+    /**
+     * Discards the buffers in the shared cache of the given size class.
+     */
+    private void drainShared(int c) {
+        ByteBuffer b;
+        while ((b = shared[c].poll()) != null) {
+            int size = b.capacity();
+            sharedBytes.addAndGet(-size);
+            discard(size);
+        }
+    }
+
+    /**
+     * Discards the buffers in a thread's private cache.  Invoked by the
+     * owning thread, or by any thread once the owner has terminated; the
+     * lock serializes the threads that find the same terminated owner.
+     */
+    private void flush(ThreadCache tc) {
+        synchronized (tc) {
+            for (int c = 0; c < tc.sizes.length; c++) {
+                ByteBuffer[] stack = tc.stacks[c];
+                for (int n = tc.sizes[c]; n > 0; ) {
+                    int size = stack[--n].capacity();
+                    stack[n] = null;
+                    threadCachedBytes.add(-size);
+                    discard(size);
+                }
+                tc.sizes[c] = 0;
+            }
+        }
+    }
+
+    /**
+     * Discards the buffers in the private caches of threads that have
+     * terminated, and forgets those caches.
+     */
+    private void sweepThreadCaches() {
+        for (Iterator<ThreadCache> i = threadCaches.iterator(); i.hasNext(); ) {
+            ThreadCache tc = i.next();
+            if (tc.isOwnerTerminated()) {
+                i.remove();
+                flush(tc);
+            }
+        }
+    }
+
+    /**
+     * Closes this pool.  The buffers in the shared cache, and in the
+     * private caches of the invoking thread and of terminated threads, are
+     * discarded, and the pool is unregistered from the platform
+     * <tt>MBeanServer</tt>.  Buffers released afterwards are discarded;
+     * buffers held in the private cache of another live thread are
+     * discarded when that thread next uses the pool or once it has
+     * terminated.  Closing a closed pool has no effect.
+     */
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        for (int c = 0; c < shared.length; c++)
+            drainShared(c);
+        flush(threadCache.get());
+        sweepThreadCaches();
+        unregister();
+    }
+
+    /**
+     * Returns <tt>true</tt> if this pool has been closed.
+     *
+     * @return <tt>true</tt> if this pool has been closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the size of the largest buffers pooled, a power of two.
+     *
+     * @return the maximum buffer size
+     */
+    public int getMaxBufferSize() {
+        return 1 << maxShift;
+    }
+
+    /**
+     * Returns the maximum total capacity of the buffers held in the
+     * shared cache.
+     *
+     * @return the shared cache limit in bytes
+     */
+    public long getMaxCachedBytes() {
+        return maxCachedBytes;
+    }
+
+    private ObjectName objectName() throws JMException {
+        String value = name;
+        for (int i = 0; i < value.length(); i++) {
+            if (",=:*?\"\n".indexOf(value.charAt(i)) >= 0) {
+                value = ObjectName.quote(value);
+                break;
+            }
+        }
+        return new ObjectName(ManagementFactory.BUFFER_POOL_MXBEAN_DOMAIN_TYPE +
+                              ",name=" + value);
+    }
+
+    /**
+     * Registers this MXBean in the platform MBeanServer, remembering the
+     * name only if registration succeeds. Failures are otherwise ignored:
+     * statistics remain available via the pool.
+     */
+    private void register() {
+        AccessController.doPrivileged(new PrivilegedAction<Void>() {
+            public Void run() {
+                try {
+                    MBeanServer server =
+                        ManagementFactory.getPlatformMBeanServer();
+                    ObjectName on = objectName();
+                    server.registerMBean(DirectBufferPool.this, on);
+                    registeredName = on;
+                } catch (JMException ignore) {
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Unregisters this MXBean from the platform MBeanServer, if it was
+     * registered.
+     */
+    private void unregister() {
+        final ObjectName on = registeredName;
+        if (on == null)
+            return;
+        registeredName = null;
+        AccessController.doPrivileged(new PrivilegedAction<Void>() {
+            public Void run() {
+                try {
+                    MBeanServer server =
+                        ManagementFactory.getPlatformMBeanServer();
+                    server.unregisterMBean(on);
+                } catch (JMException ignore) {
+                }
+                return null;
+            }
+        });
+    }
+
+    /* BufferPoolMXBean */
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        sweepThreadCaches();
+        return ownedCount.get();
+    }
+
+    public long getTotalCapacity() {
+        sweepThreadCaches();
+        return ownedCapacity.get();
+    }
+
+    public long getMemoryUsed() {
+        sweepThreadCaches();
+        return ownedCapacity.get();
+    }
+
+    public long getCachedCapacity() {
+        sweepThreadCaches();
+        return sharedBytes.get() + threadCachedBytes.sum();
+    }
+
+    public long getAcquireCount() {
+        return acquires.sum();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getReleaseCount() {
+        return releases.sum();
+    }
+
+    public long getDiscardCount() {
+        return discards.sum();
+    }
+
+    /**
+     * Returns a string identifying this pool and its state.
+     *
+     * @return a string identifying this pool and its state
+     */
+    public String toString() {
+        return getClass().getName() + "[name=" + name +
+            ", count=" + getCount() +
+            ", capacity=" + getTotalCapacity() +
+            ", cached=" + getCachedCapacity() +
+            (closed ? ", closed]" : "]");
+    }
+}
@@ -78,6 +78,11 @@ public abstract class MappedByteBuffer
 
     private int pagePosition() {
         assert isAMappedBuffer;
+        return pageOffset(address);
+    }
+
+    // Returns the offset of the given address within its page
+    static int pageOffset(long address) {		// package-private
         int ps = Bits.pageSize();
         int offset = (int)(address % ps);
         return (offset >= 0) ? offset : (ps + offset);
@@ -155,6 +160,45 @@ public abstract class MappedByteBuffer
 	return this;
     }
 
+    /**
+     * Forces any changes made to a region of this buffer's content to be
+     * written to the storage device containing the mapped file.
+     *
+     * <p> This method behaves as {@link #force()} but only guarantees that
+     * the changes made to the bytes at indices <tt>index</tt> through
+     * <tt>index&nbsp;+&nbsp;length&nbsp;-&nbsp;1</tt> have been written;
+     * since changes are written a page at a time, changes to neighbouring
+     * bytes in the same pages may be written as well.  The position, limit
+     * and mark of this buffer are not used or modified. </p>
+     *
+     * @param  index
+     *         The index of the first byte of the region to force; must be
+     *         non-negative and no larger than <tt>capacity()</tt>
+     *
+     * @param  length
+     *         The length of the region to force; must be non-negative and
+     *         no larger than <tt>capacity()&nbsp;-&nbsp;index</tt>
+     *
+     * @return  This buffer
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If the preconditions on <tt>index</tt> and <tt>length</tt>
+     *          do not hold
+     *
+     * @since 1.7
+     */
+    public final MappedByteBuffer force(int index, int length) {
+	checkMapped();
+        if (index < 0 || length < 0 || index > capacity() - length)
+            throw new IndexOutOfBoundsException();
+        if ((address == 0) || (length == 0))
+            return this;
+        long a = address + index;
+        int offset = pageOffset(a);
+        force0(a - offset, (long)length + (long)offset);
+	return this;
+    }
+
     private native boolean isLoaded0(long address, long length, int pageSize);
     private native int load0(long address, long length, int pageSize);
     private native void force0(long address, long length);
@@ -0,0 +1,852 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.nio;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import sun.misc.Unsafe;
+
+/**
+ * A memory-mapped region of a file that is indexed by <tt>long</tt>
+ * offsets, and so is not limited to 2<sup>31</sup>&nbsp;-&nbsp;1 bytes.
+ *
+ * <p> A mapped region is created by the {@link #map map} method, which maps
+ * a region of a file of any size.  The region provides absolute
+ * <tt>get</tt> and <tt>put</tt> methods for bytes, byte arrays and the other
+ * primitive types, with the same semantics as the absolute methods of a
+ * {@link ByteBuffer}, but at <tt>long</tt> offsets.  A region has no
+ * position, limit or mark; each access is checked against the region's
+ * {@linkplain #size size} only.
+ *
+ * <p> Internally the file is mapped as a sequence of {@link
+ * MappedByteBuffer}s.  Consecutive mappings overlap by a few bytes, so that
+ * every access to a primitive value is served by a single mapping however
+ * it is aligned; this makes random access to a very large file as cheap as
+ * access to a single direct buffer.
+ *
+ * <p> Unlike a mapped byte buffer, whose mapping remains valid until the
+ * buffer is garbage-collected, a mapped region can be {@linkplain #unmap
+ * unmapped} explicitly, releasing its address space immediately.  Since an
+ * access to unmapped memory may crash the virtual machine, it is the
+ * caller's responsibility to ensure that a region is not accessed by any
+ * thread once <tt>unmap</tt> has been invoked; an access that starts after
+ * <tt>unmap</tt> has returned throws {@link IllegalStateException}.
+ *
+ * <p> The {@linkplain #slice slices} of a region share its mapping:
+ * changes made through one are visible through the others, and unmapping
+ * any of them unmaps them all.  As for mapped byte buffers, the content of
+ * a region may change at any time if the file is modified, and parts of it
+ * may become <a href="MappedByteBuffer.html#inaccess">inaccessible</a> if
+ * the file is truncated.
+ *
+ * <p> Accesses to a mapped region by multiple concurrent threads are not
+ * synchronized, exactly as for direct buffers; in particular the byte
+ * order of a region should be set before it is shared.
+ *
+ * @see java.nio.channels.FileChannel#map
+ * @since 1.7
+ */
+public final class MappedRegion {
+
+    // Each mapping covers 2^30 bytes of the region, plus up to OVERLAP
+    // bytes of the next one so that a value of at most 8 bytes never
+    // straddles two mappings
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+    private static final long WINDOW_MASK = WINDOW_SIZE - 1;
+    private static final int OVERLAP = 7;
+
+    private static final Unsafe unsafe = Bits.unsafe();
+
+    private static final long arrayBaseOffset =
+        (long)unsafe.arrayBaseOffset(byte[].class);
+
+    private static final boolean unaligned = Bits.unaligned();
+
+    /**
+     * The state shared by a region and its slices.
+     */
+    private static final class Mapping {
+        final boolean readOnly;
+        MappedByteBuffer[] windows;
+        final long[] addresses;
+        volatile boolean unmapped;
+
+        Mapping(MappedByteBuffer[] windows, boolean readOnly) {
+            this.windows = windows;
+            this.readOnly = readOnly;
+            this.addresses = new long[windows.length];
+            for (int i = 0; i < windows.length; i++)
+                addresses[i] = windows[i].address;
+        }
+
+        synchronized void unmap() {
+            if (unmapped)
+                return;
+            unmapped = true;
+            MappedByteBuffer[] ws = windows;
+            windows = null;
+            for (MappedByteBuffer w : ws)
+                free(w);
+        }
+    }
+
+    private final Mapping mapping;
+    private final long base;
+    private final long size;
+
+    private boolean bigEndian = true;
+    private boolean nativeByteOrder =
+        (Bits.byteOrder() == ByteOrder.BIG_ENDIAN);
+
+    private MappedRegion(Mapping mapping, long base, long size) {
+        this.mapping = mapping;
+        this.base = base;
+        this.size = size;
+    }
+
+    /**
+     * Maps a region of a channel's file directly into memory.
+     *
+     * <p> The mode, and the effect of mapping a region that is not
+     * completely contained within the file, are as specified by {@link
+     * FileChannel#map FileChannel.map}, which is used to map the region.
+     * The byte order of the new region is {@link ByteOrder#BIG_ENDIAN
+     * BIG_ENDIAN}.
+     *
+     * @param  channel
+     *         The channel of the file to be mapped
+     *
+     * @param  mode
+     *         One of the constants {@link FileChannel.MapMode#READ_ONLY
+     *         READ_ONLY}, {@link FileChannel.MapMode#READ_WRITE READ_WRITE},
+     *         or {@link FileChannel.MapMode#PRIVATE PRIVATE} defined in the
+     *         {@link FileChannel.MapMode} class
+     *
+     * @param  position
+     *         The position within the file at which the mapped region is to
+     *         start; must be non-negative
+     *
+     * @param  size
+     *         The size of the region to be mapped; must be non-negative
+     *
+     * @return  The mapped region
+     *
+     * @throws IllegalArgumentException
+     *         If <tt>position</tt> or <tt>size</tt> is negative, or their
+     *         sum overflows a <tt>long</tt>
+     *
+     * @throws IOException
+     *         If <tt>FileChannel.map</tt> throws it for any part of the
+     *         region; any parts already mapped are unmapped
+     */
+    public static MappedRegion map(FileChannel channel,
+                                   FileChannel.MapMode mode,
+                                   long position, long size)
+        throws IOException
+    {
+        if (position < 0 || size < 0 || position + size < 0)
+            throw new IllegalArgumentException();
+        int n = (size == 0) ? 0 : (int)((size - 1) >>> WINDOW_SHIFT) + 1;
+        MappedByteBuffer[] windows = new MappedByteBuffer[n];
+        boolean done = false;
+        try {
+            for (int i = 0; i < n; i++) {
+                long offset = (long)i << WINDOW_SHIFT;
+                long length = Math.min(WINDOW_SIZE + OVERLAP, size - offset);
+                windows[i] = channel.map(mode, position + offset, length);
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                for (MappedByteBuffer w : windows) {
+                    if (w != null)
+                        free(w);
+                }
+            }
+        }
+        Mapping m = new Mapping(windows,
+                                mode == FileChannel.MapMode.READ_ONLY);
+        return new MappedRegion(m, 0L, size);
+    }
+
+    private static void free(MappedByteBuffer w) {
+        sun.misc.Cleaner cl = ((DirectByteBuffer)w).cleaner();
+        if (cl != null)
+            cl.clean();
+    }
+
+    /**
+     * Returns the size of this region.
+     *
+     * @return  The size of this region, in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Tells whether or not this region is read-only.
+     *
+     * @return  <tt>true</tt> if, and only if, this region was mapped in
+     *          {@link FileChannel.MapMode#READ_ONLY READ_ONLY} mode
+     */
+    public boolean isReadOnly() {
+        return mapping.readOnly;
+    }
+
+    /**
+     * Tells whether or not this region is still mapped.
+     *
+     * @return  <tt>true</tt> if, and only if, neither this region nor any
+     *          region sharing its mapping has been unmapped
+     */
+    public boolean isMapped() {
+        return !mapping.unmapped;
+    }
+
+    /**
+     * Retrieves this region's byte order.
+     *
+     * @return  This region's byte order
+     */
+    public ByteOrder order() {
+        return bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    }
+
+    /**
+     * Modifies this region's byte order.  The byte orders of the regions
+     * sharing its mapping are not affected.
+     *
+     * @param  bo
+     *         The new byte order, either {@link ByteOrder#BIG_ENDIAN
+     *         BIG_ENDIAN} or {@link ByteOrder#LITTLE_ENDIAN LITTLE_ENDIAN}
+     *
+     * @return  This region
+     */
+    public MappedRegion order(ByteOrder bo) {
+        bigEndian = (bo == ByteOrder.BIG_ENDIAN);
+        nativeByteOrder =
+            (bigEndian == (Bits.byteOrder() == ByteOrder.BIG_ENDIAN));
+        return this;
+    }
+
+    /**
+     * Creates a region that shares a subsequence of this region's mapping.
+     * The byte at offset <tt>0</tt> of the new region is the byte at
+     * <tt>offset</tt> in this one.  The new region's byte order is
+     * {@link ByteOrder#BIG_ENDIAN BIG_ENDIAN}.
+     *
+     * @param  offset
+     *         The offset of the slice within this region; must be
+     *         non-negative and no larger than <tt>size()</tt>
+     *
+     * @param  length
+     *         The size of the slice; must be non-negative and no larger
+     *         than <tt>size()&nbsp;-&nbsp;offset</tt>
+     *
+     * @return  The new region
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If the preconditions on <tt>offset</tt> and <tt>length</tt>
+     *          do not hold
+     */
+    public MappedRegion slice(long offset, long length) {
+        checkRange(offset, length);
+        return new MappedRegion(mapping, base + offset, length);
+    }
+
+    private void checkRange(long offset, long length) {
+        if (offset < 0 || length < 0 || offset > size - length)
+            throw new IndexOutOfBoundsException();
+    }
+
+    /**
+     * Returns the address of the byte at the given offset, checking that
+     * the <tt>n</tt> bytes starting there lie within this region, and that
+     * the region is mapped.
+     */
+    private long ix(long offset, int n) {
+        if (offset < 0 || offset > size - n)
+            throw new IndexOutOfBoundsException();
+        // The flag is volatile, so an unmap by another thread that has
+        // returned is seen here even though the addresses are not cleared
+        Mapping m = mapping;
+        if (m.unmapped)
+            throw new IllegalStateException("Region unmapped");
+        long i = base + offset;
+        return m.addresses[(int)(i >>> WINDOW_SHIFT)] + (i & WINDOW_MASK);
+    }
+
+    private void checkWritable() {
+        if (mapping.readOnly)
+            throw new ReadOnlyBufferException();
+    }
+
+    /**
+     * Reads the byte at the given offset.
+     *
+     * @param  offset
+     *         The offset from which the byte will be read
+     *
+     * @return  The byte at the given offset
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public byte get(long offset) {
+        return unsafe.getByte(ix(offset, 1));
+    }
+
+    /**
+     * Writes the given byte at the given offset.
+     *
+     * @param  offset
+     *         The offset at which the byte will be written
+     *
+     * @param  b
+     *         The byte value to be written
+     *
+     * @return  This region
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size
+     *
+     * @throws  ReadOnlyBufferException
+     *          If this region is read-only
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public MappedRegion put(long offset, byte b) {
+        checkWritable();
+        unsafe.putByte(ix(offset, 1), b);
+        return this;
+    }
+
+    /**
+     * Transfers bytes from this region into the given array, starting at
+     * the given offset in the region.
+     *
+     * @param  offset
+     *         The offset in this region of the first byte to be read
+     *
+     * @param  dst
+     *         The array into which bytes are to be written
+     *
+     * @param  off
+     *         The offset within the array of the first byte to be written
+     *
+     * @param  length
+     *         The number of bytes to be transferred
+     *
+     * @return  This region
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If the preconditions on the offsets and <tt>length</tt> do
+     *          not hold for the region or the array
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public MappedRegion get(long offset, byte[] dst, int off, int length) {
+        checkRange(offset, length);
+        if ((off | length | (off + length) | (dst.length - (off + length))) < 0)
+            throw new IndexOutOfBoundsException();
+        while (length > 0) {
+            int n = chunk(offset, length);
+            Bits.copyToArray(ix(offset, n), dst, arrayBaseOffset, off, n);
+            offset += n;
+            off += n;
+            length -= n;
+        }
+        return this;
+    }
+
+    /**
+     * Transfers bytes from the given array into this region, starting at
+     * the given offset in the region.
+     *
+     * @param  offset
+     *         The offset in this region of the first byte to be written
+     *
+     * @param  src
+     *         The array from which bytes are to be read
+     *
+     * @param  off
+     *         The offset within the array of the first byte to be read
+     *
+     * @param  length
+     *         The number of bytes to be transferred
+     *
+     * @return  This region
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If the preconditions on the offsets and <tt>length</tt> do
+     *          not hold for the region or the array
+     *
+     * @throws  ReadOnlyBufferException
+     *          If this region is read-only
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public MappedRegion put(long offset, byte[] src, int off, int length) {
+        checkWritable();
+        checkRange(offset, length);
+        if ((off | length | (off + length) | (src.length - (off + length))) < 0)
+            throw new IndexOutOfBoundsException();
+        while (length > 0) {
+            int n = chunk(offset, length);
+            Bits.copyFromArray(src, arrayBaseOffset, off, ix(offset, n), n);
+            offset += n;
+            off += n;
+            length -= n;
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of bytes, at most <tt>length</tt>, that can be
+     * copied starting at the given offset without leaving its mapping.
+     */
+    private int chunk(long offset, int length) {
+        long rem = WINDOW_SIZE - ((base + offset) & WINDOW_MASK);
+        return (int)Math.min(rem, length);
+    }
+
+    /**
+     * Reads the char value at the given offset, composing two bytes
+     * according to the current byte order.
+     *
+     * @param  offset
+     *         The offset from which the bytes will be read
+     *
+     * @return  The char value at the given offset
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size, minus one
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public char getChar(long offset) {
+        long a = ix(offset, 2);
+        if (unaligned) {
+            char x = unsafe.getChar(a);
+            return (nativeByteOrder ? x : Bits.swap(x));
+        }
+        return Bits.getChar(a, bigEndian);
+    }
+
+    /**
+     * Writes two bytes containing the given char value, in the current byte
+     * order, at the given offset.
+     *
+     * @param  offset
+     *         The offset at which the bytes will be written
+     *
+     * @param  value
+     *         The char value to be written
+     *
+     * @return  This region
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size, minus one
+     *
+     * @throws  ReadOnlyBufferException
+     *          If this region is read-only
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public MappedRegion putChar(long offset, char value) {
+        checkWritable();
+        long a = ix(offset, 2);
+        if (unaligned)
+            unsafe.putChar(a, (nativeByteOrder ? value : Bits.swap(value)));
+        else
+            Bits.putChar(a, value, bigEndian);
+        return this;
+    }
+
+    /**
+     * Reads the short value at the given offset, composing two bytes
+     * according to the current byte order.
+     *
+     * @param  offset
+     *         The offset from which the bytes will be read
+     *
+     * @return  The short value at the given offset
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size, minus one
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public short getShort(long offset) {
+        long a = ix(offset, 2);
+        if (unaligned) {
+            short x = unsafe.getShort(a);
+            return (nativeByteOrder ? x : Bits.swap(x));
+        }
+        return Bits.getShort(a, bigEndian);
+    }
+
+    /**
+     * Writes two bytes containing the given short value, in the current
+     * byte order, at the given offset.
+     *
+     * @param  offset
+     *         The offset at which the bytes will be written
+     *
+     * @param  value
+     *         The short value to be written
+     *
+     * @return  This region
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size, minus one
+     *
+     * @throws  ReadOnlyBufferException
+     *          If this region is read-only
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public MappedRegion putShort(long offset, short value) {
+        checkWritable();
+        long a = ix(offset, 2);
+        if (unaligned)
+            unsafe.putShort(a, (nativeByteOrder ? value : Bits.swap(value)));
+        else
+            Bits.putShort(a, value, bigEndian);
+        return this;
+    }
+
+    /**
+     * Reads the int value at the given offset, composing four bytes
+     * according to the current byte order.
+     *
+     * @param  offset
+     *         The offset from which the bytes will be read
+     *
+     * @return  The int value at the given offset
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size, minus three
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public int getInt(long offset) {
+        long a = ix(offset, 4);
+        if (unaligned) {
+            int x = unsafe.getInt(a);
+            return (nativeByteOrder ? x : Bits.swap(x));
+        }
+        return Bits.getInt(a, bigEndian);
+    }
+
+    /**
+     * Writes four bytes containing the given int value, in the current byte
+     * order, at the given offset.
+     *
+     * @param  offset
+     *         The offset at which the bytes will be written
+     *
+     * @param  value
+     *         The int value to be written
+     *
+     * @return  This region
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size, minus three
+     *
+     * @throws  ReadOnlyBufferException
+     *          If this region is read-only
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public MappedRegion putInt(long offset, int value) {
+        checkWritable();
+        long a = ix(offset, 4);
+        if (unaligned)
+            unsafe.putInt(a, (nativeByteOrder ? value : Bits.swap(value)));
+        else
+            Bits.putInt(a, value, bigEndian);
+        return this;
+    }
+
+    /**
+     * Reads the long value at the given offset, composing eight bytes
+     * according to the current byte order.
+     *
+     * @param  offset
+     *         The offset from which the bytes will be read
+     *
+     * @return  The long value at the given offset
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size, minus seven
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public long getLong(long offset) {
+        long a = ix(offset, 8);
+        if (unaligned) {
+            long x = unsafe.getLong(a);
+            return (nativeByteOrder ? x : Bits.swap(x));
+        }
+        return Bits.getLong(a, bigEndian);
+    }
+
+    /**
+     * Writes eight bytes containing the given long value, in the current
+     * byte order, at the given offset.
+     *
+     * @param  offset
+     *         The offset at which the bytes will be written
+     *
+     * @param  value
+     *         The long value to be written
+     *
+     * @return  This region
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size, minus seven
+     *
+     * @throws  ReadOnlyBufferException
+     *          If this region is read-only
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public MappedRegion putLong(long offset, long value) {
+        checkWritable();
+        long a = ix(offset, 8);
+        if (unaligned)
+            unsafe.putLong(a, (nativeByteOrder ? value : Bits.swap(value)));
+        else
+            Bits.putLong(a, value, bigEndian);
+        return this;
+    }
+
+    /**
+     * Reads the float value at the given offset, composing four bytes
+     * according to the current byte order.
+     *
+     * @param  offset
+     *         The offset from which the bytes will be read
+     *
+     * @return  The float value at the given offset
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size, minus three
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public float getFloat(long offset) {
+        return Float.intBitsToFloat(getInt(offset));
+    }
+
+    /**
+     * Writes four bytes containing the given float value, in the current
+     * byte order, at the given offset.
+     *
+     * @param  offset
+     *         The offset at which the bytes will be written
+     *
+     * @param  value
+     *         The float value to be written
+     *
+     * @return  This region
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size, minus three
+     *
+     * @throws  ReadOnlyBufferException
+     *          If this region is read-only
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public MappedRegion putFloat(long offset, float value) {
+        return putInt(offset, Float.floatToRawIntBits(value));
+    }
+
+    /**
+     * Reads the double value at the given offset, composing eight bytes
+     * according to the current byte order.
+     *
+     * @param  offset
+     *         The offset from which the bytes will be read
+     *
+     * @return  The double value at the given offset
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size, minus seven
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public double getDouble(long offset) {
+        return Double.longBitsToDouble(getLong(offset));
+    }
+
+    /**
+     * Writes eight bytes containing the given double value, in the current
+     * byte order, at the given offset.
+     *
+     * @param  offset
+     *         The offset at which the bytes will be written
+     *
+     * @param  value
+     *         The double value to be written
+     *
+     * @return  This region
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If <tt>offset</tt> is negative or not smaller than the
+     *          region's size, minus seven
+     *
+     * @throws  ReadOnlyBufferException
+     *          If this region is read-only
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public MappedRegion putDouble(long offset, double value) {
+        return putLong(offset, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Returns the mappings of this region, checking that it is mapped.
+     */
+    private MappedByteBuffer[] windows() {
+        Mapping m = mapping;
+        MappedByteBuffer[] ws = m.unmapped ? null : m.windows;
+        if (ws == null)
+            throw new IllegalStateException("Region unmapped");
+        return ws;
+    }
+
+    /**
+     * Loads this region's content into physical memory, as by {@link
+     * MappedByteBuffer#load}.
+     *
+     * @return  This region
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public MappedRegion load() {
+        MappedByteBuffer[] ws = windows();
+        if (size > 0) {
+            int first = (int)(base >>> WINDOW_SHIFT);
+            int last = (int)((base + size - 1) >>> WINDOW_SHIFT);
+            for (int i = first; i <= last; i++)
+                ws[i].load();
+        }
+        return this;
+    }
+
+    /**
+     * Forces any changes made to this region's content to be written to the
+     * storage device containing the mapped file, as by {@link
+     * MappedByteBuffer#force}.
+     *
+     * @return  This region
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public MappedRegion force() {
+        return force(0L, size);
+    }
+
+    /**
+     * Forces any changes made to a subsequence of this region's content to
+     * be written to the storage device containing the mapped file, as by
+     * {@link MappedByteBuffer#force(int, int)}.
+     *
+     * @param  offset
+     *         The offset of the first byte to force; must be non-negative
+     *         and no larger than <tt>size()</tt>
+     *
+     * @param  length
+     *         The number of bytes to force; must be non-negative and no
+     *         larger than <tt>size()&nbsp;-&nbsp;offset</tt>
+     *
+     * @return  This region
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If the preconditions on <tt>offset</tt> and <tt>length</tt>
+     *          do not hold
+     *
+     * @throws  IllegalStateException
+     *          If the region has been unmapped
+     */
+    public MappedRegion force(long offset, long length) {
+        checkRange(offset, length);
+        MappedByteBuffer[] ws = windows();
+        long i = base + offset;
+        while (length > 0) {
+            int off = (int)(i & WINDOW_MASK);
+            int n = (int)Math.min(WINDOW_SIZE - off, length);
+            ws[(int)(i >>> WINDOW_SHIFT)].force(off, n);
+            i += n;
+            length -= n;
+        }
+        return this;
+    }
+
+    /**
+     * Unmaps this region, and every region sharing its mapping, releasing
+     * the address space and any resources they use.  No thread may access
+     * the region, or a region sharing its mapping, once this method has
+     * been invoked.  Changes made to a region mapped in {@link
+     * FileChannel.MapMode#READ_WRITE READ_WRITE} mode are not lost, but
+     * are only guaranteed to be written to the storage device if the
+     * region was {@linkplain #force forced}.  Invoking this method on an
+     * unmapped region has no effect.
+     */
+    public void unmap() {
+        mapping.unmap();
+    }
+
+    /**
+     * Returns a string summarizing the state of this region.
+     *
+     * @return  A summary string
+     */
+    public String toString() {
+        return getClass().getName() + "[size=" + size +
+            (mapping.unmapped ? " unmapped]" : "]");
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.nio.channels;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+
+
+/**
+ * An asynchronous channel that can read and write bytes.
+ *
+ * <p> Some channels may not allow more than one read or write to be
+ * outstanding at any given time.  If a thread invokes a read method before a
+ * previous read operation has completed then a {@link ReadPendingException}
+ * will be thrown.  Similarly, if a write method is invoked before a previous
+ * write has completed then {@link WritePendingException} is thrown.
+ *
+ * <p> Byte buffers are not safe for use by multiple concurrent threads.
+ * When a read or write operation is initiated then care must be taken to
+ * ensure that the buffer is not accessed until the operation completes.
+ *
+ * @since 1.7
+ */
+
+public interface AsynchronousByteChannel
+    extends AsynchronousChannel
+{
+    /**
+     * Reads a sequence of bytes from this channel into the given buffer.
+     *
+     * <p> This method initiates an asynchronous read operation to read a
+     * sequence of bytes from this channel into the given buffer.  The
+     * <tt>handler</tt> parameter is a completion handler that is invoked
+     * when the read operation completes (or fails).  The result passed to
+     * the completion handler is the number of bytes read or <tt>-1</tt> if
+     * no bytes could be read because the channel has reached end-of-stream.
+     *
+     * <p> The read operation may read up to <i>r</i> bytes from the
+     * channel, where <i>r</i> is the number of bytes remaining in the
+     * buffer at the time that the read is attempted.  Where <i>r</i> is 0,
+     * the read operation completes immediately with a result of <tt>0</tt>
+     * without initiating an I/O operation.  Otherwise the buffer's
+     * position is advanced by the number of bytes read, which is at least
+     * one unless end-of-stream was reached.
+     *
+     * @param   <A>
+     *          The type of the attachment
+     * @param   dst
+     *          The buffer into which bytes are to be transferred
+     * @param   attachment
+     *          The object to attach to the I/O operation; can be
+     *          <tt>null</tt>
+     * @param   handler
+     *          The completion handler
+     *
+     * @throws  IllegalArgumentException
+     *          If the buffer is read-only
+     * @throws  ReadPendingException
+     *          If the channel does not allow more than one read to be
+     *          outstanding and a previous read has not completed
+     * @throws  ShutdownChannelGroupException
+     *          If the channel is associated with a {@link
+     *          AsynchronousChannelGroup group} that has terminated
+     */
+    <A> void read(ByteBuffer dst,
+                  A attachment,
+                  CompletionHandler<Integer,? super A> handler);
+
+    /**
+     * Reads a sequence of bytes from this channel into the given buffer.
+     *
+     * <p> This method initiates an asynchronous read operation as specified
+     * by the {@link #read(ByteBuffer,Object,CompletionHandler)} method, and
+     * returns a <tt>Future</tt> representing the pending result.  The
+     * <tt>Future</tt>'s <tt>get</tt> method returns the number of bytes read
+     * or <tt>-1</tt> if the channel has reached end-of-stream.
+     *
+     * @param   dst
+     *          The buffer into which bytes are to be transferred
+     *
+     * @return  A Future representing the result of the operation
+     *
+     * @throws  IllegalArgumentException
+     *          If the buffer is read-only
+     * @throws  ReadPendingException
+     *          If the channel does not allow more than one read to be
+     *          outstanding and a previous read has not completed
+     */
+    Future<Integer> read(ByteBuffer dst);
+
+    /**
+     * Writes a sequence of bytes to this channel from the given buffer.
+     *
+     * <p> This method initiates an asynchronous write operation to write a
+     * sequence of bytes to this channel from the given buffer.  The
+     * <tt>handler</tt> parameter is a completion handler that is invoked
+     * when the write operation completes (or fails).  The result passed to
+     * the completion handler is the number of bytes written.
+     *
+     * <p> The write operation may write up to <i>r</i> bytes to the
+     * channel, where <i>r</i> is the number of bytes remaining in the
+     * buffer at the time that the write is attempted.  Where <i>r</i> is
+     * 0, the write operation completes immediately with a result of
+     * <tt>0</tt> without initiating an I/O operation.  Otherwise at least
+     * one byte is written, and the buffer's position is advanced by the
+     * number of bytes written.
+     *
+     * @param   <A>
+     *          The type of the attachment
+     * @param   src
+     *          The buffer from which bytes are to be retrieved
+     * @param   attachment
+     *          The object to attach to the I/O operation; can be
+     *          <tt>null</tt>
+     * @param   handler
+     *          The completion handler object
+     *
+     * @throws  WritePendingException
+     *          If the channel does not allow more than one write to be
+     *          outstanding and a previous write has not completed
+     * @throws  ShutdownChannelGroupException
+     *          If the channel is associated with a {@link
+     *          AsynchronousChannelGroup group} that has terminated
+     */
+    <A> void write(ByteBuffer src,
+                   A attachment,
+                   CompletionHandler<Integer,? super A> handler);
+
+    /**
+     * Writes a sequence of bytes to this channel from the given buffer.
+     *
+     * <p> This method initiates an asynchronous write operation as
+     * specified by the {@link #write(ByteBuffer,Object,CompletionHandler)}
+     * method, and returns a <tt>Future</tt> representing the pending
+     * result.  The <tt>Future</tt>'s <tt>get</tt> method returns the number
+     * of bytes written.
+     *
+     * @param   src
+     *          The buffer from which bytes are to be retrieved
+     *
+     * @return A Future representing the result of the operation
+     *
+     * @throws  WritePendingException
+     *          If the channel does not allow more than one write to be
+     *          outstanding and a previous write has not completed
+     */
+    Future<Integer> write(ByteBuffer src);
+}
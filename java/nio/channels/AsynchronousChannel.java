@@ -0,0 +1,70 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.nio.channels;
+
+import java.io.IOException;
+
+
+/**
+ * A channel that supports asynchronous I/O operations.
+ *
+ * <p> Asynchronous I/O operations take one of two forms:
+ *
+ * <ol>
+ *   <li><pre>{@link java.util.concurrent.Future}&lt;V&gt; <em>operation</em>(<em>...</em>)</pre></li>
+ *   <li><pre>void <em>operation</em>(<em>...</em> A attachment, {@link CompletionHandler}&lt;V,? super A&gt; handler)</pre></li>
+ * </ol>
+ *
+ * where <i>operation</i> is the name of the I/O operation (read or write for
+ * example), <i>V</i> is the result type of the I/O operation, and <i>A</i>
+ * is the type of an object attached to the I/O operation to provide context
+ * when consuming the result.  The attachment is important for cases where a
+ * <em>state-less</em> <tt>CompletionHandler</tt> is used to consume the
+ * result of many I/O operations.
+ *
+ * <p> In the first form, the methods defined by the {@link
+ * java.util.concurrent.Future Future} interface may be used to check if the
+ * operation has completed, wait for its completion, and to retrieve the
+ * result.  Cancelling the future does not abort the I/O operation, whose
+ * result is then lost.  In the second form, a {@link CompletionHandler} is
+ * invoked to consume the result of the I/O operation when it completes or
+ * fails.
+ *
+ * <p> A channel that implements this interface is <em>asynchronously
+ * closeable</em>: if an I/O operation is outstanding on the channel and the
+ * channel's {@link #close close} method is invoked, then the I/O operation
+ * fails with the exception {@link AsynchronousCloseException}.
+ *
+ * <p> Asynchronous channels are safe for use by multiple concurrent threads.
+ * Some channel implementations may support concurrent reading and writing,
+ * but may not allow more than one read and one write operation to be
+ * outstanding at any given time.
+ *
+ * @since 1.7
+ */
+
+public interface AsynchronousChannel
+    extends Channel
+{
+    /**
+     * Closes this channel.
+     *
+     * <p> Any outstanding asynchronous operations upon this channel will
+     * complete with the exception {@link AsynchronousCloseException}.  After
+     * a channel is closed, further attempts to initiate asynchronous I/O
+     * operations complete immediately with cause {@link
+     * ClosedChannelException}.
+     *
+     * <p> This method otherwise behaves exactly as specified by the {@link
+     * Channel} interface.
+     *
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public void close() throws IOException;
+}
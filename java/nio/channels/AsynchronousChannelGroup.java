@@ -0,0 +1,543 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.nio.channels;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * A grouping of asynchronous channels for the purpose of resource sharing.
+ *
+ * <p> An asynchronous channel group encapsulates the mechanics required to
+ * handle the completion of I/O operations initiated by {@link
+ * AsynchronousSocketChannel asynchronous socket} and {@link
+ * AsynchronousServerSocketChannel server socket} channels that are bound to
+ * the group.  A group has an associated thread pool to which tasks are
+ * submitted to invoke the completion handlers of those operations, and an
+ * {@link EventLoopGroup} whose <em>polling</em> threads wait for channels to
+ * become ready using selectors of the {@linkplain
+ * java.nio.channels.spi.SelectorProvider#provider default provider} (on
+ * Linux, ones based on <tt>epoll</tt>).  Each channel is assigned to one of
+ * the polling threads when it is opened.  Because a pending operation
+ * occupies no thread while it waits, a group can serve a very large number
+ * of connections with a small number of threads.
+ *
+ * <p> An operation that can proceed immediately is performed by the thread
+ * that initiates it; otherwise it is performed by the channel's polling
+ * thread when the channel becomes ready.  In either case the completion
+ * handler is invoked by a thread of the group's pool, never directly by the
+ * thread that initiated the operation, so that handlers that initiate further
+ * operations cannot cause unbounded recursion.  The result of an operation
+ * initiated in the <tt>Future</tt> form is made available without involving
+ * the pool.
+ *
+ * <p> An asynchronous channel group is created by one of the static
+ * methods defined in this class.  Asynchronous channels that do not specify
+ * a group at construction time are bound to the <em>default group</em>,
+ * which uses a cached thread pool of daemon threads and cannot be shut
+ * down.
+ *
+ * <a name="shutdown"><h4>Shutdown and Termination</h4></a>
+ *
+ * <p> The {@link #shutdown() shutdown} method is used to initiate an
+ * <em>orderly shutdown</em> of a group.  An orderly shutdown marks the group
+ * as shutdown; further attempts to construct a channel that binds to the
+ * group will throw {@link ShutdownChannelGroupException}.  Once shutdown,
+ * the group <em>terminates</em> when all asynchronous channels that are
+ * bound to the group are closed and all actively executing completion
+ * handlers have run to completion.  The {@link #shutdownNow() shutdownNow}
+ * method can be used to initiate a <em>forceful shutdown</em> of the group:
+ * in addition to the actions performed by an orderly shutdown, it closes
+ * all open channels in the group.  Terminating a group shuts down its
+ * thread pool.
+ *
+ * @since 1.7
+ */
+
+public class AsynchronousChannelGroup {
+
+    private static AsynchronousChannelGroup defaultGroup;
+
+    private final ExecutorService executor;
+    private final boolean isDefault;
+    private final EventLoopGroup loops;
+
+    private final Set<AsynchronousChannel> channels =
+        Collections.newSetFromMap(
+            new ConcurrentHashMap<AsynchronousChannel,Boolean>());
+
+    private volatile boolean shutdown;
+    private final AtomicBoolean terminating = new AtomicBoolean();
+
+    /**
+     * Initialize a new instance of this class.
+     *
+     * @param   executor
+     *          The pool to which completion handlers are submitted
+     * @param   nPollers
+     *          The maximum number of polling threads
+     * @param   factory
+     *          The factory for the polling threads, or <tt>null</tt> to
+     *          create daemon threads
+     * @param   isDefault
+     *          Whether this is the default group
+     */
+    AsynchronousChannelGroup(final ExecutorService executor, int nPollers,
+                             ThreadFactory factory, boolean isDefault)
+        throws IOException
+    {
+        this.executor = executor;
+        this.isDefault = isDefault;
+        nPollers = Math.min(nPollers, Runtime.getRuntime().availableProcessors());
+        this.loops = new EventLoopGroup(Math.max(1, nPollers), factory, null) {
+            void terminated() {
+                executor.shutdown();
+            }
+        };
+    }
+
+    /**
+     * Creates an asynchronous channel group with a fixed thread pool.
+     *
+     * <p> The resulting asynchronous channel group reuses a fixed number of
+     * threads to invoke completion handlers.  The threads, and the group's
+     * polling threads, are created by the given thread factory.  The group
+     * has one polling thread per processor, up to <tt>nThreads</tt>.
+     *
+     * @param   nThreads
+     *          The number of threads in the pool
+     * @param   threadFactory
+     *          The factory to use when creating new threads
+     *
+     * @return  A new asynchronous channel group
+     *
+     * @throws  IllegalArgumentException
+     *          If <tt>nThreads &lt;= 0</tt>
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public static AsynchronousChannelGroup withFixedThreadPool(int nThreads,
+                                                               ThreadFactory threadFactory)
+        throws IOException
+    {
+        if (nThreads <= 0)
+            throw new IllegalArgumentException("'nThreads' must be > 0");
+        return new AsynchronousChannelGroup(
+            Executors.newFixedThreadPool(nThreads, threadFactory),
+            nThreads, threadFactory, false);
+    }
+
+    /**
+     * Creates an asynchronous channel group with a given thread pool that
+     * creates new threads as needed.
+     *
+     * <p> The <tt>executor</tt> parameter is an <tt>ExecutorService</tt> that
+     * creates new threads as needed to execute tasks that are submitted to
+     * invoke completion handlers.  The <tt>initialSize</tt> parameter is a
+     * hint as to the number of threads the pool should have; this
+     * implementation does not use it.
+     *
+     * @param   executor
+     *          The thread pool for the resulting group
+     * @param   initialSize
+     *          A value <tt>&gt;=0</tt> or a negative value for
+     *          implementation specific default
+     *
+     * @return  A new asynchronous channel group
+     *
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public static AsynchronousChannelGroup withCachedThreadPool(ExecutorService executor,
+                                                                int initialSize)
+        throws IOException
+    {
+        return withThreadPool(executor);
+    }
+
+    /**
+     * Creates an asynchronous channel group with a given thread pool.
+     *
+     * <p> The <tt>executor</tt> parameter is an <tt>ExecutorService</tt> that
+     * executes tasks submitted to invoke completion handlers.  Care should
+     * be taken when configuring the executor service: it should support
+     * <em>direct handoff</em> or <em>unbounded queuing</em> of submitted
+     * tasks, and the thread that invokes the <tt>execute</tt> method should
+     * never invoke the task directly.  The group has one polling thread
+     * per processor; they are daemon threads.
+     *
+     * @param   executor
+     *          The thread pool for the resulting group
+     *
+     * @return  A new asynchronous channel group
+     *
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public static AsynchronousChannelGroup withThreadPool(ExecutorService executor)
+        throws IOException
+    {
+        if (executor == null)
+            throw new NullPointerException();
+        return new AsynchronousChannelGroup(executor, Integer.MAX_VALUE,
+                                            null, false);
+    }
+
+    /**
+     * Returns the default group, creating it if necessary.
+     */
+    static synchronized AsynchronousChannelGroup defaultGroup()
+        throws IOException
+    {
+        if (defaultGroup == null) {
+            ExecutorService pool =
+                Executors.newCachedThreadPool(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r);
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            defaultGroup = new AsynchronousChannelGroup(pool, Integer.MAX_VALUE,
+                                                        null, true);
+        }
+        return defaultGroup;
+    }
+
+    /**
+     * Returns the group with the given channel is to be bound: the given
+     * group, or the default group if it is <tt>null</tt>.
+     */
+    static AsynchronousChannelGroup groupOrDefault(AsynchronousChannelGroup group)
+        throws IOException
+    {
+        return (group != null) ? group : defaultGroup();
+    }
+
+    /**
+     * Returns the thread pool of this group.
+     */
+    ExecutorService executor() {
+        return executor;
+    }
+
+    /**
+     * Tells whether or not this asynchronous channel group is shutdown.
+     *
+     * @return  <tt>true</tt> if this asynchronous channel group is shutdown
+     *          or has been marked for shutdown.
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Tells whether or not this group has terminated.
+     *
+     * <p> Where this method returns <tt>true</tt>, then the associated thread
+     * pool has also {@link ExecutorService#isTerminated terminated}.
+     *
+     * @return  <tt>true</tt> if this group has terminated
+     */
+    public boolean isTerminated() {
+        return loops.isTerminated() && executor.isTerminated();
+    }
+
+    /**
+     * Initiates an orderly shutdown of the group.
+     *
+     * <p> This method marks the group as shutdown.  Further attempts to
+     * construct channel that binds to this group will throw {@link
+     * ShutdownChannelGroupException}.  The group terminates when all
+     * asynchronous channels in the group are closed, and all actively
+     * executing completion handlers have run to completion.  This method
+     * has no effect if the group is already shutdown, or if it is the
+     * default group.
+     */
+    public void shutdown() {
+        if (isDefault)
+            return;
+        shutdown = true;
+        if (channels.isEmpty())
+            terminate();
+    }
+
+    /**
+     * Shuts down the group and closes all open channels in the group.
+     *
+     * <p> In addition to the actions performed by the {@link #shutdown()
+     * shutdown} method, this method invokes the {@link
+     * AsynchronousChannel#close close} method on all open channels in the
+     * group.  This method does not attempt to stop or interrupt threads
+     * that are executing completion handlers.  The group terminates when
+     * all actively executing completion handlers have run to completion.
+     * This method has no effect if it is the default group.
+     *
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public void shutdownNow() throws IOException {
+        if (isDefault)
+            return;
+        shutdown = true;
+        for (AsynchronousChannel ch : channels.toArray(
+                 new AsynchronousChannel[0])) {
+            try {
+                ch.close();
+            } catch (IOException ignore) {
+            }
+        }
+        terminate();
+    }
+
+    /**
+     * Awaits termination of the group.
+     *
+     * <p> This method blocks until the group has terminated, or the
+     * timeout occurs, or the current thread is interrupted, whichever
+     * happens first.
+     *
+     * @param   timeout
+     *          The maximum time to wait, or zero or less to not wait
+     * @param   unit
+     *          The time unit of the timeout argument
+     *
+     * @return  <tt>true</tt> if the group has terminated; <tt>false</tt> if
+     *          the timeout elapsed before termination
+     *
+     * @throws  InterruptedException
+     *          If interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        if (!loops.awaitTermination(timeout, unit))
+            return false;
+        return executor.awaitTermination(deadline - System.nanoTime(),
+                                         TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops the polling threads, the last of which to terminate then shuts
+     * down the thread pool.
+     */
+    private void terminate() {
+        if (terminating.compareAndSet(false, true))
+            loops.shutdown();
+    }
+
+    // -- Channel membership --
+
+    /**
+     * Adds a newly opened channel to this group.
+     *
+     * @throws  ShutdownChannelGroupException
+     *          If the group is shutdown
+     */
+    void addChannel(AsynchronousChannel ch) {
+        if (shutdown)
+            throw new ShutdownChannelGroupException();
+        channels.add(ch);
+        if (shutdown) {
+            // raced with shutdown, which may have seen this channel and so
+            // left termination to whoever removes the last channel
+            channels.remove(ch);
+            if (channels.isEmpty())
+                terminate();
+            throw new ShutdownChannelGroupException();
+        }
+    }
+
+    /**
+     * Removes a closed channel, with the given registration, from this
+     * group, terminating the group if it is shutdown and this was the last
+     * channel.
+     */
+    void removeChannel(AsynchronousChannel ch, Registration r) {
+        channels.remove(ch);
+        r.deregister();
+        if (shutdown && channels.isEmpty())
+            terminate();
+    }
+
+    /**
+     * Throws ShutdownChannelGroupException if this group has terminated,
+     * or is about to, so that no completion handler could be invoked.
+     */
+    void checkNotTerminated() {
+        if (terminating.get())
+            throw new ShutdownChannelGroupException();
+    }
+
+    // -- Polling threads --
+
+    private static final Runnable WAKEUP = new Runnable() {
+        public void run() { }
+    };
+
+    /**
+     * The registration of a selectable channel with the polling thread to
+     * which it is assigned.  Subclasses define the operations the channel
+     * is waiting for and perform them when it becomes ready.
+     */
+    abstract static class Registration implements EventLoop.Handler {
+        final AsynchronousChannelGroup group;
+        final SelectableChannel channel;
+        final EventLoop loop;
+        private SelectionKey key;                 // polling thread only
+        private final AtomicBoolean updatePending = new AtomicBoolean();
+        private final Runnable updater = new Runnable() {
+            public void run() {
+                updatePending.set(false);
+                updateInterest();
+            }
+        };
+
+        Registration(AsynchronousChannelGroup group, SelectableChannel channel) {
+            this.group = group;
+            this.channel = channel;
+            this.loop = group.loops.next();
+        }
+
+        /**
+         * Returns the operations that the channel is waiting for.
+         */
+        abstract int interestOps();
+
+        /**
+         * Invoked by the polling thread when the channel is ready for
+         * some of the operations it is waiting for.
+         */
+        abstract void poll(int readyOps);
+
+        public final void ready(SelectionKey key) {
+            poll(key.readyOps());
+        }
+
+        /**
+         * Requests that the channel's interest set be brought up to date
+         * with {@link #interestOps}.  Requests made before the polling
+         * thread handles an earlier one are coalesced with it.
+         */
+        final void update() {
+            if (updatePending.compareAndSet(false, true)) {
+                try {
+                    loop.execute(updater);
+                } catch (RejectedExecutionException ignore) {
+                    // the group has terminated
+                }
+            }
+        }
+
+        /**
+         * Schedules a timeout to be run by the polling thread, returning
+         * <tt>null</tt> if the group has terminated.
+         */
+        final Future<?> schedule(Runnable task, long timeout, TimeUnit unit) {
+            try {
+                return loop.schedule(task, timeout, unit);
+            } catch (RejectedExecutionException x) {
+                return null;
+            }
+        }
+
+        /**
+         * Wakes the polling thread so that it deregisters the closed
+         * channel, which completes the closing of its socket.
+         */
+        final void deregister() {
+            try {
+                loop.execute(WAKEUP);
+            } catch (RejectedExecutionException ignore) {
+            }
+        }
+
+        private void updateInterest() {
+            if (!channel.isOpen())
+                return;
+            int ops = interestOps();
+            try {
+                if (key == null) {
+                    if (ops == 0)
+                        return;
+                    key = loop.registerNow(channel, ops, this);
+                } else if (key.interestOps() != ops) {
+                    loop.interestOps(key, ops);
+                }
+            } catch (ClosedChannelException ignore) {
+                // the channel fails its pending operations when it closes
+            } catch (CancelledKeyException ignore) {
+            } catch (ClosedSelectorException ignore) {
+                // the group has terminated
+            }
+        }
+    }
+
+    // -- Completion --
+
+    /**
+     * A handler that makes the result of an operation available through a
+     * future.  It is invoked directly rather than through the pool.
+     */
+    static final class FutureHandler<V> implements CompletionHandler<V,Object> {
+        final CompletableFuture<V> future = new CompletableFuture<V>();
+
+        public void completed(V result, Object attachment) {
+            future.complete(result);
+        }
+
+        public void failed(Throwable exc, Object attachment) {
+            future.completeExceptionally(exc);
+        }
+    }
+
+    /**
+     * Invokes a completion handler with the result of an operation, or
+     * with the exception that caused it to fail if <tt>exc</tt> is not
+     * <tt>null</tt>.
+     */
+    <V,A> void dispatch(final CompletionHandler<V,? super A> handler,
+                        final A attachment,
+                        final V result, final Throwable exc)
+    {
+        if (handler instanceof FutureHandler) {
+            invoke(handler, attachment, result, exc);
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    invoke(handler, attachment, result, exc);
+                }
+            });
+        } catch (RejectedExecutionException ignore) {
+            // the group has terminated; the handler cannot be invoked
+        }
+    }
+
+    static <V,A> void invoke(CompletionHandler<V,? super A> handler,
+                             A attachment, V result, Throwable exc)
+    {
+        if (exc == null)
+            handler.completed(result, attachment);
+        else
+            handler.failed(exc, attachment);
+    }
+}
@@ -0,0 +1,552 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.nio.channels;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+
+/**
+ * An asynchronous channel for reading, writing, and manipulating a file.
+ *
+ * <p> An asynchronous file channel is created when a file is opened by
+ * invoking one of the {@link #open open} methods defined by this class.
+ * The file contains a variable-length sequence of bytes that can be read
+ * and written and whose current size can be {@link #size() queried}.  The
+ * size of the file increases when bytes are written beyond its current
+ * size; the size of the file decreases when it is {@link #truncate
+ * truncated}.
+ *
+ * <p> An asynchronous file channel does not have a <i>current position</i>
+ * within the file.  Instead, the file position is specified to each read
+ * and write method that initiates asynchronous operations.  A {@link
+ * CompletionHandler} is specified as a parameter and is invoked to consume
+ * the result of the I/O operation.  This class also defines read and write
+ * methods that initiate asynchronous operations, returning a {@link Future}
+ * to represent the pending result of the operation.
+ *
+ * <p> Operations are performed by the threads of an {@link ExecutorService},
+ * which also invoke the completion handlers: either the executor given when
+ * the file is opened, or the thread pool of the default {@link
+ * AsynchronousChannelGroup}.  Any number of read and write operations may
+ * be outstanding at the same time; since each specifies its own file
+ * position, they do not interfere with one another.  The thread that
+ * initiates an operation is never blocked by the file system.
+ *
+ * <p> Channels of this type are safe for use by multiple concurrent
+ * threads.  The {@link Channel#close close} method may be invoked at any
+ * time, as specified by the {@link Channel} interface.  This causes all
+ * outstanding asynchronous operations on the channel to complete with the
+ * exception {@link AsynchronousCloseException}.
+ *
+ * @see FileChannel
+ * @since 1.7
+ */
+
+public class AsynchronousFileChannel
+    implements AsynchronousChannel
+{
+    private final FileChannel fc;
+    private final ExecutorService executor;
+    private final boolean writable;
+
+    private AsynchronousFileChannel(FileChannel fc, ExecutorService executor,
+                                    boolean writable)
+    {
+        this.fc = fc;
+        this.executor = executor;
+        this.writable = writable;
+    }
+
+    /**
+     * Opens or creates a file, returning an asynchronous file channel to
+     * access the file.
+     *
+     * <p> The <tt>mode</tt> argument specifies the access mode in which the
+     * file is to be opened, as for the {@link RandomAccessFile#RandomAccessFile(File,
+     * String) RandomAccessFile} constructor: <tt>"r"</tt>, <tt>"rw"</tt>,
+     * <tt>"rws"</tt> or <tt>"rwd"</tt>.
+     *
+     * @param   file
+     *          The file to open or create
+     * @param   mode
+     *          The access mode
+     * @param   executor
+     *          The thread pool that performs the operations and invokes the
+     *          completion handlers, or <tt>null</tt> to use the pool of the
+     *          default group
+     *
+     * @return  A new asynchronous file channel
+     *
+     * @throws  IllegalArgumentException
+     *          If the mode argument is not equal to one of <tt>"r"</tt>,
+     *          <tt>"rw"</tt>, <tt>"rws"</tt>, or <tt>"rwd"</tt>
+     * @throws  java.io.FileNotFoundException
+     *          If the file cannot be opened or created in the given mode
+     * @throws  IOException
+     *          If some other I/O error occurs
+     * @throws  SecurityException
+     *          If a security manager denies access to the file
+     */
+    public static AsynchronousFileChannel open(File file, String mode,
+                                               ExecutorService executor)
+        throws IOException
+    {
+        if (executor == null)
+            executor = AsynchronousChannelGroup.defaultGroup().executor();
+        RandomAccessFile raf = new RandomAccessFile(file, mode);
+        return new AsynchronousFileChannel(raf.getChannel(), executor,
+                                           !mode.equals("r"));
+    }
+
+    /**
+     * Opens or creates a file, returning an asynchronous file channel that
+     * uses the thread pool of the default group.
+     *
+     * @param   file
+     *          The file to open or create
+     * @param   mode
+     *          The access mode, as for {@link #open(File,String,ExecutorService)}
+     *
+     * @return  A new asynchronous file channel
+     *
+     * @throws  IllegalArgumentException
+     *          If the mode argument is not equal to one of <tt>"r"</tt>,
+     *          <tt>"rw"</tt>, <tt>"rws"</tt>, or <tt>"rwd"</tt>
+     * @throws  java.io.FileNotFoundException
+     *          If the file cannot be opened or created in the given mode
+     * @throws  IOException
+     *          If some other I/O error occurs
+     * @throws  SecurityException
+     *          If a security manager denies access to the file
+     */
+    public static AsynchronousFileChannel open(File file, String mode)
+        throws IOException
+    {
+        return open(file, mode, null);
+    }
+
+    public boolean isOpen() {
+        return fc.isOpen();
+    }
+
+    /**
+     * Closes this channel.  Outstanding operations complete with the
+     * exception {@link AsynchronousCloseException}.
+     *
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public void close() throws IOException {
+        fc.close();
+    }
+
+    /**
+     * Returns the current size of this channel's file.
+     *
+     * @return  The current size of this channel's file, measured in bytes
+     *
+     * @throws  ClosedChannelException
+     *          If this channel is closed
+     * @throws  IOException
+     *          If some other I/O error occurs
+     */
+    public long size() throws IOException {
+        return fc.size();
+    }
+
+    /**
+     * Truncates this channel's file to the given size, as by {@link
+     * FileChannel#truncate}.
+     *
+     * @param   size
+     *          The new size, a non-negative byte count
+     *
+     * @return  This file channel
+     *
+     * @throws  NonWritableChannelException
+     *          If this channel was not opened for writing
+     * @throws  ClosedChannelException
+     *          If this channel is closed
+     * @throws  IllegalArgumentException
+     *          If the new size is negative
+     * @throws  IOException
+     *          If some other I/O error occurs
+     */
+    public AsynchronousFileChannel truncate(long size) throws IOException {
+        fc.truncate(size);
+        return this;
+    }
+
+    /**
+     * Forces any updates to this channel's file to be written to the
+     * storage device that contains it, as by {@link FileChannel#force}.
+     *
+     * @param   metaData
+     *          If <tt>true</tt> then this method is required to force
+     *          changes to both the file's content and metadata to be written
+     *          to storage; otherwise, it need only force content changes to
+     *          be written
+     *
+     * @throws  ClosedChannelException
+     *          If this channel is closed
+     * @throws  IOException
+     *          If some other I/O error occurs
+     */
+    public void force(boolean metaData) throws IOException {
+        fc.force(metaData);
+    }
+
+    /**
+     * Submits an operation to the executor.  If the executor rejects it,
+     * the operation fails with {@link ShutdownChannelGroupException}.
+     */
+    private <V,A> void submit(final Operation<V> op, final A attachment,
+                              final CompletionHandler<V,? super A> handler)
+    {
+        if (handler == null)
+            throw new NullPointerException("'handler' is null");
+        Runnable task = new Runnable() {
+            public void run() {
+                V result = null;
+                Throwable exc = null;
+                try {
+                    result = op.run();
+                } catch (IOException x) {
+                    exc = x;
+                } catch (RuntimeException x) {
+                    exc = x;
+                }
+                AsynchronousChannelGroup.invoke(handler, attachment,
+                                                result, exc);
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException x) {
+            throw new ShutdownChannelGroupException();
+        }
+    }
+
+    private interface Operation<V> {
+        V run() throws IOException;
+    }
+
+    /**
+     * Reads a sequence of bytes from this channel into the given buffer,
+     * starting at the given file position.
+     *
+     * <p> This method initiates the reading of a sequence of bytes from
+     * this channel into the given buffer, starting at the given file
+     * position.  The result of the read is the number of bytes read or
+     * <tt>-1</tt> if the given position is greater than or equal to the
+     * file's size at the time that the read is attempted.  This method
+     * otherwise works in the same manner as the {@link
+     * FileChannel#read(ByteBuffer,long)} method.
+     *
+     * @param   <A>
+     *          The type of the attachment
+     * @param   dst
+     *          The buffer into which bytes are to be transferred
+     * @param   position
+     *          The file position at which the transfer is to begin; must be
+     *          non-negative
+     * @param   attachment
+     *          The object to attach to the I/O operation; can be
+     *          <tt>null</tt>
+     * @param   handler
+     *          The handler for consuming the result
+     *
+     * @throws  IllegalArgumentException
+     *          If the position is negative or the buffer is read-only
+     * @throws  ShutdownChannelGroupException
+     *          If the thread pool has been shut down
+     */
+    public <A> void read(final ByteBuffer dst,
+                         final long position,
+                         A attachment,
+                         CompletionHandler<Integer,? super A> handler)
+    {
+        if (position < 0)
+            throw new IllegalArgumentException("Negative position");
+        if (dst.isReadOnly())
+            throw new IllegalArgumentException("Read-only buffer");
+        submit(new Operation<Integer>() {
+            public Integer run() throws IOException {
+                return Integer.valueOf(fc.read(dst, position));
+            }
+        }, attachment, handler);
+    }
+
+    /**
+     * Reads a sequence of bytes from this channel into the given buffer,
+     * starting at the given file position, returning a <tt>Future</tt>
+     * representing the pending result, which is the number of bytes read
+     * or <tt>-1</tt> if the given position is greater than or equal to the
+     * file's size.
+     *
+     * @param   dst
+     *          The buffer into which bytes are to be transferred
+     * @param   position
+     *          The file position at which the transfer is to begin; must be
+     *          non-negative
+     *
+     * @return  A <tt>Future</tt> object representing the pending result
+     *
+     * @throws  IllegalArgumentException
+     *          If the position is negative or the buffer is read-only
+     */
+    public Future<Integer> read(ByteBuffer dst, long position) {
+        AsynchronousChannelGroup.FutureHandler<Integer> h =
+            new AsynchronousChannelGroup.FutureHandler<Integer>();
+        read(dst, position, null, h);
+        return h.future;
+    }
+
+    /**
+     * Writes a sequence of bytes to this channel from the given buffer,
+     * starting at the given file position.
+     *
+     * <p> This method works in the same manner as the {@link
+     * FileChannel#write(ByteBuffer,long)} method, except that bytes are
+     * written asynchronously.  The result is the number of bytes written.
+     *
+     * @param   <A>
+     *          The type of the attachment
+     * @param   src
+     *          The buffer from which bytes are to be transferred
+     * @param   position
+     *          The file position at which the transfer is to begin; must be
+     *          non-negative
+     * @param   attachment
+     *          The object to attach to the I/O operation; can be
+     *          <tt>null</tt>
+     * @param   handler
+     *          The handler for consuming the result
+     *
+     * @throws  IllegalArgumentException
+     *          If the position is negative
+     * @throws  NonWritableChannelException
+     *          If this channel was not opened for writing
+     * @throws  ShutdownChannelGroupException
+     *          If the thread pool has been shut down
+     */
+    public <A> void write(final ByteBuffer src,
+                          final long position,
+                          A attachment,
+                          CompletionHandler<Integer,? super A> handler)
+    {
+        if (position < 0)
+            throw new IllegalArgumentException("Negative position");
+        if (!writable)
+            throw new NonWritableChannelException();
+        submit(new Operation<Integer>() {
+            public Integer run() throws IOException {
+                return Integer.valueOf(fc.write(src, position));
+            }
+        }, attachment, handler);
+    }
+
+    /**
+     * Writes a sequence of bytes to this channel from the given buffer,
+     * starting at the given file position, returning a <tt>Future</tt>
+     * representing the pending result, which is the number of bytes
+     * written.
+     *
+     * @param   src
+     *          The buffer from which bytes are to be transferred
+     * @param   position
+     *          The file position at which the transfer is to begin; must be
+     *          non-negative
+     *
+     * @return  A <tt>Future</tt> object representing the pending result
+     *
+     * @throws  IllegalArgumentException
+     *          If the position is negative
+     * @throws  NonWritableChannelException
+     *          If this channel was not opened for writing
+     */
+    public Future<Integer> write(ByteBuffer src, long position) {
+        AsynchronousChannelGroup.FutureHandler<Integer> h =
+            new AsynchronousChannelGroup.FutureHandler<Integer>();
+        write(src, position, null, h);
+        return h.future;
+    }
+
+    /**
+     * Acquires a lock on the given region of this channel's file.
+     *
+     * <p> This method initiates an operation to acquire a lock on the given
+     * region of this channel's file, as by {@link
+     * FileChannel#lock(long,long,boolean)}.  The operation waits, without
+     * blocking the initiating thread, until the region can be locked, this
+     * channel is closed, or the executor is shut down.
+     *
+     * @param   <A>
+     *          The type of the attachment
+     * @param   position
+     *          The position at which the locked region is to start; must be
+     *          non-negative
+     * @param   size
+     *          The size of the locked region; must be non-negative, and the
+     *          sum <tt>position</tt>&nbsp;+&nbsp;<tt>size</tt> must be
+     *          non-negative
+     * @param   shared
+     *          <tt>true</tt> to request a shared lock, in which case this
+     *          channel must be open for reading (and possibly writing);
+     *          <tt>false</tt> to request an exclusive lock, in which case
+     *          this channel must be open for writing
+     * @param   attachment
+     *          The object to attach to the I/O operation; can be
+     *          <tt>null</tt>
+     * @param   handler
+     *          The handler for consuming the result
+     *
+     * @throws  IllegalArgumentException
+     *          If the preconditions on the parameters do not hold
+     * @throws  NonWritableChannelException
+     *          If <tt>shared</tt> is false but this channel was not opened
+     *          for writing
+     * @throws  ShutdownChannelGroupException
+     *          If the thread pool has been shut down
+     */
+    public <A> void lock(final long position,
+                         final long size,
+                         final boolean shared,
+                         A attachment,
+                         CompletionHandler<FileLock,? super A> handler)
+    {
+        if ((position < 0) || (size < 0) || (position + size < 0))
+            throw new IllegalArgumentException();
+        if (!shared && !writable)
+            throw new NonWritableChannelException();
+        submit(new Operation<FileLock>() {
+            public FileLock run() throws IOException {
+                return fc.lock(position, size, shared);
+            }
+        }, attachment, handler);
+    }
+
+    /**
+     * Acquires an exclusive lock on this channel's file.
+     *
+     * @param   <A>
+     *          The type of the attachment
+     * @param   attachment
+     *          The object to attach to the I/O operation; can be
+     *          <tt>null</tt>
+     * @param   handler
+     *          The handler for consuming the result
+     *
+     * @throws  NonWritableChannelException
+     *          If this channel was not opened for writing
+     * @throws  ShutdownChannelGroupException
+     *          If the thread pool has been shut down
+     */
+    public final <A> void lock(A attachment,
+                               CompletionHandler<FileLock,? super A> handler)
+    {
+        lock(0L, Long.MAX_VALUE, false, attachment, handler);
+    }
+
+    /**
+     * Acquires a lock on the given region of this channel's file, returning
+     * a <tt>Future</tt> representing the pending result, which is the
+     * {@link FileLock} acquired.
+     *
+     * @param   position
+     *          The position at which the locked region is to start; must be
+     *          non-negative
+     * @param   size
+     *          The size of the locked region; must be non-negative, and the
+     *          sum <tt>position</tt>&nbsp;+&nbsp;<tt>size</tt> must be
+     *          non-negative
+     * @param   shared
+     *          <tt>true</tt> to request a shared lock, <tt>false</tt> to
+     *          request an exclusive lock
+     *
+     * @return  A <tt>Future</tt> object representing the pending result
+     *
+     * @throws  IllegalArgumentException
+     *          If the preconditions on the parameters do not hold
+     * @throws  NonWritableChannelException
+     *          If <tt>shared</tt> is false but this channel was not opened
+     *          for writing
+     */
+    public Future<FileLock> lock(long position, long size, boolean shared) {
+        AsynchronousChannelGroup.FutureHandler<FileLock> h =
+            new AsynchronousChannelGroup.FutureHandler<FileLock>();
+        lock(position, size, shared, null, h);
+        return h.future;
+    }
+
+    /**
+     * Attempts to acquire a lock on the given region of this channel's
+     * file, without waiting, as by {@link
+     * FileChannel#tryLock(long,long,boolean)}.
+     *
+     * @param   position
+     *          The position at which the locked region is to start; must be
+     *          non-negative
+     * @param   size
+     *          The size of the locked region; must be non-negative, and the
+     *          sum <tt>position</tt>&nbsp;+&nbsp;<tt>size</tt> must be
+     *          non-negative
+     * @param   shared
+     *          <tt>true</tt> to request a shared lock, <tt>false</tt> to
+     *          request an exclusive lock
+     *
+     * @return  A lock object representing the newly-acquired lock, or
+     *          <tt>null</tt> if the lock could not be acquired because
+     *          another program holds an overlapping lock
+     *
+     * @throws  IllegalArgumentException
+     *          If the preconditions on the parameters do not hold
+     * @throws  ClosedChannelException
+     *          If this channel is closed
+     * @throws  OverlappingFileLockException
+     *          If a lock that overlaps the requested region is already held
+     *          by this Java virtual machine
+     * @throws  NonWritableChannelException
+     *          If <tt>shared</tt> is false but this channel was not opened
+     *          for writing
+     * @throws  IOException
+     *          If some other I/O error occurs
+     */
+    public FileLock tryLock(long position, long size, boolean shared)
+        throws IOException
+    {
+        return fc.tryLock(position, size, shared);
+    }
+
+    /**
+     * Attempts to acquire an exclusive lock on this channel's file.
+     *
+     * @return  A lock object representing the newly-acquired lock, or
+     *          <tt>null</tt> if the lock could not be acquired because
+     *          another program holds an overlapping lock
+     *
+     * @throws  ClosedChannelException
+     *          If this channel is closed
+     * @throws  OverlappingFileLockException
+     *          If a lock that overlaps the requested region is already held
+     *          by this Java virtual machine
+     * @throws  NonWritableChannelException
+     *          If this channel was not opened for writing
+     * @throws  IOException
+     *          If some other I/O error occurs
+     */
+    public final FileLock tryLock() throws IOException {
+        return tryLock(0L, Long.MAX_VALUE, false);
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.nio.channels;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.util.concurrent.Future;
+
+
+/**
+ * An asynchronous channel for stream-oriented listening sockets.
+ *
+ * <p> An asynchronous server-socket channel is created by invoking the
+ * {@link #open open} method of this class.  A newly-created asynchronous
+ * server-socket channel is open but not yet bound.  It can be bound to a
+ * local address and configured to listen for connections by invoking the
+ * {@link #bind(SocketAddress,int) bind} method.  Once bound, the {@link
+ * #accept(Object,CompletionHandler) accept} method is used to initiate the
+ * accepting of connections to the channel's socket.  An attempt to invoke
+ * the <tt>accept</tt> method on an unbound channel will cause a {@link
+ * NotYetBoundException} to be thrown.
+ *
+ * <p> Channels of this type are safe for use by multiple concurrent
+ * threads though at most one accept operation can be outstanding at any
+ * time.  If a thread initiates an accept operation before a previous accept
+ * operation has completed then an {@link AcceptPendingException} will be
+ * thrown.  The channels accepted are bound to the same {@link
+ * AsynchronousChannelGroup group} as this channel.
+ *
+ * <p> Socket options are configured through the server socket returned by
+ * the {@link #socket socket} method.
+ *
+ * <p> <b>Usage Example:</b>
+ * <pre>
+ *  final AsynchronousServerSocketChannel listener =
+ *      AsynchronousServerSocketChannel.open().bind(new InetSocketAddress(5000));
+ *
+ *  listener.accept(null, new CompletionHandler&lt;AsynchronousSocketChannel,Void&gt;() {
+ *      public void completed(AsynchronousSocketChannel ch, Void att) {
+ *          // accept the next connection
+ *          listener.accept(null, this);
+ *
+ *          // handle this connection
+ *          handle(ch);
+ *      }
+ *      public void failed(Throwable exc, Void att) {
+ *          ...
+ *      }
+ *  });
+ * </pre>
+ *
+ * @see AsynchronousChannelGroup
+ * @since 1.7
+ */
+
+public class AsynchronousServerSocketChannel
+    implements AsynchronousChannel
+{
+    private final AsynchronousChannelGroup group;
+    private final ServerSocketChannel ch;
+    private final Poller poller;
+
+    private final Object acceptLock = new Object();
+    private volatile PendingAccept acceptOp;    // set holding acceptLock
+    private boolean closed;                     // guarded by acceptLock
+
+    private static final class PendingAccept {
+        final Object attachment;
+        final CompletionHandler<AsynchronousSocketChannel,Object> handler;
+
+        @SuppressWarnings("unchecked")
+        PendingAccept(Object attachment, CompletionHandler<?,?> handler) {
+            this.attachment = attachment;
+            this.handler =
+                (CompletionHandler<AsynchronousSocketChannel,Object>)handler;
+        }
+    }
+
+    private final class Poller extends AsynchronousChannelGroup.Registration {
+        Poller(AsynchronousChannelGroup group, SelectableChannel channel) {
+            super(group, channel);
+        }
+
+        int interestOps() {
+            return (acceptOp != null) ? SelectionKey.OP_ACCEPT : 0;
+        }
+
+        void poll(int readyOps) {
+            if ((readyOps & SelectionKey.OP_ACCEPT) != 0)
+                finishAccept();
+        }
+    }
+
+    /**
+     * Initializes a new instance of this class.
+     */
+    private AsynchronousServerSocketChannel(AsynchronousChannelGroup group,
+                                            ServerSocketChannel ch)
+        throws IOException
+    {
+        this.group = group;
+        this.ch = ch;
+        ch.configureBlocking(false);
+        this.poller = new Poller(group, ch);
+        group.addChannel(this);
+    }
+
+    /**
+     * Opens an asynchronous server-socket channel.
+     *
+     * @param   group
+     *          The group to which the newly constructed channel should be
+     *          bound, or <tt>null</tt> for the default group
+     *
+     * @return  A new asynchronous server socket channel
+     *
+     * @throws  ShutdownChannelGroupException
+     *          If the channel group is shutdown
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public static AsynchronousServerSocketChannel open(AsynchronousChannelGroup group)
+        throws IOException
+    {
+        group = AsynchronousChannelGroup.groupOrDefault(group);
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        try {
+            return new AsynchronousServerSocketChannel(group, ssc);
+        } catch (IOException x) {
+            ssc.close();
+            throw x;
+        } catch (RuntimeException x) {
+            ssc.close();
+            throw x;
+        }
+    }
+
+    /**
+     * Opens an asynchronous server-socket channel bound to the default
+     * group.
+     *
+     * @return  A new asynchronous server socket channel
+     *
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public static AsynchronousServerSocketChannel open()
+        throws IOException
+    {
+        return open(null);
+    }
+
+    /**
+     * Binds the channel's socket to a local address and configures the
+     * socket to listen for connections, with the default backlog.
+     *
+     * @param   local
+     *          The local address to bind the socket, or <tt>null</tt> to
+     *          bind to an automatically assigned socket address
+     *
+     * @return  This channel
+     *
+     * @throws  IOException
+     *          If the socket is already bound, or some other I/O error
+     *          occurs
+     */
+    public final AsynchronousServerSocketChannel bind(SocketAddress local)
+        throws IOException
+    {
+        return bind(local, 0);
+    }
+
+    /**
+     * Binds the channel's socket to a local address and configures the
+     * socket to listen for connections.
+     *
+     * @param   local
+     *          The local address to bind the socket, or <tt>null</tt> to
+     *          bind to an automatically assigned socket address
+     * @param   backlog
+     *          The maximum number of pending connections; if less than
+     *          <tt>1</tt> an implementation specific default is used
+     *
+     * @return  This channel
+     *
+     * @throws  IOException
+     *          If the socket is already bound, or some other I/O error
+     *          occurs
+     */
+    public AsynchronousServerSocketChannel bind(SocketAddress local,
+                                                int backlog)
+        throws IOException
+    {
+        ch.socket().bind(local, backlog);
+        return this;
+    }
+
+    /**
+     * Retrieves a server socket associated with this channel, through
+     * which socket options may be queried and set.  The server socket's
+     * <tt>accept</tt> method must not be used.
+     *
+     * @return  A server socket associated with this channel
+     */
+    public ServerSocket socket() {
+        return ch.socket();
+    }
+
+    /**
+     * Returns the socket address that this channel's socket is bound to,
+     * or <tt>null</tt> if it is not bound.
+     *
+     * @return  The local address
+     */
+    public SocketAddress getLocalAddress() {
+        return ch.socket().getLocalSocketAddress();
+    }
+
+    public final boolean isOpen() {
+        return ch.isOpen();
+    }
+
+    /**
+     * Closes this channel.  An outstanding accept operation completes with
+     * the exception {@link AsynchronousCloseException}.
+     *
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public void close() throws IOException {
+        PendingAccept op;
+        synchronized (acceptLock) {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                ch.close();
+            } finally {
+                op = acceptOp;
+                acceptOp = null;
+            }
+        }
+        group.removeChannel(this, poller);
+        if (op != null)
+            group.dispatch(op.handler, op.attachment, null,
+                           new AsynchronousCloseException());
+    }
+
+    /**
+     * Accepts a connection.
+     *
+     * <p> This method initiates an asynchronous operation to accept a
+     * connection made to this channel's socket.  The <tt>handler</tt>
+     * parameter is a completion handler that is invoked when a connection
+     * is accepted (or the operation fails).  The result passed to the
+     * completion handler is the {@link AsynchronousSocketChannel} to the
+     * new connection, bound to the same group as this channel.
+     *
+     * <p> If a security manager has been installed then it verifies that
+     * the address and port number of the connection's remote endpoint are
+     * permitted by the security manager's {@link SecurityManager#checkAccept
+     * checkAccept} method; if not, the operation fails with a {@link
+     * SecurityException}.
+     *
+     * @param   <A>
+     *          The type of the attachment
+     * @param   attachment
+     *          The object to attach to the I/O operation; can be
+     *          <tt>null</tt>
+     * @param   handler
+     *          The handler for consuming the result
+     *
+     * @throws  AcceptPendingException
+     *          If an accept operation is already in progress on this
+     *          channel
+     * @throws  NotYetBoundException
+     *          If this channel's socket has not yet been bound
+     * @throws  ShutdownChannelGroupException
+     *          If the channel group has terminated
+     */
+    public <A> void accept(A attachment,
+                           CompletionHandler<AsynchronousSocketChannel,? super A> handler)
+    {
+        if (handler == null)
+            throw new NullPointerException("'handler' is null");
+        group.checkNotTerminated();
+        PendingAccept op = new PendingAccept(attachment, handler);
+        SocketChannel sc = null;
+        Throwable exc = null;
+        synchronized (acceptLock) {
+            if (closed) {
+                exc = new ClosedChannelException();
+            } else {
+                if (acceptOp != null)
+                    throw new AcceptPendingException();
+                if (!ch.socket().isBound())
+                    throw new NotYetBoundException();
+                try {
+                    sc = ch.accept();
+                    if (sc == null)
+                        acceptOp = op;
+                } catch (IOException x) {
+                    exc = x;
+                } catch (SecurityException x) {
+                    exc = x;
+                }
+            }
+        }
+        if (sc == null && exc == null)
+            poller.update();
+        else
+            complete(op, sc, exc);
+    }
+
+    /**
+     * Accepts a connection.
+     *
+     * <p> This method initiates an asynchronous operation to accept a
+     * connection made to this channel's socket.  The method behaves in
+     * exactly the same manner as the {@link #accept(Object,
+     * CompletionHandler)} method except that instead of specifying a
+     * completion handler, this method returns a <tt>Future</tt>
+     * representing the pending result.  The <tt>Future</tt>'s {@link
+     * Future#get() get} method returns the {@link AsynchronousSocketChannel}
+     * to the new connection on successful completion.
+     *
+     * @return  a <tt>Future</tt> object representing the pending result
+     *
+     * @throws  AcceptPendingException
+     *          If an accept operation is already in progress on this
+     *          channel
+     * @throws  NotYetBoundException
+     *          If this channel's socket has not yet been bound
+     */
+    public Future<AsynchronousSocketChannel> accept() {
+        AsynchronousChannelGroup.FutureHandler<AsynchronousSocketChannel> h =
+            new AsynchronousChannelGroup.FutureHandler<AsynchronousSocketChannel>();
+        accept(null, h);
+        return h.future;
+    }
+
+    private void finishAccept() {
+        PendingAccept op;
+        SocketChannel sc = null;
+        Throwable exc = null;
+        synchronized (acceptLock) {
+            op = acceptOp;
+            if (op == null)
+                return;
+            try {
+                sc = ch.accept();
+                if (sc == null)
+                    return;
+            } catch (IOException x) {
+                exc = x;
+            } catch (SecurityException x) {
+                exc = x;
+            }
+            acceptOp = null;
+        }
+        poller.update();
+        complete(op, sc, exc);
+    }
+
+    /**
+     * Completes an accept operation with the given connection, which is
+     * wrapped in an asynchronous channel bound to this channel's group, or
+     * with the given exception.
+     */
+    private void complete(PendingAccept op, SocketChannel sc, Throwable exc) {
+        AsynchronousSocketChannel result = null;
+        if (sc != null) {
+            try {
+                result = new AsynchronousSocketChannel(group, sc);
+            } catch (IOException x) {
+                exc = x;
+            } catch (ShutdownChannelGroupException x) {
+                exc = x;
+            }
+            if (result == null) {
+                try {
+                    sc.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+        group.dispatch(op.handler, op.attachment, result, exc);
+    }
+
+    /**
+     * Returns a string describing this channel.
+     *
+     * @return  A string describing this channel
+     */
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        sb.append(getClass().getName());
+        sb.append('[');
+        if (!isOpen())
+            sb.append("closed");
+        else if (!ch.socket().isBound())
+            sb.append("unbound");
+        else
+            sb.append(getLocalAddress());
+        sb.append(']');
+        return sb.toString();
+    }
+}
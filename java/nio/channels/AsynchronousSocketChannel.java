@@ -0,0 +1,902 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.nio.channels;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * An asynchronous channel for stream-oriented connecting sockets.
+ *
+ * <p> Asynchronous socket channels are created in one of two ways.  A
+ * newly-created <tt>AsynchronousSocketChannel</tt> is created by invoking
+ * one of the {@link #open open} methods defined by this class.  A
+ * newly-created channel is open but not yet connected.  A connected
+ * <tt>AsynchronousSocketChannel</tt> is created when a connection is made
+ * to the socket of an {@link AsynchronousServerSocketChannel}.  It is not
+ * possible to create an asynchronous socket channel for an arbitrary,
+ * pre-existing {@link java.net.Socket socket}.
+ *
+ * <p> A newly-created channel is connected by invoking its {@link #connect
+ * connect} method; once connected, a channel remains connected until it is
+ * closed.  Whether or not a socket channel is connected may be determined
+ * by invoking its {@link #getRemoteAddress getRemoteAddress} method.  An
+ * attempt to invoke an I/O operation upon an unconnected channel will cause
+ * a {@link NotYetConnectedException} to be thrown.
+ *
+ * <p> Channels of this type are safe for use by multiple concurrent
+ * threads.  They support concurrent reading and writing, though at most one
+ * read operation and one write operation can be outstanding at any time.
+ * If a thread initiates a read operation before a previous read operation
+ * has completed then a {@link ReadPendingException} will be thrown.
+ * Similarly, an attempt to initiate a write operation before a previous
+ * write has completed will throw a {@link WritePendingException}.
+ *
+ * <p> Socket options are configured through the socket returned by the
+ * {@link #socket socket} method.
+ *
+ * <h4>Timeouts</h4>
+ *
+ * <p> The {@link #read(ByteBuffer,long,TimeUnit,Object,CompletionHandler)
+ * read} and {@link #write(ByteBuffer,long,TimeUnit,Object,CompletionHandler)
+ * write} methods defined by this class allow a timeout to be specified when
+ * initiating a read or write operation.  If the timeout elapses before an
+ * operation completes then the operation completes with the exception
+ * {@link InterruptedByTimeoutException}.  A timed-out operation transfers no
+ * bytes, so further operations may be initiated on the channel.
+ *
+ * @see AsynchronousChannelGroup
+ * @since 1.7
+ */
+
+public class AsynchronousSocketChannel
+    implements AsynchronousByteChannel
+{
+    private final AsynchronousChannelGroup group;
+    private final SocketChannel ch;
+    private final Poller poller;
+
+    // Lock for connecting and closing
+    private final Object stateLock = new Object();
+
+    // Locks held while reading or writing, so that the initiating thread
+    // and the polling thread never transfer data concurrently
+    private final Object readLock = new Object();
+    private final Object writeLock = new Object();
+
+    // The pending operations, if any; set and cleared while holding the
+    // corresponding lock, and read by the polling thread without locking
+    // to compute the channel's interest set
+    private volatile PendingIo connectOp;
+    private volatile PendingIo readOp;
+    private volatile PendingIo writeOp;
+
+    private volatile boolean connected;
+    private boolean closed;                     // guarded by stateLock
+
+    /**
+     * An outstanding operation: its buffers, handler and timeout.
+     */
+    private static final class PendingIo {
+        final ByteBuffer buffer;
+        final ByteBuffer[] buffers;
+        final int offset;
+        final int length;
+        final Object attachment;
+        final CompletionHandler<Object,Object> handler;
+        Future<?> timer;
+
+        @SuppressWarnings("unchecked")
+        PendingIo(ByteBuffer buffer, ByteBuffer[] buffers, int offset,
+                  int length, Object attachment,
+                  CompletionHandler<?,?> handler)
+        {
+            this.buffer = buffer;
+            this.buffers = buffers;
+            this.offset = offset;
+            this.length = length;
+            this.attachment = attachment;
+            this.handler = (CompletionHandler<Object,Object>)handler;
+        }
+    }
+
+    private final class Poller extends AsynchronousChannelGroup.Registration {
+        Poller(AsynchronousChannelGroup group, SelectableChannel channel) {
+            super(group, channel);
+        }
+
+        int interestOps() {
+            int ops = 0;
+            if (connectOp != null)
+                ops |= SelectionKey.OP_CONNECT;
+            if (readOp != null)
+                ops |= SelectionKey.OP_READ;
+            if (writeOp != null)
+                ops |= SelectionKey.OP_WRITE;
+            return ops;
+        }
+
+        void poll(int readyOps) {
+            if ((readyOps & SelectionKey.OP_CONNECT) != 0)
+                finishConnect();
+            if ((readyOps & SelectionKey.OP_READ) != 0)
+                finishRead();
+            if ((readyOps & SelectionKey.OP_WRITE) != 0)
+                finishWrite();
+        }
+    }
+
+    /**
+     * Initializes a new instance of this class.
+     */
+    AsynchronousSocketChannel(AsynchronousChannelGroup group,
+                              SocketChannel ch)
+        throws IOException
+    {
+        this.group = group;
+        this.ch = ch;
+        ch.configureBlocking(false);
+        this.connected = ch.isConnected();
+        this.poller = new Poller(group, ch);
+        group.addChannel(this);
+    }
+
+    /**
+     * Opens an asynchronous socket channel.
+     *
+     * @param   group
+     *          The group to which the newly constructed channel should be
+     *          bound, or <tt>null</tt> for the default group
+     *
+     * @return  A new asynchronous socket channel
+     *
+     * @throws  ShutdownChannelGroupException
+     *          If the channel group is shutdown
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public static AsynchronousSocketChannel open(AsynchronousChannelGroup group)
+        throws IOException
+    {
+        group = AsynchronousChannelGroup.groupOrDefault(group);
+        SocketChannel sc = SocketChannel.open();
+        try {
+            return new AsynchronousSocketChannel(group, sc);
+        } catch (IOException x) {
+            sc.close();
+            throw x;
+        } catch (RuntimeException x) {
+            sc.close();
+            throw x;
+        }
+    }
+
+    /**
+     * Opens an asynchronous socket channel bound to the default group.
+     *
+     * @return  A new asynchronous socket channel
+     *
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public static AsynchronousSocketChannel open()
+        throws IOException
+    {
+        return open(null);
+    }
+
+    /**
+     * Binds the channel's socket to a local address.
+     *
+     * @param   local
+     *          The address to bind the socket, or <tt>null</tt> to bind the
+     *          socket to an automatically assigned socket address
+     *
+     * @return  This channel
+     *
+     * @throws  IOException
+     *          If the socket is already bound, or some other I/O error
+     *          occurs
+     */
+    public AsynchronousSocketChannel bind(SocketAddress local)
+        throws IOException
+    {
+        ch.socket().bind(local);
+        return this;
+    }
+
+    /**
+     * Retrieves a socket associated with this channel, through which socket
+     * options may be queried and set.  The socket's I/O methods must not be
+     * used.
+     *
+     * @return  A socket associated with this channel
+     */
+    public Socket socket() {
+        return ch.socket();
+    }
+
+    /**
+     * Returns the socket address that this channel's socket is bound to,
+     * or <tt>null</tt> if it is not bound.
+     *
+     * @return  The local address
+     */
+    public SocketAddress getLocalAddress() {
+        return ch.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * Returns the remote address to which this channel's socket is
+     * connected, or <tt>null</tt> if it is not connected.
+     *
+     * @return  The remote address
+     */
+    public SocketAddress getRemoteAddress() {
+        return connected ? ch.socket().getRemoteSocketAddress() : null;
+    }
+
+    /**
+     * Shutdown the connection for reading without closing the channel.
+     * Once shutdown for reading then further reads on the channel complete
+     * with the result <tt>-1</tt>, the end-of-stream indication.
+     *
+     * @return  This channel
+     *
+     * @throws  NotYetConnectedException
+     *          If this channel is not yet connected
+     * @throws  ClosedChannelException
+     *          If this channel is closed
+     * @throws  IOException
+     *          If some other I/O error occurs
+     */
+    public AsynchronousSocketChannel shutdownInput() throws IOException {
+        if (!ch.isOpen())
+            throw new ClosedChannelException();
+        if (!connected)
+            throw new NotYetConnectedException();
+        ch.socket().shutdownInput();
+        return this;
+    }
+
+    /**
+     * Shutdown the connection for writing without closing the channel.
+     * Once shutdown for writing then further attempts to write to the
+     * channel fail with {@link ClosedChannelException}.
+     *
+     * @return  This channel
+     *
+     * @throws  NotYetConnectedException
+     *          If this channel is not yet connected
+     * @throws  ClosedChannelException
+     *          If this channel is closed
+     * @throws  IOException
+     *          If some other I/O error occurs
+     */
+    public AsynchronousSocketChannel shutdownOutput() throws IOException {
+        if (!ch.isOpen())
+            throw new ClosedChannelException();
+        if (!connected)
+            throw new NotYetConnectedException();
+        ch.socket().shutdownOutput();
+        return this;
+    }
+
+    public final boolean isOpen() {
+        return ch.isOpen();
+    }
+
+    /**
+     * Closes this channel.  Outstanding operations complete with the
+     * exception {@link AsynchronousCloseException}.
+     *
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public void close() throws IOException {
+        PendingIo c, r, w;
+        synchronized (stateLock) {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                ch.close();
+            } finally {
+                c = connectOp;
+                connectOp = null;
+            }
+        }
+        synchronized (readLock) {
+            r = readOp;
+            readOp = null;
+        }
+        synchronized (writeLock) {
+            w = writeOp;
+            writeOp = null;
+        }
+        group.removeChannel(this, poller);
+        for (PendingIo op : new PendingIo[] { c, r, w }) {
+            if (op != null) {
+                if (op.timer != null)
+                    op.timer.cancel(false);
+                group.dispatch(op.handler, op.attachment, null,
+                               new AsynchronousCloseException());
+            }
+        }
+    }
+
+    // -- Connect --
+
+    /**
+     * Connects this channel.
+     *
+     * <p> This method initiates an operation to connect this channel.  The
+     * <tt>handler</tt> parameter is a completion handler that is invoked
+     * when the connection is successfully established or connection cannot
+     * be established.
+     *
+     * @param   <A>
+     *          The type of the attachment
+     * @param   remote
+     *          The remote address to which this channel is to be connected
+     * @param   attachment
+     *          The object to attach to the I/O operation; can be
+     *          <tt>null</tt>
+     * @param   handler
+     *          The handler for consuming the result
+     *
+     * @throws  UnresolvedAddressException
+     *          If the given remote address is not fully resolved
+     * @throws  UnsupportedAddressTypeException
+     *          If the type of the given remote address is not supported
+     * @throws  AlreadyConnectedException
+     *          If this channel is already connected
+     * @throws  ConnectionPendingException
+     *          If a connection operation is already in progress on this
+     *          channel
+     * @throws  ShutdownChannelGroupException
+     *          If the channel group has terminated
+     */
+    public <A> void connect(SocketAddress remote,
+                            A attachment,
+                            CompletionHandler<Void,? super A> handler)
+    {
+        if (handler == null)
+            throw new NullPointerException("'handler' is null");
+        group.checkNotTerminated();
+        PendingIo op = new PendingIo(null, null, 0, 0, attachment, handler);
+        Throwable exc = null;
+        boolean pending = false;
+        synchronized (stateLock) {
+            if (closed) {
+                exc = new ClosedChannelException();
+            } else {
+                if (connected)
+                    throw new AlreadyConnectedException();
+                if (connectOp != null)
+                    throw new ConnectionPendingException();
+                try {
+                    if (ch.connect(remote))
+                        connected = true;
+                    else {
+                        connectOp = op;
+                        pending = true;
+                    }
+                } catch (IOException x) {
+                    exc = x;
+                }
+            }
+        }
+        if (pending)
+            poller.update();
+        else
+            group.dispatch(op.handler, attachment, null, exc);
+    }
+
+    /**
+     * Connects this channel.
+     *
+     * <p> This method initiates an operation to connect this channel.  This
+     * method behaves in exactly the same manner as the {@link
+     * #connect(SocketAddress, Object, CompletionHandler)} method except
+     * that instead of specifying a completion handler, this method returns
+     * a <tt>Future</tt> representing the pending result.  The
+     * <tt>Future</tt>'s {@link Future#get() get} method returns
+     * <tt>null</tt> on successful completion.
+     *
+     * @param   remote
+     *          The remote address to which this channel is to be connected
+     *
+     * @return  A <tt>Future</tt> object representing the pending result
+     *
+     * @throws  UnresolvedAddressException
+     *          If the given remote address is not fully resolved
+     * @throws  UnsupportedAddressTypeException
+     *          If the type of the given remote address is not supported
+     * @throws  AlreadyConnectedException
+     *          If this channel is already connected
+     * @throws  ConnectionPendingException
+     *          If a connection operation is already in progress on this
+     *          channel
+     */
+    public Future<Void> connect(SocketAddress remote) {
+        AsynchronousChannelGroup.FutureHandler<Void> h =
+            new AsynchronousChannelGroup.FutureHandler<Void>();
+        connect(remote, null, h);
+        return h.future;
+    }
+
+    private void finishConnect() {
+        PendingIo op;
+        Throwable exc = null;
+        synchronized (stateLock) {
+            op = connectOp;
+            if (op == null)
+                return;
+            try {
+                if (!ch.finishConnect())
+                    return;
+                connected = true;
+            } catch (IOException x) {
+                exc = x;
+            }
+            connectOp = null;
+        }
+        poller.update();
+        group.dispatch(op.handler, op.attachment, null, exc);
+    }
+
+    // -- Read --
+
+    /**
+     * Reads a sequence of bytes from this channel into the given buffer.
+     *
+     * <p> This method initiates an asynchronous read operation to read a
+     * sequence of bytes from this channel into the given buffer, as
+     * specified by {@link AsynchronousByteChannel#read(ByteBuffer, Object,
+     * CompletionHandler)}.  If a timeout is specified and the timeout
+     * elapses before the operation completes then the operation completes
+     * with the exception {@link InterruptedByTimeoutException}, having
+     * transferred no bytes.
+     *
+     * @param   <A>
+     *          The type of the attachment
+     * @param   dst
+     *          The buffer into which bytes are to be transferred
+     * @param   timeout
+     *          The maximum time for the I/O operation to complete, or zero
+     *          or less for no timeout
+     * @param   unit
+     *          The time unit of the <tt>timeout</tt> argument
+     * @param   attachment
+     *          The object to attach to the I/O operation; can be
+     *          <tt>null</tt>
+     * @param   handler
+     *          The handler for consuming the result
+     *
+     * @throws  IllegalArgumentException
+     *          If the buffer is read-only
+     * @throws  ReadPendingException
+     *          If a read operation is already in progress on this channel
+     * @throws  NotYetConnectedException
+     *          If this channel is not yet connected
+     * @throws  ShutdownChannelGroupException
+     *          If the channel group has terminated
+     */
+    public <A> void read(ByteBuffer dst,
+                         long timeout,
+                         TimeUnit unit,
+                         A attachment,
+                         CompletionHandler<Integer,? super A> handler)
+    {
+        if (dst.isReadOnly())
+            throw new IllegalArgumentException("Read-only buffer");
+        read(new PendingIo(dst, null, 0, 0, attachment, checked(handler)),
+             timeout, unit);
+    }
+
+    public final <A> void read(ByteBuffer dst,
+                               A attachment,
+                               CompletionHandler<Integer,? super A> handler)
+    {
+        read(dst, 0L, TimeUnit.MILLISECONDS, attachment, handler);
+    }
+
+    public Future<Integer> read(ByteBuffer dst) {
+        AsynchronousChannelGroup.FutureHandler<Integer> h =
+            new AsynchronousChannelGroup.FutureHandler<Integer>();
+        read(dst, 0L, TimeUnit.MILLISECONDS, null, h);
+        return h.future;
+    }
+
+    /**
+     * Reads a sequence of bytes from this channel into a subsequence of the
+     * given buffers.  This operation, sometimes called a <em>scattering
+     * read</em>, is often useful when implementing network protocols that
+     * group data into segments consisting of one or more fixed-length
+     * headers followed by a variable-length body.  The result passed to the
+     * completion handler is the number of bytes read or <tt>-1</tt> if the
+     * channel has reached end-of-stream.  This method otherwise behaves as
+     * the {@link #read(ByteBuffer,long,TimeUnit,Object,CompletionHandler)
+     * read} method for a single buffer.
+     *
+     * @param   <A>
+     *          The type of the attachment
+     * @param   dsts
+     *          The buffers into which bytes are to be transferred
+     * @param   offset
+     *          The offset within the buffer array of the first buffer into
+     *          which bytes are to be transferred; must be non-negative and
+     *          no larger than <tt>dsts.length</tt>
+     * @param   length
+     *          The maximum number of buffers to be accessed; must be
+     *          non-negative and no larger than
+     *          <tt>dsts.length&nbsp;-&nbsp;offset</tt>
+     * @param   timeout
+     *          The maximum time for the I/O operation to complete, or zero
+     *          or less for no timeout
+     * @param   unit
+     *          The time unit of the <tt>timeout</tt> argument
+     * @param   attachment
+     *          The object to attach to the I/O operation; can be
+     *          <tt>null</tt>
+     * @param   handler
+     *          The handler for consuming the result
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If the pre-conditions for the <tt>offset</tt> and
+     *          <tt>length</tt> parameter aren't met
+     * @throws  IllegalArgumentException
+     *          If the buffer is read-only
+     * @throws  ReadPendingException
+     *          If a read operation is already in progress on this channel
+     * @throws  NotYetConnectedException
+     *          If this channel is not yet connected
+     * @throws  ShutdownChannelGroupException
+     *          If the channel group has terminated
+     */
+    public <A> void read(ByteBuffer[] dsts,
+                         int offset,
+                         int length,
+                         long timeout,
+                         TimeUnit unit,
+                         A attachment,
+                         CompletionHandler<Long,? super A> handler)
+    {
+        if ((offset < 0) || (length < 0) || (offset > dsts.length - length))
+            throw new IndexOutOfBoundsException();
+        for (int i = offset; i < offset + length; i++) {
+            if (dsts[i].isReadOnly())
+                throw new IllegalArgumentException("Read-only buffer");
+        }
+        read(new PendingIo(null, dsts, offset, length, attachment,
+                           checked(handler)),
+             timeout, unit);
+    }
+
+    private static <V,A> CompletionHandler<V,A> checked(CompletionHandler<V,A> handler) {
+        if (handler == null)
+            throw new NullPointerException("'handler' is null");
+        return handler;
+    }
+
+    private static boolean hasRemaining(PendingIo op) {
+        if (op.buffer != null)
+            return op.buffer.hasRemaining();
+        for (int i = op.offset; i < op.offset + op.length; i++) {
+            if (op.buffers[i].hasRemaining())
+                return true;
+        }
+        return false;
+    }
+
+    // Returns the result of a completed transfer in the type expected by
+    // the operation's handler
+    private static Object result(PendingIo op, long n) {
+        if (op.buffer != null)
+            return Integer.valueOf((int)n);
+        return Long.valueOf(n);
+    }
+
+    private long doRead(PendingIo op) throws IOException {
+        if (op.buffer != null)
+            return ch.read(op.buffer);
+        return ch.read(op.buffers, op.offset, op.length);
+    }
+
+    private long doWrite(PendingIo op) throws IOException {
+        if (op.buffer != null)
+            return ch.write(op.buffer);
+        return ch.write(op.buffers, op.offset, op.length);
+    }
+
+    private void read(final PendingIo op, long timeout, TimeUnit unit) {
+        group.checkNotTerminated();
+        Object result = null;
+        Throwable exc = null;
+        boolean pending = false;
+        synchronized (readLock) {
+            if (!ch.isOpen()) {
+                exc = new ClosedChannelException();
+            } else {
+                if (readOp != null)
+                    throw new ReadPendingException();
+                if (!connected)
+                    throw new NotYetConnectedException();
+                try {
+                    long n = hasRemaining(op) ? doRead(op) : 0L;
+                    if (n == 0L && hasRemaining(op)) {
+                        readOp = op;
+                        pending = true;
+                    } else {
+                        result = result(op, n);
+                    }
+                } catch (IOException x) {
+                    exc = x;
+                }
+            }
+            if (pending && timeout > 0L) {
+                op.timer = poller.schedule(new Runnable() {
+                    public void run() {
+                        synchronized (readLock) {
+                            if (readOp != op)
+                                return;
+                            readOp = null;
+                        }
+                        poller.update();
+                        group.dispatch(op.handler, op.attachment, null,
+                                       new InterruptedByTimeoutException());
+                    }
+                }, timeout, unit);
+            }
+        }
+        if (pending)
+            poller.update();
+        else
+            group.dispatch(op.handler, op.attachment, result, exc);
+    }
+
+    private void finishRead() {
+        PendingIo op;
+        Object result = null;
+        Throwable exc = null;
+        synchronized (readLock) {
+            op = readOp;
+            if (op == null)
+                return;
+            try {
+                long n = doRead(op);
+                if (n == 0L)
+                    return;
+                result = result(op, n);
+            } catch (IOException x) {
+                exc = x;
+            }
+            readOp = null;
+        }
+        if (op.timer != null)
+            op.timer.cancel(false);
+        poller.update();
+        group.dispatch(op.handler, op.attachment, result, exc);
+    }
+
+    // -- Write --
+
+    /**
+     * Writes a sequence of bytes to this channel from the given buffer.
+     *
+     * <p> This method initiates an asynchronous write operation to write a
+     * sequence of bytes to this channel from the given buffer, as specified
+     * by {@link AsynchronousByteChannel#write(ByteBuffer, Object,
+     * CompletionHandler)}.  If a timeout is specified and the timeout
+     * elapses before the operation completes then the operation completes
+     * with the exception {@link InterruptedByTimeoutException}, having
+     * transferred no bytes.
+     *
+     * @param   <A>
+     *          The type of the attachment
+     * @param   src
+     *          The buffer from which bytes are to be retrieved
+     * @param   timeout
+     *          The maximum time for the I/O operation to complete, or zero
+     *          or less for no timeout
+     * @param   unit
+     *          The time unit of the <tt>timeout</tt> argument
+     * @param   attachment
+     *          The object to attach to the I/O operation; can be
+     *          <tt>null</tt>
+     * @param   handler
+     *          The handler for consuming the result
+     *
+     * @throws  WritePendingException
+     *          If a write operation is already in progress on this channel
+     * @throws  NotYetConnectedException
+     *          If this channel is not yet connected
+     * @throws  ShutdownChannelGroupException
+     *          If the channel group has terminated
+     */
+    public <A> void write(ByteBuffer src,
+                          long timeout,
+                          TimeUnit unit,
+                          A attachment,
+                          CompletionHandler<Integer,? super A> handler)
+    {
+        write(new PendingIo(src, null, 0, 0, attachment, checked(handler)),
+              timeout, unit);
+    }
+
+    public final <A> void write(ByteBuffer src,
+                                A attachment,
+                                CompletionHandler<Integer,? super A> handler)
+    {
+        write(src, 0L, TimeUnit.MILLISECONDS, attachment, handler);
+    }
+
+    public Future<Integer> write(ByteBuffer src) {
+        AsynchronousChannelGroup.FutureHandler<Integer> h =
+            new AsynchronousChannelGroup.FutureHandler<Integer>();
+        write(src, 0L, TimeUnit.MILLISECONDS, null, h);
+        return h.future;
+    }
+
+    /**
+     * Writes a sequence of bytes to this channel from a subsequence of the
+     * given buffers.  This operation, sometimes called a <em>gathering
+     * write</em>, is often useful when implementing network protocols that
+     * group data into segments consisting of one or more fixed-length
+     * headers followed by a variable-length body.  The result passed to the
+     * completion handler is the number of bytes written.  This method
+     * otherwise behaves as the {@link
+     * #write(ByteBuffer,long,TimeUnit,Object,CompletionHandler) write}
+     * method for a single buffer.
+     *
+     * @param   <A>
+     *          The type of the attachment
+     * @param   srcs
+     *          The buffers from which bytes are to be retrieved
+     * @param   offset
+     *          The offset within the buffer array of the first buffer from
+     *          which bytes are to be retrieved; must be non-negative and no
+     *          larger than <tt>srcs.length</tt>
+     * @param   length
+     *          The maximum number of buffers to be accessed; must be
+     *          non-negative and no larger than
+     *          <tt>srcs.length&nbsp;-&nbsp;offset</tt>
+     * @param   timeout
+     *          The maximum time for the I/O operation to complete, or zero
+     *          or less for no timeout
+     * @param   unit
+     *          The time unit of the <tt>timeout</tt> argument
+     * @param   attachment
+     *          The object to attach to the I/O operation; can be
+     *          <tt>null</tt>
+     * @param   handler
+     *          The handler for consuming the result
+     *
+     * @throws  IndexOutOfBoundsException
+     *          If the pre-conditions for the <tt>offset</tt> and
+     *          <tt>length</tt> parameter aren't met
+     * @throws  WritePendingException
+     *          If a write operation is already in progress on this channel
+     * @throws  NotYetConnectedException
+     *          If this channel is not yet connected
+     * @throws  ShutdownChannelGroupException
+     *          If the channel group has terminated
+     */
+    public <A> void write(ByteBuffer[] srcs,
+                          int offset,
+                          int length,
+                          long timeout,
+                          TimeUnit unit,
+                          A attachment,
+                          CompletionHandler<Long,? super A> handler)
+    {
+        if ((offset < 0) || (length < 0) || (offset > srcs.length - length))
+            throw new IndexOutOfBoundsException();
+        write(new PendingIo(null, srcs, offset, length, attachment,
+                            checked(handler)),
+              timeout, unit);
+    }
+
+    private void write(final PendingIo op, long timeout, TimeUnit unit) {
+        group.checkNotTerminated();
+        Object result = null;
+        Throwable exc = null;
+        boolean pending = false;
+        synchronized (writeLock) {
+            if (!ch.isOpen()) {
+                exc = new ClosedChannelException();
+            } else {
+                if (writeOp != null)
+                    throw new WritePendingException();
+                if (!connected)
+                    throw new NotYetConnectedException();
+                try {
+                    long n = hasRemaining(op) ? doWrite(op) : 0L;
+                    if (n == 0L && hasRemaining(op)) {
+                        writeOp = op;
+                        pending = true;
+                    } else {
+                        result = result(op, n);
+                    }
+                } catch (IOException x) {
+                    exc = x;
+                }
+            }
+            if (pending && timeout > 0L) {
+                op.timer = poller.schedule(new Runnable() {
+                    public void run() {
+                        synchronized (writeLock) {
+                            if (writeOp != op)
+                                return;
+                            writeOp = null;
+                        }
+                        poller.update();
+                        group.dispatch(op.handler, op.attachment, null,
+                                       new InterruptedByTimeoutException());
+                    }
+                }, timeout, unit);
+            }
+        }
+        if (pending)
+            poller.update();
+        else
+            group.dispatch(op.handler, op.attachment, result, exc);
+    }
+
+    private void finishWrite() {
+        PendingIo op;
+        Object result = null;
+        Throwable exc = null;
+        synchronized (writeLock) {
+            op = writeOp;
+            if (op == null)
+                return;
+            try {
+                long n = doWrite(op);
+                if (n == 0L)
+                    return;
+                result = result(op, n);
+            } catch (IOException x) {
+                exc = x;
+            }
+            writeOp = null;
+        }
+        if (op.timer != null)
+            op.timer.cancel(false);
+        poller.update();
+        group.dispatch(op.handler, op.attachment, result, exc);
+    }
+
+    /**
+     * Returns a string describing this channel.
+     *
+     * @return  A string describing this channel
+     */
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        sb.append(getClass().getName());
+        sb.append('[');
+        if (!isOpen())
+            sb.append("closed");
+        else if (connected)
+            sb.append("connected local=").append(getLocalAddress())
+                .append(" remote=").append(getRemoteAddress());
+        else if (connectOp != null)
+            sb.append("connection-pending");
+        else
+            sb.append("unconnected");
+        sb.append(']');
+        return sb.toString();
+    }
+}
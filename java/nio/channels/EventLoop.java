@@ -0,0 +1,562 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.nio.channels;
+
+import java.io.IOException;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * A thread that multiplexes the I/O events of selectable channels through
+ * a single {@link Selector}, and runs tasks submitted to it.
+ *
+ * <p> An event loop is one of the loops of an {@link EventLoopGroup}.  Its
+ * thread repeatedly runs the tasks submitted to it, selects the channels
+ * registered with it that are ready, and invokes the {@link Handler} of each
+ * such channel.  All registrations, interest changes and handler
+ * invocations for a channel happen on the loop's thread, so handlers need
+ * no synchronization among themselves.
+ *
+ * <p> Unlike the methods of a {@link Selector}, the methods of an event loop
+ * never contend with the loop's thread while it is blocked in a selection
+ * operation.  A registration or a change of interest requested by another
+ * thread is queued, without locking, and applied by the loop's thread.  The
+ * thread is woken at most once per selection operation however many
+ * requests are queued, and requests made by the loop's own thread, such as
+ * from within a handler, are applied directly without any wakeup.  Changes
+ * of interest requested for the same key before the loop applies them are
+ * coalesced.
+ *
+ * <p> The keys selected by each selection operation are drained, using a
+ * single iterator over the selected-key set, into an array that is reused
+ * from one operation to the next.  Dispatching each ready channel from that
+ * array allocates no objects.
+ *
+ * <p> The attachment of a key registered through an event loop is used by
+ * the loop and must not be replaced.  A handler that needs per-channel
+ * state should hold it itself.
+ *
+ * @see EventLoopGroup
+ * @since 1.7
+ */
+
+public final class EventLoop
+    implements Executor
+{
+    /**
+     * A handler for the I/O events of a channel registered with an event
+     * loop.
+     */
+    public interface Handler {
+
+        /**
+         * Invoked by the event loop's thread when the channel of the given
+         * key is ready for some of the operations in its interest set.  The
+         * operations for which it is ready are given by the key's {@link
+         * SelectionKey#readyOps readyOps} method.  An exception thrown by
+         * this method is passed to the uncaught exception handler of the
+         * loop's thread, and the loop continues.
+         *
+         * @param   key
+         *          The selection key of the ready channel
+         */
+        void ready(SelectionKey key);
+    }
+
+    /**
+     * The attachment of a key registered through this loop: the channel's
+     * handler and the latest interest set requested for it.
+     */
+    private final class Registration implements Runnable {
+        final Handler handler;
+        SelectionKey key;
+        volatile int interestOps;
+        final AtomicBoolean updatePending = new AtomicBoolean();
+
+        Registration(Handler handler, int ops) {
+            this.handler = handler;
+            this.interestOps = ops;
+        }
+
+        // Applies the latest requested interest set
+        public void run() {
+            updatePending.set(false);
+            if (key.isValid())
+                key.interestOps(interestOps);
+        }
+    }
+
+    /**
+     * A task submitted by this loop on behalf of one of its methods, which
+     * fails that method's result if the loop terminates before running it.
+     */
+    private abstract static class LoopTask implements Runnable {
+        abstract void reject();
+    }
+
+    private final EventLoopGroup group;
+    private final Selector selector;
+    private final Thread thread;
+
+    // Tasks to be run by the loop's thread, and whether it has been (or is
+    // about to be) woken up to run them
+    private final ConcurrentLinkedQueue<Runnable> tasks =
+        new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean wakenUp = new AtomicBoolean();
+
+    // Scheduled tasks, ordered by deadline; loop thread only
+    private final PriorityQueue<Timer> timers = new PriorityQueue<Timer>();
+    private long timerSequence;                 // loop thread only
+
+    // The selected keys of the current selection operation; loop thread
+    // only, reused and grown as needed
+    private SelectionKey[] selectedKeys = new SelectionKey[64];
+
+    private volatile boolean shutdown;
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    EventLoop(EventLoopGroup group, SelectorProvider provider,
+              ThreadFactory factory, String name)
+        throws IOException
+    {
+        this.group = group;
+        this.selector = provider.openSelector();
+        Runnable loop = new Runnable() {
+            public void run() {
+                loop();
+            }
+        };
+        Thread t;
+        if (factory != null) {
+            t = factory.newThread(loop);
+            if (t == null) {
+                selector.close();
+                throw new IllegalStateException("Thread factory failed");
+            }
+        } else {
+            t = new Thread(loop, name);
+            t.setDaemon(true);
+        }
+        this.thread = t;
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Closes the selector of a loop whose thread was never started.
+     */
+    void closeSelector() {
+        try {
+            selector.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * Returns the group of this event loop.
+     *
+     * @return  The group of this event loop
+     */
+    public EventLoopGroup group() {
+        return group;
+    }
+
+    /**
+     * Tells whether or not the current thread is this loop's thread.
+     *
+     * @return  <tt>true</tt> if, and only if, the current thread is this
+     *          loop's thread
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Submits a task to be run by this loop's thread.  Tasks are run in the
+     * order in which they are submitted.  A task that is accepted while the
+     * loop is terminating is run by the loop's thread after its selector
+     * has been closed.
+     *
+     * @param   task
+     *          The task to run
+     *
+     * @throws  RejectedExecutionException
+     *          If this loop has been shut down
+     */
+    public void execute(Runnable task) {
+        if (task == null)
+            throw new NullPointerException();
+        if (shutdown)
+            throw new RejectedExecutionException();
+        tasks.offer(task);
+        // The loop may have terminated since the check above; if it has not
+        // taken the task then the task must be rejected
+        if (shutdown && tasks.remove(task))
+            throw new RejectedExecutionException();
+        if (!inEventLoop())
+            wakeup();
+    }
+
+    private void wakeup() {
+        if (wakenUp.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    /**
+     * Schedules a task to be run by this loop's thread after the given
+     * delay.  The task is not run if the returned future is cancelled
+     * first.  If the loop terminates before the delay has elapsed then the
+     * future is cancelled.
+     *
+     * @param   task
+     *          The task to run
+     * @param   delay
+     *          The time from now to delay execution
+     * @param   unit
+     *          The time unit of the delay parameter
+     *
+     * @return  A future representing the pending task, whose
+     *          <tt>get</tt> method returns <tt>null</tt> once it has run
+     *
+     * @throws  RejectedExecutionException
+     *          If this loop has been shut down
+     */
+    public Future<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        final FutureTask<Void> future = new FutureTask<Void>(task, null);
+        final Timer timer =
+            new Timer(System.nanoTime() + unit.toNanos(delay), future);
+        if (inEventLoop()) {
+            addTimer(timer);
+        } else {
+            execute(new LoopTask() {
+                public void run() {
+                    addTimer(timer);
+                }
+                void reject() {
+                    future.cancel(false);
+                }
+            });
+        }
+        return future;
+    }
+
+    private void addTimer(Timer timer) {
+        timer.sequenceNumber = timerSequence++;
+        timers.add(timer);
+    }
+
+    private static final class Timer implements Comparable<Timer> {
+        final long deadline;
+        final FutureTask<Void> task;
+        long sequenceNumber;
+
+        Timer(long deadline, FutureTask<Void> task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        public int compareTo(Timer other) {
+            long d = deadline - other.deadline;
+            if (d != 0)
+                return (d < 0) ? -1 : 1;
+            return (sequenceNumber < other.sequenceNumber) ? -1 : 1;
+        }
+    }
+
+    /**
+     * Registers a channel with this loop, which then invokes the given
+     * handler whenever the channel is ready for some of the operations in
+     * its interest set.  If invoked by this loop's thread, the channel is
+     * registered before this method returns; otherwise the registration is
+     * queued.
+     *
+     * @param   ch
+     *          The channel to register, which must be in non-blocking mode
+     * @param   ops
+     *          The interest set for the resulting key
+     * @param   handler
+     *          The handler for the channel's events
+     *
+     * @return  A future whose <tt>get</tt> method returns the channel's
+     *          selection key once it is registered, or throws an
+     *          <tt>ExecutionException</tt> if the registration failed, for
+     *          example because the channel was closed or is in blocking
+     *          mode, or because the loop terminated first, in which case
+     *          the cause is a {@link ClosedSelectorException}
+     *
+     * @throws  IllegalArgumentException
+     *          If a bit in <tt>ops</tt> does not correspond to an operation
+     *          that is supported by the channel
+     * @throws  RejectedExecutionException
+     *          If this loop has been shut down
+     */
+    public Future<SelectionKey> register(final SelectableChannel ch,
+                                         final int ops,
+                                         final Handler handler)
+    {
+        if (handler == null)
+            throw new NullPointerException();
+        if ((ops & ~ch.validOps()) != 0)
+            throw new IllegalArgumentException();
+        final CompletableFuture<SelectionKey> future =
+            new CompletableFuture<SelectionKey>();
+        if (inEventLoop()) {
+            register(ch, ops, handler, future);
+        } else {
+            execute(new LoopTask() {
+                public void run() {
+                    register(ch, ops, handler, future);
+                }
+                void reject() {
+                    future.completeExceptionally(new ClosedSelectorException());
+                }
+            });
+        }
+        return future;
+    }
+
+    private void register(SelectableChannel ch, int ops, Handler handler,
+                          CompletableFuture<SelectionKey> future)
+    {
+        try {
+            future.complete(registerNow(ch, ops, handler));
+        } catch (Throwable x) {
+            future.completeExceptionally(x);
+        }
+    }
+
+    /**
+     * Registers a channel immediately; invoked by this loop's thread.
+     */
+    SelectionKey registerNow(SelectableChannel ch, int ops, Handler handler)
+        throws ClosedChannelException
+    {
+        assert inEventLoop();
+        Registration r = new Registration(handler, ops);
+        SelectionKey key = ch.register(selector, ops, r);
+        r.key = key;
+        return key;
+    }
+
+    /**
+     * Sets the interest set of a key registered through this loop.  If
+     * invoked by this loop's thread, the interest set is changed before
+     * this method returns; otherwise the change is queued, and coalesced
+     * with any other change to the same key that the loop has not yet
+     * applied.  A key that has been cancelled is ignored.
+     *
+     * @param   key
+     *          A key registered through this loop
+     * @param   ops
+     *          The new interest set
+     *
+     * @throws  IllegalArgumentException
+     *          If the key was not registered through this loop, or a bit in
+     *          <tt>ops</tt> does not correspond to an operation that is
+     *          supported by the key's channel
+     */
+    public void interestOps(SelectionKey key, int ops) {
+        Object att = key.attachment();
+        if (key.selector() != selector || !(att instanceof Registration))
+            throw new IllegalArgumentException();
+        if ((ops & ~key.channel().validOps()) != 0)
+            throw new IllegalArgumentException();
+        Registration r = (Registration)att;
+        r.interestOps = ops;
+        if (inEventLoop()) {
+            if (key.isValid())
+                key.interestOps(ops);
+        } else if (r.updatePending.compareAndSet(false, true)) {
+            try {
+                execute(r);
+            } catch (RejectedExecutionException ignore) {
+                // the loop has shut down and its keys are cancelled
+            }
+        }
+    }
+
+    /**
+     * Initiates an orderly shutdown of this loop: tasks already submitted
+     * are run, after which the loop's selector is closed, cancelling the
+     * keys registered with it, and the loop's thread terminates.  The
+     * registered channels are not closed.
+     */
+    void shutdown() {
+        if (!shutdown) {
+            shutdown = true;
+            wakeup();
+        }
+    }
+
+    boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException
+    {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * Returns the time to wait for the next timer in milliseconds, zero if
+     * there is none, or a negative value if one is already due.
+     */
+    private long nextTimeout() {
+        Timer t;
+        while ((t = timers.peek()) != null && t.task.isCancelled())
+            timers.poll();
+        if (t == null)
+            return 0L;
+        long nanos = t.deadline - System.nanoTime();
+        if (nanos <= 0)
+            return -1L;
+        return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable x) {
+                uncaught(x);
+            }
+        }
+    }
+
+    private void runTimers() {
+        long now = System.nanoTime();
+        Timer t;
+        while ((t = timers.peek()) != null && (t.task.isCancelled() ||
+                                               t.deadline - now <= 0)) {
+            timers.poll();
+            t.task.run();               // no-op if cancelled
+        }
+    }
+
+    private void uncaught(Throwable x) {
+        Thread.UncaughtExceptionHandler ueh =
+            thread.getUncaughtExceptionHandler();
+        if (ueh != null)
+            ueh.uncaughtException(thread, x);
+    }
+
+    /**
+     * Moves the selected keys into the reusable array, clearing the
+     * selector's selected-key set in one operation, and returns their
+     * number.
+     */
+    private int drainSelectedKeys() {
+        Set<SelectionKey> selected = selector.selectedKeys();
+        int n = selected.size();
+        if (n == 0)
+            return 0;
+        SelectionKey[] keys = selectedKeys;
+        if (n > keys.length)
+            selectedKeys = keys = new SelectionKey[Math.max(n, keys.length << 1)];
+        int i = 0;
+        for (Iterator<SelectionKey> it = selected.iterator();
+             it.hasNext() && i < n; )
+            keys[i++] = it.next();
+        selected.clear();
+        return i;
+    }
+
+    private void loop() {
+        try {
+            while (true) {
+                runTasks();
+                if (shutdown && tasks.isEmpty())
+                    break;
+                long timeout = nextTimeout();
+                wakenUp.set(false);
+                try {
+                    // tasks submitted before the flag was cleared did not
+                    // wake the selector; those submitted after it will
+                    if (!tasks.isEmpty() || timeout < 0 || shutdown)
+                        selector.selectNow();
+                    else
+                        selector.select(timeout);
+                } catch (IOException x) {
+                    if (!selector.isOpen())
+                        break;
+                    uncaught(x);
+                    continue;
+                }
+                int n = drainSelectedKeys();
+                SelectionKey[] keys = selectedKeys;
+                for (int i = 0; i < n; i++) {
+                    SelectionKey key = keys[i];
+                    keys[i] = null;
+                    try {
+                        if (key.isValid())
+                            ((Registration)key.attachment()).handler.ready(key);
+                    } catch (CancelledKeyException ignore) {
+                    } catch (Throwable x) {
+                        uncaught(x);
+                    }
+                }
+                runTimers();
+            }
+        } finally {
+            shutdown = true;
+            try {
+                selector.close();
+            } catch (IOException ignore) {
+            }
+            drainTasks();
+            for (Timer t : timers)
+                t.task.cancel(false);
+            timers.clear();
+            terminated.countDown();
+            group.loopTerminated();
+        }
+    }
+
+    /**
+     * Disposes of the tasks submitted while the loop was terminating: the
+     * results of its own pending operations are failed, and other tasks
+     * are run.  Tasks submitted after the shutdown flag has been observed
+     * here are rejected by execute.
+     */
+    private void drainTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                if (task instanceof LoopTask)
+                    ((LoopTask)task).reject();
+                else
+                    task.run();
+            } catch (Throwable x) {
+                uncaught(x);
+            }
+        }
+    }
+
+    /**
+     * Returns a string identifying this loop.
+     *
+     * @return  A string identifying this loop
+     */
+    public String toString() {
+        return getClass().getName() + "[" + thread.getName() +
+            (shutdown ? ", shutdown]" : "]");
+    }
+}
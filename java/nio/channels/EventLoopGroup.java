@@ -0,0 +1,252 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.nio.channels;
+
+import java.io.IOException;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A group of {@link EventLoop event loops} over which selectable channels
+ * are spread.
+ *
+ * <p> A single selector, and the single thread that selects on it, limits
+ * the number of ready events that can be handled to what one processor can
+ * do.  An event loop group has a fixed number of loops, each with its own
+ * selector and thread, and assigns the channels registered with the group
+ * to its loops in turn, so that the work of handling a large number of
+ * connections is shared between processors.  A channel stays with the loop
+ * to which it is assigned until its key is cancelled.
+ *
+ * <p> The selectors of a group's loops are opened by a {@link
+ * SelectorProvider}, which is the {@linkplain SelectorProvider#provider
+ * system-wide default provider} unless another is given when the group is
+ * created.
+ *
+ * <p> <b>Usage Example:</b>
+ * <pre>
+ *  EventLoopGroup group = new EventLoopGroup(4);
+ *  ServerSocketChannel listener = ServerSocketChannel.open();
+ *  listener.socket().bind(new InetSocketAddress(5000));
+ *  listener.configureBlocking(false);
+ *  group.register(listener, SelectionKey.OP_ACCEPT, new EventLoop.Handler() {
+ *      public void ready(SelectionKey key) {
+ *          SocketChannel ch = ((ServerSocketChannel)key.channel()).accept();
+ *          ...
+ *      }
+ *  });
+ * </pre>
+ *
+ * @see EventLoop
+ * @since 1.7
+ */
+
+public class EventLoopGroup {
+
+    private static final AtomicInteger groupNumber = new AtomicInteger();
+
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final AtomicInteger liveLoops;
+    private volatile boolean shutdown;
+
+    /**
+     * Creates an event loop group with the given number of loops, whose
+     * threads are daemon threads and whose selectors are opened by the
+     * default selector provider.
+     *
+     * @param   nLoops
+     *          The number of loops
+     *
+     * @throws  IllegalArgumentException
+     *          If <tt>nLoops &lt;= 0</tt>
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public EventLoopGroup(int nLoops) throws IOException {
+        this(nLoops, null, null);
+    }
+
+    /**
+     * Creates an event loop group with the given number of loops.
+     *
+     * @param   nLoops
+     *          The number of loops
+     * @param   threadFactory
+     *          The factory to use when creating the loops' threads, or
+     *          <tt>null</tt> to create daemon threads
+     * @param   provider
+     *          The provider that opens the loops' selectors, or
+     *          <tt>null</tt> for the default provider
+     *
+     * @throws  IllegalArgumentException
+     *          If <tt>nLoops &lt;= 0</tt>
+     * @throws  IOException
+     *          If an I/O error occurs
+     */
+    public EventLoopGroup(int nLoops, ThreadFactory threadFactory,
+                          SelectorProvider provider)
+        throws IOException
+    {
+        if (nLoops <= 0)
+            throw new IllegalArgumentException("'nLoops' must be > 0");
+        if (provider == null)
+            provider = SelectorProvider.provider();
+        String prefix = "EventLoopGroup-" + groupNumber.incrementAndGet() + "-";
+        EventLoop[] loops = new EventLoop[nLoops];
+        try {
+            for (int i = 0; i < nLoops; i++)
+                loops[i] = new EventLoop(this, provider, threadFactory,
+                                         prefix + i);
+        } catch (IOException x) {
+            closeSelectors(loops);
+            throw x;
+        } catch (RuntimeException x) {
+            closeSelectors(loops);
+            throw x;
+        }
+        this.loops = loops;
+        this.liveLoops = new AtomicInteger(nLoops);
+        for (EventLoop loop : loops)
+            loop.start();
+    }
+
+    private static void closeSelectors(EventLoop[] loops) {
+        for (EventLoop loop : loops) {
+            if (loop != null)
+                loop.closeSelector();
+        }
+    }
+
+    /**
+     * Returns the number of loops in this group.
+     *
+     * @return  The number of loops
+     */
+    public int size() {
+        return loops.length;
+    }
+
+    /**
+     * Returns the loop to which the next channel should be assigned.  The
+     * loops of the group are returned in turn.
+     *
+     * @return  A loop of this group
+     */
+    public EventLoop next() {
+        EventLoop[] loops = this.loops;
+        int i = nextLoop.getAndIncrement() & Integer.MAX_VALUE;
+        return loops[i % loops.length];
+    }
+
+    /**
+     * Registers a channel with the {@link #next next} loop of this group.
+     *
+     * @param   ch
+     *          The channel to register, which must be in non-blocking mode
+     * @param   ops
+     *          The interest set for the resulting key
+     * @param   handler
+     *          The handler for the channel's events
+     *
+     * @return  A future whose <tt>get</tt> method returns the channel's
+     *          selection key once it is registered
+     *
+     * @throws  IllegalArgumentException
+     *          If a bit in <tt>ops</tt> does not correspond to an operation
+     *          that is supported by the channel
+     * @throws  RejectedExecutionException
+     *          If this group has been shut down
+     *
+     * @see EventLoop#register
+     */
+    public Future<SelectionKey> register(SelectableChannel ch, int ops,
+                                         EventLoop.Handler handler)
+    {
+        return next().register(ch, ops, handler);
+    }
+
+    /**
+     * Initiates an orderly shutdown of this group.  Each loop runs the
+     * tasks already submitted to it, closes its selector, cancelling the
+     * keys registered with it, and terminates.  The registered channels are
+     * not closed.  This method has no effect if the group is already shut
+     * down.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (EventLoop loop : loops)
+            loop.shutdown();
+    }
+
+    /**
+     * Tells whether or not this group has been shut down.
+     *
+     * @return  <tt>true</tt> if this group has been shut down
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Tells whether or not all the loops of this group have terminated.
+     *
+     * @return  <tt>true</tt> if this group has terminated
+     */
+    public boolean isTerminated() {
+        return liveLoops.get() == 0;
+    }
+
+    /**
+     * Blocks until all the loops of this group have terminated after a
+     * shutdown request, or the timeout occurs, or the current thread is
+     * interrupted, whichever happens first.
+     *
+     * @param   timeout
+     *          The maximum time to wait
+     * @param   unit
+     *          The time unit of the timeout argument
+     *
+     * @return  <tt>true</tt> if this group has terminated; <tt>false</tt> if
+     *          the timeout elapsed before termination
+     *
+     * @throws  InterruptedException
+     *          If interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (EventLoop loop : loops) {
+            if (!loop.awaitTermination(deadline - System.nanoTime(),
+                                       TimeUnit.NANOSECONDS))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Invoked by each loop as it terminates.
+     */
+    void loopTerminated() {
+        if (liveLoops.decrementAndGet() == 0)
+            terminated();
+    }
+
+    /**
+     * Invoked once all the loops of this group have terminated.  This
+     * implementation does nothing.
+     */
+    void terminated() {
+    }
+}
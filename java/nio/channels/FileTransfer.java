@@ -0,0 +1,325 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.nio.channels;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * A sequence of byte buffers and file regions to be written to a channel
+ * without copying the file data through the Java heap.
+ *
+ * <p> A file transfer is built by appending buffers, typically holding
+ * protocol headers, and regions of files, typically the bodies that follow
+ * them, with the {@link #add(ByteBuffer[]) add} methods.  Its {@link
+ * #transferTo transferTo} method then writes as much of the sequence as it
+ * can to a target channel, and may be invoked repeatedly until the whole
+ * sequence has been written:
+ *
+ * <ul>
+ *
+ *   <li><p> Consecutive buffers are written by a single gathering {@link
+ *   GatheringByteChannel#write(ByteBuffer[],int,int) write} operation if
+ *   the target is a {@link GatheringByteChannel}. </p></li>
+ *
+ *   <li><p> File regions are written by the {@link FileChannel#transferTo
+ *   transferTo} method of their file channel, which many operating systems
+ *   implement by sending the bytes from the filesystem cache directly to
+ *   the target (on Linux, with <tt>sendfile</tt>).  The file data is never
+ *   read into a Java buffer. </p></li>
+ *
+ * </ul>
+ *
+ * <p> If the target is a {@link SelectableChannel} in non-blocking mode,
+ * such as a {@link SocketChannel}, then an invocation of
+ * <tt>transferTo</tt> returns as soon as the target cannot accept more
+ * bytes without blocking.  The point reached is remembered, so the next
+ * invocation, typically made once the target is selected as ready for
+ * writing, resumes where the previous one stopped.  If the target is in
+ * blocking mode then the whole sequence is written in one invocation.
+ *
+ * <p> A file region is transferred using the position given when it was
+ * added, and the file channel's own position is not changed, so the same
+ * file channel may be used by any number of concurrent transfers, to many
+ * targets.  The buffers added to a transfer are not copied; their positions
+ * are advanced as their bytes are written, and they must not otherwise be
+ * modified until the transfer has written them.
+ *
+ * <p> File transfers are not safe for use by multiple concurrent threads.
+ *
+ * <p> <b>Usage Example:</b>
+ * <pre>
+ *  FileTransfer response = new FileTransfer()
+ *      .add(headers)
+ *      .add(file, 0, file.size());
+ *
+ *  // when the socket channel is selected for writing
+ *  response.transferTo(socketChannel);
+ *  if (!response.hasRemaining())
+ *      ... // the response has been sent
+ * </pre>
+ *
+ * @see GatheringByteChannel
+ * @see FileChannel#transferTo
+ * @since 1.7
+ */
+
+public final class FileTransfer {
+
+    /**
+     * A run of consecutive buffers, or a file region.
+     */
+    private static final class Segment {
+        // buffers[offset..count) remain to be written
+        ByteBuffer[] buffers;
+        int offset;
+        int count;
+
+        // the region [position, position+remaining) of file
+        final FileChannel file;
+        long position;
+        long remaining;
+
+        Segment next;
+
+        Segment(ByteBuffer[] buffers, int count) {
+            this.buffers = buffers;
+            this.count = count;
+            this.file = null;
+        }
+
+        Segment(FileChannel file, long position, long count) {
+            this.file = file;
+            this.position = position;
+            this.remaining = count;
+        }
+    }
+
+    private Segment head;
+    private Segment tail;
+    private long remaining;             // bytes remaining in all segments
+    private long transferred;           // bytes written by all invocations
+
+    /**
+     * Creates a new, empty, file transfer.
+     */
+    public FileTransfer() {
+    }
+
+    /**
+     * Appends the remaining bytes of the given buffers to this transfer.
+     *
+     * @param   srcs
+     *          The buffers to append, which are not copied
+     *
+     * @return  This transfer
+     */
+    public FileTransfer add(ByteBuffer... srcs) {
+        int n = 0;
+        long bytes = 0L;
+        for (ByteBuffer src : srcs) {
+            int r = src.remaining();        // throws NPE if null
+            if (r > 0) {
+                n++;
+                bytes += r;
+            }
+        }
+        if (n == 0)
+            return this;
+        Segment s = tail;
+        if (s == null || s.file != null) {
+            s = new Segment(new ByteBuffer[Math.max(n, 4)], 0);
+            append(s);
+        } else if (s.count + n > s.buffers.length) {
+            int live = s.count - s.offset;
+            ByteBuffer[] a = new ByteBuffer[Math.max(live + n, live << 1)];
+            System.arraycopy(s.buffers, s.offset, a, 0, live);
+            s.buffers = a;
+            s.offset = 0;
+            s.count = live;
+        }
+        for (ByteBuffer src : srcs) {
+            if (src.hasRemaining())
+                s.buffers[s.count++] = src;
+        }
+        remaining += bytes;
+        return this;
+    }
+
+    /**
+     * Appends a region of a file to this transfer.
+     *
+     * @param   file
+     *          The channel of the file, which must be open for reading
+     * @param   position
+     *          The position within the file at which the region begins;
+     *          must be non-negative
+     * @param   count
+     *          The length of the region; must be non-negative
+     *
+     * @return  This transfer
+     *
+     * @throws  IllegalArgumentException
+     *          If the preconditions on the parameters do not hold
+     */
+    public FileTransfer add(FileChannel file, long position, long count) {
+        if (file == null)
+            throw new NullPointerException();
+        if (position < 0 || count < 0 || position + count < 0)
+            throw new IllegalArgumentException();
+        if (count > 0) {
+            append(new Segment(file, position, count));
+            remaining += count;
+        }
+        return this;
+    }
+
+    private void append(Segment s) {
+        if (tail == null)
+            head = s;
+        else
+            tail.next = s;
+        tail = s;
+    }
+
+    /**
+     * Tells whether any bytes of this transfer remain to be written.
+     *
+     * @return  <tt>true</tt> if, and only if, there is at least one byte
+     *          remaining in this transfer
+     */
+    public boolean hasRemaining() {
+        return remaining > 0;
+    }
+
+    /**
+     * Returns the number of bytes of this transfer that remain to be
+     * written.
+     *
+     * @return  The number of bytes remaining
+     */
+    public long remaining() {
+        return remaining;
+    }
+
+    /**
+     * Returns the number of bytes of this transfer written so far, by all
+     * invocations of {@link #transferTo transferTo}.
+     *
+     * @return  The number of bytes written
+     */
+    public long transferred() {
+        return transferred;
+    }
+
+    /**
+     * Writes as much of the remaining sequence of this transfer as possible
+     * to the given channel.
+     *
+     * <p> If the channel is in blocking mode then this method returns once
+     * the whole sequence has been written.  Otherwise it returns as soon as
+     * the channel cannot accept more bytes without blocking, possibly
+     * without having written any.  If the channel is a <tt>FileChannel</tt>
+     * then bytes are written starting at its position, which is then
+     * incremented by the number of bytes written.
+     *
+     * <p> If an I/O error occurs, the bytes written by this invocation
+     * before it occurred remain counted as {@link #transferred
+     * transferred}, and the transfer may be resumed on another channel.
+     *
+     * @param   target
+     *          The target channel
+     *
+     * @return  The number of bytes, possibly zero, written by this
+     *          invocation
+     *
+     * @throws  EOFException
+     *          If a file region extends beyond the end of its file
+     * @throws  NonReadableChannelException
+     *          If the channel of a file region was not opened for reading
+     * @throws  NonWritableChannelException
+     *          If the target channel was not opened for writing
+     * @throws  ClosedChannelException
+     *          If the target channel, or the channel of a file region, is
+     *          closed
+     * @throws  IOException
+     *          If some other I/O error occurs
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        boolean nonBlocking = (target instanceof SelectableChannel) &&
+            !((SelectableChannel)target).isBlocking();
+        long total = 0L;
+        Segment s;
+        while ((s = head) != null) {
+            long n;
+            boolean done;
+            if (s.file == null) {
+                n = writeBuffers(s, target);
+                done = (s.offset == s.count);
+            } else {
+                n = s.file.transferTo(s.position, s.remaining, target);
+                if (n == 0 && s.position >= s.file.size())
+                    throw new EOFException("File region extends beyond end of file");
+                s.position += n;
+                s.remaining -= n;
+                done = (s.remaining == 0);
+            }
+            total += n;
+            remaining -= n;
+            transferred += n;
+            if (done) {
+                head = s.next;
+                if (head == null)
+                    tail = null;
+            } else if (n == 0 || nonBlocking) {
+                // the target cannot accept more bytes without blocking
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Writes the buffers of a segment, gathering them if the target
+     * supports it, and discards those that have been written completely.
+     */
+    private static long writeBuffers(Segment s, WritableByteChannel target)
+        throws IOException
+    {
+        long n;
+        if (target instanceof GatheringByteChannel) {
+            n = ((GatheringByteChannel)target).write(s.buffers, s.offset,
+                                                      s.count - s.offset);
+        } else {
+            n = 0L;
+            for (int i = s.offset; i < s.count; i++) {
+                ByteBuffer src = s.buffers[i];
+                int r = src.remaining();
+                int w = target.write(src);
+                n += w;
+                if (w < r)
+                    break;
+            }
+        }
+        while (s.offset < s.count && !s.buffers[s.offset].hasRemaining())
+            s.buffers[s.offset++] = null;
+        return n;
+    }
+
+    /**
+     * Returns a string summarizing the state of this transfer.
+     *
+     * @return  A summary string
+     */
+    public String toString() {
+        return getClass().getName() + "[transferred=" + transferred +
+            " remaining=" + remaining + "]";
+    }
+}
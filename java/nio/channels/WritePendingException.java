@@ -0,0 +1,32 @@
+/*
+ * @(#)WritePendingException.java	%I% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * 
+ * This software is the proprietary information of Oracle.
+ * Use is subject to license terms.
+ */
+
+// -- This file was mechanically generated: Do not edit! -- //
+
+package java.nio.channels;
+
+
+/**
+ * Unchecked exception thrown when an attempt is made to write to an
+ * asynchronous socket channel and a previous write has not completed.
+ *
+ * @version %I%, %E%
+ * @since 1.7
+ */
+
+public class WritePendingException
+    extends IllegalStateException
+{
+
+    /**
+     * Constructs an instance of this class.
+     */
+    public WritePendingException() { }
+
+}
@@ -536,6 +536,35 @@ public class ArrayList<E> extends AbstractList<E>
 	    elementData[--size] = null;
     }
 
+    /**
+     * Sorts this list according to the order induced by the specified
+     * comparator.  The sort is performed in place on the backing array,
+     * without copying the elements out of the list and setting them
+     * back one by one.  This sort is guaranteed to be <i>stable</i>:
+     * equal elements will not be reordered as a result of the sort.
+     * This method is used by {@link Collections#sort(List, Comparator)}
+     * for instances of this class.
+     *
+     * @param c the comparator to determine the order of the list.  A
+     *        <tt>null</tt> value indicates that the elements'
+     *        {@linkplain Comparable natural ordering} should be used.
+     * @throws ClassCastException if the list contains elements that are
+     *         not <i>mutually comparable</i> using the specified comparator
+     * @throws ConcurrentModificationException if the list is structurally
+     *         modified while it is being sorted
+     * @throws IllegalArgumentException (optional) if the comparator is
+     *         found to violate the {@link Comparator} contract
+     * @see Arrays#sort(Object[], int, int, Comparator)
+     * @since 1.7
+     */
+    public void sort(Comparator<? super E> c) {
+        final int expectedModCount = modCount;
+        Arrays.sort((E[]) elementData, 0, size, c);
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+        modCount++;
+    }
+
     /**
      * Checks if the given index is in range.  If not, throws an appropriate
      * runtime exception.  This method does *not* check if the index is
@@ -8,6 +8,9 @@
 package java.util;
 
 import java.lang.reflect.*;
+import java.security.AccessController;
+import java.util.concurrent.ForkJoinPool;
+import sun.security.action.GetBooleanAction;
 
 /**
  * This class contains various methods for manipulating arrays (such as
@@ -41,20 +44,30 @@ public class Arrays {
     private Arrays() {
     }
 
+    /**
+     * The minimum array length below which a parallel sorting
+     * algorithm will not further partition the sorting task. Using
+     * smaller sizes typically results in memory contention across
+     * tasks that makes parallel speedups unlikely.
+     */
+    private static final int MIN_ARRAY_SORT_GRAN = 1 << 13;
+
     // Sorting
 
     /**
      * Sorts the specified array of longs into ascending numerical order.
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      */
     public static void sort(long[] a) {
-	sort1(a, 0, a.length);
+        DualPivotQuicksort.sort(a, 0, a.length - 1);
     }
 
     /**
@@ -63,11 +76,13 @@ public class Arrays {
      * <tt>fromIndex</tt>, inclusive, to index <tt>toIndex</tt>, exclusive.
      * (If <tt>fromIndex==toIndex</tt>, the range to be sorted is empty.)
      *
-     * <p>The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * <p>Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element (inclusive) to be
@@ -79,21 +94,23 @@ public class Arrays {
      */
     public static void sort(long[] a, int fromIndex, int toIndex) {
         rangeCheck(a.length, fromIndex, toIndex);
-	sort1(a, fromIndex, toIndex-fromIndex);
+        DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
     }
 
     /**
      * Sorts the specified array of ints into ascending numerical order.
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      */
     public static void sort(int[] a) {
-	sort1(a, 0, a.length);
+        DualPivotQuicksort.sort(a, 0, a.length - 1);
     }
 
     /**
@@ -102,11 +119,13 @@ public class Arrays {
      * <tt>fromIndex</tt>, inclusive, to index <tt>toIndex</tt>, exclusive.
      * (If <tt>fromIndex==toIndex</tt>, the range to be sorted is empty.)<p>
      *
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element (inclusive) to be
@@ -118,21 +137,23 @@ public class Arrays {
      */
     public static void sort(int[] a, int fromIndex, int toIndex) {
         rangeCheck(a.length, fromIndex, toIndex);
-	sort1(a, fromIndex, toIndex-fromIndex);
+        DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
     }
 
     /**
      * Sorts the specified array of shorts into ascending numerical order.
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      */
     public static void sort(short[] a) {
-	sort1(a, 0, a.length);
+        DualPivotQuicksort.sort(a, 0, a.length - 1);
     }
 
     /**
@@ -141,11 +162,13 @@ public class Arrays {
      * <tt>fromIndex</tt>, inclusive, to index <tt>toIndex</tt>, exclusive.
      * (If <tt>fromIndex==toIndex</tt>, the range to be sorted is empty.)<p>
      *
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element (inclusive) to be
@@ -157,21 +180,23 @@ public class Arrays {
      */
     public static void sort(short[] a, int fromIndex, int toIndex) {
         rangeCheck(a.length, fromIndex, toIndex);
-	sort1(a, fromIndex, toIndex-fromIndex);
+        DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
     }
 
     /**
      * Sorts the specified array of chars into ascending numerical order.
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      */
     public static void sort(char[] a) {
-	sort1(a, 0, a.length);
+        DualPivotQuicksort.sort(a, 0, a.length - 1);
     }
 
     /**
@@ -180,11 +205,13 @@ public class Arrays {
      * <tt>fromIndex</tt>, inclusive, to index <tt>toIndex</tt>, exclusive.
      * (If <tt>fromIndex==toIndex</tt>, the range to be sorted is empty.)<p>
      *
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element (inclusive) to be
@@ -196,21 +223,23 @@ public class Arrays {
      */
     public static void sort(char[] a, int fromIndex, int toIndex) {
         rangeCheck(a.length, fromIndex, toIndex);
-	sort1(a, fromIndex, toIndex-fromIndex);
+        DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
     }
 
     /**
      * Sorts the specified array of bytes into ascending numerical order.
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      */
     public static void sort(byte[] a) {
-	sort1(a, 0, a.length);
+        DualPivotQuicksort.sort(a, 0, a.length - 1);
     }
 
     /**
@@ -219,11 +248,13 @@ public class Arrays {
      * <tt>fromIndex</tt>, inclusive, to index <tt>toIndex</tt>, exclusive.
      * (If <tt>fromIndex==toIndex</tt>, the range to be sorted is empty.)<p>
      *
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element (inclusive) to be
@@ -235,7 +266,7 @@ public class Arrays {
      */
     public static void sort(byte[] a, int fromIndex, int toIndex) {
         rangeCheck(a.length, fromIndex, toIndex);
-	sort1(a, fromIndex, toIndex-fromIndex);
+        DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
     }
 
     /**
@@ -255,16 +286,18 @@ public class Arrays {
      * For the purposes of sorting, all NaN values are considered
      * equivalent and equal.
      * <p>
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      */
     public static void sort(double[] a) {
-	sort2(a, 0, a.length);
+        DualPivotQuicksort.sort(a, 0, a.length - 1);
     }
 
     /**
@@ -287,11 +320,13 @@ public class Arrays {
      * For the purposes of sorting, all NaN values are considered
      * equivalent and equal.
      * <p>
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element (inclusive) to be
@@ -303,7 +338,7 @@ public class Arrays {
      */
     public static void sort(double[] a, int fromIndex, int toIndex) {
         rangeCheck(a.length, fromIndex, toIndex);
-	sort2(a, fromIndex, toIndex);
+        DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
     }
 
     /**
@@ -323,16 +358,18 @@ public class Arrays {
      * For the purposes of sorting, all NaN values are considered
      * equivalent and equal.
      * <p>
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      */
     public static void sort(float[] a) {
-	sort2(a, 0, a.length);
+        DualPivotQuicksort.sort(a, 0, a.length - 1);
     }
 
     /**
@@ -355,11 +392,13 @@ public class Arrays {
      * For the purposes of sorting, all NaN values are considered
      * equivalent and equal.
      * <p>
-     * The sorting algorithm is a tuned quicksort, adapted from Jon
-     * L. Bentley and M. Douglas McIlroy's "Engineering a Sort Function",
-     * Software-Practice and Experience, Vol. 23(11) P. 1249-1265 (November
-     * 1993).  This algorithm offers n*log(n) performance on many data sets
-     * that cause other quicksorts to degrade to quadratic performance.
+     * Implementation note: The sorting algorithm is a Dual-Pivot
+     * Quicksort by Vladimir Yaroslavskiy, Jon Bentley, and Joshua
+     * Bloch. This algorithm offers O(n log(n)) performance on many data
+     * sets that cause other quicksorts to degrade to quadratic
+     * performance, and is typically faster than traditional
+     * (one-pivot) Quicksort implementations.  Ranges consisting of a
+     * few ascending or descending runs are detected and merged.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element (inclusive) to be
@@ -371,688 +410,544 @@ public class Arrays {
      */
     public static void sort(float[] a, int fromIndex, int toIndex) {
         rangeCheck(a.length, fromIndex, toIndex);
-	sort2(a, fromIndex, toIndex);
-    }
-
-    private static void sort2(double a[], int fromIndex, int toIndex) {
-        final long NEG_ZERO_BITS = Double.doubleToLongBits(-0.0d);
-        /*
-         * The sort is done in three phases to avoid the expense of using
-         * NaN and -0.0 aware comparisons during the main sort.
-         */
-
-        /*
-         * Preprocessing phase:  Move any NaN's to end of array, count the
-         * number of -0.0's, and turn them into 0.0's.
-         */
-        int numNegZeros = 0;
-        int i = fromIndex, n = toIndex;
-        while(i < n) {
-            if (a[i] != a[i]) {
-		double swap = a[i];
-                a[i] = a[--n];
-                a[n] = swap;
-            } else {
-                if (a[i]==0 && Double.doubleToLongBits(a[i])==NEG_ZERO_BITS) {
-                    a[i] = 0.0d;
-                    numNegZeros++;
-                }
-                i++;
-            }
-        }
-
-        // Main sort phase: quicksort everything but the NaN's
-	sort1(a, fromIndex, n-fromIndex);
-
-        // Postprocessing phase: change 0.0's to -0.0's as required
-        if (numNegZeros != 0) {
-            int j = binarySearch0(a, fromIndex, n, 0.0d); // posn of ANY zero
-            do {
-                j--;
-            } while (j>=0 && a[j]==0.0d);
-
-            // j is now one less than the index of the FIRST zero
-            for (int k=0; k<numNegZeros; k++)
-                a[++j] = -0.0d;
-        }
-    }
-
-
-    private static void sort2(float a[], int fromIndex, int toIndex) {
-        final int NEG_ZERO_BITS = Float.floatToIntBits(-0.0f);
-        /*
-         * The sort is done in three phases to avoid the expense of using
-         * NaN and -0.0 aware comparisons during the main sort.
-         */
-
-        /*
-         * Preprocessing phase:  Move any NaN's to end of array, count the
-         * number of -0.0's, and turn them into 0.0's.
-         */
-        int numNegZeros = 0;
-        int i = fromIndex, n = toIndex;
-        while(i < n) {
-            if (a[i] != a[i]) {
-		float swap = a[i];
-                a[i] = a[--n];
-                a[n] = swap;
-            } else {
-                if (a[i]==0 && Float.floatToIntBits(a[i])==NEG_ZERO_BITS) {
-                    a[i] = 0.0f;
-                    numNegZeros++;
-                }
-                i++;
-            }
-        }
-
-        // Main sort phase: quicksort everything but the NaN's
-	sort1(a, fromIndex, n-fromIndex);
-
-        // Postprocessing phase: change 0.0's to -0.0's as required
-        if (numNegZeros != 0) {
-            int j = binarySearch0(a, fromIndex, n, 0.0f); // posn of ANY zero
-            do {
-                j--;
-            } while (j>=0 && a[j]==0.0f);
-
-            // j is now one less than the index of the FIRST zero
-            for (int k=0; k<numNegZeros; k++)
-                a[++j] = -0.0f;
-        }
+        DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
     }
 
-
-    /*
-     * The code for each of the seven primitive types is largely identical.
-     * C'est la vie.
-     */
-
-    /**
-     * Sorts the specified sub-array of longs into ascending order.
-     */
-    private static void sort1(long x[], int off, int len) {
-	// Insertion sort on smallest arrays
-	if (len < 7) {
-	    for (int i=off; i<len+off; i++)
-		for (int j=i; j>off && x[j-1]>x[j]; j--)
-		    swap(x, j, j-1);
-	    return;
-	}
-
-	// Choose a partition element, v
-	int m = off + (len >> 1);       // Small arrays, middle element
-	if (len > 7) {
-	    int l = off;
-	    int n = off + len - 1;
-	    if (len > 40) {        // Big arrays, pseudomedian of 9
-		int s = len/8;
-		l = med3(x, l,     l+s, l+2*s);
-		m = med3(x, m-s,   m,   m+s);
-		n = med3(x, n-2*s, n-s, n);
-	    }
-	    m = med3(x, l, m, n); // Mid-size, med of 3
-	}
-	long v = x[m];
-
-	// Establish Invariant: v* (<v)* (>v)* v*
-	int a = off, b = a, c = off + len - 1, d = c;
-	while(true) {
-	    while (b <= c && x[b] <= v) {
-		if (x[b] == v)
-		    swap(x, a++, b);
-		b++;
-	    }
-	    while (c >= b && x[c] >= v) {
-		if (x[c] == v)
-		    swap(x, c, d--);
-		c--;
-	    }
-	    if (b > c)
-		break;
-	    swap(x, b++, c--);
-	}
-
-	// Swap partition elements back to middle
-	int s, n = off + len;
-	s = Math.min(a-off, b-a  );  vecswap(x, off, b-s, s);
-	s = Math.min(d-c,   n-d-1);  vecswap(x, b,   n-s, s);
-
-	// Recursively sort non-partition-elements
-	if ((s = b-a) > 1)
-	    sort1(x, off, s);
-	if ((s = d-c) > 1)
-	    sort1(x, n-s, s);
-    }
+    // Parallel sorting of primitive arrays
 
     /**
-     * Swaps x[a] with x[b].
-     */
-    private static void swap(long x[], int a, int b) {
-	long t = x[a];
-	x[a] = x[b];
-	x[b] = t;
-    }
-
-    /**
-     * Swaps x[a .. (a+n-1)] with x[b .. (b+n-1)].
-     */
-    private static void vecswap(long x[], int a, int b, int n) {
-	for (int i=0; i<n; i++, a++, b++)
-	    swap(x, a, b);
-    }
-
-    /**
-     * Returns the index of the median of the three indexed longs.
-     */
-    private static int med3(long x[], int a, int b, int c) {
-	return (x[a] < x[b] ?
-		(x[b] < x[c] ? b : x[a] < x[c] ? c : a) :
-		(x[b] > x[c] ? b : x[a] > x[c] ? c : a));
-    }
-
-    /**
-     * Sorts the specified sub-array of integers into ascending order.
-     */
-    private static void sort1(int x[], int off, int len) {
-	// Insertion sort on smallest arrays
-	if (len < 7) {
-	    for (int i=off; i<len+off; i++)
-		for (int j=i; j>off && x[j-1]>x[j]; j--)
-		    swap(x, j, j-1);
-	    return;
-	}
-
-	// Choose a partition element, v
-	int m = off + (len >> 1);       // Small arrays, middle element
-	if (len > 7) {
-	    int l = off;
-	    int n = off + len - 1;
-	    if (len > 40) {        // Big arrays, pseudomedian of 9
-		int s = len/8;
-		l = med3(x, l,     l+s, l+2*s);
-		m = med3(x, m-s,   m,   m+s);
-		n = med3(x, n-2*s, n-s, n);
-	    }
-	    m = med3(x, l, m, n); // Mid-size, med of 3
-	}
-	int v = x[m];
-
-	// Establish Invariant: v* (<v)* (>v)* v*
-	int a = off, b = a, c = off + len - 1, d = c;
-	while(true) {
-	    while (b <= c && x[b] <= v) {
-		if (x[b] == v)
-		    swap(x, a++, b);
-		b++;
-	    }
-	    while (c >= b && x[c] >= v) {
-		if (x[c] == v)
-		    swap(x, c, d--);
-		c--;
-	    }
-	    if (b > c)
-		break;
-	    swap(x, b++, c--);
-	}
-
-	// Swap partition elements back to middle
-	int s, n = off + len;
-	s = Math.min(a-off, b-a  );  vecswap(x, off, b-s, s);
-	s = Math.min(d-c,   n-d-1);  vecswap(x, b,   n-s, s);
-
-	// Recursively sort non-partition-elements
-	if ((s = b-a) > 1)
-	    sort1(x, off, s);
-	if ((s = d-c) > 1)
-	    sort1(x, n-s, s);
-    }
-
-    /**
-     * Swaps x[a] with x[b].
-     */
-    private static void swap(int x[], int a, int b) {
-	int t = x[a];
-	x[a] = x[b];
-	x[b] = t;
-    }
-
-    /**
-     * Swaps x[a .. (a+n-1)] with x[b .. (b+n-1)].
-     */
-    private static void vecswap(int x[], int a, int b, int n) {
-	for (int i=0; i<n; i++, a++, b++)
-	    swap(x, a, b);
-    }
-
-    /**
-     * Returns the index of the median of the three indexed integers.
-     */
-    private static int med3(int x[], int a, int b, int c) {
-	return (x[a] < x[b] ?
-		(x[b] < x[c] ? b : x[a] < x[c] ? c : a) :
-		(x[b] > x[c] ? b : x[a] > x[c] ? c : a));
-    }
-
-    /**
-     * Sorts the specified sub-array of shorts into ascending order.
-     */
-    private static void sort1(short x[], int off, int len) {
-	// Insertion sort on smallest arrays
-	if (len < 7) {
-	    for (int i=off; i<len+off; i++)
-		for (int j=i; j>off && x[j-1]>x[j]; j--)
-		    swap(x, j, j-1);
-	    return;
-	}
-
-	// Choose a partition element, v
-	int m = off + (len >> 1);       // Small arrays, middle element
-	if (len > 7) {
-	    int l = off;
-	    int n = off + len - 1;
-	    if (len > 40) {        // Big arrays, pseudomedian of 9
-		int s = len/8;
-		l = med3(x, l,     l+s, l+2*s);
-		m = med3(x, m-s,   m,   m+s);
-		n = med3(x, n-2*s, n-s, n);
-	    }
-	    m = med3(x, l, m, n); // Mid-size, med of 3
-	}
-	short v = x[m];
-
-	// Establish Invariant: v* (<v)* (>v)* v*
-	int a = off, b = a, c = off + len - 1, d = c;
-	while(true) {
-	    while (b <= c && x[b] <= v) {
-		if (x[b] == v)
-		    swap(x, a++, b);
-		b++;
-	    }
-	    while (c >= b && x[c] >= v) {
-		if (x[c] == v)
-		    swap(x, c, d--);
-		c--;
-	    }
-	    if (b > c)
-		break;
-	    swap(x, b++, c--);
-	}
-
-	// Swap partition elements back to middle
-	int s, n = off + len;
-	s = Math.min(a-off, b-a  );  vecswap(x, off, b-s, s);
-	s = Math.min(d-c,   n-d-1);  vecswap(x, b,   n-s, s);
-
-	// Recursively sort non-partition-elements
-	if ((s = b-a) > 1)
-	    sort1(x, off, s);
-	if ((s = d-c) > 1)
-	    sort1(x, n-s, s);
-    }
-
-    /**
-     * Swaps x[a] with x[b].
-     */
-    private static void swap(short x[], int a, int b) {
-	short t = x[a];
-	x[a] = x[b];
-	x[b] = t;
-    }
-
-    /**
-     * Swaps x[a .. (a+n-1)] with x[b .. (b+n-1)].
-     */
-    private static void vecswap(short x[], int a, int b, int n) {
-	for (int i=0; i<n; i++, a++, b++)
-	    swap(x, a, b);
-    }
-
-    /**
-     * Returns the index of the median of the three indexed shorts.
-     */
-    private static int med3(short x[], int a, int b, int c) {
-	return (x[a] < x[b] ?
-		(x[b] < x[c] ? b : x[a] < x[c] ? c : a) :
-		(x[b] > x[c] ? b : x[a] > x[c] ? c : a));
-    }
-
-
-    /**
-     * Sorts the specified sub-array of chars into ascending order.
-     */
-    private static void sort1(char x[], int off, int len) {
-	// Insertion sort on smallest arrays
-	if (len < 7) {
-	    for (int i=off; i<len+off; i++)
-		for (int j=i; j>off && x[j-1]>x[j]; j--)
-		    swap(x, j, j-1);
-	    return;
-	}
-
-	// Choose a partition element, v
-	int m = off + (len >> 1);       // Small arrays, middle element
-	if (len > 7) {
-	    int l = off;
-	    int n = off + len - 1;
-	    if (len > 40) {        // Big arrays, pseudomedian of 9
-		int s = len/8;
-		l = med3(x, l,     l+s, l+2*s);
-		m = med3(x, m-s,   m,   m+s);
-		n = med3(x, n-2*s, n-s, n);
-	    }
-	    m = med3(x, l, m, n); // Mid-size, med of 3
-	}
-	char v = x[m];
-
-	// Establish Invariant: v* (<v)* (>v)* v*
-	int a = off, b = a, c = off + len - 1, d = c;
-	while(true) {
-	    while (b <= c && x[b] <= v) {
-		if (x[b] == v)
-		    swap(x, a++, b);
-		b++;
-	    }
-	    while (c >= b && x[c] >= v) {
-		if (x[c] == v)
-		    swap(x, c, d--);
-		c--;
-	    }
-	    if (b > c)
-		break;
-	    swap(x, b++, c--);
-	}
-
-	// Swap partition elements back to middle
-	int s, n = off + len;
-	s = Math.min(a-off, b-a  );  vecswap(x, off, b-s, s);
-	s = Math.min(d-c,   n-d-1);  vecswap(x, b,   n-s, s);
-
-	// Recursively sort non-partition-elements
-	if ((s = b-a) > 1)
-	    sort1(x, off, s);
-	if ((s = d-c) > 1)
-	    sort1(x, n-s, s);
-    }
-
-    /**
-     * Swaps x[a] with x[b].
-     */
-    private static void swap(char x[], int a, int b) {
-	char t = x[a];
-	x[a] = x[b];
-	x[b] = t;
-    }
-
-    /**
-     * Swaps x[a .. (a+n-1)] with x[b .. (b+n-1)].
+     * Sorts the specified array into ascending numerical order.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(byte[]) Arrays.sort} method. If
+     * the length of the specified array is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(byte[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the original
+     * array. The {@link ForkJoinPool#commonPool() ForkJoin common
+     * pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @since 1.7
      */
-    private static void vecswap(char x[], int a, int b, int n) {
-	for (int i=0; i<n; i++, a++, b++)
-	    swap(x, a, b);
-    }
-
-    /**
-     * Returns the index of the median of the three indexed chars.
+    public static void parallelSort(byte[] a) {
+        int n = a.length, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, 0, n - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJByte.Sorter
+                 (a, new byte[n], 0, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical
+     * order.  The range to be sorted extends from the index {@code
+     * fromIndex}, inclusive, to the index {@code toIndex}, exclusive.
+     * If {@code fromIndex == toIndex}, the range to be sorted is empty.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(byte[]) Arrays.sort} method. If
+     * the length of the specified range is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(byte[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the specified range
+     * of the original array. The {@link ForkJoinPool#commonPool()
+     * ForkJoin common pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     * @since 1.7
      */
-    private static int med3(char x[], int a, int b, int c) {
-	return (x[a] < x[b] ?
-		(x[b] < x[c] ? b : x[a] < x[c] ? c : a) :
-		(x[b] > x[c] ? b : x[a] > x[c] ? c : a));
+    public static void parallelSort(byte[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int n = toIndex - fromIndex, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJByte.Sorter
+                 (a, new byte[n], fromIndex, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
     }
 
-
     /**
-     * Sorts the specified sub-array of bytes into ascending order.
+     * Sorts the specified array into ascending numerical order.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(char[]) Arrays.sort} method. If
+     * the length of the specified array is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(char[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the original
+     * array. The {@link ForkJoinPool#commonPool() ForkJoin common
+     * pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @since 1.7
      */
-    private static void sort1(byte x[], int off, int len) {
-	// Insertion sort on smallest arrays
-	if (len < 7) {
-	    for (int i=off; i<len+off; i++)
-		for (int j=i; j>off && x[j-1]>x[j]; j--)
-		    swap(x, j, j-1);
-	    return;
-	}
-
-	// Choose a partition element, v
-	int m = off + (len >> 1);       // Small arrays, middle element
-	if (len > 7) {
-	    int l = off;
-	    int n = off + len - 1;
-	    if (len > 40) {        // Big arrays, pseudomedian of 9
-		int s = len/8;
-		l = med3(x, l,     l+s, l+2*s);
-		m = med3(x, m-s,   m,   m+s);
-		n = med3(x, n-2*s, n-s, n);
-	    }
-	    m = med3(x, l, m, n); // Mid-size, med of 3
-	}
-	byte v = x[m];
-
-	// Establish Invariant: v* (<v)* (>v)* v*
-	int a = off, b = a, c = off + len - 1, d = c;
-	while(true) {
-	    while (b <= c && x[b] <= v) {
-		if (x[b] == v)
-		    swap(x, a++, b);
-		b++;
-	    }
-	    while (c >= b && x[c] >= v) {
-		if (x[c] == v)
-		    swap(x, c, d--);
-		c--;
-	    }
-	    if (b > c)
-		break;
-	    swap(x, b++, c--);
-	}
-
-	// Swap partition elements back to middle
-	int s, n = off + len;
-	s = Math.min(a-off, b-a  );  vecswap(x, off, b-s, s);
-	s = Math.min(d-c,   n-d-1);  vecswap(x, b,   n-s, s);
-
-	// Recursively sort non-partition-elements
-	if ((s = b-a) > 1)
-	    sort1(x, off, s);
-	if ((s = d-c) > 1)
-	    sort1(x, n-s, s);
-    }
-
-    /**
-     * Swaps x[a] with x[b].
+    public static void parallelSort(char[] a) {
+        int n = a.length, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, 0, n - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJChar.Sorter
+                 (a, new char[n], 0, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical
+     * order.  The range to be sorted extends from the index {@code
+     * fromIndex}, inclusive, to the index {@code toIndex}, exclusive.
+     * If {@code fromIndex == toIndex}, the range to be sorted is empty.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(char[]) Arrays.sort} method. If
+     * the length of the specified range is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(char[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the specified range
+     * of the original array. The {@link ForkJoinPool#commonPool()
+     * ForkJoin common pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     * @since 1.7
      */
-    private static void swap(byte x[], int a, int b) {
-	byte t = x[a];
-	x[a] = x[b];
-	x[b] = t;
+    public static void parallelSort(char[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int n = toIndex - fromIndex, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJChar.Sorter
+                 (a, new char[n], fromIndex, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
     }
 
     /**
-     * Swaps x[a .. (a+n-1)] with x[b .. (b+n-1)].
+     * Sorts the specified array into ascending numerical order.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(short[]) Arrays.sort} method. If
+     * the length of the specified array is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(short[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the original
+     * array. The {@link ForkJoinPool#commonPool() ForkJoin common
+     * pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @since 1.7
      */
-    private static void vecswap(byte x[], int a, int b, int n) {
-	for (int i=0; i<n; i++, a++, b++)
-	    swap(x, a, b);
-    }
-
-    /**
-     * Returns the index of the median of the three indexed bytes.
+    public static void parallelSort(short[] a) {
+        int n = a.length, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, 0, n - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJShort.Sorter
+                 (a, new short[n], 0, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical
+     * order.  The range to be sorted extends from the index {@code
+     * fromIndex}, inclusive, to the index {@code toIndex}, exclusive.
+     * If {@code fromIndex == toIndex}, the range to be sorted is empty.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(short[]) Arrays.sort} method. If
+     * the length of the specified range is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(short[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the specified range
+     * of the original array. The {@link ForkJoinPool#commonPool()
+     * ForkJoin common pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     * @since 1.7
      */
-    private static int med3(byte x[], int a, int b, int c) {
-	return (x[a] < x[b] ?
-		(x[b] < x[c] ? b : x[a] < x[c] ? c : a) :
-		(x[b] > x[c] ? b : x[a] > x[c] ? c : a));
+    public static void parallelSort(short[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int n = toIndex - fromIndex, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJShort.Sorter
+                 (a, new short[n], fromIndex, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
     }
 
-
     /**
-     * Sorts the specified sub-array of doubles into ascending order.
+     * Sorts the specified array into ascending numerical order.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(int[]) Arrays.sort} method. If
+     * the length of the specified array is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(int[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the original
+     * array. The {@link ForkJoinPool#commonPool() ForkJoin common
+     * pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @since 1.7
      */
-    private static void sort1(double x[], int off, int len) {
-	// Insertion sort on smallest arrays
-	if (len < 7) {
-	    for (int i=off; i<len+off; i++)
-		for (int j=i; j>off && x[j-1]>x[j]; j--)
-		    swap(x, j, j-1);
-	    return;
-	}
-
-	// Choose a partition element, v
-	int m = off + (len >> 1);       // Small arrays, middle element
-	if (len > 7) {
-	    int l = off;
-	    int n = off + len - 1;
-	    if (len > 40) {        // Big arrays, pseudomedian of 9
-		int s = len/8;
-		l = med3(x, l,     l+s, l+2*s);
-		m = med3(x, m-s,   m,   m+s);
-		n = med3(x, n-2*s, n-s, n);
-	    }
-	    m = med3(x, l, m, n); // Mid-size, med of 3
-	}
-	double v = x[m];
-
-	// Establish Invariant: v* (<v)* (>v)* v*
-	int a = off, b = a, c = off + len - 1, d = c;
-	while(true) {
-	    while (b <= c && x[b] <= v) {
-		if (x[b] == v)
-		    swap(x, a++, b);
-		b++;
-	    }
-	    while (c >= b && x[c] >= v) {
-		if (x[c] == v)
-		    swap(x, c, d--);
-		c--;
-	    }
-	    if (b > c)
-		break;
-	    swap(x, b++, c--);
-	}
-
-	// Swap partition elements back to middle
-	int s, n = off + len;
-	s = Math.min(a-off, b-a  );  vecswap(x, off, b-s, s);
-	s = Math.min(d-c,   n-d-1);  vecswap(x, b,   n-s, s);
-
-	// Recursively sort non-partition-elements
-	if ((s = b-a) > 1)
-	    sort1(x, off, s);
-	if ((s = d-c) > 1)
-	    sort1(x, n-s, s);
-    }
-
-    /**
-     * Swaps x[a] with x[b].
+    public static void parallelSort(int[] a) {
+        int n = a.length, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, 0, n - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJInt.Sorter
+                 (a, new int[n], 0, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical
+     * order.  The range to be sorted extends from the index {@code
+     * fromIndex}, inclusive, to the index {@code toIndex}, exclusive.
+     * If {@code fromIndex == toIndex}, the range to be sorted is empty.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(int[]) Arrays.sort} method. If
+     * the length of the specified range is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(int[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the specified range
+     * of the original array. The {@link ForkJoinPool#commonPool()
+     * ForkJoin common pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     * @since 1.7
      */
-    private static void swap(double x[], int a, int b) {
-	double t = x[a];
-	x[a] = x[b];
-	x[b] = t;
+    public static void parallelSort(int[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int n = toIndex - fromIndex, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJInt.Sorter
+                 (a, new int[n], fromIndex, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
     }
 
     /**
-     * Swaps x[a .. (a+n-1)] with x[b .. (b+n-1)].
+     * Sorts the specified array into ascending numerical order.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(long[]) Arrays.sort} method. If
+     * the length of the specified array is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(long[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the original
+     * array. The {@link ForkJoinPool#commonPool() ForkJoin common
+     * pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @since 1.7
      */
-    private static void vecswap(double x[], int a, int b, int n) {
-	for (int i=0; i<n; i++, a++, b++)
-	    swap(x, a, b);
-    }
-
-    /**
-     * Returns the index of the median of the three indexed doubles.
+    public static void parallelSort(long[] a) {
+        int n = a.length, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, 0, n - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJLong.Sorter
+                 (a, new long[n], 0, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical
+     * order.  The range to be sorted extends from the index {@code
+     * fromIndex}, inclusive, to the index {@code toIndex}, exclusive.
+     * If {@code fromIndex == toIndex}, the range to be sorted is empty.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(long[]) Arrays.sort} method. If
+     * the length of the specified range is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(long[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the specified range
+     * of the original array. The {@link ForkJoinPool#commonPool()
+     * ForkJoin common pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     * @since 1.7
      */
-    private static int med3(double x[], int a, int b, int c) {
-	return (x[a] < x[b] ?
-		(x[b] < x[c] ? b : x[a] < x[c] ? c : a) :
-		(x[b] > x[c] ? b : x[a] > x[c] ? c : a));
-    }
-
-
-    /**
-     * Sorts the specified sub-array of floats into ascending order.
+    public static void parallelSort(long[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int n = toIndex - fromIndex, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJLong.Sorter
+                 (a, new long[n], fromIndex, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
+    }
+
+    /**
+     * Sorts the specified array into ascending numerical order.
+     *
+     * <p>The {@code <} relation does not provide a total order on all
+     * float values: {@code -0.0f == 0.0f} is {@code true} and a
+     * {@code Float.NaN} value compares neither less than, greater than,
+     * nor equal to any value, even itself.  This method uses the total
+     * order imposed by {@link Float#compareTo}: {@code -0.0f} is treated
+     * as less than value {@code 0.0f} and {@code Float.NaN} is
+     * considered greater than any other value and all {@code Float.NaN}
+     * values are considered equal.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(float[]) Arrays.sort} method. If
+     * the length of the specified array is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(float[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the original
+     * array. The {@link ForkJoinPool#commonPool() ForkJoin common
+     * pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @since 1.7
      */
-    private static void sort1(float x[], int off, int len) {
-	// Insertion sort on smallest arrays
-	if (len < 7) {
-	    for (int i=off; i<len+off; i++)
-		for (int j=i; j>off && x[j-1]>x[j]; j--)
-		    swap(x, j, j-1);
-	    return;
-	}
-
-	// Choose a partition element, v
-	int m = off + (len >> 1);       // Small arrays, middle element
-	if (len > 7) {
-	    int l = off;
-	    int n = off + len - 1;
-	    if (len > 40) {        // Big arrays, pseudomedian of 9
-		int s = len/8;
-		l = med3(x, l,     l+s, l+2*s);
-		m = med3(x, m-s,   m,   m+s);
-		n = med3(x, n-2*s, n-s, n);
-	    }
-	    m = med3(x, l, m, n); // Mid-size, med of 3
-	}
-	float v = x[m];
-
-	// Establish Invariant: v* (<v)* (>v)* v*
-	int a = off, b = a, c = off + len - 1, d = c;
-	while(true) {
-	    while (b <= c && x[b] <= v) {
-		if (x[b] == v)
-		    swap(x, a++, b);
-		b++;
-	    }
-	    while (c >= b && x[c] >= v) {
-		if (x[c] == v)
-		    swap(x, c, d--);
-		c--;
-	    }
-	    if (b > c)
-		break;
-	    swap(x, b++, c--);
-	}
-
-	// Swap partition elements back to middle
-	int s, n = off + len;
-	s = Math.min(a-off, b-a  );  vecswap(x, off, b-s, s);
-	s = Math.min(d-c,   n-d-1);  vecswap(x, b,   n-s, s);
-
-	// Recursively sort non-partition-elements
-	if ((s = b-a) > 1)
-	    sort1(x, off, s);
-	if ((s = d-c) > 1)
-	    sort1(x, n-s, s);
-    }
-
-    /**
-     * Swaps x[a] with x[b].
+    public static void parallelSort(float[] a) {
+        int n = a.length, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, 0, n - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJFloat.Sorter
+                 (a, new float[n], 0, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical
+     * order.  The range to be sorted extends from the index {@code
+     * fromIndex}, inclusive, to the index {@code toIndex}, exclusive.
+     * If {@code fromIndex == toIndex}, the range to be sorted is empty.
+     *
+     * <p>The {@code <} relation does not provide a total order on all
+     * float values: {@code -0.0f == 0.0f} is {@code true} and a
+     * {@code Float.NaN} value compares neither less than, greater than,
+     * nor equal to any value, even itself.  This method uses the total
+     * order imposed by {@link Float#compareTo}: {@code -0.0f} is treated
+     * as less than value {@code 0.0f} and {@code Float.NaN} is
+     * considered greater than any other value and all {@code Float.NaN}
+     * values are considered equal.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(float[]) Arrays.sort} method. If
+     * the length of the specified range is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(float[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the specified range
+     * of the original array. The {@link ForkJoinPool#commonPool()
+     * ForkJoin common pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     * @since 1.7
      */
-    private static void swap(float x[], int a, int b) {
-	float t = x[a];
-	x[a] = x[b];
-	x[b] = t;
-    }
-
-    /**
-     * Swaps x[a .. (a+n-1)] with x[b .. (b+n-1)].
+    public static void parallelSort(float[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int n = toIndex - fromIndex, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJFloat.Sorter
+                 (a, new float[n], fromIndex, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
+    }
+
+    /**
+     * Sorts the specified array into ascending numerical order.
+     *
+     * <p>The {@code <} relation does not provide a total order on all
+     * double values: {@code -0.0d == 0.0d} is {@code true} and a
+     * {@code Double.NaN} value compares neither less than, greater than,
+     * nor equal to any value, even itself.  This method uses the total
+     * order imposed by {@link Double#compareTo}: {@code -0.0d} is treated
+     * as less than value {@code 0.0d} and {@code Double.NaN} is
+     * considered greater than any other value and all {@code Double.NaN}
+     * values are considered equal.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(double[]) Arrays.sort} method. If
+     * the length of the specified array is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(double[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the original
+     * array. The {@link ForkJoinPool#commonPool() ForkJoin common
+     * pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @since 1.7
      */
-    private static void vecswap(float x[], int a, int b, int n) {
-	for (int i=0; i<n; i++, a++, b++)
-	    swap(x, a, b);
-    }
-
-    /**
-     * Returns the index of the median of the three indexed floats.
+    public static void parallelSort(double[] a) {
+        int n = a.length, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, 0, n - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJDouble.Sorter
+                 (a, new double[n], 0, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
+    }
+
+    /**
+     * Sorts the specified range of the array into ascending numerical
+     * order.  The range to be sorted extends from the index {@code
+     * fromIndex}, inclusive, to the index {@code toIndex}, exclusive.
+     * If {@code fromIndex == toIndex}, the range to be sorted is empty.
+     *
+     * <p>The {@code <} relation does not provide a total order on all
+     * double values: {@code -0.0d == 0.0d} is {@code true} and a
+     * {@code Double.NaN} value compares neither less than, greater than,
+     * nor equal to any value, even itself.  This method uses the total
+     * order imposed by {@link Double#compareTo}: {@code -0.0d} is treated
+     * as less than value {@code 0.0d} and {@code Double.NaN} is
+     * considered greater than any other value and all {@code Double.NaN}
+     * values are considered equal.
+     *
+     * <p>Implementation note: The sorting algorithm is a parallel
+     * sort-merge that breaks the array into sub-arrays that are
+     * themselves sorted and then merged. When the sub-array length
+     * reaches a minimum granularity, the sub-array is sorted using the
+     * appropriate {@link Arrays#sort(double[]) Arrays.sort} method. If
+     * the length of the specified range is less than the minimum
+     * granularity, then it is sorted using the appropriate {@link
+     * Arrays#sort(double[]) Arrays.sort} method. The algorithm requires
+     * a working space no greater than the size of the specified range
+     * of the original array. The {@link ForkJoinPool#commonPool()
+     * ForkJoin common pool} is used to execute any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @param fromIndex the index of the first element, inclusive, to be sorted
+     * @param toIndex the index of the last element, exclusive, to be sorted
+     * @throws IllegalArgumentException if {@code fromIndex > toIndex}
+     * @throws ArrayIndexOutOfBoundsException
+     *     if {@code fromIndex < 0} or {@code toIndex > a.length}
+     * @since 1.7
      */
-    private static int med3(float x[], int a, int b, int c) {
-	return (x[a] < x[b] ?
-		(x[b] < x[c] ? b : x[a] < x[c] ? c : a) :
-		(x[b] > x[c] ? b : x[a] > x[c] ? c : a));
+    public static void parallelSort(double[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        int n = toIndex - fromIndex, p, g;
+        if (n <= MIN_ARRAY_SORT_GRAN ||
+            (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
+            DualPivotQuicksort.sort(a, fromIndex, toIndex - 1);
+        else
+            ForkJoinPool.commonPool().invoke
+                (new ArraysParallelSortHelpers.FJDouble.Sorter
+                 (a, new double[n], fromIndex, n, 0,
+                  ((g = n / (p << 2)) <= MIN_ARRAY_SORT_GRAN) ?
+                  MIN_ARRAY_SORT_GRAN : g));
     }
 
-
     /**
      * Sorts the specified array of objects into ascending order, according to
      * the {@linkplain Comparable natural ordering}
@@ -1065,16 +960,50 @@ public class Arrays {
      * This sort is guaranteed to be <i>stable</i>:  equal elements will
      * not be reordered as a result of the sort.<p>
      *
-     * The sorting algorithm is a modified mergesort (in which the merge is
-     * omitted if the highest element in the low sublist is less than the
-     * lowest element in the high sublist).  This algorithm offers guaranteed
-     * n*log(n) performance.
+     * <p>Implementation note: This implementation is a stable, adaptive,
+     * iterative mergesort that requires far fewer than n lg(n) comparisons
+     * when the input array is partially sorted, while offering the
+     * performance of a traditional mergesort when the input array is
+     * randomly ordered.  If the input array is nearly sorted, the
+     * implementation requires approximately n comparisons.  Temporary
+     * storage requirements vary from a small constant for nearly sorted
+     * input arrays to n/2 object references for randomly ordered input
+     * arrays.
+     *
+     * <p>The implementation takes equal advantage of ascending and
+     * descending order in its input array, and can take advantage of
+     * ascending and descending order in different parts of the same
+     * input array.  It is well-suited to merging two or more sorted arrays:
+     * simply concatenate the arrays and sort the resulting array.
+     *
+     * <p>The implementation was adapted from Tim Peters's list sort for Python
+     * (<a href="http://svn.python.org/projects/python/trunk/Objects/listsort.txt">
+     * TimSort</a>).  It uses techniques from Peter McIlroy's "Optimistic
+     * Sorting and Information Theoretic Complexity", in Proceedings of the
+     * Fourth Annual ACM-SIAM Symposium on Discrete Algorithms, pp 467-474,
+     * January 1993.  The previous mergesort may be requested instead by
+     * setting the system property
+     * <tt>java.util.Arrays.useLegacyMergeSort</tt> to <tt>true</tt>.
      *
      * @param a the array to be sorted
      * @throws  ClassCastException if the array contains elements that are not
      *		<i>mutually comparable</i> (for example, strings and integers).
+     * @throws IllegalArgumentException (optional) if the natural
+     *         ordering of the array elements is found to violate the
+     *         {@link Comparable} contract
      */
     public static void sort(Object[] a) {
+        if (LegacyMergeSort.userRequested)
+            legacyMergeSort(a);
+        else
+            ComparableTimSort.sort(a);
+    }
+
+    /**
+     * Old merge sort implementation, used when
+     * <tt>java.util.Arrays.useLegacyMergeSort</tt> is set.
+     */
+    private static void legacyMergeSort(Object[] a) {
         Object[] aux = (Object[])a.clone();
         mergeSort(aux, a, 0, a.length, 0);
     }
@@ -1095,10 +1024,30 @@ public class Arrays {
      * This sort is guaranteed to be <i>stable</i>:  equal elements will
      * not be reordered as a result of the sort.<p>
      *
-     * The sorting algorithm is a modified mergesort (in which the merge is
-     * omitted if the highest element in the low sublist is less than the
-     * lowest element in the high sublist).  This algorithm offers guaranteed
-     * n*log(n) performance.
+     * <p>Implementation note: This implementation is a stable, adaptive,
+     * iterative mergesort that requires far fewer than n lg(n) comparisons
+     * when the input array is partially sorted, while offering the
+     * performance of a traditional mergesort when the input array is
+     * randomly ordered.  If the input array is nearly sorted, the
+     * implementation requires approximately n comparisons.  Temporary
+     * storage requirements vary from a small constant for nearly sorted
+     * input arrays to n/2 object references for randomly ordered input
+     * arrays.
+     *
+     * <p>The implementation takes equal advantage of ascending and
+     * descending order in its input array, and can take advantage of
+     * ascending and descending order in different parts of the same
+     * input array.  It is well-suited to merging two or more sorted arrays:
+     * simply concatenate the arrays and sort the resulting array.
+     *
+     * <p>The implementation was adapted from Tim Peters's list sort for Python
+     * (<a href="http://svn.python.org/projects/python/trunk/Objects/listsort.txt">
+     * TimSort</a>).  It uses techniques from Peter McIlroy's "Optimistic
+     * Sorting and Information Theoretic Complexity", in Proceedings of the
+     * Fourth Annual ACM-SIAM Symposium on Discrete Algorithms, pp 467-474,
+     * January 1993.  The previous mergesort may be requested instead by
+     * setting the system property
+     * <tt>java.util.Arrays.useLegacyMergeSort</tt> to <tt>true</tt>.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element (inclusive) to be
@@ -1110,13 +1059,41 @@ public class Arrays {
      * @throws    ClassCastException if the array contains elements that are
      *		  not <i>mutually comparable</i> (for example, strings and
      *		  integers).
+     * @throws IllegalArgumentException (optional) if the natural
+     *         ordering of the array elements is found to violate the
+     *         {@link Comparable} contract
      */
     public static void sort(Object[] a, int fromIndex, int toIndex) {
+        if (LegacyMergeSort.userRequested)
+            legacyMergeSort(a, fromIndex, toIndex);
+        else
+            ComparableTimSort.sort(a, fromIndex, toIndex);
+    }
+
+    /**
+     * Old merge sort implementation, used when
+     * <tt>java.util.Arrays.useLegacyMergeSort</tt> is set.
+     */
+    private static void legacyMergeSort(Object[] a,
+                                        int fromIndex, int toIndex) {
         rangeCheck(a.length, fromIndex, toIndex);
 	Object[] aux = copyOfRange(a, fromIndex, toIndex);
         mergeSort(aux, a, fromIndex, toIndex, -fromIndex);
     }
 
+    /**
+     * Holds the value of the <tt>java.util.Arrays.useLegacyMergeSort</tt>
+     * system property, which selects the previous mergesort for object
+     * arrays and lists, for applications that depend on its behavior
+     * with comparators that violate their contract.
+     */
+    static final class LegacyMergeSort {
+        static final boolean userRequested =
+            AccessController.doPrivileged(
+                new GetBooleanAction("java.util.Arrays.useLegacyMergeSort")
+                ).booleanValue();
+    }
+
     /**
      * Tuning parameter: list size at or below which insertion sort will be
      * used in preference to mergesort or quicksort.
@@ -1190,10 +1167,30 @@ public class Arrays {
      * This sort is guaranteed to be <i>stable</i>:  equal elements will
      * not be reordered as a result of the sort.<p>
      *
-     * The sorting algorithm is a modified mergesort (in which the merge is
-     * omitted if the highest element in the low sublist is less than the
-     * lowest element in the high sublist).  This algorithm offers guaranteed
-     * n*log(n) performance.
+     * <p>Implementation note: This implementation is a stable, adaptive,
+     * iterative mergesort that requires far fewer than n lg(n) comparisons
+     * when the input array is partially sorted, while offering the
+     * performance of a traditional mergesort when the input array is
+     * randomly ordered.  If the input array is nearly sorted, the
+     * implementation requires approximately n comparisons.  Temporary
+     * storage requirements vary from a small constant for nearly sorted
+     * input arrays to n/2 object references for randomly ordered input
+     * arrays.
+     *
+     * <p>The implementation takes equal advantage of ascending and
+     * descending order in its input array, and can take advantage of
+     * ascending and descending order in different parts of the same
+     * input array.  It is well-suited to merging two or more sorted arrays:
+     * simply concatenate the arrays and sort the resulting array.
+     *
+     * <p>The implementation was adapted from Tim Peters's list sort for Python
+     * (<a href="http://svn.python.org/projects/python/trunk/Objects/listsort.txt">
+     * TimSort</a>).  It uses techniques from Peter McIlroy's "Optimistic
+     * Sorting and Information Theoretic Complexity", in Proceedings of the
+     * Fourth Annual ACM-SIAM Symposium on Discrete Algorithms, pp 467-474,
+     * January 1993.  The previous mergesort may be requested instead by
+     * setting the system property
+     * <tt>java.util.Arrays.useLegacyMergeSort</tt> to <tt>true</tt>.
      *
      * @param a the array to be sorted
      * @param c the comparator to determine the order of the array.  A
@@ -1201,8 +1198,21 @@ public class Arrays {
      *        {@linkplain Comparable natural ordering} should be used.
      * @throws  ClassCastException if the array contains elements that are
      *		not <i>mutually comparable</i> using the specified comparator.
+     * @throws IllegalArgumentException (optional) if the comparator is
+     *         found to violate the {@link Comparator} contract
      */
     public static <T> void sort(T[] a, Comparator<? super T> c) {
+        if (LegacyMergeSort.userRequested)
+            legacyMergeSort(a, c);
+        else
+            TimSort.sort(a, c);
+    }
+
+    /**
+     * Old merge sort implementation, used when
+     * <tt>java.util.Arrays.useLegacyMergeSort</tt> is set.
+     */
+    private static <T> void legacyMergeSort(T[] a, Comparator<? super T> c) {
 	T[] aux = (T[])a.clone();
         if (c==null)
             mergeSort(aux, a, 0, a.length, 0);
@@ -1223,10 +1233,30 @@ public class Arrays {
      * This sort is guaranteed to be <i>stable</i>:  equal elements will
      * not be reordered as a result of the sort.<p>
      *
-     * The sorting algorithm is a modified mergesort (in which the merge is
-     * omitted if the highest element in the low sublist is less than the
-     * lowest element in the high sublist).  This algorithm offers guaranteed
-     * n*log(n) performance.
+     * <p>Implementation note: This implementation is a stable, adaptive,
+     * iterative mergesort that requires far fewer than n lg(n) comparisons
+     * when the input array is partially sorted, while offering the
+     * performance of a traditional mergesort when the input array is
+     * randomly ordered.  If the input array is nearly sorted, the
+     * implementation requires approximately n comparisons.  Temporary
+     * storage requirements vary from a small constant for nearly sorted
+     * input arrays to n/2 object references for randomly ordered input
+     * arrays.
+     *
+     * <p>The implementation takes equal advantage of ascending and
+     * descending order in its input array, and can take advantage of
+     * ascending and descending order in different parts of the same
+     * input array.  It is well-suited to merging two or more sorted arrays:
+     * simply concatenate the arrays and sort the resulting array.
+     *
+     * <p>The implementation was adapted from Tim Peters's list sort for Python
+     * (<a href="http://svn.python.org/projects/python/trunk/Objects/listsort.txt">
+     * TimSort</a>).  It uses techniques from Peter McIlroy's "Optimistic
+     * Sorting and Information Theoretic Complexity", in Proceedings of the
+     * Fourth Annual ACM-SIAM Symposium on Discrete Algorithms, pp 467-474,
+     * January 1993.  The previous mergesort may be requested instead by
+     * setting the system property
+     * <tt>java.util.Arrays.useLegacyMergeSort</tt> to <tt>true</tt>.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element (inclusive) to be
@@ -1240,9 +1270,23 @@ public class Arrays {
      * @throws IllegalArgumentException if <tt>fromIndex &gt; toIndex</tt>
      * @throws ArrayIndexOutOfBoundsException if <tt>fromIndex &lt; 0</tt> or
      *	       <tt>toIndex &gt; a.length</tt>
+     * @throws IllegalArgumentException (optional) if the comparator is
+     *         found to violate the {@link Comparator} contract
      */
     public static <T> void sort(T[] a, int fromIndex, int toIndex,
 				Comparator<? super T> c) {
+        if (LegacyMergeSort.userRequested)
+            legacyMergeSort(a, fromIndex, toIndex, c);
+        else
+            TimSort.sort(a, fromIndex, toIndex, c);
+    }
+
+    /**
+     * Old merge sort implementation, used when
+     * <tt>java.util.Arrays.useLegacyMergeSort</tt> is set.
+     */
+    private static <T> void legacyMergeSort(T[] a, int fromIndex, int toIndex,
+                                            Comparator<? super T> c) {
         rangeCheck(a.length, fromIndex, toIndex);
 	T[] aux = (T[])copyOfRange(a, fromIndex, toIndex);
         if (c==null)
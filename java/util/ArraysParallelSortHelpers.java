@@ -0,0 +1,782 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Helper utilities for the parallel sort methods in Arrays.parallelSort.
+ *
+ * For each primitive type, we define a static class to contain the
+ * Sorter and Merger implementations for that type:
+ *
+ * Sorter classes based mainly on CilkSort
+ * <A href="http://supertech.lcs.mit.edu/cilk/"> Cilk</A>:
+ * Basic algorithm:
+ * if array size is small, just use a sequential sort (via DualPivotQuicksort)
+ *         Otherwise:
+ *         1. Break array in half.
+ *         2. For each half,
+ *             a. break the half in half (i.e., quarters),
+ *             b. sort the quarters
+ *             c. merge them together
+ *         3. merge together the two halves.
+ *
+ * One reason for splitting in quarters is that this guarantees that
+ * the final sort is in the main array, not the workspace array.
+ * (workspace and main swap roles on each subsort step.)  Leaf-level
+ * sorts use the associated sequential sort.
+ *
+ * Merger classes perform merging for Sorter.  If big enough, they
+ * split the largest of the two partitions in half, find the greatest
+ * point in smaller partition less than the beginning of the second
+ * half of larger via binary search; and then merge in parallel the
+ * two partitions.  The current thread merges the lowest part itself
+ * after forking the upper parts, and then joins them.
+ *
+ * All tasks run in the ForkJoinPool common pool; since fork may be
+ * called only from pool threads, Arrays invokes the top-level Sorter
+ * via ForkJoinPool.commonPool().invoke.
+ *
+ * Floating-point values are merged using the total order of
+ * Float.compare and Double.compare, consistent with the leaf sorts,
+ * which order -0.0 before 0.0 and place NaNs last.
+ *
+ * @since 1.7
+ * @author Doug Lea
+ */
+/*package*/ class ArraysParallelSortHelpers {
+
+    /** Sorter and Merger for byte arrays */
+    static final class FJByte {
+        static final class Sorter extends RecursiveAction {
+            final byte[] a, w;
+            final int base, size, wbase, gran;
+            Sorter(byte[] a, byte[] w, int base, int size,
+                   int wbase, int gran) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran;
+            }
+            protected void compute() {
+                byte[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    DualPivotQuicksort.sort(a, b, b + n - 1);
+                    return;
+                }
+                int h = n >>> 1, q = h >>> 1, u = h + q; // quartiles
+                invokeAll(new Sorter(a, w, b, q, wb, g),
+                          new Sorter(a, w, b + q, h - q, wb + q, g),
+                          new Sorter(a, w, b + h, q, wb + h, g),
+                          new Sorter(a, w, b + u, n - u, wb + u, g));
+                invokeAll(new Merger(a, w, b, q, b + q, h - q, wb, g),
+                          new Merger(a, w, b + h, q, b + u, n - u, wb + h, g));
+                new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            final byte[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next;       // forked siblings, joined after merging
+            Merger(byte[] a, byte[] w, int lbase, int lsize,
+                   int rbase, int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                byte[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        byte split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (split <= a[rm + rb])
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        byte split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (split <= a[lm + lb])
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    byte t, al, ar;
+                    if ((al = a[lb]) <= (ar = a[rb])) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (Merger m = forked; m != null; m = m.next)
+                    m.join();
+            }
+        }
+    } // FJByte
+
+    /** Sorter and Merger for char arrays */
+    static final class FJChar {
+        static final class Sorter extends RecursiveAction {
+            final char[] a, w;
+            final int base, size, wbase, gran;
+            Sorter(char[] a, char[] w, int base, int size,
+                   int wbase, int gran) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran;
+            }
+            protected void compute() {
+                char[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    DualPivotQuicksort.sort(a, b, b + n - 1);
+                    return;
+                }
+                int h = n >>> 1, q = h >>> 1, u = h + q; // quartiles
+                invokeAll(new Sorter(a, w, b, q, wb, g),
+                          new Sorter(a, w, b + q, h - q, wb + q, g),
+                          new Sorter(a, w, b + h, q, wb + h, g),
+                          new Sorter(a, w, b + u, n - u, wb + u, g));
+                invokeAll(new Merger(a, w, b, q, b + q, h - q, wb, g),
+                          new Merger(a, w, b + h, q, b + u, n - u, wb + h, g));
+                new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            final char[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next;       // forked siblings, joined after merging
+            Merger(char[] a, char[] w, int lbase, int lsize,
+                   int rbase, int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                char[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        char split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (split <= a[rm + rb])
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        char split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (split <= a[lm + lb])
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    char t, al, ar;
+                    if ((al = a[lb]) <= (ar = a[rb])) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (Merger m = forked; m != null; m = m.next)
+                    m.join();
+            }
+        }
+    } // FJChar
+
+    /** Sorter and Merger for short arrays */
+    static final class FJShort {
+        static final class Sorter extends RecursiveAction {
+            final short[] a, w;
+            final int base, size, wbase, gran;
+            Sorter(short[] a, short[] w, int base, int size,
+                   int wbase, int gran) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran;
+            }
+            protected void compute() {
+                short[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    DualPivotQuicksort.sort(a, b, b + n - 1);
+                    return;
+                }
+                int h = n >>> 1, q = h >>> 1, u = h + q; // quartiles
+                invokeAll(new Sorter(a, w, b, q, wb, g),
+                          new Sorter(a, w, b + q, h - q, wb + q, g),
+                          new Sorter(a, w, b + h, q, wb + h, g),
+                          new Sorter(a, w, b + u, n - u, wb + u, g));
+                invokeAll(new Merger(a, w, b, q, b + q, h - q, wb, g),
+                          new Merger(a, w, b + h, q, b + u, n - u, wb + h, g));
+                new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            final short[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next;       // forked siblings, joined after merging
+            Merger(short[] a, short[] w, int lbase, int lsize,
+                   int rbase, int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                short[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        short split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (split <= a[rm + rb])
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        short split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (split <= a[lm + lb])
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    short t, al, ar;
+                    if ((al = a[lb]) <= (ar = a[rb])) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (Merger m = forked; m != null; m = m.next)
+                    m.join();
+            }
+        }
+    } // FJShort
+
+    /** Sorter and Merger for int arrays */
+    static final class FJInt {
+        static final class Sorter extends RecursiveAction {
+            final int[] a, w;
+            final int base, size, wbase, gran;
+            Sorter(int[] a, int[] w, int base, int size,
+                   int wbase, int gran) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran;
+            }
+            protected void compute() {
+                int[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    DualPivotQuicksort.sort(a, b, b + n - 1);
+                    return;
+                }
+                int h = n >>> 1, q = h >>> 1, u = h + q; // quartiles
+                invokeAll(new Sorter(a, w, b, q, wb, g),
+                          new Sorter(a, w, b + q, h - q, wb + q, g),
+                          new Sorter(a, w, b + h, q, wb + h, g),
+                          new Sorter(a, w, b + u, n - u, wb + u, g));
+                invokeAll(new Merger(a, w, b, q, b + q, h - q, wb, g),
+                          new Merger(a, w, b + h, q, b + u, n - u, wb + h, g));
+                new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            final int[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next;       // forked siblings, joined after merging
+            Merger(int[] a, int[] w, int lbase, int lsize,
+                   int rbase, int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                int[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        int split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (split <= a[rm + rb])
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        int split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (split <= a[lm + lb])
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    int t, al, ar;
+                    if ((al = a[lb]) <= (ar = a[rb])) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (Merger m = forked; m != null; m = m.next)
+                    m.join();
+            }
+        }
+    } // FJInt
+
+    /** Sorter and Merger for long arrays */
+    static final class FJLong {
+        static final class Sorter extends RecursiveAction {
+            final long[] a, w;
+            final int base, size, wbase, gran;
+            Sorter(long[] a, long[] w, int base, int size,
+                   int wbase, int gran) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran;
+            }
+            protected void compute() {
+                long[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    DualPivotQuicksort.sort(a, b, b + n - 1);
+                    return;
+                }
+                int h = n >>> 1, q = h >>> 1, u = h + q; // quartiles
+                invokeAll(new Sorter(a, w, b, q, wb, g),
+                          new Sorter(a, w, b + q, h - q, wb + q, g),
+                          new Sorter(a, w, b + h, q, wb + h, g),
+                          new Sorter(a, w, b + u, n - u, wb + u, g));
+                invokeAll(new Merger(a, w, b, q, b + q, h - q, wb, g),
+                          new Merger(a, w, b + h, q, b + u, n - u, wb + h, g));
+                new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            final long[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next;       // forked siblings, joined after merging
+            Merger(long[] a, long[] w, int lbase, int lsize,
+                   int rbase, int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                long[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        long split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (split <= a[rm + rb])
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        long split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (split <= a[lm + lb])
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    long t, al, ar;
+                    if ((al = a[lb]) <= (ar = a[rb])) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (Merger m = forked; m != null; m = m.next)
+                    m.join();
+            }
+        }
+    } // FJLong
+
+    /** Sorter and Merger for float arrays */
+    static final class FJFloat {
+        static final class Sorter extends RecursiveAction {
+            final float[] a, w;
+            final int base, size, wbase, gran;
+            Sorter(float[] a, float[] w, int base, int size,
+                   int wbase, int gran) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran;
+            }
+            protected void compute() {
+                float[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    DualPivotQuicksort.sort(a, b, b + n - 1);
+                    return;
+                }
+                int h = n >>> 1, q = h >>> 1, u = h + q; // quartiles
+                invokeAll(new Sorter(a, w, b, q, wb, g),
+                          new Sorter(a, w, b + q, h - q, wb + q, g),
+                          new Sorter(a, w, b + h, q, wb + h, g),
+                          new Sorter(a, w, b + u, n - u, wb + u, g));
+                invokeAll(new Merger(a, w, b, q, b + q, h - q, wb, g),
+                          new Merger(a, w, b + h, q, b + u, n - u, wb + h, g));
+                new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            final float[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next;       // forked siblings, joined after merging
+            Merger(float[] a, float[] w, int lbase, int lsize,
+                   int rbase, int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                float[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        float split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (Float.compare(split, a[rm + rb]) <= 0)
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        float split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (Float.compare(split, a[lm + lb]) <= 0)
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    float t, al, ar;
+                    if (Float.compare((al = a[lb]), (ar = a[rb])) <= 0) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (Merger m = forked; m != null; m = m.next)
+                    m.join();
+            }
+        }
+    } // FJFloat
+
+    /** Sorter and Merger for double arrays */
+    static final class FJDouble {
+        static final class Sorter extends RecursiveAction {
+            final double[] a, w;
+            final int base, size, wbase, gran;
+            Sorter(double[] a, double[] w, int base, int size,
+                   int wbase, int gran) {
+                this.a = a; this.w = w; this.base = base; this.size = size;
+                this.wbase = wbase; this.gran = gran;
+            }
+            protected void compute() {
+                double[] a = this.a, w = this.w; // localize all params
+                int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+                if (n <= g) {
+                    DualPivotQuicksort.sort(a, b, b + n - 1);
+                    return;
+                }
+                int h = n >>> 1, q = h >>> 1, u = h + q; // quartiles
+                invokeAll(new Sorter(a, w, b, q, wb, g),
+                          new Sorter(a, w, b + q, h - q, wb + q, g),
+                          new Sorter(a, w, b + h, q, wb + h, g),
+                          new Sorter(a, w, b + u, n - u, wb + u, g));
+                invokeAll(new Merger(a, w, b, q, b + q, h - q, wb, g),
+                          new Merger(a, w, b + h, q, b + u, n - u, wb + h, g));
+                new Merger(w, a, wb, h, wb + h, n - h, b, g).compute();
+            }
+        }
+
+        static final class Merger extends RecursiveAction {
+            final double[] a, w; // main and workspace arrays
+            final int lbase, lsize, rbase, rsize, wbase, gran;
+            Merger next;       // forked siblings, joined after merging
+            Merger(double[] a, double[] w, int lbase, int lsize,
+                   int rbase, int rsize, int wbase, int gran) {
+                this.a = a; this.w = w;
+                this.lbase = lbase; this.lsize = lsize;
+                this.rbase = rbase; this.rsize = rsize;
+                this.wbase = wbase; this.gran = gran;
+            }
+
+            protected void compute() {
+                double[] a = this.a, w = this.w; // localize all params
+                int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+                Merger forked = null;
+                for (int lh, rh;;) {  // split larger, find point in smaller
+                    if (ln >= rn) {
+                        if (ln <= g)
+                            break;
+                        rh = rn;
+                        double split = a[(lh = ln >>> 1) + lb];
+                        for (int lo = 0; lo < rh; ) {
+                            int rm = (lo + rh) >>> 1;
+                            if (Double.compare(split, a[rm + rb]) <= 0)
+                                rh = rm;
+                            else
+                                lo = rm + 1;
+                        }
+                    }
+                    else {
+                        if (rn <= g)
+                            break;
+                        lh = ln;
+                        double split = a[(rh = rn >>> 1) + rb];
+                        for (int lo = 0; lo < lh; ) {
+                            int lm = (lo + lh) >>> 1;
+                            if (Double.compare(split, a[lm + lb]) <= 0)
+                                lh = lm;
+                            else
+                                lo = lm + 1;
+                        }
+                    }
+                    Merger m = new Merger(a, w, lb + lh, ln - lh,
+                                          rb + rh, rn - rh,
+                                          k + lh + rh, g);
+                    rn = rh;
+                    ln = lh;
+                    m.next = forked;
+                    forked = m;
+                    m.fork();
+                }
+
+                int lf = lb + ln, rf = rb + rn; // index bounds
+                while (lb < lf && rb < rf) {
+                    double t, al, ar;
+                    if (Double.compare((al = a[lb]), (ar = a[rb])) <= 0) {
+                        lb++; t = al;
+                    }
+                    else {
+                        rb++; t = ar;
+                    }
+                    w[k++] = t;
+                }
+                if (rb < rf)
+                    System.arraycopy(a, rb, w, k, rf - rb);
+                else if (lb < lf)
+                    System.arraycopy(a, lb, w, k, lf - lb);
+
+                for (Merger m = forked; m != null; m = m.next)
+                    m.join();
+            }
+        }
+    } // FJDouble
+}
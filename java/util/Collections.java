@@ -92,12 +92,14 @@ public class Collections {
      *
      * The specified list must be modifiable, but need not be resizable.<p>
      *
-     * The sorting algorithm is a modified mergesort (in which the merge is
-     * omitted if the highest element in the low sublist is less than the
-     * lowest element in the high sublist).  This algorithm offers guaranteed
+     * The sorting algorithm is the one used by {@link Arrays#sort(Object[])}:
+     * a stable, adaptive mergesort that requires approximately n
+     * comparisons when the list is nearly sorted, and offers guaranteed
      * n log(n) performance.
      *
-     * This implementation dumps the specified list into an array, sorts
+     * {@link ArrayList} and {@link Vector} instances are sorted in place
+     * by their own <tt>sort</tt> method.  For other lists, this
+     * implementation dumps the specified list into an array, sorts
      * the array, and iterates over the list resetting each element
      * from the corresponding position in the array.  This avoids the
      * n<sup>2</sup> log(n) performance that would result from attempting
@@ -108,9 +110,14 @@ public class Collections {
      *	       <i>mutually comparable</i> (for example, strings and integers).
      * @throws UnsupportedOperationException if the specified list's
      *	       list-iterator does not support the <tt>set</tt> operation.
+     * @throws IllegalArgumentException (optional) if the implementation
+     *         detects that the natural ordering of the list elements is
+     *         found to violate the {@link Comparable} contract
      * @see Comparable
      */
     public static <T extends Comparable<? super T>> void sort(List<T> list) {
+        if (sortInPlace(list, null))
+            return;
 	Object[] a = list.toArray();
 	Arrays.sort(a);
 	ListIterator<T> i = list.listIterator();
@@ -130,13 +137,15 @@ public class Collections {
      * This sort is guaranteed to be <i>stable</i>:  equal elements will
      * not be reordered as a result of the sort.<p>
      *
-     * The sorting algorithm is a modified mergesort (in which the merge is
-     * omitted if the highest element in the low sublist is less than the
-     * lowest element in the high sublist).  This algorithm offers guaranteed
+     * The sorting algorithm is the one used by {@link Arrays#sort(Object[])}:
+     * a stable, adaptive mergesort that requires approximately n
+     * comparisons when the list is nearly sorted, and offers guaranteed
      * n log(n) performance.
      *
      * The specified list must be modifiable, but need not be resizable.
-     * This implementation dumps the specified list into an array, sorts
+     * {@link ArrayList} and {@link Vector} instances are sorted in place
+     * by their own <tt>sort</tt> method.  For other lists, this
+     * implementation dumps the specified list into an array, sorts
      * the array, and iterates over the list resetting each element
      * from the corresponding position in the array.  This avoids the
      * n<sup>2</sup> log(n) performance that would result from attempting
@@ -150,9 +159,13 @@ public class Collections {
      *	       <i>mutually comparable</i> using the specified comparator.
      * @throws UnsupportedOperationException if the specified list's
      *	       list-iterator does not support the <tt>set</tt> operation.
+     * @throws IllegalArgumentException (optional) if the comparator is
+     *         found to violate the {@link Comparator} contract
      * @see Comparator
      */
     public static <T> void sort(List<T> list, Comparator<? super T> c) {
+        if (sortInPlace(list, c))
+            return;
 	Object[] a = list.toArray();
 	Arrays.sort(a, (Comparator)c);
 	ListIterator i = list.listIterator();
@@ -162,6 +175,22 @@ public class Collections {
 	}
     }
 
+    /**
+     * Sorts the given list using its own in-place sort, if it has one.
+     *
+     * @return true if the list was sorted
+     */
+    private static <T> boolean sortInPlace(List<T> list,
+                                           Comparator<? super T> c) {
+        if (list instanceof ArrayList)
+            ((ArrayList<T>)list).sort(c);
+        else if (list instanceof Vector)
+            ((Vector<T>)list).sort(c);
+        else
+            return false;
+        return true;
+    }
+
 
     /**
      * Searches the specified list for the specified object using the binary
@@ -0,0 +1,486 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util;
+
+import java.io.IOException;
+import java.text.DecimalFormatSymbols;
+
+/**
+ * A compiled representation of a {@link Formatter} format string.
+ *
+ * <p> A format string is compiled by one of the {@link #compile(String)
+ * compile} methods into an instance of this class, which can then be used
+ * any number of times to format arguments in exactly the way that
+ * {@link String#format(String, Object...) String.format} and {@link
+ * Formatter#format(String, Object...) Formatter.format} would format them
+ * with the same format string.  The format string is parsed and checked
+ * only once, so a syntax error is reported by <tt>compile</tt> rather than
+ * at each use.
+ *
+ * <pre>
+ *     private static final CompiledFormat LINE =
+ *         CompiledFormat.compile("%-20s %8d %08x%n");
+ *     ...
+ *     LINE.formatTo(sb, name, count, flags);</pre>
+ *
+ * <p> Instances of this class are immutable and are safe for use by
+ * multiple concurrent threads.  Output is written directly to the given
+ * {@link StringBuilder} or {@link Appendable}, without intermediate
+ * buffering.  The commonest conversions, {@code %d} and {@code %x} of an
+ * {@link Integer}, {@link Long}, {@link Short} or {@link Byte} (the latter
+ * only for {@code %d}) and {@code %s} of an object that is not {@link
+ * Formattable}, with no flags other than {@code '-'} and {@code '0'}
+ * (where valid), are carried out without creating intermediate objects;
+ * all others are performed by a {@link Formatter}.
+ *
+ * @see     Formatter
+ * @since   1.7
+ */
+public final class CompiledFormat {
+
+    // Kinds of part
+    private static final int FIXED   = 0;  // fixed text
+    private static final int DECIMAL = 1;  // plain %d
+    private static final int HEX     = 2;  // plain %x or %X
+    private static final int STRING  = 3;  // plain %s
+    private static final int OTHER   = 4;  // anything else
+
+    private static final char[] DIGITS = {
+	'0', '1', '2', '3', '4', '5', '6', '7',
+	'8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private static final char[] UPPER_DIGITS = {
+	'0', '1', '2', '3', '4', '5', '6', '7',
+	'8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+    static {
+	long p = 1;
+	for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+	    POWERS_OF_TEN[i] = p;
+	    p *= 10;
+	}
+    }
+
+    /**
+     * One run of fixed text or one format specifier of the format string.
+     */
+    private static final class Part {
+	final int kind;
+	final String text;			// fixed text, or null
+	final Formatter.ParsedSpecifier spec;	// specifier, or null
+	final int index;			// as FormatString.index()
+	final int width;			// -1 if none
+	final int precision;			// -1 if none
+	final boolean leftJustify;
+	final boolean zeroPad;
+	final boolean upper;
+
+	Part(String text) {
+	    this.kind = FIXED;
+	    this.text = text;
+	    this.spec = null;
+	    this.index = -2;
+	    this.width = -1;
+	    this.precision = -1;
+	    this.leftJustify = this.zeroPad = this.upper = false;
+	}
+
+	Part(Formatter.ParsedSpecifier spec) {
+	    String[] sa = spec.groups;
+	    String flags = (sa[1] == null) ? "" : sa[1];
+	    char c = sa[5].charAt(0);
+	    this.spec = spec;
+	    this.text = null;
+	    this.index = spec.index;
+	    this.width = (sa[2] == null) ? -1 : Integer.parseInt(sa[2]);
+	    this.precision = (sa[3] == null) ? -1
+		: Integer.parseInt(sa[3].substring(1));
+	    this.leftJustify = flags.indexOf('-') >= 0;
+	    this.zeroPad = flags.indexOf('0') >= 0;
+	    this.upper = Character.isUpperCase(c);
+	    // Only '-' and '0' (and '<', which only affects the index)
+	    // are handled directly
+	    boolean plain = true;
+	    for (int i = 0; i < flags.length(); i++) {
+		char f = flags.charAt(i);
+		if (f != '-' && f != '0' && f != '<')
+		    plain = false;
+	    }
+	    if (!plain || sa[4] != null)
+		kind = OTHER;
+	    else if (c == 'd')
+		kind = DECIMAL;
+	    else if ((c == 'x' || c == 'X') && precision == -1)
+		kind = HEX;
+	    else if (c == 's' && !zeroPad)
+		kind = STRING;
+	    else
+		kind = OTHER;
+	}
+    }
+
+    /**
+     * Immutable pairing of a locale with its zero digit, cached so that
+     * formatting repeatedly in one locale looks the digit up only once.
+     */
+    private static final class LocaleZero {
+	final Locale locale;
+	final char zero;
+
+	LocaleZero(Locale locale, char zero) {
+	    this.locale = locale;
+	    this.zero = zero;
+	}
+    }
+
+    private final String format;
+    private final Locale locale;
+    private final boolean useDefaultLocale;
+    private final Part[] parts;
+    private volatile LocaleZero lastZero;
+
+    private CompiledFormat(String format, Locale l, boolean useDefaultLocale) {
+	this.format = format;
+	this.locale = l;
+	this.useDefaultLocale = useDefaultLocale;
+	List<Object> list = Formatter.parseForCompiledFormat(format);
+	ArrayList<Part> ps = new ArrayList<Part>(list.size());
+	String ls = null;
+	for (Object o : list) {
+	    Part p;
+	    if (o instanceof String) {
+		p = new Part((String)o);
+	    } else {
+		Formatter.ParsedSpecifier spec = (Formatter.ParsedSpecifier)o;
+		String[] sa = spec.groups;
+		if (sa[1] == null && sa[2] == null && sa[5].equals("n")) {
+		    if (ls == null)
+			ls = System.getProperty("line.separator");
+		    p = new Part(ls);
+		} else if (sa[1] == null && sa[2] == null
+			   && sa[5].equals("%")) {
+		    p = new Part("%");
+		} else {
+		    p = new Part(spec);
+		}
+	    }
+	    // Merge adjacent fixed text
+	    int n = ps.size();
+	    if (p.kind == FIXED && n > 0 && ps.get(n - 1).kind == FIXED)
+		ps.set(n - 1, new Part(ps.get(n - 1).text + p.text));
+	    else
+		ps.add(p);
+	}
+	this.parts = ps.toArray(new Part[ps.size()]);
+    }
+
+    /**
+     * Compiles the given format string.  Each use of the result formats
+     * using the {@linkplain Locale#getDefault() default locale} at the time
+     * of that use, as {@link String#format(String, Object...)} does.
+     *
+     * @param  format
+     *         A format string as described in <a
+     *         href="Formatter.html#syntax">Format string syntax</a>
+     *
+     * @return  The compiled format
+     *
+     * @throws  IllegalFormatException
+     *          If the format string contains an illegal syntax, or a
+     *          format specifier that is invalid in itself.  Errors that
+     *          depend on the arguments are reported when formatting.
+     *
+     * @throws  NullPointerException
+     *          If <tt>format</tt> is <tt>null</tt>
+     */
+    public static CompiledFormat compile(String format) {
+	return new CompiledFormat(format, null, true);
+    }
+
+    /**
+     * Compiles the given format string for formatting in the specified
+     * locale.
+     *
+     * @param  l
+     *         The {@linkplain java.util.Locale locale} to apply during
+     *         formatting.  If <tt>l</tt> is <tt>null</tt> then no
+     *         localization is applied.
+     *
+     * @param  format
+     *         A format string as described in <a
+     *         href="Formatter.html#syntax">Format string syntax</a>
+     *
+     * @return  The compiled format
+     *
+     * @throws  IllegalFormatException
+     *          If the format string contains an illegal syntax, or a
+     *          format specifier that is invalid in itself.  Errors that
+     *          depend on the arguments are reported when formatting.
+     *
+     * @throws  NullPointerException
+     *          If <tt>format</tt> is <tt>null</tt>
+     */
+    public static CompiledFormat compile(Locale l, String format) {
+	return new CompiledFormat(format, l, false);
+    }
+
+    /**
+     * Returns the locale applied by this format, or <tt>null</tt> if it
+     * applies no localization.  A format compiled by {@link
+     * #compile(String)} returns the current default locale.
+     *
+     * @return  The locale
+     */
+    public Locale locale() {
+	return useDefaultLocale ? Locale.getDefault() : locale;
+    }
+
+    /**
+     * Returns a formatted string using this format and the given
+     * arguments.
+     *
+     * @param  args
+     *         Arguments referenced by the format specifiers in the format
+     *         string.  If there are more arguments than format specifiers,
+     *         the extra arguments are ignored.
+     *
+     * @return  A formatted string
+     *
+     * @throws  IllegalFormatException
+     *          If a format specifier is incompatible with the given
+     *          arguments, or insufficient arguments are given.
+     */
+    public String format(Object ... args) {
+	return formatTo(new StringBuilder(), args).toString();
+    }
+
+    /**
+     * Appends a formatted string to the given string builder using this
+     * format and the given arguments.
+     *
+     * @param  sb
+     *         The destination
+     *
+     * @param  args
+     *         Arguments referenced by the format specifiers in the format
+     *         string.  If there are more arguments than format specifiers,
+     *         the extra arguments are ignored.
+     *
+     * @return  The destination
+     *
+     * @throws  IllegalFormatException
+     *          If a format specifier is incompatible with the given
+     *          arguments, or insufficient arguments are given.
+     */
+    public StringBuilder formatTo(StringBuilder sb, Object ... args) {
+	try {
+	    print(sb, args);
+	} catch (IOException x) {
+	    throw new AssertionError(x); // StringBuilder does not throw
+	}
+	return sb;
+    }
+
+    /**
+     * Appends a formatted string to the given destination using this
+     * format and the given arguments.
+     *
+     * @param  a
+     *         The destination
+     *
+     * @param  args
+     *         Arguments referenced by the format specifiers in the format
+     *         string.  If there are more arguments than format specifiers,
+     *         the extra arguments are ignored.
+     *
+     * @return  The destination
+     *
+     * @throws  IllegalFormatException
+     *          If a format specifier is incompatible with the given
+     *          arguments, or insufficient arguments are given.
+     *
+     * @throws  IOException
+     *          If the destination throws <tt>IOException</tt>
+     */
+    public <A extends Appendable> A formatTo(A a, Object ... args)
+	throws IOException
+    {
+	print(a, args);
+	return a;
+    }
+
+    /**
+     * Returns the format string from which this format was compiled.
+     *
+     * @return  The format string
+     */
+    public String toString() {
+	return format;
+    }
+
+    // Mirrors the argument selection of Formatter.format
+    private void print(Appendable a, Object[] args) throws IOException {
+	Locale l = locale();
+	Formatter fmt = null;
+
+	// index of last argument referenced
+	int last = -1;
+	// last ordinary index
+	int lasto = -1;
+
+	for (int i = 0; i < parts.length; i++) {
+	    Part p = parts[i];
+	    Object arg;
+	    switch (p.index) {
+	    case -2:  // fixed string, "%n", or "%%"
+		if (p.kind == FIXED) {
+		    a.append(p.text);
+		    continue;
+		}
+		arg = null;
+		break;
+	    case -1:  // relative index
+		if (last < 0 || (args != null && last > args.length - 1))
+		    throw new MissingFormatArgumentException(p.spec.text);
+		arg = (args == null ? null : args[last]);
+		break;
+	    case 0:  // ordinary index
+		lasto++;
+		last = lasto;
+		if (args != null && lasto > args.length - 1)
+		    throw new MissingFormatArgumentException(p.spec.text);
+		arg = (args == null ? null : args[lasto]);
+		break;
+	    default:  // explicit index
+		last = p.index - 1;
+		if (args != null && last > args.length - 1)
+		    throw new MissingFormatArgumentException(p.spec.text);
+		arg = (args == null ? null : args[last]);
+		break;
+	    }
+	    if (!printDirect(a, p, arg, l)) {
+		if (fmt == null)
+		    fmt = new Formatter(a, l);
+		fmt.print(p.spec, arg, l);
+	    }
+	}
+    }
+
+    /**
+     * Prints the argument for the given part if that can be done without
+     * a Formatter, and returns whether it did.
+     */
+    private boolean printDirect(Appendable a, Part p, Object arg, Locale l)
+	throws IOException
+    {
+	switch (p.kind) {
+	case DECIMAL:
+	    if (arg instanceof Integer || arg instanceof Long
+		|| arg instanceof Short || arg instanceof Byte) {
+		printDecimal(a, p, ((Number)arg).longValue(), zeroDigit(l));
+		return true;
+	    }
+	    return false;
+	case HEX:
+	    if (arg instanceof Integer) {
+		printHex(a, p, ((Integer)arg).intValue() & 0xffffffffL);
+		return true;
+	    } else if (arg instanceof Long) {
+		printHex(a, p, ((Long)arg).longValue());
+		return true;
+	    }
+	    return false;
+	case STRING:
+	    if (arg instanceof Formattable)
+		return false;
+	    printString(a, p, (arg == null) ? "null" : arg.toString());
+	    return true;
+	default:
+	    return false;
+	}
+    }
+
+    private char zeroDigit(Locale l) {
+	if (l == null || l.equals(Locale.US))
+	    return '0';
+	LocaleZero lz = lastZero;
+	if (lz == null || !lz.locale.equals(l)) {
+	    DecimalFormatSymbols dfs = DecimalFormatSymbols.getInstance(l);
+	    lastZero = lz = new LocaleZero(l, dfs.getZeroDigit());
+	}
+	return lz.zero;
+    }
+
+    private static void pad(Appendable a, char c, int n) throws IOException {
+	for (int i = 0; i < n; i++)
+	    a.append(c);
+    }
+
+    // Same output as Formatter for %d with at most the '-' and '0' flags
+    private static void printDecimal(Appendable a, Part p, long value,
+				     char zero)
+	throws IOException
+    {
+	boolean neg = value < 0;
+	// Work with the negated magnitude, which cannot overflow
+	long q = neg ? value : -value;
+	int digits = 1;
+	while (digits < POWERS_OF_TEN.length && q <= -POWERS_OF_TEN[digits])
+	    digits++;
+	int padding = p.width - (neg ? digits + 1 : digits);
+	if (padding > 0 && !p.leftJustify && !p.zeroPad)
+	    pad(a, ' ', padding);
+	if (neg)
+	    a.append('-');
+	if (padding > 0 && p.zeroPad)
+	    pad(a, zero, padding);
+	for (int i = digits - 1; i >= 0; i--) {
+	    long power = POWERS_OF_TEN[i];
+	    a.append((char)(zero - (int)(q / power)));
+	    q %= power;
+	}
+	if (padding > 0 && p.leftJustify)
+	    pad(a, ' ', padding);
+    }
+
+    // Same output as Formatter for %x with at most the '-' and '0' flags;
+    // value is treated as unsigned
+    private static void printHex(Appendable a, Part p, long value)
+	throws IOException
+    {
+	int digits = Math.max(1, (67 - Long.numberOfLeadingZeros(value)) >> 2);
+	int padding = p.width - digits;
+	if (padding > 0 && !p.leftJustify && !p.zeroPad)
+	    pad(a, ' ', padding);
+	if (padding > 0 && p.zeroPad)
+	    pad(a, '0', padding);
+	char[] d = p.upper ? UPPER_DIGITS : DIGITS;
+	for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4)
+	    a.append(d[(int)(value >>> shift) & 0xf]);
+	if (padding > 0 && p.leftJustify)
+	    pad(a, ' ', padding);
+    }
+
+    // Same output as Formatter for %s with at most the '-' flag
+    private static void printString(Appendable a, Part p, String s)
+	throws IOException
+    {
+	int len = s.length();
+	if (p.precision != -1 && p.precision < len)
+	    len = p.precision;
+	int padding = p.width - len;
+	if (padding > 0 && !p.leftJustify)
+	    pad(a, ' ', padding);
+	a.append(s, 0, len);
+	if (padding > 0 && p.leftJustify)
+	    pad(a, ' ', padding);
+    }
+}
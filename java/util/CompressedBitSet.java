@@ -0,0 +1,1835 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+
+/**
+ * A set of bits, indexed by nonnegative integers, that is stored in
+ * compressed form.  This class provides the operations of {@link BitSet},
+ * but whereas a <tt>BitSet</tt> occupies space in proportion to the index
+ * of its highest set bit, a <tt>CompressedBitSet</tt> occupies space in
+ * proportion to the number of bits set, or less where the set bits form
+ * long runs.  It is intended for large, sparse or clustered sets, such as
+ * sets of document numbers.<p>
+ *
+ * The range of bit indices is divided into chunks of 2<sup>16</sup> bits,
+ * and only chunks that contain a set bit are stored.  Each chunk is held
+ * in whichever of three forms suits its contents: a sorted array of the
+ * set bits' 16-bit offsets (for up to 4096 set bits), a plain bitmap of
+ * 1024 words, or a sorted list of runs of consecutive set bits.  Point
+ * updates keep chunks in array or bitmap form, converting between them as
+ * the number of bits set in the chunk crosses 4096; the logical
+ * operations and the range operations produce whichever form is
+ * smallest, and {@link #runOptimize} converts all chunks to their
+ * smallest form.<p>
+ *
+ * The logical operations {@link #and and}, {@link #or or}, {@link #xor
+ * xor} and {@link #andNot andNot} work chunk by chunk, so their cost
+ * depends on the number of stored chunks and the form of each rather than
+ * on the highest bit index.  {@link #rank} and {@link #select} convert
+ * between bit indices and positions among the set bits, and the bits set
+ * can be traversed without boxing by {@link #nextSetBit}, by the
+ * {@link IntIterator} returned by {@link #iterator}, or in bulk by
+ * {@link #toArray}.<p>
+ *
+ * Unless otherwise noted, passing a null parameter to any of the methods
+ * in a <tt>CompressedBitSet</tt> will result in a
+ * <tt>NullPointerException</tt>.<p>
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * A <tt>CompressedBitSet</tt> is not safe for multithreaded use without
+ * external synchronization.<p>
+ *
+ * The iterators returned by this class's <tt>iterator</tt> method are
+ * <i>fail-fast</i>: if the set is modified at any time after the iterator
+ * is created, in any way except through the iterator's own
+ * <tt>remove</tt> method, the iterator will throw a {@link
+ * ConcurrentModificationException}.  Fail-fast iterators throw
+ * <tt>ConcurrentModificationException</tt> on a best-effort basis, and
+ * should be used only to detect bugs.
+ *
+ * @see     BitSet
+ * @see     IntIterator
+ * @since   1.7
+ */
+public class CompressedBitSet implements Cloneable, java.io.Serializable {
+    private static final long serialVersionUID = -4358297476329405717L;
+
+    /*
+     * Implementation overview:
+     *
+     * A bit index i is split into a 15-bit key, i >>> 16, and a 16-bit
+     * offset, i & 0xffff.  The keys of the nonempty chunks are held in
+     * increasing order in "keys", and the corresponding chunks in
+     * "containers", so a chunk is located by binary search.  No stored
+     * container is ever empty.
+     *
+     * Each container is an ArrayContainer, a BitmapContainer or a
+     * RunContainer.  Sizes in bytes are about 2 per bit set for an
+     * array, 8192 for a bitmap and 4 per run for a run list, so an array
+     * is never smaller than a bitmap beyond ARRAY_MAX bits.  Point
+     * updates (add and remove) return the container that should replace
+     * the receiver, which is usually the receiver itself but is a new
+     * container where the update moves it across ARRAY_MAX or makes a run
+     * list larger than the alternatives.
+     *
+     * Binary operations between containers never modify their operands
+     * and always return a new container, or null if the result is empty,
+     * so that containers are never shared between sets.  Where no
+     * specialized merge applies, they work on a scratch bitmap and pick
+     * the smallest form for the result (see fromWords).
+     */
+
+    /** The largest number of bits held in array form. */
+    private static final int ARRAY_MAX = 4096;
+
+    /** The number of words in a bitmap container. */
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    /** The number of bits in a chunk. */
+    private static final int CHUNK_BITS = 1 << 16;
+
+    /** The size in bytes of a bitmap container. */
+    private static final int BITMAP_BYTES = BITMAP_WORDS * 8;
+
+    // Binary operations
+    private static final int OR = 0;
+    private static final int AND = 1;
+    private static final int XOR = 2;
+    private static final int AND_NOT = 3;
+
+    /** The keys of the nonempty chunks, in increasing order. */
+    private transient char[] keys;
+
+    /** The containers of the chunks whose keys are in keys. */
+    private transient Container[] containers;
+
+    /** The number of chunks in use. */
+    private transient int size;
+
+    /** The number of times this set has been modified. */
+    private transient int modCount;
+
+    /**
+     * Creates a new, empty compressed bit set.
+     */
+    public CompressedBitSet() {
+        keys = new char[4];
+        containers = new Container[4];
+    }
+
+    /**
+     * Creates a new compressed bit set containing the same bits as the
+     * given bit set.
+     *
+     * @param set a bit set
+     */
+    public CompressedBitSet(BitSet set) {
+        this();
+        long[] words = null;
+        int key = -1;
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            if ((i >>> 16) != key) {
+                if (words != null)
+                    append(key, fromWords(words));
+                words = new long[BITMAP_WORDS];
+                key = i >>> 16;
+            }
+            words[(i & 0xffff) >>> 6] |= 1L << i;
+            if (i == Integer.MAX_VALUE)
+                break;
+        }
+        if (words != null)
+            append(key, fromWords(words));
+    }
+
+    /**
+     * Returns a new bit set containing the same bits as this set.
+     *
+     * @return a bit set containing the bits of this set
+     */
+    public BitSet toBitSet() {
+        int length = length();
+        // length() overflows if Integer.MAX_VALUE is set
+        BitSet set = (length < 0) ? new BitSet() : new BitSet(length);
+        for (int i = 0; i < size; i++) {
+            int base = keys[i] << 16;
+            Container c = containers[i];
+            if (c instanceof RunContainer) {
+                RunContainer r = (RunContainer)c;
+                for (int j = 0; j < r.nruns; j++) {
+                    int end = base + r.end(j);
+                    set.set(base + r.start(j), end);
+                    set.set(end);
+                }
+            } else {
+                for (int b = c.first(); b >= 0; b = c.nextSetBit(b + 1)) {
+                    set.set(base + b);
+                    if (b == 0xffff)
+                        break;
+                }
+            }
+        }
+        return set;
+    }
+
+    // -- Chunk table --
+
+    private static void checkIndex(int bitIndex) {
+        if (bitIndex < 0)
+            throw new IndexOutOfBoundsException("bitIndex < 0: " + bitIndex);
+    }
+
+    private static void checkRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if (toIndex < 0)
+            throw new IndexOutOfBoundsException("toIndex < 0: " + toIndex);
+        if (fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex +
+                                                " > toIndex: " + toIndex);
+    }
+
+    /**
+     * Returns the index in keys of the given key, or (-(insertion
+     * point) - 1) if there is no chunk with that key.
+     */
+    private int indexOf(int key) {
+        return Arrays.binarySearch(keys, 0, size, (char)key);
+    }
+
+    private void ensureCapacity(int n) {
+        if (n > keys.length) {
+            int newCapacity = Math.max(n, keys.length * 2);
+            keys = Arrays.copyOf(keys, newCapacity);
+            containers = Arrays.copyOf(containers, newCapacity);
+        }
+    }
+
+    private void insertAt(int i, int key, Container c) {
+        ensureCapacity(size + 1);
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = (char)key;
+        containers[i] = c;
+        size++;
+    }
+
+    private void removeAt(int i) {
+        int numMoved = size - i - 1;
+        System.arraycopy(keys, i + 1, keys, i, numMoved);
+        System.arraycopy(containers, i + 1, containers, i, numMoved);
+        containers[--size] = null;
+    }
+
+    /** Adds a chunk whose key is greater than that of every chunk. */
+    private void append(int key, Container c) {
+        if (c != null)
+            insertAt(size, key, c);
+    }
+
+    /**
+     * Replaces the container at index i by c, removing the chunk if c
+     * is empty.
+     */
+    private void replace(int i, Container c) {
+        if (c.cardinality() == 0)
+            removeAt(i);
+        else
+            containers[i] = c;
+    }
+
+    // -- Single bits --
+
+    /**
+     * Returns the value of the bit with the specified index.
+     *
+     * @param  bitIndex   the bit index.
+     * @return the value of the bit with the specified index.
+     * @throws IndexOutOfBoundsException if the specified index is negative.
+     */
+    public boolean get(int bitIndex) {
+        checkIndex(bitIndex);
+        int i = indexOf(bitIndex >>> 16);
+        return i >= 0 && containers[i].contains(bitIndex & 0xffff);
+    }
+
+    /**
+     * Sets the bit at the specified index to <code>true</code>.
+     *
+     * @param  bitIndex   a bit index.
+     * @throws IndexOutOfBoundsException if the specified index is negative.
+     */
+    public void set(int bitIndex) {
+        checkIndex(bitIndex);
+        int key = bitIndex >>> 16;
+        int i = indexOf(key);
+        if (i >= 0) {
+            containers[i] = containers[i].add(bitIndex & 0xffff);
+        } else {
+            ArrayContainer c = new ArrayContainer(new char[4], 0);
+            c.add(bitIndex & 0xffff);
+            insertAt(-i - 1, key, c);
+        }
+        modCount++;
+    }
+
+    /**
+     * Sets the bit at the specified index to the specified value.
+     *
+     * @param  bitIndex   a bit index.
+     * @param  value      a boolean value to set.
+     * @throws IndexOutOfBoundsException if the specified index is negative.
+     */
+    public void set(int bitIndex, boolean value) {
+        if (value)
+            set(bitIndex);
+        else
+            clear(bitIndex);
+    }
+
+    /**
+     * Sets the bit specified by the index to <code>false</code>.
+     *
+     * @param  bitIndex   the index of the bit to be cleared.
+     * @throws IndexOutOfBoundsException if the specified index is negative.
+     */
+    public void clear(int bitIndex) {
+        checkIndex(bitIndex);
+        int i = indexOf(bitIndex >>> 16);
+        if (i >= 0) {
+            replace(i, containers[i].remove(bitIndex & 0xffff));
+            modCount++;
+        }
+    }
+
+    /**
+     * Sets the bit at the specified index to the complement of its
+     * current value.
+     *
+     * @param  bitIndex the index of the bit to flip.
+     * @throws IndexOutOfBoundsException if the specified index is negative.
+     */
+    public void flip(int bitIndex) {
+        if (get(bitIndex))
+            clear(bitIndex);
+        else
+            set(bitIndex);
+    }
+
+    // -- Ranges --
+
+    /**
+     * Sets the bits from the specified <tt>fromIndex</tt> (inclusive) to
+     * the specified <tt>toIndex</tt> (exclusive) to <code>true</code>.
+     *
+     * @param  fromIndex   index of the first bit to be set.
+     * @param  toIndex     index after the last bit to be set.
+     * @throws IndexOutOfBoundsException if <tt>fromIndex</tt> is negative,
+     *         or <tt>toIndex</tt> is negative, or <tt>fromIndex</tt> is
+     *         larger than <tt>toIndex</tt>.
+     */
+    public void set(int fromIndex, int toIndex) {
+        rangeOp(fromIndex, toIndex, OR);
+    }
+
+    /**
+     * Sets the bits from the specified <tt>fromIndex</tt> (inclusive) to
+     * the specified <tt>toIndex</tt> (exclusive) to the specified value.
+     *
+     * @param  fromIndex   index of the first bit to be set.
+     * @param  toIndex     index after the last bit to be set.
+     * @param  value       value to set the selected bits to.
+     * @throws IndexOutOfBoundsException if <tt>fromIndex</tt> is negative,
+     *         or <tt>toIndex</tt> is negative, or <tt>fromIndex</tt> is
+     *         larger than <tt>toIndex</tt>.
+     */
+    public void set(int fromIndex, int toIndex, boolean value) {
+        rangeOp(fromIndex, toIndex, value ? OR : AND_NOT);
+    }
+
+    /**
+     * Sets the bits from the specified <tt>fromIndex</tt> (inclusive) to
+     * the specified <tt>toIndex</tt> (exclusive) to <code>false</code>.
+     *
+     * @param  fromIndex   index of the first bit to be cleared.
+     * @param  toIndex     index after the last bit to be cleared.
+     * @throws IndexOutOfBoundsException if <tt>fromIndex</tt> is negative,
+     *         or <tt>toIndex</tt> is negative, or <tt>fromIndex</tt> is
+     *         larger than <tt>toIndex</tt>.
+     */
+    public void clear(int fromIndex, int toIndex) {
+        rangeOp(fromIndex, toIndex, AND_NOT);
+    }
+
+    /**
+     * Sets each bit from the specified <tt>fromIndex</tt> (inclusive) to
+     * the specified <tt>toIndex</tt> (exclusive) to the complement of its
+     * current value.
+     *
+     * @param  fromIndex   index of the first bit to flip.
+     * @param  toIndex     index after the last bit to flip.
+     * @throws IndexOutOfBoundsException if <tt>fromIndex</tt> is negative,
+     *         or <tt>toIndex</tt> is negative, or <tt>fromIndex</tt> is
+     *         larger than <tt>toIndex</tt>.
+     */
+    public void flip(int fromIndex, int toIndex) {
+        rangeOp(fromIndex, toIndex, XOR);
+    }
+
+    /**
+     * Combines each chunk overlapping [fromIndex, toIndex) with a run
+     * covering the overlap.
+     */
+    private void rangeOp(int fromIndex, int toIndex, int op) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex)
+            return;
+        int last = toIndex - 1;
+        int firstKey = fromIndex >>> 16;
+        int lastKey = last >>> 16;
+        for (int key = firstKey; key <= lastKey; key++) {
+            int from = (key == firstKey) ? fromIndex & 0xffff : 0;
+            int to = (key == lastKey) ? last & 0xffff : 0xffff;
+            RunContainer run = new RunContainer(from, to);
+            int i = indexOf(key);
+            if (i >= 0) {
+                Container c = combine(op, containers[i], run);
+                if (c == null)
+                    removeAt(i);
+                else
+                    containers[i] = c;
+            } else if (op == OR || op == XOR) {
+                insertAt(-i - 1, key, run);
+            }
+        }
+        modCount++;
+    }
+
+    // -- Whole sets --
+
+    /**
+     * Sets all of the bits in this set to <code>false</code>.
+     */
+    public void clear() {
+        Arrays.fill(containers, 0, size, null);
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Performs a logical <b>AND</b> of this target bit set with the
+     * argument bit set.  This bit set is modified so that each bit in it
+     * has the value <code>true</code> if and only if it both initially
+     * had the value <code>true</code> and the corresponding bit in the
+     * bit set argument also had the value <code>true</code>.
+     *
+     * @param set a bit set.
+     */
+    public void and(CompressedBitSet set) {
+        if (this != set)
+            merge(set, AND);
+    }
+
+    /**
+     * Performs a logical <b>OR</b> of this bit set with the bit set
+     * argument.  This bit set is modified so that a bit in it has the
+     * value <code>true</code> if and only if it either already had the
+     * value <code>true</code> or the corresponding bit in the bit set
+     * argument has the value <code>true</code>.
+     *
+     * @param set a bit set.
+     */
+    public void or(CompressedBitSet set) {
+        if (this != set)
+            merge(set, OR);
+    }
+
+    /**
+     * Performs a logical <b>XOR</b> of this bit set with the bit set
+     * argument.  This bit set is modified so that a bit in it has the
+     * value <code>true</code> if and only if one of the following
+     * statements holds:
+     * <ul>
+     * <li>The bit initially has the value <code>true</code>, and the
+     *     corresponding bit in the argument has the value <code>false</code>.
+     * <li>The bit initially has the value <code>false</code>, and the
+     *     corresponding bit in the argument has the value <code>true</code>.
+     * </ul>
+     *
+     * @param set a bit set.
+     */
+    public void xor(CompressedBitSet set) {
+        if (this == set)
+            clear();
+        else
+            merge(set, XOR);
+    }
+
+    /**
+     * Clears all of the bits in this set whose corresponding bit is set
+     * in the specified set.
+     *
+     * @param set the set with which to mask this set.
+     */
+    public void andNot(CompressedBitSet set) {
+        if (this == set)
+            clear();
+        else
+            merge(set, AND_NOT);
+    }
+
+    /**
+     * Replaces the chunks of this set by the result of combining them
+     * with those of the given set, merging the two key lists.
+     */
+    private void merge(CompressedBitSet set, int op) {
+        int n1 = size, n2 = set.size;
+        int max = (op == AND) ? Math.min(n1, n2) : (op == AND_NOT) ? n1 : n1 + n2;
+        char[] k = new char[Math.max(max, 4)];
+        Container[] cs = new Container[k.length];
+        int n = 0, i = 0, j = 0;
+        while (i < n1 && j < n2) {
+            int k1 = keys[i], k2 = set.keys[j];
+            if (k1 == k2) {
+                Container c = combine(op, containers[i++], set.containers[j++]);
+                if (c != null) {
+                    k[n] = (char)k1;
+                    cs[n++] = c;
+                }
+            } else if (k1 < k2) {
+                if (op != AND) {
+                    k[n] = (char)k1;
+                    cs[n++] = containers[i];
+                }
+                i++;
+            } else {
+                if (op == OR || op == XOR) {
+                    k[n] = (char)k2;
+                    cs[n++] = set.containers[j].clone();
+                }
+                j++;
+            }
+        }
+        if (op != AND) {
+            for (; i < n1; i++) {
+                k[n] = keys[i];
+                cs[n++] = containers[i];
+            }
+        }
+        if (op == OR || op == XOR) {
+            for (; j < n2; j++) {
+                k[n] = set.keys[j];
+                cs[n++] = set.containers[j].clone();
+            }
+        }
+        keys = k;
+        containers = cs;
+        size = n;
+        modCount++;
+    }
+
+    /**
+     * Returns true if the specified set has any bits set to
+     * <code>true</code> that are also set to <code>true</code> in this
+     * set.
+     *
+     * @param  set set to intersect with
+     * @return boolean indicating whether this set intersects the specified
+     *         set.
+     */
+    public boolean intersects(CompressedBitSet set) {
+        int i = 0, j = 0;
+        while (i < size && j < set.size) {
+            int k1 = keys[i], k2 = set.keys[j];
+            if (k1 == k2) {
+                if (intersects(containers[i++], set.containers[j++]))
+                    return true;
+            } else if (k1 < k2) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+
+    // -- Queries --
+
+    /**
+     * Returns the number of bits set to <tt>true</tt> in this set.
+     *
+     * @return the number of bits set to <tt>true</tt> in this set.
+     */
+    public int cardinality() {
+        int sum = 0;
+        for (int i = 0; i < size; i++)
+            sum += containers[i].cardinality();
+        return sum;
+    }
+
+    /**
+     * Returns true if this set contains no bits that are set to
+     * <code>true</code>.
+     *
+     * @return boolean indicating whether this set is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the "logical size" of this set: the index of the highest
+     * set bit in the set plus one.  Returns zero if the set contains no
+     * set bits.
+     *
+     * @return the logical size of this set.
+     */
+    public int length() {
+        if (size == 0)
+            return 0;
+        return ((keys[size - 1] << 16) | containers[size - 1].last()) + 1;
+    }
+
+    /**
+     * Returns the index of the first bit that is set to <code>true</code>
+     * that occurs on or after the specified starting index.  If no such
+     * bit exists then -1 is returned.
+     *
+     * To iterate over the <code>true</code> bits in a
+     * <code>CompressedBitSet s</code>, use the following loop:
+     *
+     * <pre>
+     * for (int i = s.nextSetBit(0); i &gt;= 0; i = s.nextSetBit(i+1)) {
+     *     // operate on index i here
+     *     if (i == Integer.MAX_VALUE)
+     *         break;
+     * }</pre>
+     *
+     * @param  fromIndex the index to start checking from (inclusive).
+     * @return the index of the next set bit.
+     * @throws IndexOutOfBoundsException if the specified index is negative.
+     */
+    public int nextSetBit(int fromIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        int key = fromIndex >>> 16;
+        int i = indexOf(key);
+        if (i >= 0) {
+            int b = containers[i].nextSetBit(fromIndex & 0xffff);
+            if (b >= 0)
+                return (key << 16) | b;
+            i++;
+        } else {
+            i = -i - 1;
+        }
+        return (i < size) ? (keys[i] << 16) | containers[i].first() : -1;
+    }
+
+    /**
+     * Returns the index of the first bit that is set to <code>false</code>
+     * that occurs on or after the specified starting index.  If every bit
+     * from the starting index up to and including
+     * <tt>Integer.MAX_VALUE</tt> is set, -1 is returned.
+     *
+     * @param  fromIndex the index to start checking from (inclusive).
+     * @return the index of the next clear bit.
+     * @throws IndexOutOfBoundsException if the specified index is negative.
+     */
+    public int nextClearBit(int fromIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        int key = fromIndex >>> 16;
+        int i = indexOf(key);
+        if (i < 0)
+            return fromIndex;
+        int from = fromIndex & 0xffff;
+        for (;;) {
+            int b = containers[i].nextClearBit(from);
+            if (b < CHUNK_BITS)
+                return (key << 16) | b;
+            if (++key > (Integer.MAX_VALUE >>> 16))
+                return -1;
+            if (++i >= size || keys[i] != key)
+                return key << 16;
+            from = 0;
+        }
+    }
+
+    /**
+     * Returns the number of bits set to <code>true</code> in this set
+     * whose indices are less than the specified index.
+     *
+     * @param  bitIndex a bit index.
+     * @return the number of set bits before <tt>bitIndex</tt>.
+     * @throws IndexOutOfBoundsException if the specified index is negative.
+     */
+    public int rank(int bitIndex) {
+        checkIndex(bitIndex);
+        int key = bitIndex >>> 16;
+        int sum = 0;
+        for (int i = 0; i < size && keys[i] <= key; i++) {
+            if (keys[i] < key)
+                sum += containers[i].cardinality();
+            else
+                sum += containers[i].rank(bitIndex & 0xffff);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the index of the bit set to <code>true</code> that has
+     * exactly <tt>j</tt> set bits before it; that is, the index of the
+     * (<tt>j</tt>+1)th set bit.  For every set bit <tt>i</tt>,
+     * <tt>select(rank(i)) == i</tt>.
+     *
+     * @param  j the number of set bits preceding the one to find.
+     * @return the index of the set bit.
+     * @throws IndexOutOfBoundsException if <tt>j</tt> is negative, or not
+     *         less than the cardinality of this set.
+     */
+    public int select(int j) {
+        if (j >= 0) {
+            int r = j;
+            for (int i = 0; i < size; i++) {
+                Container c = containers[i];
+                int card = c.cardinality();
+                if (r < card)
+                    return (keys[i] << 16) | c.select(r);
+                r -= card;
+            }
+        }
+        throw new IndexOutOfBoundsException("j: " + j);
+    }
+
+    /**
+     * Returns an iterator over the indices of the bits set to
+     * <code>true</code> in this set, in increasing order.  The iterator's
+     * <tt>remove</tt> method clears the bit most recently returned.
+     *
+     * @return an iterator over the set bits of this set.
+     */
+    public IntIterator iterator() {
+        return new BitIterator();
+    }
+
+    /**
+     * Returns an array containing the indices of the bits set to
+     * <code>true</code> in this set, in increasing order.
+     *
+     * @return the indices of the set bits.
+     */
+    public int[] toArray() {
+        int[] a = new int[cardinality()];
+        int n = 0;
+        for (int i = 0; i < size; i++)
+            n = containers[i].toArray(a, n, keys[i] << 16);
+        return a;
+    }
+
+    /**
+     * Converts each chunk of this set to whichever of its possible forms
+     * occupies the least space.  Sets built by setting bits one at a time
+     * keep their chunks in array or bitmap form, so calling this method
+     * after building a set whose bits form long runs may reduce its size
+     * considerably.
+     *
+     * @return <tt>true</tt> if the form of any chunk changed.
+     */
+    public boolean runOptimize() {
+        boolean changed = false;
+        for (int i = 0; i < size; i++) {
+            Container c = containers[i];
+            Container d = fromWords(c.toWords());
+            if (d.getClass() != c.getClass()) {
+                containers[i] = d;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // -- Object methods --
+
+    /**
+     * Returns a hash code value for this set.  The hash code depends
+     * only on which bits are set, not on how they are stored.
+     *
+     * @return a hash code value for this set.
+     */
+    public int hashCode() {
+        int h = 1;
+        for (int i = 0; i < size; i++) {
+            int base = keys[i] << 16;
+            Container c = containers[i];
+            for (int b = c.first(); b >= 0; b = c.nextSetBit(b + 1)) {
+                h = 31 * h + (base | b);
+                if (b == 0xffff)
+                    break;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Compares this object against the specified object.  The result is
+     * <code>true</code> if and only if the argument is not
+     * <code>null</code> and is a <code>CompressedBitSet</code> object that
+     * has exactly the same set of bits set to <code>true</code> as this
+     * set.
+     *
+     * @param  obj the object to compare with.
+     * @return <code>true</code> if the objects are the same;
+     *         <code>false</code> otherwise.
+     */
+    public boolean equals(Object obj) {
+        if (!(obj instanceof CompressedBitSet))
+            return false;
+        if (this == obj)
+            return true;
+        CompressedBitSet set = (CompressedBitSet) obj;
+        if (size != set.size)
+            return false;
+        for (int i = 0; i < size; i++) {
+            if (keys[i] != set.keys[i] ||
+                !sameBits(containers[i], set.containers[i]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cloning this <code>CompressedBitSet</code> produces a new
+     * <code>CompressedBitSet</code> that is equal to it.
+     *
+     * @return a clone of this bit set.
+     */
+    public Object clone() {
+        try {
+            CompressedBitSet result = (CompressedBitSet) super.clone();
+            result.keys = keys.clone();
+            result.containers = new Container[keys.length];
+            for (int i = 0; i < size; i++)
+                result.containers[i] = containers[i].clone();
+            result.modCount = 0;
+            return result;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+    }
+
+    /**
+     * Returns a string representation of this set, in the format used by
+     * {@link BitSet#toString}.
+     *
+     * @return a string representation of this set.
+     */
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append('{');
+        IntIterator it = iterator();
+        if (it.hasNext()) {
+            b.append(it.nextInt());
+            while (it.hasNext())
+                b.append(", ").append(it.nextInt());
+        }
+        b.append('}');
+        return b.toString();
+    }
+
+    /**
+     * Saves the state of this set to a stream (that is, serializes it).
+     *
+     * @serialData The number of chunks (int), followed by, for each chunk
+     *             in increasing order, its key (char), the kind of its
+     *             container (byte) and the container's contents.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        s.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            s.writeChar(keys[i]);
+            containers[i].writeTo(s);
+        }
+    }
+
+    /**
+     * Reconstitutes a set from a stream (that is, deserializes it).
+     */
+    private void readObject(ObjectInputStream s)
+        throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        int n = s.readInt();
+        if (n < 0 || n > (Integer.MAX_VALUE >>> 16) + 1)
+            throw new StreamCorruptedException("chunks: " + n);
+        keys = new char[Math.max(n, 4)];
+        containers = new Container[keys.length];
+        int prev = -1;
+        for (int i = 0; i < n; i++) {
+            int key = s.readChar();
+            if (key <= prev || key > (Integer.MAX_VALUE >>> 16))
+                throw new StreamCorruptedException("key: " + key);
+            Container c = Container.readFrom(s);
+            if (c.cardinality() == 0)
+                throw new StreamCorruptedException("empty chunk");
+            keys[i] = (char)key;
+            containers[i] = c;
+            prev = key;
+        }
+        size = n;
+    }
+
+    private final class BitIterator implements IntIterator {
+        /** The next bit to return, or -1 if none */
+        int next;
+        /** The index of the chunk holding next */
+        int chunk;
+        /** The bit last returned, or -1 if none */
+        int lastRet = -1;
+        int expectedModCount = modCount;
+
+        BitIterator() {
+            next = (size == 0) ? -1 : (keys[0] << 16) | containers[0].first();
+        }
+
+        public boolean hasNext() {
+            return next >= 0;
+        }
+
+        public int nextInt() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            int r = next;
+            if (r < 0)
+                throw new NoSuchElementException();
+            int b = r & 0xffff;
+            b = (b == 0xffff) ? -1 : containers[chunk].nextSetBit(b + 1);
+            if (b >= 0)
+                next = (r & ~0xffff) | b;
+            else if (++chunk < size)
+                next = (keys[chunk] << 16) | containers[chunk].first();
+            else
+                next = -1;
+            return lastRet = r;
+        }
+
+        public Integer next() {
+            return nextInt();
+        }
+
+        public void remove() {
+            if (lastRet < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            clear(lastRet);
+            lastRet = -1;
+            expectedModCount = modCount;
+            if (next >= 0)
+                chunk = indexOf(next >>> 16);
+        }
+    }
+
+    // -- Containers --
+
+    /**
+     * The bits of one chunk, as offsets in [0, 65536).  Query methods
+     * are only called on nonempty containers.
+     */
+    private static abstract class Container implements Cloneable {
+        // Kinds, as serialized
+        static final byte ARRAY = 0;
+        static final byte BITMAP = 1;
+        static final byte RUN = 2;
+
+        abstract int cardinality();
+
+        abstract boolean contains(int x);
+
+        /** Adds x, returning the container that should replace this. */
+        abstract Container add(int x);
+
+        /** Removes x, returning the container that should replace this. */
+        abstract Container remove(int x);
+
+        /** Returns the first offset &gt;= x that is set, or -1. */
+        abstract int nextSetBit(int x);
+
+        /** Returns the first offset &gt;= x that is clear, or CHUNK_BITS. */
+        abstract int nextClearBit(int x);
+
+        /** Returns the number of offsets set that are less than x. */
+        abstract int rank(int x);
+
+        /** Returns the offset with j offsets set before it. */
+        abstract int select(int j);
+
+        abstract int first();
+
+        abstract int last();
+
+        /** Sets this container's bits in words. */
+        abstract void orInto(long[] words);
+
+        /** Clears this container's bits in words. */
+        abstract void andNotInto(long[] words);
+
+        /** Flips this container's bits in words. */
+        abstract void xorInto(long[] words);
+
+        /**
+         * Copies base | x into a for each offset x set, starting at
+         * a[off], returning the index after the last copied.
+         */
+        abstract int toArray(int[] a, int off, int base);
+
+        abstract void writeTo(ObjectOutputStream s) throws IOException;
+
+        /** Returns a new bitmap of this container's bits. */
+        long[] toWords() {
+            long[] words = new long[BITMAP_WORDS];
+            orInto(words);
+            return words;
+        }
+
+        /** Returns this container's bits as a bitmap not to be modified. */
+        long[] words() {
+            return toWords();
+        }
+
+        protected Container clone() {
+            try {
+                return (Container) super.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new InternalError();
+            }
+        }
+
+        static Container readFrom(ObjectInputStream s) throws IOException {
+            byte kind = s.readByte();
+            switch (kind) {
+            case ARRAY: {
+                int card = s.readInt();
+                if (card < 0 || card > ARRAY_MAX)
+                    throw new StreamCorruptedException("cardinality: " + card);
+                char[] content = new char[card];
+                for (int i = 0; i < card; i++) {
+                    content[i] = s.readChar();
+                    if (i > 0 && content[i] <= content[i - 1])
+                        throw new StreamCorruptedException("unsorted chunk");
+                }
+                return new ArrayContainer(content, card);
+            }
+            case BITMAP: {
+                long[] words = new long[BITMAP_WORDS];
+                int card = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] = s.readLong();
+                    card += Long.bitCount(words[i]);
+                }
+                return new BitmapContainer(words, card);
+            }
+            case RUN: {
+                int nruns = s.readInt();
+                if (nruns < 0 || nruns > CHUNK_BITS / 2)
+                    throw new StreamCorruptedException("runs: " + nruns);
+                char[] runs = new char[2 * nruns];
+                int prevEnd = -2;
+                for (int i = 0; i < nruns; i++) {
+                    int start = s.readChar();
+                    int length = s.readChar();
+                    if (start <= prevEnd + 1 || start + length > 0xffff)
+                        throw new StreamCorruptedException("bad run");
+                    runs[2 * i] = (char)start;
+                    runs[2 * i + 1] = (char)length;
+                    prevEnd = start + length;
+                }
+                return new RunContainer(runs, nruns);
+            }
+            default:
+                throw new StreamCorruptedException("container kind: " + kind);
+            }
+        }
+    }
+
+    /** Up to ARRAY_MAX offsets, sorted. */
+    private static final class ArrayContainer extends Container {
+        char[] content;
+        int card;
+
+        ArrayContainer(char[] content, int card) {
+            this.content = content;
+            this.card = card;
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        boolean contains(int x) {
+            return Arrays.binarySearch(content, 0, card, (char)x) >= 0;
+        }
+
+        Container add(int x) {
+            int i = Arrays.binarySearch(content, 0, card, (char)x);
+            if (i >= 0)
+                return this;
+            if (card == ARRAY_MAX)
+                return new BitmapContainer(toWords(), card).add(x);
+            i = -i - 1;
+            if (card == content.length) {
+                int newCapacity = (card < 64) ? card * 2 : card * 3 / 2;
+                content = Arrays.copyOf(content,
+                                        Math.min(ARRAY_MAX, newCapacity));
+            }
+            System.arraycopy(content, i, content, i + 1, card - i);
+            content[i] = (char)x;
+            card++;
+            return this;
+        }
+
+        Container remove(int x) {
+            int i = Arrays.binarySearch(content, 0, card, (char)x);
+            if (i >= 0) {
+                System.arraycopy(content, i + 1, content, i, card - i - 1);
+                card--;
+            }
+            return this;
+        }
+
+        int nextSetBit(int x) {
+            int i = Arrays.binarySearch(content, 0, card, (char)x);
+            if (i < 0)
+                i = -i - 1;
+            return (i < card) ? content[i] : -1;
+        }
+
+        int nextClearBit(int x) {
+            int i = Arrays.binarySearch(content, 0, card, (char)x);
+            if (i < 0)
+                return x;
+            while (i + 1 < card && content[i + 1] == x + 1) {
+                i++;
+                x++;
+            }
+            return x + 1;
+        }
+
+        int rank(int x) {
+            int i = Arrays.binarySearch(content, 0, card, (char)x);
+            return (i >= 0) ? i : -i - 1;
+        }
+
+        int select(int j) {
+            return content[j];
+        }
+
+        int first() {
+            return content[0];
+        }
+
+        int last() {
+            return content[card - 1];
+        }
+
+        void orInto(long[] words) {
+            for (int i = 0; i < card; i++)
+                words[content[i] >>> 6] |= 1L << content[i];
+        }
+
+        void andNotInto(long[] words) {
+            for (int i = 0; i < card; i++)
+                words[content[i] >>> 6] &= ~(1L << content[i]);
+        }
+
+        void xorInto(long[] words) {
+            for (int i = 0; i < card; i++)
+                words[content[i] >>> 6] ^= 1L << content[i];
+        }
+
+        int toArray(int[] a, int off, int base) {
+            for (int i = 0; i < card; i++)
+                a[off++] = base | content[i];
+            return off;
+        }
+
+        void writeTo(ObjectOutputStream s) throws IOException {
+            s.writeByte(ARRAY);
+            s.writeInt(card);
+            for (int i = 0; i < card; i++)
+                s.writeChar(content[i]);
+        }
+
+        protected Container clone() {
+            return new ArrayContainer(Arrays.copyOf(content, card), card);
+        }
+    }
+
+    /** More than ARRAY_MAX offsets, as a bitmap. */
+    private static final class BitmapContainer extends Container {
+        final long[] words;
+        int card;
+
+        BitmapContainer(long[] words, int card) {
+            this.words = words;
+            this.card = card;
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        boolean contains(int x) {
+            return (words[x >>> 6] & (1L << x)) != 0;
+        }
+
+        Container add(int x) {
+            long w = words[x >>> 6];
+            long bit = 1L << x;
+            if ((w & bit) == 0) {
+                words[x >>> 6] = w | bit;
+                card++;
+            }
+            return this;
+        }
+
+        Container remove(int x) {
+            long w = words[x >>> 6];
+            long bit = 1L << x;
+            if ((w & bit) != 0) {
+                words[x >>> 6] = w & ~bit;
+                if (--card <= ARRAY_MAX)
+                    return arrayFromWords(words, card);
+            }
+            return this;
+        }
+
+        int nextSetBit(int x) {
+            int u = x >>> 6;
+            long word = words[u] & (-1L << x);
+            while (word == 0) {
+                if (++u == BITMAP_WORDS)
+                    return -1;
+                word = words[u];
+            }
+            return (u << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        int nextClearBit(int x) {
+            int u = x >>> 6;
+            long word = ~words[u] & (-1L << x);
+            while (word == 0) {
+                if (++u == BITMAP_WORDS)
+                    return CHUNK_BITS;
+                word = ~words[u];
+            }
+            return (u << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        int rank(int x) {
+            int u = x >>> 6;
+            int sum = 0;
+            for (int i = 0; i < u; i++)
+                sum += Long.bitCount(words[i]);
+            return sum + Long.bitCount(words[u] & ((1L << x) - 1));
+        }
+
+        int select(int j) {
+            for (int u = 0; ; u++) {
+                long w = words[u];
+                int bits = Long.bitCount(w);
+                if (j < bits) {
+                    for (; j > 0; j--)
+                        w &= w - 1;
+                    return (u << 6) + Long.numberOfTrailingZeros(w);
+                }
+                j -= bits;
+            }
+        }
+
+        int first() {
+            return nextSetBit(0);
+        }
+
+        int last() {
+            int u = BITMAP_WORDS - 1;
+            while (words[u] == 0)
+                u--;
+            return (u << 6) + 63 - Long.numberOfLeadingZeros(words[u]);
+        }
+
+        void orInto(long[] w) {
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                w[i] |= words[i];
+        }
+
+        void andNotInto(long[] w) {
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                w[i] &= ~words[i];
+        }
+
+        void xorInto(long[] w) {
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                w[i] ^= words[i];
+        }
+
+        long[] toWords() {
+            return words.clone();
+        }
+
+        long[] words() {
+            return words;
+        }
+
+        int toArray(int[] a, int off, int base) {
+            for (int u = 0; u < BITMAP_WORDS; u++) {
+                long w = words[u];
+                while (w != 0) {
+                    a[off++] = base | (u << 6) | Long.numberOfTrailingZeros(w);
+                    w &= w - 1;
+                }
+            }
+            return off;
+        }
+
+        void writeTo(ObjectOutputStream s) throws IOException {
+            s.writeByte(BITMAP);
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                s.writeLong(words[i]);
+        }
+
+        protected Container clone() {
+            return new BitmapContainer(words.clone(), card);
+        }
+    }
+
+    /**
+     * Maximal runs of consecutive offsets, as (start, length - 1) pairs
+     * in increasing order.  No two runs are adjacent.
+     */
+    private static final class RunContainer extends Container {
+        char[] runs;
+        int nruns;
+        int card;
+
+        RunContainer(char[] runs, int nruns) {
+            this.runs = runs;
+            this.nruns = nruns;
+            int sum = 0;
+            for (int i = 0; i < nruns; i++)
+                sum += runs[2 * i + 1] + 1;
+            this.card = sum;
+        }
+
+        /** Creates a container holding the single run [from, to]. */
+        RunContainer(int from, int to) {
+            this.runs = new char[] { (char)from, (char)(to - from) };
+            this.nruns = 1;
+            this.card = to - from + 1;
+        }
+
+        int start(int i) {
+            return runs[2 * i];
+        }
+
+        int end(int i) {
+            return runs[2 * i] + runs[2 * i + 1];
+        }
+
+        /** Returns the index of the last run starting at or before x, or -1. */
+        private int find(int x) {
+            int lo = 0, hi = nruns - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (runs[2 * mid] <= x)
+                    lo = mid + 1;
+                else
+                    hi = mid - 1;
+            }
+            return hi;
+        }
+
+        private void setRun(int i, int start, int end) {
+            runs[2 * i] = (char)start;
+            runs[2 * i + 1] = (char)(end - start);
+        }
+
+        private void insertRun(int i, int start, int end) {
+            if (2 * nruns + 2 > runs.length)
+                runs = Arrays.copyOf(runs, Math.max(4, runs.length * 2));
+            System.arraycopy(runs, 2 * i, runs, 2 * i + 2, 2 * (nruns - i));
+            nruns++;
+            setRun(i, start, end);
+        }
+
+        private void deleteRun(int i) {
+            System.arraycopy(runs, 2 * i + 2, runs, 2 * i, 2 * (nruns - i - 1));
+            nruns--;
+        }
+
+        /**
+         * Returns the array or bitmap form of this container if that is
+         * smaller, else this.
+         */
+        private Container shrink() {
+            int runBytes = 4 * nruns;
+            if (runBytes <= BITMAP_BYTES &&
+                (card > ARRAY_MAX || runBytes <= 2 * card))
+                return this;
+            return (card <= ARRAY_MAX)
+                ? arrayFromWords(toWords(), card)
+                : new BitmapContainer(toWords(), card);
+        }
+
+        int cardinality() {
+            return card;
+        }
+
+        boolean contains(int x) {
+            int i = find(x);
+            return i >= 0 && x <= end(i);
+        }
+
+        Container add(int x) {
+            int i = find(x);
+            if (i >= 0 && x <= end(i))
+                return this;
+            boolean joinsPrev = i >= 0 && end(i) + 1 == x;
+            boolean joinsNext = i + 1 < nruns && start(i + 1) == x + 1;
+            card++;
+            if (joinsPrev && joinsNext) {
+                setRun(i, start(i), end(i + 1));
+                deleteRun(i + 1);
+            } else if (joinsPrev) {
+                setRun(i, start(i), x);
+            } else if (joinsNext) {
+                setRun(i + 1, x, end(i + 1));
+            } else {
+                insertRun(i + 1, x, x);
+                return shrink();
+            }
+            return this;
+        }
+
+        Container remove(int x) {
+            int i = find(x);
+            if (i < 0 || x > end(i))
+                return this;
+            int start = start(i), end = end(i);
+            card--;
+            if (start == end) {
+                deleteRun(i);
+            } else if (x == start) {
+                setRun(i, start + 1, end);
+            } else if (x == end) {
+                setRun(i, start, end - 1);
+            } else {
+                setRun(i, start, x - 1);
+                insertRun(i + 1, x + 1, end);
+                return shrink();
+            }
+            return this;
+        }
+
+        int nextSetBit(int x) {
+            int i = find(x);
+            if (i >= 0 && x <= end(i))
+                return x;
+            return (i + 1 < nruns) ? start(i + 1) : -1;
+        }
+
+        int nextClearBit(int x) {
+            int i = find(x);
+            return (i >= 0 && x <= end(i)) ? end(i) + 1 : x;
+        }
+
+        int rank(int x) {
+            int sum = 0;
+            for (int i = 0; i < nruns; i++) {
+                int start = start(i);
+                if (start >= x)
+                    break;
+                sum += Math.min(x, end(i) + 1) - start;
+            }
+            return sum;
+        }
+
+        int select(int j) {
+            for (int i = 0; ; i++) {
+                int length = runs[2 * i + 1] + 1;
+                if (j < length)
+                    return start(i) + j;
+                j -= length;
+            }
+        }
+
+        int first() {
+            return start(0);
+        }
+
+        int last() {
+            return end(nruns - 1);
+        }
+
+        void orInto(long[] words) {
+            for (int i = 0; i < nruns; i++)
+                setRange(words, start(i), end(i) + 1);
+        }
+
+        void andNotInto(long[] words) {
+            for (int i = 0; i < nruns; i++)
+                clearRange(words, start(i), end(i) + 1);
+        }
+
+        void xorInto(long[] words) {
+            for (int i = 0; i < nruns; i++)
+                flipRange(words, start(i), end(i) + 1);
+        }
+
+        int toArray(int[] a, int off, int base) {
+            for (int i = 0; i < nruns; i++) {
+                for (int x = start(i), end = end(i); x <= end; x++)
+                    a[off++] = base | x;
+            }
+            return off;
+        }
+
+        void writeTo(ObjectOutputStream s) throws IOException {
+            s.writeByte(RUN);
+            s.writeInt(nruns);
+            for (int i = 0; i < 2 * nruns; i++)
+                s.writeChar(runs[i]);
+        }
+
+        protected Container clone() {
+            RunContainer c = (RunContainer) super.clone();
+            c.runs = Arrays.copyOf(runs, 2 * nruns);
+            return c;
+        }
+    }
+
+    // -- Container operations --
+
+    private static Container combine(int op, Container a, Container b) {
+        switch (op) {
+        case OR:      return or(a, b);
+        case AND:     return and(a, b);
+        case XOR:     return xor(a, b);
+        default:      return andNot(a, b);
+        }
+    }
+
+    private static Container or(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer &&
+            a.cardinality() + b.cardinality() <= ARRAY_MAX)
+            return mergeArrays((ArrayContainer)a, (ArrayContainer)b, OR);
+        if (a instanceof RunContainer && b instanceof RunContainer)
+            return unionRuns((RunContainer)a, (RunContainer)b);
+        long[] words = a.toWords();
+        b.orInto(words);
+        return fromWords(words);
+    }
+
+    private static Container and(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer)
+            return mergeArrays((ArrayContainer)a, (ArrayContainer)b, AND);
+        if (a instanceof ArrayContainer)
+            return filter((ArrayContainer)a, b, true);
+        if (b instanceof ArrayContainer)
+            return filter((ArrayContainer)b, a, true);
+        if (a instanceof RunContainer && b instanceof RunContainer)
+            return intersectRuns((RunContainer)a, (RunContainer)b);
+        long[] words = a.toWords();
+        long[] other = b.words();
+        for (int i = 0; i < BITMAP_WORDS; i++)
+            words[i] &= other[i];
+        return fromWords(words);
+    }
+
+    private static Container xor(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer &&
+            a.cardinality() + b.cardinality() <= ARRAY_MAX)
+            return mergeArrays((ArrayContainer)a, (ArrayContainer)b, XOR);
+        long[] words = a.toWords();
+        b.xorInto(words);
+        return fromWords(words);
+    }
+
+    private static Container andNot(Container a, Container b) {
+        if (a instanceof ArrayContainer)
+            return filter((ArrayContainer)a, b, false);
+        long[] words = a.toWords();
+        b.andNotInto(words);
+        return fromWords(words);
+    }
+
+    private static boolean intersects(Container a, Container b) {
+        if (b instanceof ArrayContainer) {
+            Container t = a;
+            a = b;
+            b = t;
+        }
+        if (a instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer)a;
+            for (int i = 0; i < x.card; i++)
+                if (b.contains(x.content[i]))
+                    return true;
+            return false;
+        }
+        long[] w1 = a.words(), w2 = b.words();
+        for (int i = 0; i < BITMAP_WORDS; i++)
+            if ((w1[i] & w2[i]) != 0)
+                return true;
+        return false;
+    }
+
+    private static boolean sameBits(Container a, Container b) {
+        if (a.cardinality() != b.cardinality())
+            return false;
+        if (b instanceof ArrayContainer) {
+            Container t = a;
+            a = b;
+            b = t;
+        }
+        if (a instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer)a;
+            for (int i = 0; i < x.card; i++)
+                if (!b.contains(x.content[i]))
+                    return false;
+            return true;
+        }
+        return Arrays.equals(a.words(), b.words());
+    }
+
+    /**
+     * Returns the elements of a that are (if keep) or are not (if !keep)
+     * in b, or null if there are none.
+     */
+    private static Container filter(ArrayContainer a, Container b,
+                                    boolean keep) {
+        char[] content = new char[a.card];
+        int n = 0;
+        for (int i = 0; i < a.card; i++) {
+            char x = a.content[i];
+            if (b.contains(x) == keep)
+                content[n++] = x;
+        }
+        return (n == 0) ? null : new ArrayContainer(content, n);
+    }
+
+    /**
+     * Merges two sorted arrays, keeping the offsets in either (OR), in
+     * both (AND) or in exactly one (XOR).  Returns null if the result is
+     * empty.
+     */
+    private static Container mergeArrays(ArrayContainer a, ArrayContainer b,
+                                         int op) {
+        char[] x = a.content, y = b.content;
+        int n1 = a.card, n2 = b.card;
+        char[] content = new char[(op == AND) ? Math.min(n1, n2) : n1 + n2];
+        int n = 0, i = 0, j = 0;
+        while (i < n1 && j < n2) {
+            char u = x[i], v = y[j];
+            if (u == v) {
+                if (op != XOR)
+                    content[n++] = u;
+                i++;
+                j++;
+            } else if (u < v) {
+                if (op != AND)
+                    content[n++] = u;
+                i++;
+            } else {
+                if (op != AND)
+                    content[n++] = v;
+                j++;
+            }
+        }
+        if (op != AND) {
+            while (i < n1)
+                content[n++] = x[i++];
+            while (j < n2)
+                content[n++] = y[j++];
+        }
+        return (n == 0) ? null : new ArrayContainer(content, n);
+    }
+
+    private static Container unionRuns(RunContainer a, RunContainer b) {
+        char[] runs = new char[2 * (a.nruns + b.nruns)];
+        RunContainer c = new RunContainer(runs, 0);
+        int i = 0, j = 0;
+        int start = -1, end = -2;
+        while (i < a.nruns || j < b.nruns) {
+            int s, e;
+            if (j >= b.nruns || (i < a.nruns && a.start(i) <= b.start(j))) {
+                s = a.start(i);
+                e = a.end(i++);
+            } else {
+                s = b.start(j);
+                e = b.end(j++);
+            }
+            if (s <= end + 1) {
+                end = Math.max(end, e);
+            } else {
+                if (start >= 0)
+                    c.setRun(c.nruns++, start, end);
+                start = s;
+                end = e;
+            }
+        }
+        c.setRun(c.nruns++, start, end);
+        c.card = cardinality(c);
+        return c.shrink();
+    }
+
+    private static Container intersectRuns(RunContainer a, RunContainer b) {
+        char[] runs = new char[2 * (a.nruns + b.nruns)];
+        RunContainer c = new RunContainer(runs, 0);
+        int i = 0, j = 0;
+        while (i < a.nruns && j < b.nruns) {
+            int s = Math.max(a.start(i), b.start(j));
+            int e = Math.min(a.end(i), b.end(j));
+            if (s <= e)
+                c.setRun(c.nruns++, s, e);
+            if (a.end(i) < b.end(j))
+                i++;
+            else
+                j++;
+        }
+        if (c.nruns == 0)
+            return null;
+        c.card = cardinality(c);
+        return c.shrink();
+    }
+
+    private static int cardinality(RunContainer c) {
+        int sum = 0;
+        for (int i = 0; i < c.nruns; i++)
+            sum += c.runs[2 * i + 1] + 1;
+        return sum;
+    }
+
+    /**
+     * Returns a container holding the bits of the given bitmap, in
+     * whichever form is smallest, or null if no bits are set.  The
+     * bitmap may become owned by the result.
+     */
+    private static Container fromWords(long[] words) {
+        int card = 0, nruns = 0;
+        long carry = 0;
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+            long w = words[i];
+            card += Long.bitCount(w);
+            // A run starts at each set bit whose predecessor is clear
+            nruns += Long.bitCount(w & ~((w << 1) | carry));
+            carry = w >>> 63;
+        }
+        if (card == 0)
+            return null;
+        int runBytes = 4 * nruns;
+        int otherBytes = (card <= ARRAY_MAX) ? 2 * card : BITMAP_BYTES;
+        if (runBytes < otherBytes)
+            return runsFromWords(words, nruns);
+        if (card <= ARRAY_MAX)
+            return arrayFromWords(words, card);
+        return new BitmapContainer(words, card);
+    }
+
+    private static ArrayContainer arrayFromWords(long[] words, int card) {
+        char[] content = new char[Math.max(card, 4)];
+        int n = 0;
+        for (int u = 0; u < BITMAP_WORDS; u++) {
+            long w = words[u];
+            while (w != 0) {
+                content[n++] = (char)((u << 6) + Long.numberOfTrailingZeros(w));
+                w &= w - 1;
+            }
+        }
+        return new ArrayContainer(content, card);
+    }
+
+    private static RunContainer runsFromWords(long[] words, int nruns) {
+        RunContainer c = new RunContainer(new char[2 * nruns], 0);
+        int x = nextSetBit(words, 0);
+        while (x >= 0) {
+            int end = nextClearBit(words, x);
+            c.setRun(c.nruns++, x, end - 1);
+            x = (end < CHUNK_BITS) ? nextSetBit(words, end) : -1;
+        }
+        c.card = cardinality(c);
+        return c;
+    }
+
+    private static int nextSetBit(long[] words, int x) {
+        int u = x >>> 6;
+        long word = words[u] & (-1L << x);
+        while (word == 0) {
+            if (++u == BITMAP_WORDS)
+                return -1;
+            word = words[u];
+        }
+        return (u << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    private static int nextClearBit(long[] words, int x) {
+        int u = x >>> 6;
+        long word = ~words[u] & (-1L << x);
+        while (word == 0) {
+            if (++u == BITMAP_WORDS)
+                return CHUNK_BITS;
+            word = ~words[u];
+        }
+        return (u << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /** Sets the bits [from, to) of words; from &lt; to. */
+    private static void setRange(long[] words, int from, int to) {
+        int startWord = from >>> 6, endWord = (to - 1) >>> 6;
+        long firstMask = -1L << from, lastMask = -1L >>> -to;
+        if (startWord == endWord) {
+            words[startWord] |= firstMask & lastMask;
+        } else {
+            words[startWord] |= firstMask;
+            for (int i = startWord + 1; i < endWord; i++)
+                words[i] = -1L;
+            words[endWord] |= lastMask;
+        }
+    }
+
+    /** Clears the bits [from, to) of words; from &lt; to. */
+    private static void clearRange(long[] words, int from, int to) {
+        int startWord = from >>> 6, endWord = (to - 1) >>> 6;
+        long firstMask = -1L << from, lastMask = -1L >>> -to;
+        if (startWord == endWord) {
+            words[startWord] &= ~(firstMask & lastMask);
+        } else {
+            words[startWord] &= ~firstMask;
+            for (int i = startWord + 1; i < endWord; i++)
+                words[i] = 0;
+            words[endWord] &= ~lastMask;
+        }
+    }
+
+    /** Flips the bits [from, to) of words; from &lt; to. */
+    private static void flipRange(long[] words, int from, int to) {
+        int startWord = from >>> 6, endWord = (to - 1) >>> 6;
+        long firstMask = -1L << from, lastMask = -1L >>> -to;
+        if (startWord == endWord) {
+            words[startWord] ^= firstMask & lastMask;
+        } else {
+            words[startWord] ^= firstMask;
+            for (int i = startWord + 1; i < endWord; i++)
+                words[i] = ~words[i];
+            words[endWord] ^= lastMask;
+        }
+    }
+}
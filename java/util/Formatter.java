@@ -1800,6 +1800,7 @@ import sun.misc.FormattedFloatingDecimal;
  *
  * @author  Iris Clark
  * @version 	%I%, %G%
+ * @see     CompiledFormat
  * @since 1.5
  */
 public final class Formatter implements Closeable, Flushable {
@@ -2504,6 +2505,56 @@ public final class Formatter implements Closeable, Flushable {
 	}
     }
 
+    // -- Support for CompiledFormat --
+
+    /**
+     * A format specifier split out of a format string by
+     * parseForCompiledFormat.
+     */
+    static final class ParsedSpecifier {
+	// the groups matched by fsPattern
+	final String[] groups;
+	// as returned by FormatString.index()
+	final int index;
+	// as returned by FormatString.toString()
+	final String text;
+
+	ParsedSpecifier(String[] groups, int index, String text) {
+	    this.groups = groups;
+	    this.index = index;
+	    this.text = text;
+	}
+    }
+
+    /**
+     * Splits a format string into runs of fixed text, returned as
+     * Strings, and format specifiers, returned as ParsedSpecifiers.  The
+     * string is checked exactly as parse checks it, so the same
+     * exceptions are thrown for the same malformed strings.
+     */
+    static List<Object> parseForCompiledFormat(String s) {
+	Formatter checker = new Formatter(new StringBuilder(), (Locale)null);
+	FormatString[] fsa = checker.parse(s);
+	ArrayList<Object> parts = new ArrayList<Object>(fsa.length);
+	for (int i = 0; i < fsa.length; i++) {
+	    FormatString fs = fsa[i];
+	    if (fs instanceof FixedString)
+		parts.add(fs.toString());
+	    else
+		parts.add(new ParsedSpecifier(((FormatSpecifier)fs).groups,
+					      fs.index(), fs.toString()));
+	}
+	return parts;
+    }
+
+    /**
+     * Prints the given argument to this formatter's destination according
+     * to a specifier split out by parseForCompiledFormat.
+     */
+    void print(ParsedSpecifier ps, Object arg, Locale l) throws IOException {
+	new FormatSpecifier(this, ps.groups).print(arg, l);
+    }
+
     private interface FormatString {
 	int index();
 	void print(Object arg, Locale l) throws IOException;
@@ -2531,6 +2582,9 @@ public final class Formatter implements Closeable, Flushable {
 
 	private Formatter formatter;
 
+	// the groups this specifier was parsed from
+	private final String[] groups;
+
 	// cache the line separator
 	private String ls;
 
@@ -2619,6 +2673,7 @@ public final class Formatter implements Closeable, Flushable {
 
 	FormatSpecifier(Formatter formatter, String[] sa) {
 	    this.formatter = formatter;
+	    this.groups = sa;
 	    int idx = 0;
 
 	    index(sa[idx++]);
@@ -7,6 +7,8 @@
 
 package java.util;
 import java.io.*;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 
 /**
  * Hash table based implementation of the <tt>Map</tt> interface.  This
@@ -52,6 +54,14 @@ import java.io.*;
  * be stored more efficiently than letting it perform automatic rehashing as
  * needed to grow the table.
  *
+ * <p>When many keys map to the same bucket, either because their hash
+ * codes collide or because the hash function disperses them poorly, the
+ * bucket is converted from a linked list into a balanced tree ordered by
+ * hash code and, where the keys are mutually {@link Comparable}, by their
+ * natural ordering.  This bounds the worst-case cost of <tt>get</tt>,
+ * <tt>put</tt> and <tt>remove</tt> on such a bucket at O(log n) rather
+ * than O(n).  The bucket reverts to a list once it has shrunk again.
+ *
  * <p><strong>Note that this implementation is not synchronized.</strong>
  * If multiple threads access a hash map concurrently, and at least one of
  * the threads modifies the map structurally, it <i>must</i> be
@@ -126,11 +136,61 @@ public class HashMap<K,V>
      */
     static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
+    /**
+     * The bin count threshold for using a tree rather than a list for a
+     * bin.  Bins are converted to trees when adding an element to a bin
+     * with at least this many nodes.
+     */
+    static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * The bin count threshold for converting a tree bin back to a plain
+     * list during removal.  Must be less than TREEIFY_THRESHOLD so that a
+     * bin sitting at the boundary does not flip on every put and remove.
+     */
+    static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * The smallest table capacity for which bins may be treeified.  In
+     * smaller tables long chains are far more likely to be the result of
+     * a table that simply needs resizing than of colliding hash codes.
+     */
+    static final int MIN_TREEIFY_CAPACITY = 64;
+
     /**
      * The table, resized as necessary. Length MUST Always be a power of two.
      */
     transient Entry[] table;
 
+    /*
+     * Implementation notes.
+     *
+     * Bins are normally singly linked lists of Entry.  Once a bin holds
+     * TREEIFY_THRESHOLD entries (and the table is large enough) a
+     * red-black tree indexing those entries is installed in the parallel
+     * trees array at the same index.  The entries themselves stay on the
+     * bin's list, so iteration, transfer and the LinkedHashMap overrides
+     * are unaffected; the tree only accelerates lookup and removal.
+     *
+     * The tree is ordered by hash code, then by compareTo when the keys
+     * are of the same class C implementing Comparable<C>, and finally by
+     * class name and identity hash code to break remaining ties.  Lookups
+     * descend directly wherever the first two criteria decide, and search
+     * both subtrees otherwise, so keys that are not comparable still work,
+     * only without the O(log n) bound among equal hash codes.
+     *
+     * While a bin is a tree its list is kept in tree order, so the list
+     * predecessor of an entry is the entry of its tree predecessor.  This
+     * lets removal unlink an entry without walking the list.
+     */
+
+    /**
+     * Red-black trees indexing the bins of table that have grown past
+     * TREEIFY_THRESHOLD, or null if no bin ever has.  When non-null its
+     * length is always the same as that of table.
+     */
+    transient TreeBin[] trees;
+
     /**
      * The number of key-value mappings contained in this map.
      */
@@ -295,6 +355,10 @@ public class HashMap<K,V>
      * @see #put(Object, Object)
      */
     public V get(Object key) {
+        if (trees != null) {
+            Entry<K,V> e = getEntry(key);
+            return (e == null ? null : e.value);
+        }
         if (key == null)
             return getForNullKey();
         int hash = hash(key.hashCode());
@@ -342,9 +406,10 @@ public class HashMap<K,V>
      */
     final Entry<K,V> getEntry(Object key) {
         int hash = (key == null) ? 0 : hash(key.hashCode());
-        for (Entry<K,V> e = table[indexFor(hash, table.length)];
-             e != null;
-             e = e.next) {
+        int i = indexFor(hash, table.length);
+        if (trees != null && trees[i] != null)
+            return getTreeEntry(hash, key, i);
+        for (Entry<K,V> e = table[i]; e != null; e = e.next) {
             Object k;
             if (e.hash == hash &&
                 ((k = e.key) == key || (key != null && key.equals(k))))
@@ -371,6 +436,8 @@ public class HashMap<K,V>
             return putForNullKey(value);
         int hash = hash(key.hashCode());
         int i = indexFor(hash, table.length);
+        if (trees != null && trees[i] != null)
+            return putTreeVal(hash, key, value, i);
         for (Entry<K,V> e = table[i]; e != null; e = e.next) {
             Object k;
             if (e.hash == hash && ((k = e.key) == key || key.equals(k))) {
@@ -390,6 +457,8 @@ public class HashMap<K,V>
      * Offloaded version of put for null keys
      */
     private V putForNullKey(V value) {
+        if (trees != null && trees[0] != null)
+            return putTreeVal(0, null, value, 0);
         for (Entry<K,V> e = table[0]; e != null; e = e.next) {
             if (e.key == null) {
                 V oldValue = e.value;
@@ -403,6 +472,22 @@ public class HashMap<K,V>
         return null;
     }
 
+    /**
+     * Version of put for bins that have been converted to trees.
+     */
+    private V putTreeVal(int hash, K key, V value, int bucketIndex) {
+        Entry<K,V> e = getTreeEntry(hash, key, bucketIndex);
+        if (e != null) {
+            V oldValue = e.value;
+            e.value = value;
+            e.recordAccess(this);
+            return oldValue;
+        }
+        modCount++;
+        addEntry(hash, key, value, bucketIndex);
+        return null;
+    }
+
     /**
      * This method is used instead of put by constructors and
      * pseudoconstructors (clone, readObject).  It does not resize the table,
@@ -418,13 +503,21 @@ public class HashMap<K,V>
          * clone or deserialize.  It will only happen for construction if the
          * input Map is a sorted map whose ordering is inconsistent w/ equals.
          */
-        for (Entry<K,V> e = table[i]; e != null; e = e.next) {
-            Object k;
-            if (e.hash == hash &&
-                ((k = e.key) == key || (key != null && key.equals(k)))) {
+        if (trees != null && trees[i] != null) {
+            Entry<K,V> e = getTreeEntry(hash, key, i);
+            if (e != null) {
                 e.value = value;
                 return;
             }
+        } else {
+            for (Entry<K,V> e = table[i]; e != null; e = e.next) {
+                Object k;
+                if (e.hash == hash &&
+                    ((k = e.key) == key || (key != null && key.equals(k)))) {
+                    e.value = value;
+                    return;
+                }
+            }
         }
 
         createEntry(hash, key, value, i);
@@ -460,9 +553,20 @@ public class HashMap<K,V>
         }
 
         Entry[] newTable = new Entry[newCapacity];
+        boolean hadTrees = (trees != null);
+        trees = null;
         transfer(newTable);
         table = newTable;
         threshold = (int)(newCapacity * loadFactor);
+
+        // Splitting bins can only shorten them, so only a table that had
+        // tree bins before can have bins that need treeifying now.
+        if (hadTrees && newCapacity >= MIN_TREEIFY_CAPACITY) {
+            for (int i = 0; i < newCapacity; i++) {
+                if (binLength(i) >= TREEIFY_THRESHOLD)
+                    treeifyBin(i);
+            }
+        }
     }
 
     /**
@@ -547,6 +651,11 @@ public class HashMap<K,V>
     final Entry<K,V> removeEntryForKey(Object key) {
         int hash = (key == null) ? 0 : hash(key.hashCode());
         int i = indexFor(hash, table.length);
+        if (trees != null && trees[i] != null) {
+            TreeBin<K,V> bin = trees[i];
+            TreeNode<K,V> p = bin.find(hash, key);
+            return (p == null ? null : removeTreeNode(bin, p, i));
+        }
         Entry<K,V> prev = table[i];
         Entry<K,V> e = prev;
 
@@ -582,6 +691,13 @@ public class HashMap<K,V>
         Object key = entry.getKey();
         int hash = (key == null) ? 0 : hash(key.hashCode());
         int i = indexFor(hash, table.length);
+        if (trees != null && trees[i] != null) {
+            TreeBin<K,V> bin = trees[i];
+            TreeNode<K,V> p = bin.find(hash, key);
+            if (p == null || !p.entry.equals(entry))
+                return null;
+            return removeTreeNode(bin, p, i);
+        }
         Entry<K,V> prev = table[i];
         Entry<K,V> e = prev;
 
@@ -613,6 +729,7 @@ public class HashMap<K,V>
         Entry[] tab = table;
         for (int i = 0; i < tab.length; i++)
             tab[i] = null;
+        trees = null;
         size = 0;
     }
 
@@ -662,6 +779,7 @@ public class HashMap<K,V>
 	    // assert false;
 	}
         result.table = new Entry[table.length];
+        result.trees = null;
         result.entrySet = null;
         result.modCount = 0;
         result.size = 0;
@@ -751,6 +869,7 @@ public class HashMap<K,V>
     void addEntry(int hash, K key, V value, int bucketIndex) {
 	Entry<K,V> e = table[bucketIndex];
         table[bucketIndex] = new Entry<K,V>(hash, key, value, e);
+        binAdded(bucketIndex);
         if (size++ >= threshold)
             resize(2 * table.length);
     }
@@ -766,9 +885,515 @@ public class HashMap<K,V>
     void createEntry(int hash, K key, V value, int bucketIndex) {
 	Entry<K,V> e = table[bucketIndex];
         table[bucketIndex] = new Entry<K,V>(hash, key, value, e);
+        binAdded(bucketIndex);
         size++;
     }
 
+    // Tree bins
+
+    /**
+     * Called by addEntry and createEntry (and their overrides) after a new
+     * entry has been linked in at the head of the specified bucket.  Moves
+     * the entry into place if the bucket is a tree bin, or converts the
+     * bucket to a tree bin if it has grown too long.
+     */
+    final void binAdded(int bucketIndex) {
+        TreeBin<K,V> bin = (trees == null) ? null : trees[bucketIndex];
+        if (bin != null) {
+            Entry<K,V> e = table[bucketIndex];
+            table[bucketIndex] = e.next;
+            TreeNode<K,V> pred = predecessor(bin.add(e));
+            if (pred == null) {
+                e.next = table[bucketIndex];
+                table[bucketIndex] = e;
+            } else {
+                e.next = pred.entry.next;
+                pred.entry.next = e;
+            }
+        } else if (table.length >= MIN_TREEIFY_CAPACITY &&
+                   binLength(bucketIndex) >= TREEIFY_THRESHOLD) {
+            treeifyBin(bucketIndex);
+        }
+    }
+
+    /**
+     * Returns the length of the list in the specified bucket, counting no
+     * further than TREEIFY_THRESHOLD.
+     */
+    private int binLength(int bucketIndex) {
+        int n = 0;
+        for (Entry e = table[bucketIndex];
+             e != null && n < TREEIFY_THRESHOLD;
+             e = e.next)
+            n++;
+        return n;
+    }
+
+    /**
+     * Builds a tree bin over the entries of the specified bucket and
+     * relinks the bucket's list in tree order.
+     */
+    private void treeifyBin(int bucketIndex) {
+        if (trees == null)
+            trees = new TreeBin[table.length];
+        TreeBin<K,V> bin = new TreeBin<K,V>();
+        for (Entry<K,V> e = table[bucketIndex]; e != null; e = e.next)
+            bin.add(e);
+        Entry<K,V> last = null;
+        for (TreeNode<K,V> p = bin.first(); p != null; p = successor(p)) {
+            if (last == null)
+                table[bucketIndex] = p.entry;
+            else
+                last.next = p.entry;
+            last = p.entry;
+        }
+        last.next = null;
+        trees[bucketIndex] = bin;
+    }
+
+    /**
+     * Returns the entry for the specified key in the tree bin at the
+     * specified index, or null if there is none.
+     */
+    final Entry<K,V> getTreeEntry(int hash, Object key, int bucketIndex) {
+        TreeBin<K,V> bin = trees[bucketIndex];
+        TreeNode<K,V> p = bin.find(hash, key);
+        return (p == null ? null : p.entry);
+    }
+
+    /**
+     * Removes the specified node's entry from the tree bin and list at the
+     * specified index, converting the bucket back to a plain list if the
+     * bin has become small enough.
+     */
+    private Entry<K,V> removeTreeNode(TreeBin<K,V> bin, TreeNode<K,V> p,
+                                      int bucketIndex) {
+        Entry<K,V> e = p.entry;
+        TreeNode<K,V> pred = predecessor(p);
+        if (pred == null)
+            table[bucketIndex] = e.next;
+        else
+            pred.entry.next = e.next;
+        bin.delete(p);
+        if (bin.size <= UNTREEIFY_THRESHOLD)
+            trees[bucketIndex] = null;
+        modCount++;
+        size--;
+        e.recordRemoval(this);
+        return e;
+    }
+
+    /**
+     * Returns x's Class if it is of the form "class C implements
+     * Comparable<C>", else null.
+     */
+    static Class<?> comparableClassFor(Object x) {
+        if (x instanceof Comparable) {
+            Class<?> c = x.getClass();
+            if (c == String.class) // bypass checks
+                return c;
+            Type[] ts = c.getGenericInterfaces();
+            for (int i = 0; i < ts.length; i++) {
+                Type t = ts[i];
+                if (t instanceof ParameterizedType) {
+                    ParameterizedType p = (ParameterizedType)t;
+                    Type[] as = p.getActualTypeArguments();
+                    if (p.getRawType() == Comparable.class &&
+                        as != null && as.length == 1 && as[0] == c)
+                        return c;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns k.compareTo(x) if x matches kc (k's screened comparable
+     * class), else 0.
+     */
+    static int compareComparables(Class<?> kc, Object k, Object x) {
+        return (x == null || x.getClass() != kc ? 0 :
+                ((Comparable)k).compareTo(x));
+    }
+
+    /**
+     * Tie-breaking utility for ordering insertions when equal hash codes
+     * and non-comparable keys leave no other order.  Only a consistent
+     * insertion rule is needed, not a total order: lookups fall back to
+     * searching both subtrees wherever this rule was used.
+     */
+    static int tieBreakOrder(Object a, Object b) {
+        int d;
+        if (a == null || b == null ||
+            (d = a.getClass().getName().compareTo(b.getClass().getName())) == 0)
+            d = (System.identityHashCode(a) <= System.identityHashCode(b) ?
+                 -1 : 1);
+        return d;
+    }
+
+    private static final boolean RED   = false;
+    private static final boolean BLACK = true;
+
+    /**
+     * Node of a tree bin, indexing one entry of the bin's list.
+     */
+    static final class TreeNode<K,V> {
+        Entry<K,V> entry;
+        TreeNode<K,V> left;
+        TreeNode<K,V> right;
+        TreeNode<K,V> parent;
+        boolean color = BLACK;
+
+        TreeNode(Entry<K,V> entry, TreeNode<K,V> parent) {
+            this.entry = entry;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * Red-black tree over the entries of one bin.  The balancing code
+     * follows that of TreeMap.
+     */
+    static final class TreeBin<K,V> {
+        TreeNode<K,V> root;
+        int size;
+
+        /**
+         * Returns the node for the given hash and key, or null if none.
+         */
+        TreeNode<K,V> find(int h, Object k) {
+            return find(root, h, k, null);
+        }
+
+        private static <K,V> TreeNode<K,V> find(TreeNode<K,V> p, int h,
+                                                Object k, Class<?> kc) {
+            while (p != null) {
+                int ph, dir;
+                Object pk;
+                TreeNode<K,V> pl = p.left, pr = p.right, q;
+                if ((ph = p.entry.hash) > h)
+                    p = pl;
+                else if (ph < h)
+                    p = pr;
+                else if ((pk = p.entry.key) == k || (k != null && k.equals(pk)))
+                    return p;
+                else if (pl == null)
+                    p = pr;
+                else if (pr == null)
+                    p = pl;
+                else if ((kc != null || (kc = comparableClassFor(k)) != null) &&
+                         (dir = compareComparables(kc, k, pk)) != 0)
+                    p = (dir < 0) ? pl : pr;
+                else if ((q = find(pr, h, k, kc)) != null)
+                    return q;
+                else
+                    p = pl;
+            }
+            return null;
+        }
+
+        /**
+         * Returns the first node in tree order, or null if empty.
+         */
+        TreeNode<K,V> first() {
+            TreeNode<K,V> p = root;
+            if (p != null)
+                while (p.left != null)
+                    p = p.left;
+            return p;
+        }
+
+        /**
+         * Inserts a node for the given entry, which must not already be
+         * present, and returns it.
+         */
+        TreeNode<K,V> add(Entry<K,V> e) {
+            size++;
+            TreeNode<K,V> t = root;
+            if (t == null) {
+                root = new TreeNode<K,V>(e, null);
+                return root;
+            }
+            int h = e.hash;
+            K k = e.key;
+            Class<?> kc = null;
+            TreeNode<K,V> parent;
+            int dir;
+            do {
+                parent = t;
+                int th = t.entry.hash;
+                if (th > h)
+                    dir = -1;
+                else if (th < h)
+                    dir = 1;
+                else if ((kc == null &&
+                          (kc = comparableClassFor(k)) == null) ||
+                         (dir = compareComparables(kc, k, t.entry.key)) == 0)
+                    dir = tieBreakOrder(k, t.entry.key);
+                t = (dir < 0) ? t.left : t.right;
+            } while (t != null);
+            TreeNode<K,V> x = new TreeNode<K,V>(e, parent);
+            if (dir < 0)
+                parent.left = x;
+            else
+                parent.right = x;
+            fixAfterInsertion(x);
+            return x;
+        }
+
+        /**
+         * Deletes node p, and then rebalances the tree.  If p has two
+         * children it takes over its successor's entry, and the
+         * successor's node is unlinked instead.
+         */
+        void delete(TreeNode<K,V> p) {
+            size--;
+
+            if (p.left != null && p.right != null) {
+                TreeNode<K,V> s = successor(p);
+                p.entry = s.entry;
+                p = s;
+            }
+
+            TreeNode<K,V> replacement = (p.left != null ? p.left : p.right);
+
+            if (replacement != null) {
+                replacement.parent = p.parent;
+                if (p.parent == null)
+                    root = replacement;
+                else if (p == p.parent.left)
+                    p.parent.left  = replacement;
+                else
+                    p.parent.right = replacement;
+
+                p.left = p.right = p.parent = null;
+
+                if (p.color == BLACK)
+                    fixAfterDeletion(replacement);
+            } else if (p.parent == null) {
+                root = null;
+            } else {
+                if (p.color == BLACK)
+                    fixAfterDeletion(p);
+
+                if (p.parent != null) {
+                    if (p == p.parent.left)
+                        p.parent.left = null;
+                    else if (p == p.parent.right)
+                        p.parent.right = null;
+                    p.parent = null;
+                }
+            }
+            p.entry = null;
+        }
+
+        /** From CLR */
+        private void rotateLeft(TreeNode<K,V> p) {
+            if (p != null) {
+                TreeNode<K,V> r = p.right;
+                p.right = r.left;
+                if (r.left != null)
+                    r.left.parent = p;
+                r.parent = p.parent;
+                if (p.parent == null)
+                    root = r;
+                else if (p.parent.left == p)
+                    p.parent.left = r;
+                else
+                    p.parent.right = r;
+                r.left = p;
+                p.parent = r;
+            }
+        }
+
+        /** From CLR */
+        private void rotateRight(TreeNode<K,V> p) {
+            if (p != null) {
+                TreeNode<K,V> l = p.left;
+                p.left = l.right;
+                if (l.right != null) l.right.parent = p;
+                l.parent = p.parent;
+                if (p.parent == null)
+                    root = l;
+                else if (p.parent.right == p)
+                    p.parent.right = l;
+                else p.parent.left = l;
+                l.right = p;
+                p.parent = l;
+            }
+        }
+
+        /** From CLR */
+        private void fixAfterInsertion(TreeNode<K,V> x) {
+            x.color = RED;
+
+            while (x != null && x != root && x.parent.color == RED) {
+                if (parentOf(x) == leftOf(parentOf(parentOf(x)))) {
+                    TreeNode<K,V> y = rightOf(parentOf(parentOf(x)));
+                    if (colorOf(y) == RED) {
+                        setColor(parentOf(x), BLACK);
+                        setColor(y, BLACK);
+                        setColor(parentOf(parentOf(x)), RED);
+                        x = parentOf(parentOf(x));
+                    } else {
+                        if (x == rightOf(parentOf(x))) {
+                            x = parentOf(x);
+                            rotateLeft(x);
+                        }
+                        setColor(parentOf(x), BLACK);
+                        setColor(parentOf(parentOf(x)), RED);
+                        rotateRight(parentOf(parentOf(x)));
+                    }
+                } else {
+                    TreeNode<K,V> y = leftOf(parentOf(parentOf(x)));
+                    if (colorOf(y) == RED) {
+                        setColor(parentOf(x), BLACK);
+                        setColor(y, BLACK);
+                        setColor(parentOf(parentOf(x)), RED);
+                        x = parentOf(parentOf(x));
+                    } else {
+                        if (x == leftOf(parentOf(x))) {
+                            x = parentOf(x);
+                            rotateRight(x);
+                        }
+                        setColor(parentOf(x), BLACK);
+                        setColor(parentOf(parentOf(x)), RED);
+                        rotateLeft(parentOf(parentOf(x)));
+                    }
+                }
+            }
+            root.color = BLACK;
+        }
+
+        /** From CLR */
+        private void fixAfterDeletion(TreeNode<K,V> x) {
+            while (x != root && colorOf(x) == BLACK) {
+                if (x == leftOf(parentOf(x))) {
+                    TreeNode<K,V> sib = rightOf(parentOf(x));
+
+                    if (colorOf(sib) == RED) {
+                        setColor(sib, BLACK);
+                        setColor(parentOf(x), RED);
+                        rotateLeft(parentOf(x));
+                        sib = rightOf(parentOf(x));
+                    }
+
+                    if (colorOf(leftOf(sib))  == BLACK &&
+                        colorOf(rightOf(sib)) == BLACK) {
+                        setColor(sib, RED);
+                        x = parentOf(x);
+                    } else {
+                        if (colorOf(rightOf(sib)) == BLACK) {
+                            setColor(leftOf(sib), BLACK);
+                            setColor(sib, RED);
+                            rotateRight(sib);
+                            sib = rightOf(parentOf(x));
+                        }
+                        setColor(sib, colorOf(parentOf(x)));
+                        setColor(parentOf(x), BLACK);
+                        setColor(rightOf(sib), BLACK);
+                        rotateLeft(parentOf(x));
+                        x = root;
+                    }
+                } else { // symmetric
+                    TreeNode<K,V> sib = leftOf(parentOf(x));
+
+                    if (colorOf(sib) == RED) {
+                        setColor(sib, BLACK);
+                        setColor(parentOf(x), RED);
+                        rotateRight(parentOf(x));
+                        sib = leftOf(parentOf(x));
+                    }
+
+                    if (colorOf(rightOf(sib)) == BLACK &&
+                        colorOf(leftOf(sib)) == BLACK) {
+                        setColor(sib, RED);
+                        x = parentOf(x);
+                    } else {
+                        if (colorOf(leftOf(sib)) == BLACK) {
+                            setColor(rightOf(sib), BLACK);
+                            setColor(sib, RED);
+                            rotateLeft(sib);
+                            sib = leftOf(parentOf(x));
+                        }
+                        setColor(sib, colorOf(parentOf(x)));
+                        setColor(parentOf(x), BLACK);
+                        setColor(leftOf(sib), BLACK);
+                        rotateRight(parentOf(x));
+                        x = root;
+                    }
+                }
+            }
+
+            setColor(x, BLACK);
+        }
+    }
+
+    /**
+     * Returns the successor of the specified node, or null if no such.
+     */
+    static <K,V> TreeNode<K,V> successor(TreeNode<K,V> t) {
+        if (t == null)
+            return null;
+        else if (t.right != null) {
+            TreeNode<K,V> p = t.right;
+            while (p.left != null)
+                p = p.left;
+            return p;
+        } else {
+            TreeNode<K,V> p = t.parent;
+            TreeNode<K,V> ch = t;
+            while (p != null && ch == p.right) {
+                ch = p;
+                p = p.parent;
+            }
+            return p;
+        }
+    }
+
+    /**
+     * Returns the predecessor of the specified node, or null if no such.
+     */
+    static <K,V> TreeNode<K,V> predecessor(TreeNode<K,V> t) {
+        if (t == null)
+            return null;
+        else if (t.left != null) {
+            TreeNode<K,V> p = t.left;
+            while (p.right != null)
+                p = p.right;
+            return p;
+        } else {
+            TreeNode<K,V> p = t.parent;
+            TreeNode<K,V> ch = t;
+            while (p != null && ch == p.left) {
+                ch = p;
+                p = p.parent;
+            }
+            return p;
+        }
+    }
+
+    private static <K,V> boolean colorOf(TreeNode<K,V> p) {
+        return (p == null ? BLACK : p.color);
+    }
+
+    private static <K,V> TreeNode<K,V> parentOf(TreeNode<K,V> p) {
+        return (p == null ? null: p.parent);
+    }
+
+    private static <K,V> void setColor(TreeNode<K,V> p, boolean c) {
+        if (p != null)
+	    p.color = c;
+    }
+
+    private static <K,V> TreeNode<K,V> leftOf(TreeNode<K,V> p) {
+        return (p == null) ? null: p.left;
+    }
+
+    private static <K,V> TreeNode<K,V> rightOf(TreeNode<K,V> p) {
+        return (p == null) ? null: p.right;
+    }
+
     private abstract class HashIterator<E> implements Iterator<E> {
         Entry<K,V> next;	// next entry to return
         int expectedModCount;	// For fast-fail
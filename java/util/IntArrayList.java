@@ -0,0 +1,619 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util;
+
+/**
+ * Resizable array of {@code int} values.  This class provides the
+ * operations of {@link ArrayList}, but stores its elements in a
+ * {@code int[]} rather than as {@code Integer} objects, so a list of n
+ * elements occupies about 4*n bytes and adding or reading an element
+ * does not allocate.  Where a {@code List<Integer>} is required, the
+ * {@link #asList} method provides a view of this list that boxes
+ * elements as they are accessed.<p>
+ *
+ * Because {@code remove(int)} would be ambiguous between an index and
+ * an element, elements are removed by index using {@link #removeAt}
+ * and by value using {@link #removeValue}.<p>
+ *
+ * The <tt>size</tt>, <tt>isEmpty</tt>, <tt>get</tt>, <tt>set</tt> and
+ * <tt>iterator</tt> operations run in constant time.  The <tt>add</tt>
+ * operation runs in <i>amortized constant time</i>, that is, adding n
+ * elements requires O(n) time.  All of the other operations run in
+ * linear time (roughly speaking).<p>
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access a <tt>IntArrayList</tt> instance
+ * concurrently, and at least one of the threads modifies the list
+ * structurally, it <i>must</i> be synchronized externally.<p>
+ *
+ * The iterators returned by this class's <tt>iterator</tt> method, and
+ * by the views returned by <tt>asList</tt>, are <i>fail-fast</i>: if
+ * the list is structurally modified at any time after the iterator is
+ * created, in any way except through the iterator's own <tt>remove</tt>
+ * method, the iterator will throw a {@link
+ * ConcurrentModificationException}.  Fail-fast iterators throw
+ * <tt>ConcurrentModificationException</tt> on a best-effort basis, and
+ * should be used only to detect bugs.<p>
+ *
+ * This class is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @see	    ArrayList
+ * @see	    IntIterator
+ * @see	    IntHashMap
+ * @since   1.7
+ */
+public class IntArrayList implements RandomAccess, Cloneable, java.io.Serializable {
+    private static final long serialVersionUID = 5950908271603460194L;
+
+    /**
+     * The array buffer into which the elements are stored.  The
+     * capacity of the list is the length of this array buffer.
+     */
+    private transient int[] elementData;
+
+    /**
+     * The size of the list (the number of elements it contains).
+     *
+     * @serial
+     */
+    private int size;
+
+    /**
+     * The number of times this list has been structurally modified.
+     */
+    private transient int modCount;
+
+    /** The view returned by asList, created lazily */
+    private transient List<Integer> listView;
+
+    /**
+     * Constructs an empty list with the specified initial capacity.
+     *
+     * @param   initialCapacity   the initial capacity of the list
+     * @exception IllegalArgumentException if the specified initial capacity
+     *            is negative
+     */
+    public IntArrayList(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal Capacity: "+
+                                               initialCapacity);
+        this.elementData = new int[initialCapacity];
+    }
+
+    /**
+     * Constructs an empty list with an initial capacity of ten.
+     */
+    public IntArrayList() {
+        this(10);
+    }
+
+    /**
+     * Constructs a list containing the elements of the specified
+     * array, in order.
+     *
+     * @param a the array whose elements are to be placed into this list
+     * @throws NullPointerException if the specified array is null
+     */
+    public IntArrayList(int[] a) {
+        elementData = Arrays.copyOf(a, a.length);
+        size = a.length;
+    }
+
+    /**
+     * Trims the capacity of this list to be the list's current size.
+     * An application can use this operation to minimize the storage
+     * of a list.
+     */
+    public void trimToSize() {
+        modCount++;
+        if (size < elementData.length)
+            elementData = Arrays.copyOf(elementData, size);
+    }
+
+    /**
+     * Increases the capacity of this list, if necessary, to ensure
+     * that it can hold at least the number of elements specified by
+     * the minimum capacity argument.
+     *
+     * @param   minCapacity   the desired minimum capacity
+     */
+    public void ensureCapacity(int minCapacity) {
+        modCount++;
+        int oldCapacity = elementData.length;
+        if (minCapacity > oldCapacity) {
+            int newCapacity = (oldCapacity * 3)/2 + 1;
+            if (newCapacity < minCapacity || newCapacity < 0)
+                newCapacity = minCapacity;
+            elementData = Arrays.copyOf(elementData, newCapacity);
+        }
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains no elements.
+     *
+     * @return <tt>true</tt> if this list contains no elements
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains the specified element.
+     *
+     * @param v element whose presence in this list is to be tested
+     * @return <tt>true</tt> if this list contains the specified element
+     */
+    public boolean contains(int v) {
+        return indexOf(v) >= 0;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     *
+     * @param v element to search for
+     * @return the index of the first occurrence of the element, or -1
+     */
+    public int indexOf(int v) {
+        int[] a = elementData;
+        for (int i = 0, n = size; i < n; i++)
+            if (a[i] == v)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     *
+     * @param v element to search for
+     * @return the index of the last occurrence of the element, or -1
+     */
+    public int lastIndexOf(int v) {
+        int[] a = elementData;
+        for (int i = size-1; i >= 0; i--)
+            if (a[i] == v)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Returns a copy of this <tt>IntArrayList</tt> instance.
+     *
+     * @return a clone of this <tt>IntArrayList</tt> instance
+     */
+    public Object clone() {
+        try {
+            IntArrayList v = (IntArrayList) super.clone();
+            v.elementData = Arrays.copyOf(elementData, size);
+            v.modCount = 0;
+            v.listView = null;
+            return v;
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError();
+        }
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list in
+     * proper sequence (from first to last element).  The returned
+     * array is newly allocated, so the caller is free to modify it.
+     *
+     * @return an array containing all of the elements in this list
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(elementData, size);
+    }
+
+    /**
+     * Returns the element at the specified position in this list.
+     *
+     * @param  index index of the element to return
+     * @return the element at the specified position in this list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public int get(int index) {
+        rangeCheck(index);
+        return elementData[index];
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with
+     * the specified element.
+     *
+     * @param index index of the element to replace
+     * @param v element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public int set(int index, int v) {
+        rangeCheck(index);
+        int oldValue = elementData[index];
+        elementData[index] = v;
+        return oldValue;
+    }
+
+    /**
+     * Appends the specified element to the end of this list.
+     *
+     * @param v element to be appended to this list
+     * @return <tt>true</tt>
+     */
+    public boolean add(int v) {
+        ensureCapacity(size + 1);  // Increments modCount
+        elementData[size++] = v;
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this
+     * list.  Shifts the element currently at that position (if any) and
+     * any subsequent elements to the right (adds one to their indices).
+     *
+     * @param index index at which the specified element is to be inserted
+     * @param v element to be inserted
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public void add(int index, int v) {
+        if (index > size || index < 0)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+        ensureCapacity(size + 1);  // Increments modCount
+        System.arraycopy(elementData, index, elementData, index + 1,
+                         size - index);
+        elementData[index] = v;
+        size++;
+    }
+
+    /**
+     * Appends all of the elements in the specified array to the end of
+     * this list, in order.
+     *
+     * @param a array containing elements to be added to this list
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws NullPointerException if the specified array is null
+     */
+    public boolean addAll(int[] a) {
+        int numNew = a.length;
+        ensureCapacity(size + numNew);  // Increments modCount
+        System.arraycopy(a, 0, elementData, size, numNew);
+        size += numNew;
+        return numNew != 0;
+    }
+
+    /**
+     * Appends all of the elements in the specified list to the end of
+     * this list, in order.
+     *
+     * @param c list containing elements to be added to this list
+     * @return <tt>true</tt> if this list changed as a result of the call
+     * @throws NullPointerException if the specified list is null
+     */
+    public boolean addAll(IntArrayList c) {
+        int numNew = c.size;
+        ensureCapacity(size + numNew);  // Increments modCount
+        System.arraycopy(c.elementData, 0, elementData, size, numNew);
+        size += numNew;
+        return numNew != 0;
+    }
+
+    /**
+     * Removes the element at the specified position in this list.
+     * Shifts any subsequent elements to the left (subtracts one from
+     * their indices).
+     *
+     * @param index the index of the element to be removed
+     * @return the element that was removed from the list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public int removeAt(int index) {
+        rangeCheck(index);
+        int oldValue = elementData[index];
+        fastRemove(index);
+        return oldValue;
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from this
+     * list, if it is present.
+     *
+     * @param v element to be removed from this list, if present
+     * @return <tt>true</tt> if this list contained the specified element
+     */
+    public boolean removeValue(int v) {
+        int index = indexOf(v);
+        if (index < 0)
+            return false;
+        fastRemove(index);
+        return true;
+    }
+
+    /*
+     * Private remove method that skips bounds checking and does not
+     * return the value removed.
+     */
+    private void fastRemove(int index) {
+        modCount++;
+        int numMoved = size - index - 1;
+        if (numMoved > 0)
+            System.arraycopy(elementData, index+1, elementData, index,
+                             numMoved);
+        --size;
+    }
+
+    /**
+     * Removes all of the elements from this list.  The list will be
+     * empty after this call returns.  The capacity is not changed.
+     */
+    public void clear() {
+        modCount++;
+        size = 0;
+    }
+
+    /**
+     * Sorts this list into ascending numerical order.
+     *
+     * @see Arrays#sort(int[], int, int)
+     */
+    public void sort() {
+        modCount++;
+        Arrays.sort(elementData, 0, size);
+    }
+
+    /**
+     * Searches this list for the specified value using the binary
+     * search algorithm.  The list must be sorted (as by the
+     * {@link #sort()} method) prior to making this call.
+     *
+     * @param key the value to be searched for
+     * @return index of the search key, if it is contained in the list;
+     *         otherwise, <tt>(-(<i>insertion point</i>) - 1)</tt>, as
+     *         defined by {@link Arrays#binarySearch(int[], int)}
+     */
+    public int binarySearch(int key) {
+        return Arrays.binarySearch(elementData, 0, size, key);
+    }
+
+    /**
+     * Returns an iterator over the elements in this list in proper
+     * sequence.  The iterator's {@link IntIterator#nextInt nextInt}
+     * method returns elements without boxing them.
+     *
+     * @return an iterator over the elements in this list
+     */
+    public IntIterator iterator() {
+        return new Itr();
+    }
+
+    /**
+     * Returns a {@code List<Integer>} view of this list.  Reading an
+     * element of the view boxes it, and changes to the view, including
+     * structural ones, write through to this list.  The view rejects
+     * null elements.
+     *
+     * @return a list view of this list
+     */
+    public List<Integer> asList() {
+        List<Integer> v = listView;
+        return (v != null) ? v : (listView = new ListView());
+    }
+
+    /**
+     * Compares the specified object with this list for equality.
+     * Returns <tt>true</tt> if the specified object is also a
+     * <tt>IntArrayList</tt>, both lists have the same size, and all
+     * corresponding elements are equal.
+     *
+     * @param o the object to be compared for equality with this list
+     * @return <tt>true</tt> if the specified object is equal to this list
+     */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof IntArrayList))
+            return false;
+        IntArrayList that = (IntArrayList) o;
+        int n = size;
+        if (that.size != n)
+            return false;
+        int[] a = elementData, b = that.elementData;
+        for (int i = 0; i < n; i++)
+            if (a[i] != b[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the hash code value for this list.  The hash code is
+     * the same as that of a {@code List<Integer>} holding the same
+     * elements, as defined by {@link List#hashCode}.
+     *
+     * @return the hash code value for this list
+     */
+    public int hashCode() {
+        int[] a = elementData;
+        int hashCode = 1;
+        for (int i = 0, n = size; i < n; i++)
+            hashCode = 31*hashCode + a[i];
+        return hashCode;
+    }
+
+    /**
+     * Returns a string representation of this list, in the format
+     * used by {@link AbstractCollection#toString}.
+     *
+     * @return a string representation of this list
+     */
+    public String toString() {
+        int n = size;
+        if (n == 0)
+            return "[]";
+        int[] a = elementData;
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (int i = 0; ; i++) {
+            sb.append(a[i]);
+            if (i == n - 1)
+                return sb.append(']').toString();
+            sb.append(", ");
+        }
+    }
+
+    /**
+     * Checks if the given index is in range.  If not, throws an appropriate
+     * runtime exception.  This method does *not* check if the index is
+     * negative: It is always used immediately prior to an array access,
+     * which throws an ArrayIndexOutOfBoundsException if index is negative.
+     */
+    private void rangeCheck(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+
+    private String outOfBoundsMsg(int index) {
+        return "Index: "+index+", Size: "+size;
+    }
+
+    /**
+     * Save the state of the <tt>IntArrayList</tt> instance to a stream
+     * (that is, serialize it).
+     *
+     * @serialData The length of the array backing the list is emitted
+     *             (int), followed by all of its elements (each a
+     *             <tt>int</tt>) in the proper order.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+        throws java.io.IOException {
+        int expectedModCount = modCount;
+        s.defaultWriteObject();
+        s.writeInt(elementData.length);
+        for (int i = 0; i < size; i++)
+            s.writeInt(elementData[i]);
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Reconstitute the <tt>IntArrayList</tt> instance from a stream
+     * (that is, deserialize it).
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws java.io.IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        int arrayLength = s.readInt();
+        if (arrayLength < size || size < 0)
+            throw new java.io.InvalidObjectException("Invalid size");
+        int[] a = elementData = new int[arrayLength];
+        for (int i = 0; i < size; i++)
+            a[i] = s.readInt();
+    }
+
+    private class Itr implements IntIterator {
+        int cursor;            // index of next element to return
+        int lastRet = -1;      // index of last element returned; -1 if no such
+        int expectedModCount = modCount;
+
+        public boolean hasNext() {
+            return cursor < size;
+        }
+
+        public int nextInt() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            int i = cursor;
+            if (i >= size)
+                throw new NoSuchElementException();
+            cursor = i + 1;
+            return elementData[lastRet = i];
+        }
+
+        public Integer next() {
+            return Integer.valueOf(nextInt());
+        }
+
+        public void remove() {
+            if (lastRet < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            fastRemove(lastRet);
+            cursor = lastRet;
+            lastRet = -1;
+            expectedModCount = modCount;
+        }
+    }
+
+    private final class ListView extends AbstractList<Integer>
+        implements RandomAccess {
+        /*
+         * The inherited modCount is advanced along with the backing
+         * list's for changes made through the view, for the benefit of
+         * AbstractList's list iterators and sublists.  iterator() uses
+         * the backing list's own fail-fast iterator.
+         */
+
+        public int size() {
+            return size;
+        }
+
+        public Iterator<Integer> iterator() {
+            return new Itr();
+        }
+
+        public Integer get(int index) {
+            return Integer.valueOf(IntArrayList.this.get(index));
+        }
+
+        public Integer set(int index, Integer element) {
+            return Integer.valueOf(IntArrayList.this.set(index, element.intValue()));
+        }
+
+        public void add(int index, Integer element) {
+            int v = element.intValue();
+            IntArrayList.this.add(index, v);
+            modCount = IntArrayList.this.modCount;
+        }
+
+        public Integer remove(int index) {
+            Integer v = Integer.valueOf(removeAt(index));
+            modCount = IntArrayList.this.modCount;
+            return v;
+        }
+
+        public boolean contains(Object o) {
+            return (o instanceof Integer) &&
+                indexOf(((Integer) o).intValue()) >= 0;
+        }
+
+        public int indexOf(Object o) {
+            return (o instanceof Integer) ?
+                IntArrayList.this.indexOf(((Integer) o).intValue()) : -1;
+        }
+
+        public int lastIndexOf(Object o) {
+            return (o instanceof Integer) ?
+                IntArrayList.this.lastIndexOf(((Integer) o).intValue()) : -1;
+        }
+
+        public void clear() {
+            IntArrayList.this.clear();
+            modCount = IntArrayList.this.modCount;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util;
+
+/**
+ * An iterator over {@code int} values that can return them without
+ * boxing.  The elements are returned by {@link #nextInt}; the
+ * {@link #next} method inherited from {@link Iterator} returns the
+ * same elements boxed, so that an {@code IntIterator} can also be
+ * passed to code expecting an {@code Iterator<Integer>}.
+ *
+ * <p>This interface is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @see IntArrayList
+ * @since 1.7
+ */
+public interface IntIterator extends Iterator<Integer> {
+    /**
+     * Returns the next element in the iteration.
+     *
+     * @return the next element in the iteration
+     * @throws NoSuchElementException if the iteration has no more elements
+     */
+    int nextInt();
+}
@@ -0,0 +1,1019 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util;
+
+/**
+ * Hash table mapping {@code int} keys to {@code long} values.  This
+ * class provides the operations of {@link HashMap}, but stores its
+ * keys and values in primitive arrays rather than as {@code Integer} and
+ * {@code Long} objects, and allocates no entry objects, so the table
+ * costs 12 bytes per slot.  Because there is no
+ * {@code null} to return, {@link #get(int) get}, {@link #put put} and
+ * {@link #remove remove} return {@code 0} for an absent key; {@link
+ * #containsKey containsKey} or {@link #get(int, long)} can be used where
+ * {@code 0} is also a meaningful value.<p>
+ *
+ * The table uses open addressing with linear probing: keys are stored
+ * in an array indexed by a hash of the key, and a key that collides
+ * with another is stored in the next free slot.  Removal moves
+ * following entries of the same run back into the freed slot, so the
+ * table contains no deleted-entry markers and lookups never slow down
+ * as entries are removed.  Lookups of keys that are close to each other
+ * in value, such as sequentially assigned identifiers, are spread over
+ * the table by multiplicative hashing.<p>
+ *
+ * This implementation provides constant-time performance for the
+ * basic operations (<tt>get</tt>, <tt>put</tt> and <tt>remove</tt>)
+ * as long as the table is not too full.  An instance has two
+ * parameters that affect its performance: <i>initial capacity</i> and
+ * <i>load factor</i>, with the same meaning as for {@code HashMap},
+ * except that the load factor must be less than one.  The default
+ * load factor (.75) offers a good tradeoff between time and space
+ * costs; lower values make lookups of absent keys faster at the
+ * expense of memory.<p>
+ *
+ * Entries are traversed without boxing using a {@link Cursor}
+ * obtained from {@link #cursor}.  Where a {@code Map<Integer, Long>} is
+ * required, the {@link #asMap} method provides a view of this map that
+ * boxes keys and values as they are accessed.<p>
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access a <tt>IntLongHashMap</tt> concurrently, and at
+ * least one of the threads modifies the map structurally, it
+ * <i>must</i> be synchronized externally.<p>
+ *
+ * Cursors, and the iterators of the collections returned by the view
+ * returned by <tt>asMap</tt>, are <i>fail-fast</i>: if the map is
+ * structurally modified at any time after the cursor is created, in
+ * any way except through the cursor's own <tt>remove</tt> method, the
+ * cursor will throw a {@link ConcurrentModificationException}.
+ * Fail-fast cursors throw <tt>ConcurrentModificationException</tt> on
+ * a best-effort basis, and should be used only to detect bugs.<p>
+ *
+ * This class is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @see	    HashMap
+ * @see	    IntArrayList
+ * @since   1.7
+ */
+public class IntLongHashMap implements Cloneable, java.io.Serializable {
+    private static final long serialVersionUID = 2141450381393191993L;
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity, used if a higher value is implicitly specified
+     * by either of the constructors with arguments.
+     * MUST be a power of two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The keys of the table, with 0 marking free slots.  Length MUST
+     * always be a power of two.  A mapping for the key 0 itself is held
+     * in zeroValue; for uniformity it is treated as residing in the
+     * pseudo-slot keys.length.
+     */
+    private transient int[] keys;
+
+    /**
+     * The values of the table, at the same indices as their keys.
+     */
+    private transient long[] vals;
+
+    /**
+     * True if the map contains a mapping for the key 0.
+     */
+    private transient boolean hasZeroKey;
+
+    /**
+     * The value mapped to the key 0, if hasZeroKey.
+     */
+    private transient long zeroValue;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    private transient int size;
+
+    /**
+     * The size above which the table is resized.  Always less than
+     * the table length, so that the table has a free slot to end
+     * probing whenever a key is inserted.
+     */
+    private transient int threshold;
+
+    /**
+     * The load factor for the hash table.
+     *
+     * @serial
+     */
+    final float loadFactor;
+
+    /**
+     * The number of times this map has been structurally modified.
+     */
+    private transient int modCount;
+
+    /** The view returned by asMap, created lazily */
+    private transient Map<Integer,Long> mapView;
+
+    /**
+     * Constructs an empty <tt>IntLongHashMap</tt> with the specified initial
+     * capacity and load factor.
+     *
+     * @param  initialCapacity the initial capacity
+     * @param  loadFactor      the load factor
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is not between zero and one, exclusive
+     */
+    public IntLongHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                                               initialCapacity);
+        if (!(loadFactor > 0.0f && loadFactor < 1.0f))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                                               loadFactor);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+
+        // Find a power of 2 >= initialCapacity
+        int capacity = 2;
+        while (capacity < initialCapacity)
+            capacity <<= 1;
+
+        this.loadFactor = loadFactor;
+        init(capacity);
+    }
+
+    /**
+     * Constructs an empty <tt>IntLongHashMap</tt> with the specified initial
+     * capacity and the default load factor (0.75).
+     *
+     * @param  initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public IntLongHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty <tt>IntLongHashMap</tt> with the default initial capacity
+     * (16) and the default load factor (0.75).
+     */
+    public IntLongHashMap() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs a new <tt>IntLongHashMap</tt> with the same mappings as the
+     * specified <tt>IntLongHashMap</tt>, and the default load factor (0.75).
+     *
+     * @param   m the map whose mappings are to be placed in this map
+     * @throws  NullPointerException if the specified map is null
+     */
+    public IntLongHashMap(IntLongHashMap m) {
+        this(Math.max((int) (m.size() / DEFAULT_LOAD_FACTOR) + 1,
+                      DEFAULT_INITIAL_CAPACITY), DEFAULT_LOAD_FACTOR);
+        putAll(m);
+    }
+
+    /**
+     * Allocates a table of the given capacity.
+     */
+    private void init(int capacity) {
+        keys = new int[capacity];
+        vals = new long[capacity];
+        threshold = thresholdFor(capacity);
+    }
+
+    /**
+     * Returns the threshold for a table of the given capacity.
+     */
+    private int thresholdFor(int capacity) {
+        if (capacity == MAXIMUM_CAPACITY)
+            return MAXIMUM_CAPACITY - 2;
+        int t = (int) (capacity * loadFactor);
+        return (t < capacity - 1) ? t : capacity - 1;
+    }
+
+    /**
+     * Returns the preferred slot of the given key.  Multiplying by the
+     * golden ratio spreads nearby keys over the table, and folding the
+     * high bits into the low bits lets small tables benefit from the
+     * well-mixed high bits of the product.
+     */
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the pseudo-slot of the given key: its index in the table,
+     * keys.length for the key 0, or -1 if the key is absent.
+     */
+    private int find(int key) {
+        if (key == 0)
+            return hasZeroKey ? keys.length : -1;
+        int[] ks = keys;
+        int mask = ks.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int k = ks[i];
+            if (k == key)
+                return i;
+            if (k == 0)
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the value at the given pseudo-slot.
+     */
+    final long valueAt(int i) {
+        return (i == keys.length) ? zeroValue : vals[i];
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code 0} if this map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value to which the specified key is mapped, or
+     *         {@code 0} if this map contains no mapping for the key
+     */
+    public long get(int key) {
+        int i = find(key);
+        return (i < 0) ? 0 : valueAt(i);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code defaultValue} if this map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @param defaultValue the value to return if there is no mapping
+     * @return the value to which the specified key is mapped, or
+     *         {@code defaultValue} if this map contains no mapping
+     *         for the key
+     */
+    public long get(int key, long defaultValue) {
+        int i = find(key);
+        return (i < 0) ? defaultValue : valueAt(i);
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the
+     * specified key.
+     *
+     * @param   key   The key whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     */
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value
+     */
+    public boolean containsValue(long value) {
+        if (hasZeroKey && zeroValue == value)
+            return true;
+        int[] ks = keys;
+        long[] vs = vals;
+        for (int i = ks.length; --i >= 0; )
+            if (ks[i] != 0 && vs[i] == value)
+                return true;
+        return false;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>0</tt> if there was no mapping for <tt>key</tt>.
+     * @throws IllegalStateException if the map already holds the
+     *         maximum number of mappings
+     */
+    public long put(int key, long value) {
+        if (key == 0) {
+            long oldValue = zeroValue;
+            zeroValue = value;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                modCount++;
+                if (++size > threshold)
+                    resize();
+            }
+            return oldValue;
+        }
+        int[] ks = keys;
+        int mask = ks.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int k = ks[i];
+            if (k == key) {
+                long oldValue = vals[i];
+                vals[i] = value;
+                return oldValue;
+            }
+            if (k == 0) {
+                if (size > threshold)
+                    throw new IllegalStateException("Map is full");
+                ks[i] = key;
+                vals[i] = value;
+                modCount++;
+                if (++size > threshold)
+                    resize();
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map.
+     * These mappings will replace any mappings that this map had for
+     * any of the keys currently in the specified map.
+     *
+     * @param m mappings to be stored in this map
+     * @throws NullPointerException if the specified map is null
+     */
+    public void putAll(IntLongHashMap m) {
+        if (m.hasZeroKey)
+            put(0, m.zeroValue);
+        int[] ks = m.keys;
+        long[] vs = m.vals;
+        for (int i = ks.length; --i >= 0; ) {
+            int k = ks[i];
+            if (k != 0)
+                put(k, vs[i]);
+        }
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param  key key whose mapping is to be removed from the map
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>0</tt> if there was no mapping for <tt>key</tt>.
+     */
+    public long remove(int key) {
+        int i = find(key);
+        if (i < 0)
+            return 0;
+        long oldValue = valueAt(i);
+        removeAt(i, null);
+        return oldValue;
+    }
+
+    /**
+     * Removes the mapping at the given pseudo-slot.
+     */
+    private void removeAt(int i, Cursor cursor) {
+        if (i == keys.length) {
+            hasZeroKey = false;
+            zeroValue = 0;
+        }
+        else
+            shiftKeys(i, cursor);
+        modCount++;
+        size--;
+    }
+
+    /**
+     * Frees the given slot, moving back any following entries of the
+     * same run that would otherwise become unreachable.  An entry that
+     * may move back into the slot whose preferred slot is cyclically
+     * after it stays where it is.
+     *
+     * Cursors traverse the table from the highest slot down, so an
+     * entry moved back from a higher slot has already been visited.
+     * Entries moved from the low end of the table to the high end, when
+     * the run wraps around, would be skipped by the given cursor (if
+     * any), which is told to visit them separately.
+     */
+    private void shiftKeys(int pos, Cursor cursor) {
+        int[] ks = keys;
+        long[] vs = vals;
+        int mask = ks.length - 1;
+        for (;;) {
+            int last = pos;
+            int k;
+            for (;;) {
+                pos = (pos + 1) & mask;
+                if ((k = ks[pos]) == 0) {
+                    ks[last] = 0;
+                    vs[last] = 0;
+                    return;
+                }
+                int h = hash(k) & mask;
+                if (last <= pos ? (last >= h || h > pos)
+                                : (last >= h && h > pos))
+                    break;
+            }
+            if (pos < last && cursor != null)
+                cursor.addWrapped(k);
+            ks[last] = k;
+            vs[last] = vs[pos];
+        }
+    }
+
+    /**
+     * Doubles the capacity of the table, or, if it is already at the
+     * maximum capacity, allows it to be filled up to its last free slot.
+     */
+    private void resize() {
+        int[] oldKeys = keys;
+        long[] oldVals = vals;
+        int oldCapacity = oldKeys.length;
+        if (oldCapacity == MAXIMUM_CAPACITY) {
+            threshold = thresholdFor(MAXIMUM_CAPACITY);
+            return;
+        }
+        init(oldCapacity << 1);
+        int[] ks = keys;
+        long[] vs = vals;
+        int mask = ks.length - 1;
+        for (int j = oldCapacity; --j >= 0; ) {
+            int k = oldKeys[j];
+            if (k != 0) {
+                int i = hash(k) & mask;
+                while (ks[i] != 0)
+                    i = (i + 1) & mask;
+                ks[i] = k;
+                vs[i] = oldVals[j];
+            }
+        }
+    }
+
+    /**
+     * Removes all of the mappings from this map.  The capacity is not
+     * changed.
+     */
+    public void clear() {
+        modCount++;
+        Arrays.fill(keys, 0);
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns a newly allocated array containing the keys of this map,
+     * in no particular order.
+     *
+     * @return an array containing the keys of this map
+     */
+    public int[] keys() {
+        int[] a = new int[size];
+        int n = 0;
+        if (hasZeroKey)
+            n++;                // a[0] is already 0
+        int[] ks = keys;
+        for (int i = ks.length; --i >= 0; ) {
+            int k = ks[i];
+            if (k != 0)
+                a[n++] = k;
+        }
+        return a;
+    }
+
+    /**
+     * Returns a newly allocated array containing the values of this
+     * map, in the same order as the keys returned by {@link #keys} if
+     * the map is not modified in between.
+     *
+     * @return an array containing the values of this map
+     */
+    public long[] values() {
+        long[] a = new long[size];
+        int n = 0;
+        if (hasZeroKey)
+            a[n++] = zeroValue;
+        int[] ks = keys;
+        long[] vs = vals;
+        for (int i = ks.length; --i >= 0; )
+            if (ks[i] != 0)
+                a[n++] = vs[i];
+        return a;
+    }
+
+    /**
+     * Returns a new cursor positioned before the first mapping of this
+     * map.
+     *
+     * @return a cursor over the mappings of this map
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Returns a {@code Map<Integer,Long>} view of this map.  Keys and values
+     * are boxed as they are read, and changes to the view, including
+     * structural ones, write through to this map.  The view rejects
+     * null keys and values.
+     *
+     * @return a map view of this map
+     */
+    public Map<Integer,Long> asMap() {
+        Map<Integer,Long> m = mapView;
+        return (m != null) ? m : (mapView = new MapView());
+    }
+
+    /**
+     * Returns a copy of this <tt>IntLongHashMap</tt> instance: the keys and
+     * values themselves are not cloned.
+     *
+     * @return a copy of this map
+     */
+    public Object clone() {
+        try {
+            IntLongHashMap m = (IntLongHashMap) super.clone();
+            m.keys = keys.clone();
+            m.vals = vals.clone();
+            m.modCount = 0;
+            m.mapView = null;
+            return m;
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError();
+        }
+    }
+
+    /**
+     * Compares the specified object with this map for equality.
+     * Returns <tt>true</tt> if the given object is also a
+     * <tt>IntLongHashMap</tt> and the two maps contain the same mappings.
+     *
+     * @param o object to be compared for equality with this map
+     * @return <tt>true</tt> if the specified object is equal to this map
+     */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof IntLongHashMap))
+            return false;
+        IntLongHashMap m = (IntLongHashMap) o;
+        if (m.size != size)
+            return false;
+        if (hasZeroKey && !(m.hasZeroKey && zeroValue == m.zeroValue))
+            return false;
+        int[] ks = keys;
+        long[] vs = vals;
+        for (int i = ks.length; --i >= 0; ) {
+            int k = ks[i];
+            if (k != 0) {
+                int j = m.find(k);
+                if (j < 0 || vs[i] != m.vals[j])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code value for this map.  The hash code is the
+     * same as that of a {@code Map<Integer,Long>} holding the same
+     * mappings, as defined by {@link Map#hashCode}.
+     *
+     * @return the hash code value for this map
+     */
+    public int hashCode() {
+        int h = 0;
+        if (hasZeroKey)
+            h += (int)(zeroValue ^ (zeroValue >>> 32));
+        int[] ks = keys;
+        long[] vs = vals;
+        for (int i = ks.length; --i >= 0; ) {
+            int k = ks[i];
+            if (k != 0)
+                h += k ^ (int)(vs[i] ^ (vs[i] >>> 32));
+        }
+        return h;
+    }
+
+    /**
+     * Returns a string representation of this map, in the format used
+     * by {@link AbstractMap#toString}.
+     *
+     * @return a string representation of this map
+     */
+    public String toString() {
+        Cursor c = cursor();
+        if (!c.advance())
+            return "{}";
+        StringBuilder sb = new StringBuilder();
+        sb.append('{');
+        for (;;) {
+            sb.append(c.key()).append('=');
+            sb.append(c.value());
+            if (!c.advance())
+                return sb.append('}').toString();
+            sb.append(", ");
+        }
+    }
+
+    /**
+     * Save the state of the <tt>IntLongHashMap</tt> instance to a stream (i.e.,
+     * serialize it).
+     *
+     * @serialData The <i>capacity</i> of the table (the length of the
+     *             key array) is emitted (int), followed by the
+     *             <i>size</i> (an int, the number of key-value
+     *             mappings), followed by the key (int) and value (long)
+     *             for each key-value mapping.  The key-value mappings
+     *             are emitted in no particular order.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+        throws java.io.IOException {
+        int expectedModCount = modCount;
+        s.defaultWriteObject();
+        s.writeInt(keys.length);
+        s.writeInt(size);
+        if (hasZeroKey) {
+            s.writeInt(0);
+            s.writeLong(zeroValue);
+        }
+        int[] ks = keys;
+        long[] vs = vals;
+        for (int i = ks.length; --i >= 0; ) {
+            int k = ks[i];
+            if (k != 0) {
+                s.writeInt(k);
+                s.writeLong(vs[i]);
+            }
+        }
+        if (modCount != expectedModCount)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Reconstitute the <tt>IntLongHashMap</tt> instance from a stream (i.e.,
+     * deserialize it).
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws java.io.IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (!(loadFactor > 0.0f && loadFactor < 1.0f))
+            throw new java.io.InvalidObjectException("Illegal load factor: " +
+                                                     loadFactor);
+        int capacity = s.readInt();
+        int n = s.readInt();
+        if (capacity < 2 || capacity > MAXIMUM_CAPACITY ||
+            (capacity & (capacity - 1)) != 0 || n < 0)
+            throw new java.io.InvalidObjectException("Invalid capacity or size");
+        init(capacity);
+        for (int i = 0; i < n; i++) {
+            int key = s.readInt();
+            long value = s.readLong();
+            put(key, value);
+        }
+    }
+
+    /**
+     * A cursor over the mappings of a {@code IntLongHashMap}, which reads keys
+     * and values without boxing them.  A cursor is initially positioned
+     * before the first mapping; each call to {@link #advance} moves it
+     * to the next mapping, whose key and value are then available from
+     * {@link #key} and {@link #value}.  Mappings are visited in no
+     * particular order.  Typical usage is:
+     *
+     * <pre>
+     * for (IntLongHashMap.Cursor c = map.cursor(); c.advance(); ) {
+     *     int key = c.key();
+     *     long value = c.value();
+     *     ...
+     * }</pre>
+     *
+     * @since 1.7
+     */
+    public final class Cursor {
+        /*
+         * The table is traversed from the pseudo-slot of the key 0
+         * down to slot 0, followed by any entries that removals through
+         * this cursor moved from unvisited to visited slots (see
+         * shiftKeys).
+         */
+
+        private int index;          // next pseudo-slot to examine, plus one
+        private int slot = -1;      // pseudo-slot of current mapping, or -1
+        private int remaining;      // number of mappings not yet visited
+        private int key;             // key of current mapping
+        private int[] wrapped;       // keys moved by shiftKeys, or null
+        private int wrappedCount;
+        private int expectedModCount;
+
+        Cursor() {
+            index = keys.length + 1;
+            remaining = size;
+            expectedModCount = modCount;
+        }
+
+        /**
+         * Moves this cursor to the next mapping, if any.
+         *
+         * @return <tt>true</tt> if the cursor is positioned at a
+         *         mapping, <tt>false</tt> if there are no more mappings
+         * @throws ConcurrentModificationException if the map was
+         *         structurally modified other than through this cursor
+         */
+        public boolean advance() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (remaining == 0) {
+                slot = -1;
+                return false;
+            }
+            --remaining;
+            int[] ks = keys;
+            while (index > 0) {
+                int i = --index;
+                if (i == ks.length) {
+                    if (hasZeroKey) {
+                        key = 0;
+                        slot = i;
+                        return true;
+                    }
+                }
+                else if (ks[i] != 0) {
+                    key = ks[i];
+                    slot = i;
+                    return true;
+                }
+            }
+            key = wrapped[--wrappedCount];
+            slot = find(key);
+            return true;
+        }
+
+        /**
+         * Returns the key of the current mapping.
+         *
+         * @return the key of the current mapping
+         * @throws IllegalStateException if the cursor is not positioned
+         *         at a mapping
+         */
+        public int key() {
+            checkSlot();
+            return key;
+        }
+
+        /**
+         * Returns the value of the current mapping.
+         *
+         * @return the value of the current mapping
+         * @throws IllegalStateException if the cursor is not positioned
+         *         at a mapping
+         */
+        public long value() {
+            checkSlot();
+            return valueAt(slot);
+        }
+
+        /**
+         * Replaces the value of the current mapping.
+         *
+         * @param value the new value
+         * @return the previous value of the current mapping
+         * @throws IllegalStateException if the cursor is not positioned
+         *         at a mapping
+         */
+        public long setValue(long value) {
+            checkSlot();
+            long oldValue = valueAt(slot);
+            if (slot == keys.length)
+                zeroValue = value;
+            else
+                vals[slot] = value;
+            return oldValue;
+        }
+
+        /**
+         * Removes the current mapping from the map.  The cursor is then
+         * no longer positioned at a mapping until the next call to
+         * {@link #advance}.
+         *
+         * @throws IllegalStateException if the cursor is not positioned
+         *         at a mapping
+         */
+        public void remove() {
+            checkSlot();
+            removeAt(slot, (index > 0) ? this : null);
+            slot = -1;
+            expectedModCount = modCount;
+        }
+
+        private void checkSlot() {
+            if (slot < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        void addWrapped(int k) {
+            if (wrapped == null)
+                wrapped = new int[2];
+            else if (wrappedCount == wrapped.length)
+                wrapped = Arrays.copyOf(wrapped, wrappedCount << 1);
+            wrapped[wrappedCount++] = k;
+        }
+
+        boolean hasRemaining() {
+            return remaining > 0;
+        }
+    }
+
+    private final class MapView extends AbstractMap<Integer,Long> {
+        private Set<Map.Entry<Integer,Long>> entrySet;
+
+        public int size() {
+            return size;
+        }
+
+        public boolean containsKey(Object key) {
+            return (key instanceof Integer) &&
+                find(((Integer) key).intValue()) >= 0;
+        }
+
+        public boolean containsValue(Object value) {
+            return (value instanceof Long) &&
+                IntLongHashMap.this.containsValue(((Long) value).longValue());
+        }
+
+        public Long get(Object key) {
+            if (!(key instanceof Integer))
+                return null;
+            int i = find(((Integer) key).intValue());
+            return (i < 0) ? null : Long.valueOf(valueAt(i));
+        }
+
+        public Long put(Integer key, Long value) {
+            int k = key.intValue();
+            long v = value.longValue();
+            boolean present = find(k) >= 0;
+            long oldValue = IntLongHashMap.this.put(k, v);
+            return present ? Long.valueOf(oldValue) : null;
+        }
+
+        public Long remove(Object key) {
+            if (!(key instanceof Integer))
+                return null;
+            int i = find(((Integer) key).intValue());
+            if (i < 0)
+                return null;
+            long oldValue = valueAt(i);
+            removeAt(i, null);
+            return Long.valueOf(oldValue);
+        }
+
+        public void clear() {
+            IntLongHashMap.this.clear();
+        }
+
+        public Set<Map.Entry<Integer,Long>> entrySet() {
+            Set<Map.Entry<Integer,Long>> es = entrySet;
+            return (es != null) ? es : (entrySet = new EntrySet());
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<Integer,Long>> {
+        public Iterator<Map.Entry<Integer,Long>> iterator() {
+            return new EntryIterator();
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry e = (Map.Entry) o;
+            Object k = e.getKey();
+            if (!(k instanceof Integer))
+                return false;
+            int i = find(((Integer) k).intValue());
+            Object v = e.getValue();
+            return i >= 0 && (v instanceof Long) &&
+                valueAt(i) == ((Long) v).longValue();
+        }
+
+        public boolean remove(Object o) {
+            if (!contains(o))
+                return false;
+            int k = ((Integer) ((Map.Entry) o).getKey()).intValue();
+            removeAt(find(k), null);
+            return true;
+        }
+
+        public void clear() {
+            IntLongHashMap.this.clear();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<Integer,Long>> {
+        private final Cursor cursor = new Cursor();
+
+        public boolean hasNext() {
+            return cursor.hasRemaining();
+        }
+
+        public Map.Entry<Integer,Long> next() {
+            if (!cursor.advance())
+                throw new NoSuchElementException();
+            return new ViewEntry(cursor.key(), cursor.value());
+        }
+
+        public void remove() {
+            cursor.remove();
+        }
+    }
+
+    /**
+     * An entry returned by the iterators of the view.  Its value is
+     * a snapshot, and setValue writes through to the map by key.
+     */
+    private final class ViewEntry implements Map.Entry<Integer,Long> {
+        private final int key;
+        private long value;
+
+        ViewEntry(int key, long value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Integer getKey() {
+            return Integer.valueOf(key);
+        }
+
+        public Long getValue() {
+            return Long.valueOf(value);
+        }
+
+        public Long setValue(Long value) {
+            long v = value.longValue();
+            long oldValue = this.value;
+            IntLongHashMap.this.put(key, v);
+            this.value = v;
+            return Long.valueOf(oldValue);
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry e = (Map.Entry) o;
+            return Integer.valueOf(key).equals(e.getKey()) &&
+                Long.valueOf(value).equals(e.getValue());
+        }
+
+        public int hashCode() {
+            return key ^ (int)(value ^ (value >>> 32));
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
@@ -423,6 +423,7 @@ public class LinkedHashMap<K,V>
         HashMap.Entry<K,V> old = table[bucketIndex];
 	Entry<K,V> e = new Entry<K,V>(hash, key, value, old);
         table[bucketIndex] = e;
+        binAdded(bucketIndex);
         e.addBefore(header);
         size++;
     }
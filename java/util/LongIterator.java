@@ -0,0 +1,32 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util;
+
+/**
+ * An iterator over {@code long} values that can return them without
+ * boxing.  The elements are returned by {@link #nextLong}; the
+ * {@link #next} method inherited from {@link Iterator} returns the
+ * same elements boxed, so that an {@code LongIterator} can also be
+ * passed to code expecting an {@code Iterator<Long>}.
+ *
+ * <p>This interface is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @see LongArrayList
+ * @since 1.7
+ */
+public interface LongIterator extends Iterator<Long> {
+    /**
+     * Returns the next element in the iteration.
+     *
+     * @return the next element in the iteration
+     * @throws NoSuchElementException if the iteration has no more elements
+     */
+    long nextLong();
+}
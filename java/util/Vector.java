@@ -1001,6 +1001,30 @@ public class Vector<E>
 	    elementData[--elementCount] = null;
     }
 
+    /**
+     * Sorts this Vector according to the order induced by the specified
+     * comparator.  The sort is performed in place on the backing array
+     * while holding this Vector's lock, so it is atomic with respect to
+     * other operations on this Vector.  This sort is guaranteed to be
+     * <i>stable</i>: equal elements will not be reordered as a result
+     * of the sort.  This method is used by {@link
+     * Collections#sort(List, Comparator)} for instances of this class.
+     *
+     * @param c the comparator to determine the order of the Vector.  A
+     *        {@code null} value indicates that the elements'
+     *        {@linkplain Comparable natural ordering} should be used.
+     * @throws ClassCastException if the Vector contains elements that are
+     *         not <i>mutually comparable</i> using the specified comparator
+     * @throws IllegalArgumentException (optional) if the comparator is
+     *         found to violate the {@link Comparator} contract
+     * @see Arrays#sort(Object[], int, int, Comparator)
+     * @since 1.7
+     */
+    public synchronized void sort(Comparator<? super E> c) {
+        Arrays.sort((E[]) elementData, 0, elementCount, c);
+        modCount++;
+    }
+
     /**
      * Save the state of the {@code Vector} instance to a stream (that
      * is, serialize it).  This method is present merely for synchronization.
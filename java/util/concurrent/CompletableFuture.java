@@ -0,0 +1,2108 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.concurrent;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link Future} that may be explicitly completed (setting its
+ * value and status), and may include dependent functions and actions
+ * that trigger upon its completion.
+ *
+ * <p>When two or more threads attempt to {@link #complete} or {@link
+ * #completeExceptionally} a CompletableFuture, only one of them
+ * succeeds.
+ *
+ * <p>Methods are available for adding dependents based on
+ * user-provided Functions, Actions, or Runnables. The appropriate
+ * form to use depends on whether actions require arguments and/or
+ * produce results.  Completion of a dependent action will trigger the
+ * completion of another CompletableFuture.  Actions may also be
+ * triggered after either or both the current and another
+ * CompletableFuture complete.  Multiple CompletableFutures may also
+ * be grouped as one using {@link #anyOf} and {@link #allOf}.
+ *
+ * <p>Actions supplied for dependent completions (mainly using methods
+ * with prefix {@code then}) may be performed by the thread that
+ * completes the current CompletableFuture, or by any other caller of
+ * these methods.  There are no guarantees about the order of
+ * processing completions unless constrained by these methods.
+ *
+ * <p>Since (unlike {@link FutureTask}) this class has no direct
+ * control over the computation that causes it to be completed,
+ * cancellation is treated as just another form of exceptional completion.
+ * Method {@link #cancel cancel} has the same effect as
+ * {@code completeExceptionally(new CancellationException())}.
+ *
+ * <p>Upon exceptional completion (including cancellation), or when a
+ * completion entails an exception during computation of a dependent
+ * function or action, dependent CompletableFutures are completed
+ * exceptionally with a {@link CompletionException} holding the
+ * exception as its cause.  In the case of method {@link #get}, the
+ * underlying cause is reported within an {@link ExecutionException};
+ * method {@link #join} instead throws the {@code CompletionException}.
+ *
+ * <p>CompletableFutures may be composed without blocking any thread:
+ * waiting threads are parked only in methods {@code get} and {@code
+ * join}, and dependent actions are run by whichever thread triggers
+ * them, or are handed to an {@link Executor} (for example an {@link
+ * ExecutorService}) in methods with suffix {@code Async}.  Async
+ * methods without an explicit Executor argument use the {@link
+ * ForkJoinPool#commonPool()} (unless it does not support a
+ * parallelism level of at least two, in which case a new Thread is
+ * used to run each task).
+ *
+ * <p>Functions and actions are supplied using the nested interfaces
+ * {@link Generator}, {@link Fun}, {@link BiFun}, {@link Action} and
+ * {@link BiAction}, or {@link Runnable}.  For example, the following
+ * sums the results of two remote calls without blocking either the
+ * calling thread or a pool thread:
+ *
+ *  <pre> {@code
+ * CompletableFuture<Integer> a = CompletableFuture.supplyAsync(
+ *   new CompletableFuture.Generator<Integer>() {
+ *     public Integer get() { return service.countA(); }}, executor);
+ * CompletableFuture<Integer> b = ...;
+ * CompletableFuture<Integer> sum = a.thenCombine(b,
+ *   new CompletableFuture.BiFun<Integer, Integer, Integer>() {
+ *     public Integer apply(Integer x, Integer y) { return x + y; }});}</pre>
+ *
+ * @since 1.7
+ * @author Doug Lea
+ * @param <T> The result type returned by this future's {@code join}
+ * and {@code get} methods
+ */
+public class CompletableFuture<T> implements Future<T> {
+
+    // Interfaces for functions and actions
+
+    /** Interface describing a function of no arguments */
+    public static interface Generator<T> { T get(); }
+    /** Interface describing a function of one argument */
+    public static interface Fun<A,T> { T apply(A a); }
+    /** Interface describing a function of two arguments */
+    public static interface BiFun<A,B,T> { T apply(A a, B b); }
+    /** Interface describing an action of one argument */
+    public static interface Action<A> { void accept(A a); }
+    /** Interface describing an action of two arguments */
+    public static interface BiAction<A,B> { void accept(A a, B b); }
+
+    /*
+     * Overview:
+     *
+     * A CompletableFuture may have dependent completion actions,
+     * collected in a linked (Treiber) stack. It atomically completes
+     * by CASing a result field, and then pops off and runs those
+     * actions. This applies across normal vs exceptional outcomes,
+     * sync vs async actions, binary triggers, and various forms of
+     * completions.
+     *
+     * Non-nullness of field result (set via CAS) indicates done.  An
+     * AltResult is used to box null as a result, as well as to hold
+     * exceptions.  Using a single field makes completion simple to
+     * detect and trigger.
+     *
+     * Dependent actions are represented by Completion objects linked
+     * in the stack of each source they wait on.  Each Completion has
+     * a tryFire method that checks whether its sources are done and,
+     * if so, claims it (via CAS on its status field so that it runs
+     * exactly once) and then either runs it in the current thread
+     * or, for async forms, hands it to its Executor.  tryFire is
+     * invoked by postComplete when a source completes, and also
+     * directly after pushing, to cover races in which the source
+     * completed before the push became visible.
+     *
+     * Since a Completion has only one next link, actions waiting on
+     * two sources push a CoCompletion proxy onto the second source.
+     * "Either" completions push onto both and rely on claiming so
+     * that only the first trigger runs the action; the proxy left in
+     * the other stack is discarded when that source completes.
+     * allOf and anyOf build balanced trees of such binary relays.
+     *
+     * Blocking methods push a Signaller, which unparks the waiting
+     * thread, and block via ForkJoinPool.managedBlock so that
+     * ForkJoinPool workers waiting on a result may be compensated.
+     */
+
+    volatile Object result;       // Either the result or boxed AltResult
+    volatile Completion stack;    // Top of Treiber stack of dependent actions
+
+    /** A boxed result, for nulls and exceptions */
+    static final class AltResult {
+        final Throwable ex;        // null only for NIL
+        AltResult(Throwable ex) { this.ex = ex; }
+    }
+
+    /** The encoding of the null value. */
+    static final AltResult NIL = new AltResult(null);
+
+    /**
+     * Creates a new incomplete CompletableFuture.
+     */
+    public CompletableFuture() {
+    }
+
+    /**
+     * Creates a new complete CompletableFuture with given encoded result.
+     */
+    private CompletableFuture(Object r) {
+        this.result = r;
+    }
+
+    final boolean casResult(Object r) {
+        return UNSAFE.compareAndSwapObject(this, RESULT, null, r);
+    }
+
+    final boolean casStack(Completion cmp, Completion val) {
+        return UNSAFE.compareAndSwapObject(this, STACK, cmp, val);
+    }
+
+    /** Returns true if successfully pushed c onto stack. */
+    final boolean tryPushStack(Completion c) {
+        Completion h = stack;
+        c.next = h;
+        return casStack(h, c);
+    }
+
+    /** Unconditionally pushes c onto stack, retrying if necessary. */
+    final void pushStack(Completion c) {
+        while (!tryPushStack(c))
+            ;
+    }
+
+    /**
+     * Pops and tries to trigger all reachable dependents.  Call only
+     * when known to be done.
+     */
+    final void postComplete() {
+        Completion h;
+        while ((h = stack) != null) {
+            if (casStack(h, h.next)) {
+                h.next = null;
+                h.tryFire();
+            }
+        }
+    }
+
+    // Encoding and completion of results
+
+    /** Returns the encoding of the given (non-exceptional) value. */
+    static Object encodeValue(Object v) {
+        return (v == null) ? NIL : v;
+    }
+
+    /**
+     * Returns the encoding of the given exception thrown by a
+     * function or action, wrapping it in a CompletionException
+     * unless it already is one.
+     */
+    static AltResult encodeThrowable(Throwable x) {
+        return new AltResult((x instanceof CompletionException) ? x :
+                             new CompletionException(x));
+    }
+
+    /**
+     * Returns the encoding to relay the given result of a source
+     * future to a dependent, wrapping any exception in a
+     * CompletionException unless it already is one.
+     */
+    static Object encodeRelay(Object r) {
+        Throwable x;
+        if (r instanceof AltResult && (x = ((AltResult)r).ex) != null &&
+            !(x instanceof CompletionException))
+            r = new AltResult(new CompletionException(x));
+        return r;
+    }
+
+    /**
+     * Returns the exception held by the given encoded result, or
+     * null if it is a normal (possibly null) value.
+     */
+    static Throwable exceptionOf(Object r) {
+        return (r instanceof AltResult) ? ((AltResult)r).ex : null;
+    }
+
+    /** Returns the value held by the given normal encoded result. */
+    @SuppressWarnings("unchecked")
+    static <V> V valueOf(Object r) {
+        return (r instanceof AltResult) ? null : (V)r;
+    }
+
+    /** Completes with the given encoding, triggering dependents. */
+    final boolean completeEncoded(Object r) {
+        if (casResult(r)) {
+            postComplete();
+            return true;
+        }
+        return false;
+    }
+
+    final boolean completeValue(Object v) {
+        return completeEncoded(encodeValue(v));
+    }
+
+    final boolean completeThrowable(Throwable x) {
+        return completeEncoded(encodeThrowable(x));
+    }
+
+    final boolean completeRelay(Object r) {
+        return completeEncoded(encodeRelay(r));
+    }
+
+    /**
+     * Completes the given future with the outcome of this one, now
+     * or upon completion.
+     */
+    final void relayTo(CompletableFuture<?> d) {
+        Object r = result;
+        if (r != null)
+            d.completeRelay(r);
+        else
+            attach(new UniRelay(null, d, this));
+    }
+
+    // Completions
+
+    /**
+     * A node in the stack of dependents of one or more sources.
+     */
+    abstract static class Completion {
+        volatile Completion next;      // Treiber stack link
+        volatile int status;           // nonzero when claimed
+
+        /**
+         * Performs this completion if triggered and not already
+         * claimed; otherwise does nothing.
+         */
+        abstract void tryFire();
+
+        /** Returns true if this call claimed the right to run. */
+        final boolean claim() {
+            return status == 0 &&
+                UNSAFE.compareAndSwapInt(this, STATUS, 0, 1);
+        }
+    }
+
+    /**
+     * Base class for actions completing a dependent future, either
+     * in the thread triggering them or in an Executor.
+     */
+    abstract static class Dependent extends Completion implements Runnable {
+        final Executor executor;               // null if synchronous
+        final CompletableFuture<?> dep;        // the future to complete
+
+        Dependent(Executor executor, CompletableFuture<?> dep) {
+            this.executor = executor;
+            this.dep = dep;
+        }
+
+        /** Returns true if the sources required to run are done. */
+        abstract boolean isReady();
+
+        final void tryFire() {
+            if (isReady() && claim()) {
+                Executor e = executor;
+                if (e == null)
+                    run();
+                else {
+                    try {
+                        e.execute(this);
+                    } catch (Throwable ex) {
+                        dep.completeThrowable(ex);
+                    }
+                }
+            }
+        }
+    }
+
+    /** A proxy pushed onto the second source of a binary completion. */
+    static final class CoCompletion extends Completion {
+        final Completion base;
+        CoCompletion(Completion base) { this.base = base; }
+        void tryFire() { base.tryFire(); }
+    }
+
+    /** Adds c as a dependent of this future. */
+    final void attach(Completion c) {
+        if (result == null)
+            pushStack(c);
+        c.tryFire();
+    }
+
+    /** Adds c as a dependent of both this and b. */
+    final void attachBoth(CompletableFuture<?> b, Completion c) {
+        if (result == null)
+            pushStack(c);
+        if (b.result == null)
+            b.pushStack(new CoCompletion(c));
+        c.tryFire();
+    }
+
+    /** Adds c as a dependent of either this or b. */
+    final void attachEither(CompletableFuture<?> b, Completion c) {
+        if (result == null && b.result == null) {
+            pushStack(c);
+            b.pushStack(new CoCompletion(c));
+        }
+        c.tryFire();
+    }
+
+    // Completions with a single source
+
+    abstract static class UniCompletion extends Dependent {
+        final CompletableFuture<?> src;
+        UniCompletion(Executor executor, CompletableFuture<?> dep,
+                      CompletableFuture<?> src) {
+            super(executor, dep);
+            this.src = src;
+        }
+        final boolean isReady() { return src.result != null; }
+    }
+
+    static final class UniApply<T,V> extends UniCompletion {
+        final Fun<? super T,? extends V> fn;
+        UniApply(Executor executor, CompletableFuture<V> dep,
+                 CompletableFuture<T> src, Fun<? super T,? extends V> fn) {
+            super(executor, dep, src);
+            this.fn = fn;
+        }
+        public void run() {
+            Object r = src.result;
+            if (exceptionOf(r) != null)
+                dep.completeRelay(r);
+            else {
+                try {
+                    T t = CompletableFuture.<T>valueOf(r);
+                    dep.completeValue(fn.apply(t));
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    static final class UniAccept<T> extends UniCompletion {
+        final Action<? super T> fn;
+        UniAccept(Executor executor, CompletableFuture<Void> dep,
+                  CompletableFuture<T> src, Action<? super T> fn) {
+            super(executor, dep, src);
+            this.fn = fn;
+        }
+        public void run() {
+            Object r = src.result;
+            if (exceptionOf(r) != null)
+                dep.completeRelay(r);
+            else {
+                try {
+                    T t = CompletableFuture.<T>valueOf(r);
+                    fn.accept(t);
+                    dep.completeValue(null);
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    static final class UniRun extends UniCompletion {
+        final Runnable fn;
+        UniRun(Executor executor, CompletableFuture<Void> dep,
+               CompletableFuture<?> src, Runnable fn) {
+            super(executor, dep, src);
+            this.fn = fn;
+        }
+        public void run() {
+            Object r = src.result;
+            if (exceptionOf(r) != null)
+                dep.completeRelay(r);
+            else {
+                try {
+                    fn.run();
+                    dep.completeValue(null);
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    static final class UniCompose<T,V> extends UniCompletion {
+        final Fun<? super T, CompletableFuture<V>> fn;
+        UniCompose(Executor executor, CompletableFuture<V> dep,
+                   CompletableFuture<T> src,
+                   Fun<? super T, CompletableFuture<V>> fn) {
+            super(executor, dep, src);
+            this.fn = fn;
+        }
+        public void run() {
+            Object r = src.result;
+            if (exceptionOf(r) != null)
+                dep.completeRelay(r);
+            else {
+                try {
+                    T t = CompletableFuture.<T>valueOf(r);
+                    CompletableFuture<V> g = fn.apply(t);
+                    if (g == null)
+                        throw new NullPointerException();
+                    g.relayTo(dep);
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    static final class UniExceptionally<T> extends UniCompletion {
+        final Fun<Throwable, ? extends T> fn;
+        UniExceptionally(CompletableFuture<T> dep, CompletableFuture<T> src,
+                         Fun<Throwable, ? extends T> fn) {
+            super(null, dep, src);
+            this.fn = fn;
+        }
+        public void run() {
+            Object r = src.result;
+            Throwable x = exceptionOf(r);
+            if (x == null)
+                dep.completeEncoded(r);
+            else {
+                try {
+                    dep.completeValue(fn.apply(x));
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    static final class UniHandle<T,V> extends UniCompletion {
+        final BiFun<? super T, Throwable, ? extends V> fn;
+        UniHandle(Executor executor, CompletableFuture<V> dep,
+                  CompletableFuture<T> src,
+                  BiFun<? super T, Throwable, ? extends V> fn) {
+            super(executor, dep, src);
+            this.fn = fn;
+        }
+        public void run() {
+            Object r = src.result;
+            try {
+                T t = CompletableFuture.<T>valueOf(r);
+                dep.completeValue(fn.apply(t, exceptionOf(r)));
+            } catch (Throwable ex) {
+                dep.completeThrowable(ex);
+            }
+        }
+    }
+
+    static final class UniWhenComplete<T> extends UniCompletion {
+        final BiAction<? super T, ? super Throwable> fn;
+        UniWhenComplete(Executor executor, CompletableFuture<T> dep,
+                        CompletableFuture<T> src,
+                        BiAction<? super T, ? super Throwable> fn) {
+            super(executor, dep, src);
+            this.fn = fn;
+        }
+        public void run() {
+            Object r = src.result;
+            Throwable x = exceptionOf(r);
+            try {
+                T t = CompletableFuture.<T>valueOf(r);
+                fn.accept(t, x);
+            } catch (Throwable ex) {
+                if (x == null) {
+                    dep.completeThrowable(ex);
+                    return;
+                }
+            }
+            dep.completeRelay(r);
+        }
+    }
+
+    static final class UniRelay extends UniCompletion {
+        UniRelay(Executor executor, CompletableFuture<?> dep,
+                 CompletableFuture<?> src) {
+            super(executor, dep, src);
+        }
+        public void run() {
+            dep.completeRelay(src.result);
+        }
+    }
+
+    // Completions with two sources, triggered when both are done
+
+    abstract static class BiCompletion extends Dependent {
+        final CompletableFuture<?> src;
+        final CompletableFuture<?> snd;
+        BiCompletion(Executor executor, CompletableFuture<?> dep,
+                     CompletableFuture<?> src, CompletableFuture<?> snd) {
+            super(executor, dep);
+            this.src = src;
+            this.snd = snd;
+        }
+        final boolean isReady() {
+            return src.result != null && snd.result != null;
+        }
+
+        /**
+         * Relays the first exceptional result of the sources, if any,
+         * returning true if one was found.
+         */
+        final boolean relayException(Object r, Object s) {
+            if (exceptionOf(r) != null)
+                dep.completeRelay(r);
+            else if (exceptionOf(s) != null)
+                dep.completeRelay(s);
+            else
+                return false;
+            return true;
+        }
+    }
+
+    static final class BiApply<T,U,V> extends BiCompletion {
+        final BiFun<? super T,? super U,? extends V> fn;
+        BiApply(Executor executor, CompletableFuture<V> dep,
+                CompletableFuture<T> src, CompletableFuture<U> snd,
+                BiFun<? super T,? super U,? extends V> fn) {
+            super(executor, dep, src, snd);
+            this.fn = fn;
+        }
+        public void run() {
+            Object r = src.result, s = snd.result;
+            if (!relayException(r, s)) {
+                try {
+                    T t = CompletableFuture.<T>valueOf(r);
+                    U u = CompletableFuture.<U>valueOf(s);
+                    dep.completeValue(fn.apply(t, u));
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    static final class BiAccept<T,U> extends BiCompletion {
+        final BiAction<? super T,? super U> fn;
+        BiAccept(Executor executor, CompletableFuture<Void> dep,
+                 CompletableFuture<T> src, CompletableFuture<U> snd,
+                 BiAction<? super T,? super U> fn) {
+            super(executor, dep, src, snd);
+            this.fn = fn;
+        }
+        public void run() {
+            Object r = src.result, s = snd.result;
+            if (!relayException(r, s)) {
+                try {
+                    T t = CompletableFuture.<T>valueOf(r);
+                    U u = CompletableFuture.<U>valueOf(s);
+                    fn.accept(t, u);
+                    dep.completeValue(null);
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    static final class BiRun extends BiCompletion {
+        final Runnable fn;
+        BiRun(Executor executor, CompletableFuture<Void> dep,
+              CompletableFuture<?> src, CompletableFuture<?> snd,
+              Runnable fn) {
+            super(executor, dep, src, snd);
+            this.fn = fn;
+        }
+        public void run() {
+            if (!relayException(src.result, snd.result)) {
+                try {
+                    fn.run();
+                    dep.completeValue(null);
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    /** Completes dep with null, or the first exception, for allOf. */
+    static final class BiRelay extends BiCompletion {
+        BiRelay(CompletableFuture<Void> dep,
+                CompletableFuture<?> src, CompletableFuture<?> snd) {
+            super(null, dep, src, snd);
+        }
+        public void run() {
+            if (!relayException(src.result, snd.result))
+                dep.completeValue(null);
+        }
+    }
+
+    // Completions with two sources, triggered when either is done
+
+    abstract static class OrCompletion extends Dependent {
+        final CompletableFuture<?> src;
+        final CompletableFuture<?> snd;
+        OrCompletion(Executor executor, CompletableFuture<?> dep,
+                     CompletableFuture<?> src, CompletableFuture<?> snd) {
+            super(executor, dep);
+            this.src = src;
+            this.snd = snd;
+        }
+        final boolean isReady() {
+            return src.result != null || snd.result != null;
+        }
+        /** Returns the result of the first completed source. */
+        final Object firstResult() {
+            Object r = src.result;
+            return (r != null) ? r : snd.result;
+        }
+    }
+
+    static final class OrApply<T,V> extends OrCompletion {
+        final Fun<? super T,? extends V> fn;
+        OrApply(Executor executor, CompletableFuture<V> dep,
+                CompletableFuture<? extends T> src,
+                CompletableFuture<? extends T> snd,
+                Fun<? super T,? extends V> fn) {
+            super(executor, dep, src, snd);
+            this.fn = fn;
+        }
+        public void run() {
+            Object r = firstResult();
+            if (exceptionOf(r) != null)
+                dep.completeRelay(r);
+            else {
+                try {
+                    T t = CompletableFuture.<T>valueOf(r);
+                    dep.completeValue(fn.apply(t));
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    static final class OrAccept<T> extends OrCompletion {
+        final Action<? super T> fn;
+        OrAccept(Executor executor, CompletableFuture<Void> dep,
+                 CompletableFuture<? extends T> src,
+                 CompletableFuture<? extends T> snd,
+                 Action<? super T> fn) {
+            super(executor, dep, src, snd);
+            this.fn = fn;
+        }
+        public void run() {
+            Object r = firstResult();
+            if (exceptionOf(r) != null)
+                dep.completeRelay(r);
+            else {
+                try {
+                    T t = CompletableFuture.<T>valueOf(r);
+                    fn.accept(t);
+                    dep.completeValue(null);
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    static final class OrRun extends OrCompletion {
+        final Runnable fn;
+        OrRun(Executor executor, CompletableFuture<Void> dep,
+              CompletableFuture<?> src, CompletableFuture<?> snd,
+              Runnable fn) {
+            super(executor, dep, src, snd);
+            this.fn = fn;
+        }
+        public void run() {
+            Object r = firstResult();
+            if (exceptionOf(r) != null)
+                dep.completeRelay(r);
+            else {
+                try {
+                    fn.run();
+                    dep.completeValue(null);
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    /** Completes dep with the first result, for anyOf. */
+    static final class OrRelay extends OrCompletion {
+        OrRelay(CompletableFuture<Object> dep,
+                CompletableFuture<?> src, CompletableFuture<?> snd) {
+            super(null, dep, src, snd);
+        }
+        public void run() {
+            dep.completeRelay(firstResult());
+        }
+    }
+
+    // Asynchronous sources
+
+    static final class AsyncSupply<T> implements Runnable {
+        final CompletableFuture<T> dep;
+        final Generator<T> fn;
+        AsyncSupply(CompletableFuture<T> dep, Generator<T> fn) {
+            this.dep = dep;
+            this.fn = fn;
+        }
+        public void run() {
+            if (dep.result == null) {
+                try {
+                    dep.completeValue(fn.get());
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    static final class AsyncRun implements Runnable {
+        final CompletableFuture<Void> dep;
+        final Runnable fn;
+        AsyncRun(CompletableFuture<Void> dep, Runnable fn) {
+            this.dep = dep;
+            this.fn = fn;
+        }
+        public void run() {
+            if (dep.result == null) {
+                try {
+                    fn.run();
+                    dep.completeValue(null);
+                } catch (Throwable ex) {
+                    dep.completeThrowable(ex);
+                }
+            }
+        }
+    }
+
+    /** Fallback if ForkJoinPool.commonPool() cannot support parallelism */
+    static final class ThreadPerTaskExecutor implements Executor {
+        public void execute(Runnable r) { new Thread(r).start(); }
+    }
+
+    /**
+     * Default executor -- ForkJoinPool.commonPool() unless it cannot
+     * support parallelism.
+     */
+    private static final Executor asyncPool =
+        (ForkJoinPool.commonPool().getParallelism() > 1) ?
+        ForkJoinPool.commonPool() : new ThreadPerTaskExecutor();
+
+    /** Null-checks user executor argument. */
+    static Executor screenExecutor(Executor e) {
+        if (e == null)
+            throw new NullPointerException();
+        return e;
+    }
+
+    // Waiting
+
+    /**
+     * Completion for recording and releasing a waiting thread.
+     */
+    static final class Signaller extends Completion
+        implements ForkJoinPool.ManagedBlocker {
+        long nanos;                    // remaining wait time if timed
+        final long deadline;           // non-zero if timed
+        final boolean interruptible;
+        boolean interrupted;
+        volatile Thread thread;
+
+        Signaller(boolean interruptible, long nanos, long deadline) {
+            this.thread = Thread.currentThread();
+            this.interruptible = interruptible;
+            this.nanos = nanos;
+            this.deadline = deadline;
+        }
+
+        void tryFire() {
+            Thread w = thread;
+            if (w != null) {
+                thread = null;
+                LockSupport.unpark(w);
+            }
+        }
+
+        public boolean isReleasable() {
+            if (thread == null)
+                return true;
+            if (Thread.interrupted())
+                interrupted = true;
+            if (interrupted && interruptible)
+                return true;
+            if (deadline != 0L &&
+                (nanos <= 0L || (nanos = deadline - System.nanoTime()) <= 0L)) {
+                thread = null;
+                return true;
+            }
+            return false;
+        }
+
+        public boolean block() {
+            if (isReleasable())
+                return true;
+            else if (deadline == 0L)
+                LockSupport.park(this);
+            else if (nanos > 0L)
+                LockSupport.parkNanos(this, nanos);
+            return isReleasable();
+        }
+    }
+
+    /**
+     * Returns raw result after waiting, or null if interruptible and
+     * interrupted.
+     */
+    private Object waitingGet(boolean interruptible) {
+        Signaller q = null;
+        boolean queued = false;
+        Object r;
+        while ((r = result) == null) {
+            if (q == null)
+                q = new Signaller(interruptible, 0L, 0L);
+            else if (!queued)
+                queued = tryPushStack(q);
+            else {
+                try {
+                    ForkJoinPool.managedBlock(q);
+                } catch (InterruptedException ie) {
+                    q.interrupted = true;
+                }
+                if (q.interrupted && interruptible)
+                    break;
+            }
+        }
+        if (q != null) {
+            q.thread = null;
+            if (q.interrupted && !interruptible)
+                Thread.currentThread().interrupt();
+        }
+        return r;
+    }
+
+    /**
+     * Returns raw result after waiting, or null if interrupted, or
+     * throws TimeoutException on timeout.
+     */
+    private Object timedGet(long nanos) throws TimeoutException {
+        if (Thread.interrupted())
+            return null;
+        if (nanos <= 0L)
+            throw new TimeoutException();
+        long d = System.nanoTime() + nanos;
+        Signaller q = new Signaller(true, nanos, (d == 0L) ? 1L : d);
+        boolean queued = false;
+        Object r;
+        while ((r = result) == null) {
+            if (!queued)
+                queued = tryPushStack(q);
+            else if (q.interrupted || q.nanos <= 0L)
+                break;
+            else {
+                try {
+                    ForkJoinPool.managedBlock(q);
+                } catch (InterruptedException ie) {
+                    q.interrupted = true;
+                }
+            }
+        }
+        q.thread = null;
+        if (r == null && !q.interrupted)
+            throw new TimeoutException();
+        return r;
+    }
+
+    /**
+     * Reports result using Future.get conventions.
+     */
+    private static <T> T reportGet(Object r)
+        throws InterruptedException, ExecutionException {
+        if (r == null) // by convention below, null means interrupted
+            throw new InterruptedException();
+        if (r instanceof AltResult) {
+            Throwable x, cause;
+            if ((x = ((AltResult)r).ex) == null)
+                return null;
+            if (x instanceof CancellationException)
+                throw (CancellationException)x;
+            if ((x instanceof CompletionException) &&
+                (cause = x.getCause()) != null)
+                x = cause;
+            throw new ExecutionException(x);
+        }
+        @SuppressWarnings("unchecked") T t = (T) r;
+        return t;
+    }
+
+    /**
+     * Decodes outcome to return result or throw unchecked exception.
+     */
+    private static <T> T reportJoin(Object r) {
+        if (r instanceof AltResult) {
+            Throwable x;
+            if ((x = ((AltResult)r).ex) == null)
+                return null;
+            if (x instanceof CancellationException)
+                throw (CancellationException)x;
+            if (x instanceof CompletionException)
+                throw (CompletionException)x;
+            throw new CompletionException(x);
+        }
+        @SuppressWarnings("unchecked") T t = (T) r;
+        return t;
+    }
+
+    // Public factories
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * by a task running in the {@link ForkJoinPool#commonPool()} with
+     * the value obtained by calling the given Generator.
+     *
+     * @param supplier a function returning the value to be used
+     * to complete the returned CompletableFuture
+     * @param <U> the function's return type
+     * @return the new CompletableFuture
+     */
+    public static <U> CompletableFuture<U> supplyAsync(Generator<U> supplier) {
+        return supplyAsync(supplier, asyncPool);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * by a task running in the given executor with the value obtained
+     * by calling the given Generator.
+     *
+     * @param supplier a function returning the value to be used
+     * to complete the returned CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @param <U> the function's return type
+     * @return the new CompletableFuture
+     */
+    public static <U> CompletableFuture<U> supplyAsync(Generator<U> supplier,
+                                                       Executor executor) {
+        if (supplier == null || executor == null)
+            throw new NullPointerException();
+        CompletableFuture<U> d = new CompletableFuture<U>();
+        executor.execute(new AsyncSupply<U>(d, supplier));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * by a task running in the {@link ForkJoinPool#commonPool()} after
+     * it runs the given action.
+     *
+     * @param runnable the action to run before completing the
+     * returned CompletableFuture
+     * @return the new CompletableFuture
+     */
+    public static CompletableFuture<Void> runAsync(Runnable runnable) {
+        return runAsync(runnable, asyncPool);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * by a task running in the given executor after it runs the given
+     * action.
+     *
+     * @param runnable the action to run before completing the
+     * returned CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @return the new CompletableFuture
+     */
+    public static CompletableFuture<Void> runAsync(Runnable runnable,
+                                                   Executor executor) {
+        if (runnable == null || executor == null)
+            throw new NullPointerException();
+        CompletableFuture<Void> d = new CompletableFuture<Void>();
+        executor.execute(new AsyncRun(d, runnable));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is already completed with
+     * the given value.
+     *
+     * @param value the value
+     * @param <U> the type of the value
+     * @return the completed CompletableFuture
+     */
+    public static <U> CompletableFuture<U> completedFuture(U value) {
+        return new CompletableFuture<U>(encodeValue(value));
+    }
+
+    // Completion and status
+
+    /**
+     * Returns {@code true} if completed in any fashion: normally,
+     * exceptionally, or via cancellation.
+     *
+     * @return {@code true} if completed
+     */
+    public boolean isDone() {
+        return result != null;
+    }
+
+    /**
+     * Waits if necessary for this future to complete, and then
+     * returns its result.
+     *
+     * @return the result value
+     * @throws CancellationException if this future was cancelled
+     * @throws ExecutionException if this future completed exceptionally
+     * @throws InterruptedException if the current thread was interrupted
+     * while waiting
+     */
+    public T get() throws InterruptedException, ExecutionException {
+        Object r;
+        return reportGet((r = result) == null ? waitingGet(true) : r);
+    }
+
+    /**
+     * Waits if necessary for at most the given time for this future
+     * to complete, and then returns its result, if available.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout argument
+     * @return the result value
+     * @throws CancellationException if this future was cancelled
+     * @throws ExecutionException if this future completed exceptionally
+     * @throws InterruptedException if the current thread was interrupted
+     * while waiting
+     * @throws TimeoutException if the wait timed out
+     */
+    public T get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        Object r;
+        long nanos = unit.toNanos(timeout);
+        return reportGet((r = result) == null ? timedGet(nanos) : r);
+    }
+
+    /**
+     * Returns the result value when complete, or throws an
+     * (unchecked) exception if completed exceptionally. To better
+     * conform with the use of common functional forms, if a
+     * computation involved in the completion of this
+     * CompletableFuture threw an exception, this method throws an
+     * (unchecked) {@link CompletionException} with the underlying
+     * exception as its cause.
+     *
+     * @return the result value
+     * @throws CancellationException if the computation was cancelled
+     * @throws CompletionException if this future completed
+     * exceptionally or a completion computation threw an exception
+     */
+    public T join() {
+        Object r;
+        return reportJoin((r = result) == null ? waitingGet(false) : r);
+    }
+
+    /**
+     * Returns the result value (or throws any encountered exception)
+     * if completed, else returns the given valueIfAbsent.
+     *
+     * @param valueIfAbsent the value to return if not completed
+     * @return the result value, if completed, else the given valueIfAbsent
+     * @throws CancellationException if the computation was cancelled
+     * @throws CompletionException if this future completed
+     * exceptionally or a completion computation threw an exception
+     */
+    public T getNow(T valueIfAbsent) {
+        Object r;
+        return ((r = result) == null) ? valueIfAbsent : CompletableFuture.<T>reportJoin(r);
+    }
+
+    /**
+     * If not already completed, sets the value returned by {@link
+     * #get()} and related methods to the given value.
+     *
+     * @param value the result value
+     * @return {@code true} if this invocation caused this CompletableFuture
+     * to transition to a completed state, else {@code false}
+     */
+    public boolean complete(T value) {
+        return completeValue(value);
+    }
+
+    /**
+     * If not already completed, causes invocations of {@link #get()}
+     * and related methods to throw the given exception.
+     *
+     * @param ex the exception
+     * @return {@code true} if this invocation caused this CompletableFuture
+     * to transition to a completed state, else {@code false}
+     */
+    public boolean completeExceptionally(Throwable ex) {
+        if (ex == null)
+            throw new NullPointerException();
+        return completeEncoded(new AltResult(ex));
+    }
+
+    /**
+     * If not already completed, completes this CompletableFuture with
+     * a {@link CancellationException}. Dependent CompletableFutures
+     * that have not already completed will also complete
+     * exceptionally, with a {@link CompletionException} caused by
+     * this {@code CancellationException}.
+     *
+     * @param mayInterruptIfRunning this value has no effect in this
+     * implementation because interrupts are not used to control
+     * processing.
+     *
+     * @return {@code true} if this task is now cancelled
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = (result == null) &&
+            completeEncoded(new AltResult(new CancellationException()));
+        return cancelled || isCancelled();
+    }
+
+    /**
+     * Returns {@code true} if this CompletableFuture was cancelled
+     * before it completed normally.
+     *
+     * @return {@code true} if this CompletableFuture was cancelled
+     * before it completed normally
+     */
+    public boolean isCancelled() {
+        return exceptionOf(result) instanceof CancellationException;
+    }
+
+    /**
+     * Returns {@code true} if this CompletableFuture completed
+     * exceptionally, in any way. Possible causes include
+     * cancellation, explicit invocation of {@code
+     * completeExceptionally}, and abrupt termination of a
+     * CompletableFuture action.
+     *
+     * @return {@code true} if this CompletableFuture completed
+     * exceptionally
+     */
+    public boolean isCompletedExceptionally() {
+        return exceptionOf(result) != null;
+    }
+
+    /**
+     * Returns the estimated number of CompletableFutures whose
+     * completions are awaiting completion of this CompletableFuture.
+     * This method is designed for use in monitoring system state, not
+     * for synchronization control.
+     *
+     * @return the number of dependent CompletableFutures
+     */
+    public int getNumberOfDependents() {
+        int count = 0;
+        for (Completion p = stack; p != null; p = p.next)
+            ++count;
+        return count;
+    }
+
+    // Dependent stages
+
+    /**
+     * Returns a new CompletableFuture that is completed when this
+     * CompletableFuture completes, with the result of the given
+     * function of this CompletableFuture's result.
+     *
+     * <p>If this CompletableFuture completes exceptionally, or the
+     * supplied function throws an exception, then the returned
+     * CompletableFuture completes exceptionally with a
+     * CompletionException holding the exception as its cause.
+     *
+     * @param fn the function to use to compute the value of
+     * the returned CompletableFuture
+     * @param <U> the function's return type
+     * @return the new CompletableFuture
+     */
+    public <U> CompletableFuture<U> thenApply(Fun<? super T,? extends U> fn) {
+        return uniApplyStage(null, fn);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when this CompletableFuture completes, with the result of the
+     * given function of this CompletableFuture's result from a task
+     * running in the {@link ForkJoinPool#commonPool()}.
+     *
+     * @param fn the function to use to compute the value of
+     * the returned CompletableFuture
+     * @param <U> the function's return type
+     * @return the new CompletableFuture
+     */
+    public <U> CompletableFuture<U> thenApplyAsync
+        (Fun<? super T,? extends U> fn) {
+        return uniApplyStage(asyncPool, fn);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when this CompletableFuture completes, with the result of the
+     * given function of this CompletableFuture's result from a task
+     * running in the given executor.
+     *
+     * @param fn the function to use to compute the value of
+     * the returned CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @param <U> the function's return type
+     * @return the new CompletableFuture
+     */
+    public <U> CompletableFuture<U> thenApplyAsync
+        (Fun<? super T,? extends U> fn, Executor executor) {
+        return uniApplyStage(screenExecutor(executor), fn);
+    }
+
+    private <U> CompletableFuture<U> uniApplyStage
+        (Executor e, Fun<? super T,? extends U> fn) {
+        if (fn == null)
+            throw new NullPointerException();
+        CompletableFuture<U> d = new CompletableFuture<U>();
+        attach(new UniApply<T,U>(e, d, this, fn));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed when this
+     * CompletableFuture completes, after performing the given action
+     * with this CompletableFuture's result.
+     *
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> thenAccept(Action<? super T> action) {
+        return uniAcceptStage(null, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when this CompletableFuture completes, after performing the given
+     * action with this CompletableFuture's result from a task running
+     * in the {@link ForkJoinPool#commonPool()}.
+     *
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> thenAcceptAsync(Action<? super T> action) {
+        return uniAcceptStage(asyncPool, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when this CompletableFuture completes, after performing the given
+     * action with this CompletableFuture's result from a task running
+     * in the given executor.
+     *
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> thenAcceptAsync(Action<? super T> action,
+                                                   Executor executor) {
+        return uniAcceptStage(screenExecutor(executor), action);
+    }
+
+    private CompletableFuture<Void> uniAcceptStage(Executor e,
+                                                   Action<? super T> action) {
+        if (action == null)
+            throw new NullPointerException();
+        CompletableFuture<Void> d = new CompletableFuture<Void>();
+        attach(new UniAccept<T>(e, d, this, action));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed when this
+     * CompletableFuture completes, after performing the given action.
+     *
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> thenRun(Runnable action) {
+        return uniRunStage(null, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when this CompletableFuture completes, after performing the given
+     * action from a task running in the {@link ForkJoinPool#commonPool()}.
+     *
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> thenRunAsync(Runnable action) {
+        return uniRunStage(asyncPool, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when this CompletableFuture completes, after performing the given
+     * action from a task running in the given executor.
+     *
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> thenRunAsync(Runnable action,
+                                                Executor executor) {
+        return uniRunStage(screenExecutor(executor), action);
+    }
+
+    private CompletableFuture<Void> uniRunStage(Executor e, Runnable action) {
+        if (action == null)
+            throw new NullPointerException();
+        CompletableFuture<Void> d = new CompletableFuture<Void>();
+        attach(new UniRun(e, d, this, action));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed when both
+     * this and the other given CompletableFuture complete, with the
+     * result of the given function of the results of the two
+     * CompletableFutures.
+     *
+     * <p>If this or the other CompletableFuture complete
+     * exceptionally, or the supplied function throws an exception,
+     * then the returned CompletableFuture completes exceptionally
+     * with a CompletionException holding the exception as its cause.
+     *
+     * @param other the other CompletableFuture
+     * @param fn the function to use to compute the value of
+     * the returned CompletableFuture
+     * @param <U> the type of the other CompletableFuture's result
+     * @param <V> the function's return type
+     * @return the new CompletableFuture
+     */
+    public <U,V> CompletableFuture<V> thenCombine
+        (CompletableFuture<? extends U> other,
+         BiFun<? super T,? super U,? extends V> fn) {
+        return biApplyStage(null, other, fn);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when both this and the other given CompletableFuture complete,
+     * with the result of the given function of the results of the two
+     * CompletableFutures from a task running in the {@link
+     * ForkJoinPool#commonPool()}.
+     *
+     * @param other the other CompletableFuture
+     * @param fn the function to use to compute the value of
+     * the returned CompletableFuture
+     * @param <U> the type of the other CompletableFuture's result
+     * @param <V> the function's return type
+     * @return the new CompletableFuture
+     */
+    public <U,V> CompletableFuture<V> thenCombineAsync
+        (CompletableFuture<? extends U> other,
+         BiFun<? super T,? super U,? extends V> fn) {
+        return biApplyStage(asyncPool, other, fn);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when both this and the other given CompletableFuture complete,
+     * with the result of the given function of the results of the two
+     * CompletableFutures from a task running in the given executor.
+     *
+     * @param other the other CompletableFuture
+     * @param fn the function to use to compute the value of
+     * the returned CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @param <U> the type of the other CompletableFuture's result
+     * @param <V> the function's return type
+     * @return the new CompletableFuture
+     */
+    public <U,V> CompletableFuture<V> thenCombineAsync
+        (CompletableFuture<? extends U> other,
+         BiFun<? super T,? super U,? extends V> fn,
+         Executor executor) {
+        return biApplyStage(screenExecutor(executor), other, fn);
+    }
+
+    private <U,V> CompletableFuture<V> biApplyStage
+        (Executor e, CompletableFuture<? extends U> other,
+         BiFun<? super T,? super U,? extends V> fn) {
+        if (other == null || fn == null)
+            throw new NullPointerException();
+        CompletableFuture<V> d = new CompletableFuture<V>();
+        attachBoth(other, new BiApply<T,U,V>(e, d, this, narrow(other), fn));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed when both
+     * this and the other given CompletableFuture complete, after
+     * performing the given action with the results of the two
+     * CompletableFutures.
+     *
+     * @param other the other CompletableFuture
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @param <U> the type of the other CompletableFuture's result
+     * @return the new CompletableFuture
+     */
+    public <U> CompletableFuture<Void> thenAcceptBoth
+        (CompletableFuture<? extends U> other,
+         BiAction<? super T, ? super U> action) {
+        return biAcceptStage(null, other, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when both this and the other given CompletableFuture complete,
+     * after performing the given action with the results of the two
+     * CompletableFutures from a task running in the {@link
+     * ForkJoinPool#commonPool()}.
+     *
+     * @param other the other CompletableFuture
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @param <U> the type of the other CompletableFuture's result
+     * @return the new CompletableFuture
+     */
+    public <U> CompletableFuture<Void> thenAcceptBothAsync
+        (CompletableFuture<? extends U> other,
+         BiAction<? super T, ? super U> action) {
+        return biAcceptStage(asyncPool, other, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when both this and the other given CompletableFuture complete,
+     * after performing the given action with the results of the two
+     * CompletableFutures from a task running in the given executor.
+     *
+     * @param other the other CompletableFuture
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @param <U> the type of the other CompletableFuture's result
+     * @return the new CompletableFuture
+     */
+    public <U> CompletableFuture<Void> thenAcceptBothAsync
+        (CompletableFuture<? extends U> other,
+         BiAction<? super T, ? super U> action,
+         Executor executor) {
+        return biAcceptStage(screenExecutor(executor), other, action);
+    }
+
+    private <U> CompletableFuture<Void> biAcceptStage
+        (Executor e, CompletableFuture<? extends U> other,
+         BiAction<? super T,? super U> action) {
+        if (other == null || action == null)
+            throw new NullPointerException();
+        CompletableFuture<Void> d = new CompletableFuture<Void>();
+        attachBoth(other, new BiAccept<T,U>(e, d, this, narrow(other), action));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed when both
+     * this and the other given CompletableFuture complete, after
+     * performing the given action.
+     *
+     * @param other the other CompletableFuture
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> runAfterBoth(CompletableFuture<?> other,
+                                                Runnable action) {
+        return biRunStage(null, other, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when both this and the other given CompletableFuture complete,
+     * after performing the given action from a task running in the
+     * {@link ForkJoinPool#commonPool()}.
+     *
+     * @param other the other CompletableFuture
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> runAfterBothAsync(CompletableFuture<?> other,
+                                                     Runnable action) {
+        return biRunStage(asyncPool, other, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when both this and the other given CompletableFuture complete,
+     * after performing the given action from a task running in the
+     * given executor.
+     *
+     * @param other the other CompletableFuture
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> runAfterBothAsync(CompletableFuture<?> other,
+                                                     Runnable action,
+                                                     Executor executor) {
+        return biRunStage(screenExecutor(executor), other, action);
+    }
+
+    private CompletableFuture<Void> biRunStage(Executor e,
+                                               CompletableFuture<?> other,
+                                               Runnable action) {
+        if (other == null || action == null)
+            throw new NullPointerException();
+        CompletableFuture<Void> d = new CompletableFuture<Void>();
+        attachBoth(other, new BiRun(e, d, this, other, action));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed when either
+     * this or the other given CompletableFuture completes, with the
+     * result of the given function of either this or the other
+     * CompletableFuture's result.
+     *
+     * <p>If this and/or the other CompletableFuture complete
+     * exceptionally, then the returned CompletableFuture may also do
+     * so, with a CompletionException holding one of these exceptions
+     * as its cause.  No guarantees are made about which result or
+     * exception is used in the returned CompletableFuture.  If the
+     * supplied function throws an exception, then the returned
+     * CompletableFuture completes exceptionally with a
+     * CompletionException holding the exception as its cause.
+     *
+     * @param other the other CompletableFuture
+     * @param fn the function to use to compute the value of
+     * the returned CompletableFuture
+     * @param <U> the function's return type
+     * @return the new CompletableFuture
+     */
+    public <U> CompletableFuture<U> applyToEither
+        (CompletableFuture<? extends T> other,
+         Fun<? super T, U> fn) {
+        return orApplyStage(null, other, fn);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when either this or the other given CompletableFuture completes,
+     * with the result of the given function of either this or the other
+     * CompletableFuture's result from a task running in the {@link
+     * ForkJoinPool#commonPool()}.
+     *
+     * @param other the other CompletableFuture
+     * @param fn the function to use to compute the value of
+     * the returned CompletableFuture
+     * @param <U> the function's return type
+     * @return the new CompletableFuture
+     */
+    public <U> CompletableFuture<U> applyToEitherAsync
+        (CompletableFuture<? extends T> other,
+         Fun<? super T, U> fn) {
+        return orApplyStage(asyncPool, other, fn);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when either this or the other given CompletableFuture completes,
+     * with the result of the given function of either this or the other
+     * CompletableFuture's result from a task running in the given
+     * executor.
+     *
+     * @param other the other CompletableFuture
+     * @param fn the function to use to compute the value of
+     * the returned CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @param <U> the function's return type
+     * @return the new CompletableFuture
+     */
+    public <U> CompletableFuture<U> applyToEitherAsync
+        (CompletableFuture<? extends T> other,
+         Fun<? super T, U> fn,
+         Executor executor) {
+        return orApplyStage(screenExecutor(executor), other, fn);
+    }
+
+    private <U> CompletableFuture<U> orApplyStage
+        (Executor e, CompletableFuture<? extends T> other,
+         Fun<? super T, U> fn) {
+        if (other == null || fn == null)
+            throw new NullPointerException();
+        CompletableFuture<U> d = new CompletableFuture<U>();
+        attachEither(other, new OrApply<T,U>(e, d, this, other, fn));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed when either
+     * this or the other given CompletableFuture completes, after
+     * performing the given action with the result of either this or
+     * the other CompletableFuture's result.
+     *
+     * @param other the other CompletableFuture
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> acceptEither
+        (CompletableFuture<? extends T> other,
+         Action<? super T> action) {
+        return orAcceptStage(null, other, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when either this or the other given CompletableFuture completes,
+     * after performing the given action with the result of either this
+     * or the other CompletableFuture's result from a task running in
+     * the {@link ForkJoinPool#commonPool()}.
+     *
+     * @param other the other CompletableFuture
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> acceptEitherAsync
+        (CompletableFuture<? extends T> other,
+         Action<? super T> action) {
+        return orAcceptStage(asyncPool, other, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when either this or the other given CompletableFuture completes,
+     * after performing the given action with the result of either this
+     * or the other CompletableFuture's result from a task running in
+     * the given executor.
+     *
+     * @param other the other CompletableFuture
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> acceptEitherAsync
+        (CompletableFuture<? extends T> other,
+         Action<? super T> action,
+         Executor executor) {
+        return orAcceptStage(screenExecutor(executor), other, action);
+    }
+
+    private CompletableFuture<Void> orAcceptStage
+        (Executor e, CompletableFuture<? extends T> other,
+         Action<? super T> action) {
+        if (other == null || action == null)
+            throw new NullPointerException();
+        CompletableFuture<Void> d = new CompletableFuture<Void>();
+        attachEither(other, new OrAccept<T>(e, d, this, other, action));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed when either
+     * this or the other given CompletableFuture completes, after
+     * performing the given action.
+     *
+     * @param other the other CompletableFuture
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> runAfterEither(CompletableFuture<?> other,
+                                                  Runnable action) {
+        return orRunStage(null, other, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when either this or the other given CompletableFuture completes,
+     * after performing the given action from a task running in the
+     * {@link ForkJoinPool#commonPool()}.
+     *
+     * @param other the other CompletableFuture
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> runAfterEitherAsync
+        (CompletableFuture<?> other,
+         Runnable action) {
+        return orRunStage(asyncPool, other, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * when either this or the other given CompletableFuture completes,
+     * after performing the given action from a task running in the
+     * given executor.
+     *
+     * @param other the other CompletableFuture
+     * @param action the action to perform before completing the
+     * returned CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<Void> runAfterEitherAsync
+        (CompletableFuture<?> other,
+         Runnable action,
+         Executor executor) {
+        return orRunStage(screenExecutor(executor), other, action);
+    }
+
+    private CompletableFuture<Void> orRunStage(Executor e,
+                                               CompletableFuture<?> other,
+                                               Runnable action) {
+        if (other == null || action == null)
+            throw new NullPointerException();
+        CompletableFuture<Void> d = new CompletableFuture<Void>();
+        attachEither(other, new OrRun(e, d, this, other, action));
+        return d;
+    }
+
+    /**
+     * Returns a CompletableFuture that upon completion, has the same
+     * value as produced by the given function of the result of this
+     * CompletableFuture.
+     *
+     * <p>If this CompletableFuture completes exceptionally, then the
+     * returned CompletableFuture also does so, with a
+     * CompletionException holding this exception as its cause.
+     * Similarly, if the computed CompletableFuture completes
+     * exceptionally, then so does the returned CompletableFuture.
+     *
+     * @param fn the function returning a new CompletableFuture
+     * @param <U> the type of the returned CompletableFuture's result
+     * @return the CompletableFuture
+     */
+    public <U> CompletableFuture<U> thenCompose
+        (Fun<? super T, CompletableFuture<U>> fn) {
+        return uniComposeStage(null, fn);
+    }
+
+    /**
+     * Returns a CompletableFuture that upon completion, has the same
+     * value as that produced asynchronously using the {@link
+     * ForkJoinPool#commonPool()} by the given function of the result
+     * of this CompletableFuture.
+     *
+     * @param fn the function returning a new CompletableFuture
+     * @param <U> the type of the returned CompletableFuture's result
+     * @return the CompletableFuture
+     */
+    public <U> CompletableFuture<U> thenComposeAsync
+        (Fun<? super T, CompletableFuture<U>> fn) {
+        return uniComposeStage(asyncPool, fn);
+    }
+
+    /**
+     * Returns a CompletableFuture that upon completion, has the same
+     * value as that produced asynchronously using the given executor
+     * by the given function of this CompletableFuture.
+     *
+     * @param fn the function returning a new CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @param <U> the type of the returned CompletableFuture's result
+     * @return the CompletableFuture
+     */
+    public <U> CompletableFuture<U> thenComposeAsync
+        (Fun<? super T, CompletableFuture<U>> fn,
+         Executor executor) {
+        return uniComposeStage(screenExecutor(executor), fn);
+    }
+
+    private <U> CompletableFuture<U> uniComposeStage
+        (Executor e, Fun<? super T, CompletableFuture<U>> fn) {
+        if (fn == null)
+            throw new NullPointerException();
+        CompletableFuture<U> d = new CompletableFuture<U>();
+        attach(new UniCompose<T,U>(e, d, this, fn));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture with the same result or
+     * exception as this CompletableFuture, that executes the given
+     * action when this CompletableFuture completes.
+     *
+     * <p>When this CompletableFuture is complete, the given action is
+     * invoked with the result (or {@code null} if none) and the
+     * exception (or {@code null} if none) of this CompletableFuture as
+     * arguments.  The returned CompletableFuture is completed when the
+     * action returns.  If the supplied action itself encounters an
+     * exception, then the returned CompletableFuture exceptionally
+     * completes with this exception unless this CompletableFuture
+     * also completed exceptionally.
+     *
+     * @param action the action to perform
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<T> whenComplete
+        (BiAction<? super T, ? super Throwable> action) {
+        return uniWhenCompleteStage(null, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture with the same result or
+     * exception as this CompletableFuture, that executes the given
+     * action using the {@link ForkJoinPool#commonPool()} when this
+     * CompletableFuture completes.
+     *
+     * @param action the action to perform
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<T> whenCompleteAsync
+        (BiAction<? super T, ? super Throwable> action) {
+        return uniWhenCompleteStage(asyncPool, action);
+    }
+
+    /**
+     * Returns a new CompletableFuture with the same result or
+     * exception as this CompletableFuture, that executes the given
+     * action using the given executor when this CompletableFuture
+     * completes.
+     *
+     * @param action the action to perform
+     * @param executor the executor to use for asynchronous execution
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<T> whenCompleteAsync
+        (BiAction<? super T, ? super Throwable> action, Executor executor) {
+        return uniWhenCompleteStage(screenExecutor(executor), action);
+    }
+
+    private CompletableFuture<T> uniWhenCompleteStage
+        (Executor e, BiAction<? super T, ? super Throwable> action) {
+        if (action == null)
+            throw new NullPointerException();
+        CompletableFuture<T> d = new CompletableFuture<T>();
+        attach(new UniWhenComplete<T>(e, d, this, action));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed when this
+     * CompletableFuture completes, with the result of the given
+     * function of the result and exception of this CompletableFuture's
+     * completion.  The given function is invoked with the result (or
+     * {@code null} if none) and the exception (or {@code null} if none)
+     * of this CompletableFuture when complete.
+     *
+     * @param fn the function to use to compute the value of the
+     * returned CompletableFuture
+     * @param <U> the function's return type
+     * @return the new CompletableFuture
+     */
+    public <U> CompletableFuture<U> handle
+        (BiFun<? super T, Throwable, ? extends U> fn) {
+        return uniHandleStage(null, fn);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * using the {@link ForkJoinPool#commonPool()} when this
+     * CompletableFuture completes, with the result of the given
+     * function of the result and exception of this CompletableFuture's
+     * completion.
+     *
+     * @param fn the function to use to compute the value of the
+     * returned CompletableFuture
+     * @param <U> the function's return type
+     * @return the new CompletableFuture
+     */
+    public <U> CompletableFuture<U> handleAsync
+        (BiFun<? super T, Throwable, ? extends U> fn) {
+        return uniHandleStage(asyncPool, fn);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is asynchronously completed
+     * using the given executor when this CompletableFuture completes,
+     * with the result of the given function of the result and
+     * exception of this CompletableFuture's completion.
+     *
+     * @param fn the function to use to compute the value of the
+     * returned CompletableFuture
+     * @param executor the executor to use for asynchronous execution
+     * @param <U> the function's return type
+     * @return the new CompletableFuture
+     */
+    public <U> CompletableFuture<U> handleAsync
+        (BiFun<? super T, Throwable, ? extends U> fn, Executor executor) {
+        return uniHandleStage(screenExecutor(executor), fn);
+    }
+
+    private <U> CompletableFuture<U> uniHandleStage
+        (Executor e, BiFun<? super T, Throwable, ? extends U> fn) {
+        if (fn == null)
+            throw new NullPointerException();
+        CompletableFuture<U> d = new CompletableFuture<U>();
+        attach(new UniHandle<T,U>(e, d, this, fn));
+        return d;
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed when this
+     * CompletableFuture completes, with the result of the given
+     * function of the exception triggering this CompletableFuture's
+     * completion when it completes exceptionally; otherwise, if this
+     * CompletableFuture completes normally, then the returned
+     * CompletableFuture also completes normally with the same value.
+     *
+     * @param fn the function to use to compute the value of the
+     * returned CompletableFuture if this CompletableFuture completed
+     * exceptionally
+     * @return the new CompletableFuture
+     */
+    public CompletableFuture<T> exceptionally
+        (Fun<Throwable, ? extends T> fn) {
+        if (fn == null)
+            throw new NullPointerException();
+        CompletableFuture<T> d = new CompletableFuture<T>();
+        attach(new UniExceptionally<T>(d, this, fn));
+        return d;
+    }
+
+    /* ------------- Arbitrary-arity constructions -------------- */
+
+    /**
+     * Returns a new CompletableFuture that is completed when all of
+     * the given CompletableFutures complete.  If any of the given
+     * CompletableFutures complete exceptionally, then the returned
+     * CompletableFuture also does so, with a CompletionException
+     * holding this exception as its cause.  Otherwise, the results,
+     * if any, of the given CompletableFutures are not reflected in
+     * the returned CompletableFuture, but may be obtained by
+     * inspecting them individually. If no CompletableFutures are
+     * provided, returns a CompletableFuture completed with the value
+     * {@code null}.
+     *
+     * <p>Among the applications of this method is to await completion
+     * of a set of independent CompletableFutures before continuing a
+     * program, as in: {@code CompletableFuture.allOf(c1, c2,
+     * c3).join();}.
+     *
+     * @param cfs the CompletableFutures
+     * @return a new CompletableFuture that is completed when all of the
+     * given CompletableFutures complete
+     * @throws NullPointerException if the array or any of its elements are
+     * {@code null}
+     */
+    public static CompletableFuture<Void> allOf(CompletableFuture<?>... cfs) {
+        return andTree(cfs, 0, cfs.length - 1);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed when any of
+     * the given CompletableFutures complete, with the same result.
+     * Otherwise, if it completed exceptionally, the returned
+     * CompletableFuture also does so, with a CompletionException
+     * holding this exception as its cause.  If no CompletableFutures
+     * are provided, returns an incomplete CompletableFuture.
+     *
+     * @param cfs the CompletableFutures
+     * @return a new CompletableFuture that is completed with the
+     * result or exception of any of the given CompletableFutures when
+     * one completes
+     * @throws NullPointerException if the array or any of its elements are
+     * {@code null}
+     */
+    public static CompletableFuture<Object> anyOf(CompletableFuture<?>... cfs) {
+        return orTree(cfs, 0, cfs.length - 1);
+    }
+
+    /** Recursively constructs a tree of BiRelays for allOf. */
+    static CompletableFuture<Void> andTree(CompletableFuture<?>[] cfs,
+                                           int lo, int hi) {
+        CompletableFuture<Void> d = new CompletableFuture<Void>();
+        if (lo > hi) // empty
+            d.result = NIL;
+        else {
+            int mid = (lo + hi) >>> 1;
+            CompletableFuture<?> a, b;
+            if ((a = (lo == mid ? cfs[lo] : andTree(cfs, lo, mid))) == null ||
+                (b = (lo == hi ? a : (hi == mid + 1) ? cfs[hi] :
+                      andTree(cfs, mid + 1, hi))) == null)
+                throw new NullPointerException();
+            a.attachBoth(b, new BiRelay(d, a, b));
+        }
+        return d;
+    }
+
+    /** Recursively constructs a tree of OrRelays for anyOf. */
+    static CompletableFuture<Object> orTree(CompletableFuture<?>[] cfs,
+                                            int lo, int hi) {
+        CompletableFuture<Object> d = new CompletableFuture<Object>();
+        if (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            CompletableFuture<?> a, b;
+            if ((a = (lo == mid ? cfs[lo] : orTree(cfs, lo, mid))) == null ||
+                (b = (lo == hi ? a : (hi == mid + 1) ? cfs[hi] :
+                      orTree(cfs, mid + 1, hi))) == null)
+                throw new NullPointerException();
+            a.attachEither(b, new OrRelay(d, a, b));
+        }
+        return d;
+    }
+
+    /** Widens a future of a subtype to use as a source. */
+    @SuppressWarnings("unchecked")
+    static <U> CompletableFuture<U> narrow(CompletableFuture<? extends U> f) {
+        return (CompletableFuture<U>)f;
+    }
+
+    /**
+     * Returns a string identifying this CompletableFuture, as well as
+     * its completion state.  The state, in brackets, contains the
+     * String {@code "Completed Normally"} or the String {@code
+     * "Completed Exceptionally"}, or the String {@code "Not
+     * completed"} followed by the number of CompletableFutures
+     * dependent upon its completion, if any.
+     *
+     * @return a string identifying this CompletableFuture, as well as its state
+     */
+    public String toString() {
+        Object r = result;
+        int count;
+        return super.toString() +
+            ((r == null) ?
+             (((count = getNumberOfDependents()) == 0) ?
+              "[Not completed]" :
+              "[Not completed, " + count + " dependents]") :
+             ((exceptionOf(r) != null) ?
+              "[Completed exceptionally]" :
+              "[Completed normally]"));
+    }
+
+    // Unsafe mechanics
+    private static final sun.misc.Unsafe UNSAFE = sun.misc.Unsafe.getUnsafe();
+    private static final long RESULT =
+        objectFieldOffset(UNSAFE, "result", CompletableFuture.class);
+    private static final long STACK =
+        objectFieldOffset(UNSAFE, "stack", CompletableFuture.class);
+    private static final long STATUS =
+        objectFieldOffset(UNSAFE, "status", Completion.class);
+
+    static long objectFieldOffset(sun.misc.Unsafe UNSAFE,
+                                  String field, Class<?> klazz) {
+        try {
+            return UNSAFE.objectFieldOffset(klazz.getDeclaredField(field));
+        } catch (NoSuchFieldException e) {
+            // Convert Exception to corresponding Error
+            NoSuchFieldError error = new NoSuchFieldError(field);
+            error.initCause(e);
+            throw error;
+        }
+    }
+}
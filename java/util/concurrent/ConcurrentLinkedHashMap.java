@@ -0,0 +1,1349 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.concurrent;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A hash table supporting full concurrency of retrievals and
+ * updates, whose total weight is bounded, and which evicts entries
+ * to stay within that bound.  It is intended for use as a cache in
+ * place of a {@link java.util.LinkedHashMap} in access order that is
+ * wrapped in {@link java.util.Collections#synchronizedMap}: that
+ * combination must lock even to read, because every read reorders
+ * the map.
+ *
+ * <p>Each entry has a <em>weight</em>, which is one unless a {@link
+ * Weigher} is supplied, and the map evicts entries whenever the sum
+ * of their weights exceeds its <em>capacity</em>.  Which entries are
+ * evicted is decided by the map's {@link Policy}: either the least
+ * recently used entries ({@link Policy#LRU LRU}), or, with {@link
+ * Policy#LFU LFU}, a policy that also takes account of how often
+ * keys have been used, and so is not disturbed by scans of entries
+ * that are used only once.  Entries may additionally be made to
+ * expire a fixed time after they were last written, or last read,
+ * or both.
+ *
+ * <p>Eviction is approximate and eventual: the map may briefly hold
+ * more than its capacity, and an expired entry may remain in the map
+ * (although it is never returned) until the map is next maintained.
+ * Maintenance is performed by threads reading and writing the map,
+ * and may be requested explicitly by {@link #purge}.  Reads never
+ * block: rather than reordering the entries themselves, readers
+ * record the entries they read in buffers that are striped by
+ * thread, and that are later replayed against the eviction policy
+ * by whichever thread next maintains the map.  If the buffers fill
+ * faster than they are replayed, some reads are not recorded, which
+ * affects only the precision of the policy.  Updates take no lock
+ * other than those of the underlying {@link ConcurrentHashMap}.
+ *
+ * <p>Retrievals reflect the results of the most recently
+ * <em>completed</em> update operations holding upon their onset.
+ * Iterators return elements reflecting the state of the map at some
+ * point at or since the creation of the iterator, in no particular
+ * order.  They do <em>not</em> throw {@link
+ * java.util.ConcurrentModificationException}.  The results of
+ * aggregate status methods including <tt>size</tt>, <tt>isEmpty</tt>
+ * and <tt>containsValue</tt> are typically useful only when a map is
+ * not undergoing concurrent updates in other threads; in particular
+ * <tt>size</tt> may include entries that have expired but have not
+ * yet been removed.
+ *
+ * <p>The map counts hits (reads by {@link #get} that found a
+ * value), misses (reads that did not) and evictions (entries removed
+ * because of the capacity bound or because they expired).  The counts
+ * are maintained with striped counters, so updating them does not
+ * make otherwise independent reads contend.
+ *
+ * <p>This class and its views and iterators implement all of the
+ * <em>optional</em> methods of the {@link Map} and {@link Iterator}
+ * interfaces.  Like {@link ConcurrentHashMap}, this class does
+ * <em>not</em> allow <tt>null</tt> to be used as a key or value.
+ *
+ * <p>This class is a member of the
+ * <a href="{@docRoot}/../technotes/guides/collections/index.html">
+ * Java Collections Framework</a>.
+ *
+ * @since 1.7
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ */
+public class ConcurrentLinkedHashMap<K, V> extends AbstractMap<K, V>
+    implements ConcurrentMap<K, V> {
+
+    /*
+     * Overview:
+     *
+     * Mappings are held in a ConcurrentHashMap from keys to Nodes.  A
+     * Node is an AtomicReference to an immutable WeightedValue, so
+     * that a value and its weight are always replaced together by a
+     * single CAS.  A WeightedValue's weight also encodes the node's
+     * state: positive while the node is alive, negated once it has
+     * been "retired" (removed from the hash table, or about to be),
+     * and zero once it is "dead" (also removed from the policy).
+     * User-supplied weights must therefore be positive.
+     *
+     * The eviction policy's structures -- doubly-linked lists of
+     * nodes in access order and in write order, and the frequency
+     * sketch -- are not thread-safe and are guarded by evictionLock.
+     * Rather than lock on every access, threads record what they did
+     * in buffers and replay the buffers against the policy when they
+     * acquire the lock, which they only try to do:
+     *
+     *   - Reads record the node read in one of a power-of-two number
+     *     of ring buffers, chosen by thread id.  Each buffer has a
+     *     write count advanced by readers and a read count advanced
+     *     by the draining thread; readers overwrite slots without
+     *     checking them, so a buffer that is not drained in time
+     *     loses reads rather than blocking.  A reader tries to drain
+     *     the buffers once its buffer holds READ_BUFFER_THRESHOLD
+     *     pending reads.
+     *
+     *   - Writes enqueue a task (AddTask, UpdateTask or RemovalTask)
+     *     on a ConcurrentLinkedQueue, which is never lossy, and then
+     *     try to drain the buffers.  A thread that drains keeps
+     *     retrying while it finds the write buffer nonempty after
+     *     unlocking, so a task is not left waiting for the next
+     *     write.
+     *
+     * Tasks for one node may be replayed in a different order from
+     * the operations that created them (for example, a RemovalTask
+     * before the AddTask of the same node).  Each node therefore
+     * carries the weight that the policy has accounted for it
+     * (policyWeight), which tasks adjust, and a task for a dead node
+     * does nothing; the totals then come out the same in any order.
+     *
+     * The LRU policy keeps all nodes on the "probation" list, moving
+     * a node to its tail when it is read.  The LFU policy is a
+     * segmented LRU with TinyLFU admission: new nodes join the tail
+     * of the probation list; a node read while on probation moves to
+     * the "protected" list, whose weight is limited to
+     * PROTECTED_PERCENT of the capacity by demoting its least
+     * recently used nodes back to probation.  Victims are taken from
+     * the head of the probation list, but when a newly added node is
+     * what pushed the map over capacity, it is evicted instead of the
+     * victim unless the sketch estimates that its key has been used
+     * more often.  The sketch (FrequencySketch) is a count-min sketch
+     * of 4-bit counters that are periodically halved, so that the
+     * estimates favor recent history.  It starts small and grows with
+     * the number of entries, rather than being sized to the capacity,
+     * which may be far larger than the map ever gets.
+     *
+     * Expiration times are checked by readers, who treat an expired
+     * node as absent and try to remove it, and by the draining
+     * thread, which removes expired nodes from the heads of the
+     * write-order list and of the access-order lists.  Because the
+     * LFU policy's demotions do not preserve access order, the
+     * latter is approximate; expired nodes that are missed remain
+     * invisible to readers until they are evicted or read.
+     */
+
+    /* ---------------- Constants -------------- */
+
+    /** The number of CPUS, used to size the read buffers */
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /** The number of read buffers; a power of two */
+    static final int NUMBER_OF_READ_BUFFERS = ceilingPowerOfTwo(NCPU);
+
+    /** The number of slots in each read buffer; a power of two */
+    static final int READ_BUFFER_SIZE = 128;
+
+    /** Mask for indexing a read buffer */
+    static final int READ_BUFFER_INDEX_MASK = READ_BUFFER_SIZE - 1;
+
+    /** The number of pending reads in a buffer that triggers a drain */
+    static final int READ_BUFFER_THRESHOLD = 32;
+
+    /** The percentage of the capacity available to protected entries */
+    static final int PROTECTED_PERCENT = 80;
+
+    /** The largest capacity; larger capacities are reduced to this */
+    static final long MAXIMUM_CAPACITY = Long.MAX_VALUE - Integer.MAX_VALUE;
+
+    static int ceilingPowerOfTwo(int x) {
+        int n = 1;
+        while (n < x && n < (1 << 16))
+            n <<= 1;
+        return n;
+    }
+
+    /* ---------------- Public types -------------- */
+
+    /**
+     * The policies by which a {@link ConcurrentLinkedHashMap} chooses
+     * entries to evict.
+     */
+    public enum Policy {
+        /**
+         * Evicts the least recently used entries.  Every entry is
+         * admitted, and entries that have not been read for the
+         * longest time are evicted first.
+         */
+        LRU,
+
+        /**
+         * Evicts entries by recency and frequency of use.  Entries
+         * that have been read since they were added are protected
+         * from eviction in favor of those that have not, and a newly
+         * added entry whose admission would require an eviction is
+         * admitted only if its key has been used more often than that
+         * of the entry it would displace.  Keys are counted
+         * approximately, in a fixed amount of space proportional to
+         * the number of entries the map can hold.
+         */
+        LFU
+    }
+
+    /**
+     * Computes the weights of the entries of a {@link
+     * ConcurrentLinkedHashMap}.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    public static interface Weigher<K, V> {
+        /**
+         * Returns the weight of the entry with the given key and
+         * value.  The weight of an entry is computed when it is
+         * written, and must be positive.
+         *
+         * @param key the key
+         * @param value the value
+         * @return the weight of the entry; at least one
+         */
+        int weigh(K key, V value);
+    }
+
+    /* ---------------- Nodes -------------- */
+
+    /**
+     * A value together with its weight.  The weight is positive if
+     * the node holding this value is alive, negative if it is
+     * retired, and zero if it is dead.
+     */
+    static final class WeightedValue<V> {
+        final int weight;
+        final V value;
+
+        WeightedValue(V value, int weight) {
+            this.weight = weight;
+            this.value = value;
+        }
+
+        boolean contains(Object o) {
+            return o == value || value.equals(o);
+        }
+
+        boolean isAlive() {
+            return weight > 0;
+        }
+
+        boolean isDead() {
+            return weight == 0;
+        }
+    }
+
+    /** Nodes are not on any list */
+    static final int NOWHERE = 0;
+    /** Nodes are on the probation list */
+    static final int PROBATION = 1;
+    /** Nodes are on the protected list */
+    static final int PROTECTED = 2;
+
+    /**
+     * A mapping, linked into the policy's lists.  The links and
+     * policy fields are guarded by evictionLock; a list header is a
+     * Node with a null key.
+     */
+    static final class Node<K, V> extends AtomicReference<WeightedValue<V>> {
+        final K key;
+        volatile long accessTime;
+        volatile long writeTime;
+
+        Node<K, V> before, after;             // access order
+        Node<K, V> writeBefore, writeAfter;   // write order
+        int list = NOWHERE;
+        int policyWeight;
+
+        Node(K key, WeightedValue<V> weightedValue) {
+            super(weightedValue);
+            this.key = key;
+        }
+
+        /** Creates a list header */
+        Node() {
+            super(null);
+            this.key = null;
+            before = after = writeBefore = writeAfter = this;
+        }
+
+        V getValue() {
+            return get().value;
+        }
+    }
+
+    /* ---------------- Read buffers -------------- */
+
+    static final class ReadBuffer<K, V> {
+        final AtomicReferenceArray<Node<K, V>> slots =
+            new AtomicReferenceArray<Node<K, V>>(READ_BUFFER_SIZE);
+        /** The number of reads recorded */
+        final AtomicLong writeCount = new AtomicLong();
+        /** The number of reads replayed or skipped; set under lock */
+        volatile long readCount;
+    }
+
+    /* ---------------- Fields -------------- */
+
+    final ConcurrentHashMap<K, Node<K, V>> data;
+    final Weigher<? super K, ? super V> weigher;
+    final Policy policy;
+    final long expireAfterWriteNanos;
+    final long expireAfterAccessNanos;
+
+    final ReentrantLock evictionLock = new ReentrantLock();
+    final ReadBuffer<K, V>[] readBuffers;
+    final ConcurrentLinkedQueue<Runnable> writeBuffer =
+        new ConcurrentLinkedQueue<Runnable>();
+
+    // Guarded by evictionLock, but readable without it
+    volatile long capacity;
+    volatile long weightedSize;
+
+    // Guarded by evictionLock
+    final Node<K, V> probation = new Node<K, V>();
+    final Node<K, V> protectedList = new Node<K, V>();
+    final Node<K, V> writeOrder = new Node<K, V>();
+    long protectedWeight;
+    final FrequencySketch sketch;
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+
+    transient Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------- Constructors -------------- */
+
+    /**
+     * Creates a new, empty map that holds at most the given number of
+     * entries, evicting the least recently used, and whose entries do
+     * not expire.
+     *
+     * @param maximumSize the maximum number of entries
+     * @throws IllegalArgumentException if <tt>maximumSize</tt> is negative
+     */
+    public ConcurrentLinkedHashMap(long maximumSize) {
+        this(maximumSize, null, Policy.LRU, 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a new, empty map whose entries have at most the given
+     * total weight, evicting the least recently used, and whose
+     * entries do not expire.
+     *
+     * @param maximumWeight the maximum total weight of the entries
+     * @param weigher the weigher of entries
+     * @throws IllegalArgumentException if <tt>maximumWeight</tt> is negative
+     * @throws NullPointerException if <tt>weigher</tt> is null
+     */
+    public ConcurrentLinkedHashMap(long maximumWeight,
+                                   Weigher<? super K, ? super V> weigher) {
+        this(maximumWeight, weigher, Policy.LRU, 0, 0, TimeUnit.NANOSECONDS);
+        if (weigher == null)
+            throw new NullPointerException();
+    }
+
+    /**
+     * Creates a new, empty map with the given bounds and policy.
+     *
+     * @param maximumWeight the maximum total weight of the entries
+     * @param weigher the weigher of entries, or <tt>null</tt> if each
+     *        entry has weight one
+     * @param policy the eviction policy
+     * @param expireAfterWrite the time after which an entry expires
+     *        once it was created or its value last replaced, or zero
+     *        if entries do not expire after writing
+     * @param expireAfterAccess the time after which an entry expires
+     *        once it was last read or written, or zero if entries do
+     *        not expire after access
+     * @param unit the time unit of the <tt>expireAfterWrite</tt> and
+     *        <tt>expireAfterAccess</tt> arguments
+     * @throws IllegalArgumentException if <tt>maximumWeight</tt>,
+     *         <tt>expireAfterWrite</tt> or <tt>expireAfterAccess</tt>
+     *         is negative
+     * @throws NullPointerException if <tt>policy</tt> or <tt>unit</tt>
+     *         is null
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLinkedHashMap(long maximumWeight,
+                                   Weigher<? super K, ? super V> weigher,
+                                   Policy policy,
+                                   long expireAfterWrite,
+                                   long expireAfterAccess,
+                                   TimeUnit unit) {
+        if (maximumWeight < 0 || expireAfterWrite < 0 || expireAfterAccess < 0)
+            throw new IllegalArgumentException();
+        if (policy == null || unit == null)
+            throw new NullPointerException();
+        this.capacity = Math.min(maximumWeight, MAXIMUM_CAPACITY);
+        this.weigher = weigher;
+        this.policy = policy;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.expireAfterAccessNanos = unit.toNanos(expireAfterAccess);
+        int initialCapacity = (int) Math.min(capacity, 16);
+        this.data = new ConcurrentHashMap<K, Node<K, V>>(initialCapacity,
+                                                         0.75f, NCPU);
+        this.readBuffers = (ReadBuffer<K, V>[])
+            new ReadBuffer[NUMBER_OF_READ_BUFFERS];
+        for (int i = 0; i < readBuffers.length; i++)
+            readBuffers[i] = new ReadBuffer<K, V>();
+        if (policy == Policy.LFU) {
+            sketch = new FrequencySketch();
+            sketch.ensureCapacity(16);
+        } else {
+            sketch = null;
+        }
+    }
+
+    /* ---------------- Capacity -------------- */
+
+    /**
+     * Returns the maximum total weight of the entries of this map.
+     *
+     * @return the capacity of this map
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * Sets the maximum total weight of the entries of this map,
+     * evicting entries immediately if the map is now above it.
+     *
+     * @param capacity the new capacity
+     * @throws IllegalArgumentException if <tt>capacity</tt> is negative
+     */
+    public void setCapacity(long capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException();
+        evictionLock.lock();
+        try {
+            this.capacity = Math.min(capacity, MAXIMUM_CAPACITY);
+            drainBuffers();
+            evict(null);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the total weight of the entries of this map.  The
+     * result may lag behind recent updates and may briefly exceed the
+     * capacity.
+     *
+     * @return the total weight of the entries
+     */
+    public long weightedSize() {
+        return Math.max(0, weightedSize);
+    }
+
+    /* ---------------- Maintenance -------------- */
+
+    /**
+     * Returns the index of the read buffer for the current thread.
+     */
+    static int readBufferIndex() {
+        long id = Thread.currentThread().getId();
+        int h = (int)(id ^ (id >>> 32)) * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & (NUMBER_OF_READ_BUFFERS - 1);
+    }
+
+    /**
+     * Records a read of the given node, and maintains the map if the
+     * current thread's buffer is sufficiently full.
+     */
+    void afterRead(Node<K, V> node) {
+        if (expireAfterAccessNanos > 0)
+            node.accessTime = System.nanoTime();
+        ReadBuffer<K, V> buffer = readBuffers[readBufferIndex()];
+        long writeCount = buffer.writeCount.get();
+        buffer.writeCount.lazySet(writeCount + 1);
+        buffer.slots.lazySet((int)(writeCount & READ_BUFFER_INDEX_MASK), node);
+        if (writeCount + 1 - buffer.readCount >= READ_BUFFER_THRESHOLD)
+            tryToDrainBuffers();
+    }
+
+    /**
+     * Records a write, and maintains the map.
+     */
+    void afterWrite(Runnable task) {
+        writeBuffer.add(task);
+        tryToDrainBuffers();
+    }
+
+    /**
+     * Maintains the map if no other thread is doing so.
+     */
+    void tryToDrainBuffers() {
+        while (evictionLock.tryLock()) {
+            try {
+                drainBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+            if (writeBuffer.isEmpty())
+                break;
+        }
+    }
+
+    /**
+     * Replays the buffers against the policy, and removes expired
+     * entries.  Called with evictionLock held.
+     */
+    void drainBuffers() {
+        for (int i = 0; i < readBuffers.length; i++)
+            drainReadBuffer(readBuffers[i]);
+        Runnable task;
+        while ((task = writeBuffer.poll()) != null)
+            task.run();
+        expire();
+    }
+
+    void drainReadBuffer(ReadBuffer<K, V> buffer) {
+        long writeCount = buffer.writeCount.get();
+        long readCount = Math.max(buffer.readCount,
+                                  writeCount - READ_BUFFER_SIZE);
+        while (readCount < writeCount) {
+            int index = (int)(readCount & READ_BUFFER_INDEX_MASK);
+            Node<K, V> node = buffer.slots.get(index);
+            if (node == null)
+                break;          // recorded but not yet published
+            buffer.slots.lazySet(index, null);
+            applyRead(node);
+            readCount++;
+        }
+        buffer.readCount = readCount;
+    }
+
+    /**
+     * Updates the policy for a read of the given node.
+     */
+    void applyRead(Node<K, V> node) {
+        if (node.list == NOWHERE)
+            return;
+        if (sketch != null)
+            sketch.increment(node.key);
+        if (policy == Policy.LRU) {
+            moveToTail(probation, node);
+        } else if (node.list == PROBATION) {
+            unlink(node);
+            linkLast(protectedList, node, PROTECTED);
+            protectedWeight += node.policyWeight;
+            long maxProtected = (capacity <= Long.MAX_VALUE / 100)
+                ? capacity * PROTECTED_PERCENT / 100
+                : capacity / 100 * PROTECTED_PERCENT;
+            while (protectedWeight > maxProtected &&
+                   protectedList.after != node) {
+                Node<K, V> demoted = protectedList.after;
+                unlink(demoted);
+                protectedWeight -= demoted.policyWeight;
+                linkLast(probation, demoted, PROBATION);
+            }
+        } else {
+            moveToTail(protectedList, node);
+        }
+    }
+
+    /** Adds a new node to the policy. */
+    final class AddTask implements Runnable {
+        final Node<K, V> node;
+        final int weight;
+
+        AddTask(Node<K, V> node, int weight) {
+            this.node = node;
+            this.weight = weight;
+        }
+
+        public void run() {
+            if (node.get().isDead())
+                return;
+            node.policyWeight += weight;
+            weightedSize += weight;
+            if (node.get().isAlive()) {
+                linkLast(probation, node, PROBATION);
+                if (expireAfterWriteNanos > 0)
+                    linkLastWrite(node);
+                if (sketch != null) {
+                    sketch.ensureCapacity(data.size());
+                    sketch.increment(node.key);
+                }
+                evict(node);
+            }
+        }
+    }
+
+    /** Adjusts the policy for a replaced value. */
+    final class UpdateTask implements Runnable {
+        final Node<K, V> node;
+        final int weightDifference;
+
+        UpdateTask(Node<K, V> node, int weightDifference) {
+            this.node = node;
+            this.weightDifference = weightDifference;
+        }
+
+        public void run() {
+            if (node.get().isDead())
+                return;
+            node.policyWeight += weightDifference;
+            weightedSize += weightDifference;
+            if (node.list == PROTECTED)
+                protectedWeight += weightDifference;
+            if (node.list != NOWHERE && expireAfterWriteNanos > 0) {
+                unlinkWrite(node);
+                linkLastWrite(node);
+            }
+            applyRead(node);
+            evict(null);
+        }
+    }
+
+    /** Removes a retired node from the policy. */
+    final class RemovalTask implements Runnable {
+        final Node<K, V> node;
+
+        RemovalTask(Node<K, V> node) {
+            this.node = node;
+        }
+
+        public void run() {
+            if (!node.get().isDead())
+                discard(node);
+        }
+    }
+
+    /**
+     * Evicts entries while the map is over capacity.  If candidate is
+     * non-null, it is the node whose addition caused the overflow.
+     */
+    void evict(Node<K, V> candidate) {
+        while (weightedSize > capacity) {
+            Node<K, V> victim = probation.after;
+            if (victim == probation) {
+                victim = protectedList.after;
+                if (victim == protectedList)
+                    break;      // the weight is that of unlinked nodes
+            }
+            if (candidate != null) {
+                if (sketch != null && candidate != victim &&
+                    candidate.list != NOWHERE &&
+                    sketch.frequency(candidate.key) <=
+                    sketch.frequency(victim.key))
+                    victim = candidate;
+                candidate = null;
+            }
+            evictEntry(victim);
+        }
+    }
+
+    /**
+     * Removes expired entries from the heads of the lists.
+     */
+    void expire() {
+        if (expireAfterWriteNanos == 0 && expireAfterAccessNanos == 0)
+            return;
+        long now = System.nanoTime();
+        if (expireAfterWriteNanos > 0) {
+            Node<K, V> node;
+            while ((node = writeOrder.writeAfter) != writeOrder &&
+                   now - node.writeTime >= expireAfterWriteNanos)
+                evictEntry(node);
+        }
+        if (expireAfterAccessNanos > 0) {
+            expireAccessed(probation, now);
+            expireAccessed(protectedList, now);
+        }
+    }
+
+    void expireAccessed(Node<K, V> header, long now) {
+        Node<K, V> node;
+        while ((node = header.after) != header &&
+               now - node.accessTime >= expireAfterAccessNanos)
+            evictEntry(node);
+    }
+
+    /**
+     * Evicts the given node, which is linked, counting the eviction
+     * if the node was still mapped.
+     */
+    void evictEntry(Node<K, V> node) {
+        if (data.remove(node.key, node))
+            evictions.increment();
+        discard(node);
+    }
+
+    /**
+     * Removes the given node from the policy and makes it dead.
+     */
+    void discard(Node<K, V> node) {
+        if (node.list == PROTECTED)
+            protectedWeight -= node.policyWeight;
+        if (node.list != NOWHERE) {
+            unlink(node);
+            if (expireAfterWriteNanos > 0)
+                unlinkWrite(node);
+        }
+        weightedSize -= node.policyWeight;
+        node.policyWeight = 0;
+        for (;;) {
+            WeightedValue<V> current = node.get();
+            WeightedValue<V> dead = new WeightedValue<V>(current.value, 0);
+            if (node.compareAndSet(current, dead))
+                return;
+        }
+    }
+
+    /**
+     * Atomically retires the given node if it is alive.
+     *
+     * @return true if this call retired the node
+     */
+    static <K, V> boolean tryToRetire(Node<K, V> node,
+                                      WeightedValue<V> expect) {
+        if (!expect.isAlive())
+            return false;
+        WeightedValue<V> retired =
+            new WeightedValue<V>(expect.value, -expect.weight);
+        return node.compareAndSet(expect, retired);
+    }
+
+    /**
+     * Retires the given node, which has been removed from the table,
+     * unless it is no longer alive.
+     */
+    static <K, V> void makeRetired(Node<K, V> node) {
+        for (;;) {
+            WeightedValue<V> current = node.get();
+            if (!current.isAlive() || tryToRetire(node, current))
+                return;
+        }
+    }
+
+    // List operations; the list field records which access-order list
+    // a node is on
+
+    static <K, V> void linkLast(Node<K, V> header, Node<K, V> node, int list) {
+        node.after = header;
+        node.before = header.before;
+        header.before.after = node;
+        header.before = node;
+        node.list = list;
+    }
+
+    static <K, V> void unlink(Node<K, V> node) {
+        node.before.after = node.after;
+        node.after.before = node.before;
+        node.before = node.after = null;
+        node.list = NOWHERE;
+    }
+
+    static <K, V> void moveToTail(Node<K, V> header, Node<K, V> node) {
+        int list = node.list;
+        unlink(node);
+        linkLast(header, node, list);
+    }
+
+    void linkLastWrite(Node<K, V> node) {
+        Node<K, V> header = writeOrder;
+        node.writeAfter = header;
+        node.writeBefore = header.writeBefore;
+        header.writeBefore.writeAfter = node;
+        header.writeBefore = node;
+    }
+
+    static <K, V> void unlinkWrite(Node<K, V> node) {
+        node.writeBefore.writeAfter = node.writeAfter;
+        node.writeAfter.writeBefore = node.writeBefore;
+        node.writeBefore = node.writeAfter = null;
+    }
+
+    /**
+     * Returns true if the given node has expired.
+     */
+    boolean isExpired(Node<K, V> node, long now) {
+        return (expireAfterWriteNanos > 0 &&
+                now - node.writeTime >= expireAfterWriteNanos) ||
+               (expireAfterAccessNanos > 0 &&
+                now - node.accessTime >= expireAfterAccessNanos);
+    }
+
+    boolean isExpired(Node<K, V> node) {
+        if (expireAfterWriteNanos == 0 && expireAfterAccessNanos == 0)
+            return false;
+        return isExpired(node, System.nanoTime());
+    }
+
+    /**
+     * Removes the given expired node, if it is still alive and mapped.
+     */
+    void removeExpired(Node<K, V> node) {
+        WeightedValue<V> weightedValue = node.get();
+        if (tryToRetire(node, weightedValue)) {
+            if (data.remove(node.key, node))
+                evictions.increment();
+            afterWrite(new RemovalTask(node));
+        }
+    }
+
+    /**
+     * Performs any pending maintenance: replays recorded reads and
+     * writes against the eviction policy, and removes expired entries.
+     * Maintenance is otherwise performed in the course of reads and
+     * writes, so this method need only be called to reclaim expired
+     * entries from a map that is not otherwise in use.
+     */
+    public void purge() {
+        evictionLock.lock();
+        try {
+            drainBuffers();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /* ---------------- Statistics -------------- */
+
+    /**
+     * Returns the number of calls to {@link #get} that returned a
+     * value.
+     *
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of calls to {@link #get} that returned
+     * <tt>null</tt>.
+     *
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries removed to keep the map within
+     * its capacity or because they expired.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /* ---------------- Map operations -------------- */
+
+    int weigh(K key, V value) {
+        if (weigher == null)
+            return 1;
+        int weight = weigher.weigh(key, value);
+        if (weight <= 0)
+            throw new IllegalArgumentException("weight: " + weight);
+        return weight;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map, including
+     * any that have expired but have not yet been removed.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code null} if this map contains no unexpired mapping for the
+     * key.  The read is recorded by the eviction policy and counted as
+     * a hit or a miss.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public V get(Object key) {
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            if (!isExpired(node)) {
+                V value = node.getValue();
+                hits.increment();
+                afterRead(node);
+                return value;
+            }
+            removeExpired(node);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Tests if the specified object is a key in this map.  The test
+     * is not recorded by the eviction policy.
+     *
+     * @param  key   possible key
+     * @return <tt>true</tt> if and only if the specified object
+     *         is a key in this map, as determined by the
+     *         <tt>equals</tt> method; <tt>false</tt> otherwise.
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean containsKey(Object key) {
+        Node<K, V> node = data.get(key);
+        return node != null && node.get().isAlive() && !isExpired(node);
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.  Note: This method requires a full internal
+     * traversal of the map, and so is much slower than method
+     * <tt>containsKey</tt>.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value
+     * @throws NullPointerException if the specified value is null
+     */
+    public boolean containsValue(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        long now = System.nanoTime();
+        for (Node<K, V> node : data.values()) {
+            WeightedValue<V> weightedValue = node.get();
+            if (weightedValue.isAlive() && weightedValue.contains(value) &&
+                !isExpired(node, now))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Maps the specified key to the specified value in this map,
+     * evicting other entries if the map is then over capacity.
+     * Neither the key nor the value can be null.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>
+     * @throws NullPointerException if the specified key or value is null
+     * @throws IllegalArgumentException if the weigher returns a weight
+     *         that is not positive
+     */
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or <tt>null</tt> if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     * @throws IllegalArgumentException if the weigher returns a weight
+     *         that is not positive
+     */
+    public V putIfAbsent(K key, V value) {
+        return put(key, value, true);
+    }
+
+    V put(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        int weight = weigh(key, value);
+        WeightedValue<V> weightedValue = new WeightedValue<V>(value, weight);
+        Node<K, V> node = new Node<K, V>(key, weightedValue);
+        touch(node);
+        for (;;) {
+            Node<K, V> prior = data.putIfAbsent(key, node);
+            if (prior == null) {
+                afterWrite(new AddTask(node, weight));
+                return null;
+            }
+            if (isExpired(prior)) {
+                removeExpired(prior);
+                continue;
+            }
+            if (onlyIfAbsent) {
+                WeightedValue<V> current = prior.get();
+                if (!current.isAlive())
+                    continue;
+                afterRead(prior);
+                return current.value;
+            }
+            for (;;) {
+                WeightedValue<V> old = prior.get();
+                if (!old.isAlive())
+                    break;      // retry the table
+                if (prior.compareAndSet(old, weightedValue)) {
+                    touch(prior);
+                    afterWrite(new UpdateTask(prior, weight - old.weight));
+                    return old.value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the key (and its corresponding value) from this map.
+     * This method does nothing if the key is not in the map.
+     *
+     * @param  key the key that needs to be removed
+     * @return the previous value associated with <tt>key</tt>, or
+     *         <tt>null</tt> if there was no mapping for <tt>key</tt>
+     * @throws NullPointerException if the specified key is null
+     */
+    public V remove(Object key) {
+        Node<K, V> node = data.remove(key);
+        if (node == null)
+            return null;
+        makeRetired(node);
+        afterWrite(new RemovalTask(node));
+        return isExpired(node) ? null : node.getValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean remove(Object key, Object value) {
+        Node<K, V> node = data.get(key);
+        if (node == null || value == null || isExpired(node))
+            return false;
+        WeightedValue<V> weightedValue = node.get();
+        for (;;) {
+            if (!weightedValue.isAlive() || !weightedValue.contains(value))
+                return false;
+            if (tryToRetire(node, weightedValue)) {
+                if (data.remove(key, node)) {
+                    afterWrite(new RemovalTask(node));
+                    return true;
+                }
+                return false;
+            }
+            weightedValue = node.get();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or <tt>null</tt> if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     * @throws IllegalArgumentException if the weigher returns a weight
+     *         that is not positive
+     */
+    public V replace(K key, V value) {
+        if (key == null || value == null)
+            throw new NullPointerException();
+        Node<K, V> node = data.get(key);
+        if (node == null || isExpired(node))
+            return null;
+        int weight = weigh(key, value);
+        WeightedValue<V> weightedValue = new WeightedValue<V>(value, weight);
+        for (;;) {
+            WeightedValue<V> old = node.get();
+            if (!old.isAlive())
+                return null;
+            if (node.compareAndSet(old, weightedValue)) {
+                touch(node);
+                afterWrite(new UpdateTask(node, weight - old.weight));
+                return old.value;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if any of the arguments are null
+     * @throws IllegalArgumentException if the weigher returns a weight
+     *         that is not positive
+     */
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (key == null || oldValue == null || newValue == null)
+            throw new NullPointerException();
+        Node<K, V> node = data.get(key);
+        if (node == null || isExpired(node))
+            return false;
+        int weight = weigh(key, newValue);
+        WeightedValue<V> weightedValue = new WeightedValue<V>(newValue, weight);
+        for (;;) {
+            WeightedValue<V> old = node.get();
+            if (!old.isAlive() || !old.contains(oldValue))
+                return false;
+            if (node.compareAndSet(old, weightedValue)) {
+                touch(node);
+                afterWrite(new UpdateTask(node, weight - old.weight));
+                return true;
+            }
+        }
+    }
+
+    /** Sets the write and access times of a node whose value was replaced. */
+    void touch(Node<K, V> node) {
+        if (expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0)
+            node.writeTime = node.accessTime = System.nanoTime();
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        evictionLock.lock();
+        try {
+            drainBuffers();
+            Node<K, V> node;
+            while ((node = probation.after) != probation ||
+                   (node = protectedList.after) != protectedList) {
+                data.remove(node.key, node);
+                discard(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this
+     * map.  The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  The set supports element
+     * removal, which removes the corresponding mapping from the map,
+     * via the <tt>Iterator.remove</tt>, <tt>Set.remove</tt>,
+     * <tt>removeAll</tt>, <tt>retainAll</tt>, and <tt>clear</tt>
+     * operations.  It does not support the <tt>add</tt> or
+     * <tt>addAll</tt> operations.  Iterating over the view does not
+     * affect the eviction policy, and skips expired entries.
+     *
+     * <p>The view's <tt>iterator</tt> is a "weakly consistent" iterator
+     * that will never throw {@link
+     * java.util.ConcurrentModificationException}, and guarantees to
+     * traverse elements as they existed upon construction of the
+     * iterator, and may (but is not guaranteed to) reflect any
+     * modifications subsequent to construction.
+     */
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        final Iterator<Node<K, V>> it = data.values().iterator();
+        Map.Entry<K, V> next;
+        K lastKey;
+
+        public boolean hasNext() {
+            while (next == null && it.hasNext()) {
+                Node<K, V> node = it.next();
+                WeightedValue<V> weightedValue = node.get();
+                if (weightedValue.isAlive() && !isExpired(node))
+                    next = new WriteThroughEntry(node.key,
+                                                 weightedValue.value);
+            }
+            return next != null;
+        }
+
+        public Map.Entry<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Map.Entry<K, V> e = next;
+            next = null;
+            lastKey = e.getKey();
+            return e;
+        }
+
+        public void remove() {
+            if (lastKey == null)
+                throw new IllegalStateException();
+            ConcurrentLinkedHashMap.this.remove(lastKey);
+            lastKey = null;
+        }
+    }
+
+    /**
+     * An entry returned by the entry iterator, whose setValue writes
+     * through to the map.
+     */
+    final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+        WriteThroughEntry(K k, V v) {
+            super(k, v);
+        }
+
+        public V setValue(V value) {
+            if (value == null)
+                throw new NullPointerException();
+            V v = super.setValue(value);
+            ConcurrentLinkedHashMap.this.put(getKey(), value);
+            return v;
+        }
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object k = e.getKey(), v = e.getValue();
+            if (k == null || v == null)
+                return false;
+            Node<K, V> node = data.get(k);
+            if (node == null || isExpired(node))
+                return false;
+            WeightedValue<V> weightedValue = node.get();
+            return weightedValue.isAlive() && weightedValue.contains(v);
+        }
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object k = e.getKey(), v = e.getValue();
+            return k != null && v != null &&
+                ConcurrentLinkedHashMap.this.remove(k, v);
+        }
+        public int size() {
+            return ConcurrentLinkedHashMap.this.size();
+        }
+        public boolean isEmpty() {
+            return ConcurrentLinkedHashMap.this.isEmpty();
+        }
+        public void clear() {
+            ConcurrentLinkedHashMap.this.clear();
+        }
+    }
+
+    /* ---------------- Frequency sketch -------------- */
+
+    /**
+     * A count-min sketch estimating how often keys have been used,
+     * with four 4-bit counters per key, packed sixteen to a long.
+     * When the number of increments reaches ten times the capacity
+     * that the sketch was sized for, all counters are halved, so that
+     * estimates decay over time.  Not thread-safe; used under
+     * evictionLock.
+     */
+    static final class FrequencySketch {
+        static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        static final long RESET_MASK = 0x7777777777777777L;
+        static final long ONE_MASK = 0x1111111111111111L;
+
+        long[] table;
+        int tableMask;
+        int sampleSize;
+        int size;
+
+        /**
+         * Grows the sketch, if needed, to count the given number of
+         * keys accurately.  Growing discards the counts.
+         */
+        void ensureCapacity(long maximumSize) {
+            int maximum = (int) Math.min(Math.max(maximumSize, 1),
+                                         1 << 26);
+            if (table != null && table.length >= maximum)
+                return;
+            int length = 8;
+            while (length < maximum)
+                length <<= 1;
+            table = new long[length];
+            tableMask = length - 1;
+            sampleSize = 10 * maximum;
+            size = 0;
+        }
+
+        /** Returns the estimated number of uses of the key, at most 15. */
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        /** Counts a use of the key. */
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++)
+                added |= incrementAt(indexOf(hash, i), start + i);
+            if (added && ++size == sampleSize)
+                reset();
+        }
+
+        boolean incrementAt(int i, int j) {
+            int offset = j << 2;
+            long mask = 0xfL << offset;
+            if ((table[i] & mask) != mask) {
+                table[i] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        void reset() {
+            int count = 0;
+            for (int i = 0; i < table.length; i++) {
+                count += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size = (size >>> 1) - (count >>> 2);
+        }
+
+        int indexOf(int item, int i) {
+            long hash = (item + SEED[i]) * SEED[i];
+            hash += hash >>> 32;
+            return ((int) hash) & tableMask;
+        }
+
+        static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
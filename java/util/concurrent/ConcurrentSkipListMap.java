@@ -293,12 +293,6 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
 
     private static final long serialVersionUID = -8627078645895051609L;
 
-    /**
-     * Generates the initial random seed for the cheaper per-instance
-     * random number generators used in randomLevel.
-     */
-    private static final Random seedGenerator = new Random();
-
     /**
      * Special value used to identify base-level header
      */
@@ -316,12 +310,6 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
      */
     private final Comparator<? super K> comparator;
 
-    /**
-     * Seed for simple random number generator.  Not volatile since it
-     * doesn't matter too much if different threads don't see updates.
-     */
-    private transient int randomSeed;
-
     /** Lazily initialized key set */
     private transient KeySet keySet;
     /** Lazily initialized entry set */
@@ -341,7 +329,6 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
         entrySet = null;
         values = null;
         descendingMap = null;
-        randomSeed = seedGenerator.nextInt() | 0x0100; // ensure nonzero
         head = new HeadIndex<K,V>(new Node<K,V>(null, BASE_HEADER, null),
                                   null, null, 1);
     }
@@ -906,15 +893,11 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
      * Hardwired to k=1, p=0.5, max 31 (see above and
      * Pugh's "Skip List Cookbook", sec 3.4).
      *
-     * This uses the simplest of the generators described in George
-     * Marsaglia's "Xorshift RNGs" paper.  This is not a high-quality
-     * generator but is acceptable here.
+     * Random bits come from the calling thread's ThreadLocalRandom,
+     * so concurrent insertions never write a shared seed.
      */
     private int randomLevel() {
-        int x = randomSeed;
-        x ^= x << 13;
-        x ^= x >>> 17;
-        randomSeed = x ^= x << 5;
+        int x = ThreadLocalRandom.current().nextInt();
         if ((x & 0x8001) != 0) // test highest and lowest bits
             return 0;
         int level = 1;
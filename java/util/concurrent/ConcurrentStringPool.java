@@ -0,0 +1,614 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.concurrent;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * A thread-safe pool of canonical strings, for deduplicating the many
+ * equal strings produced by parsers and similar sources.  The {@link
+ * #intern(String) intern} methods behave like {@link String#intern},
+ * returning a single representative for each distinct character
+ * sequence, but the pool is an ordinary object of configurable size,
+ * its lookups do not lock, and the strings it holds are only weakly
+ * reachable from it: a canonical string that is no longer used
+ * elsewhere is reclaimed by the garbage collector, and its entry is
+ * then removed from the pool.
+ *
+ * <p>Canonical strings are canonical only with respect to the pool
+ * that returned them; they are not in general the same objects as
+ * those returned by {@code String.intern()}, nor as those returned by
+ * other pools.  Code that compares strings with {@code ==} must obtain
+ * all of them from the same pool.
+ *
+ * <p>Like {@link ConcurrentHashMap}, the pool is divided into
+ * segments, each guarded by its own lock, whose number is governed by
+ * the {@code concurrencyLevel} constructor argument.  Lookups of
+ * strings that are already present never block; adding a string locks
+ * only one segment.
+ *
+ * <p>The pool counts hits (lookups answered from the pool), misses
+ * (lookups that added a new string) and evictions (entries removed
+ * because their string was reclaimed).  The counts are maintained
+ * with striped counters, so updating them does not make otherwise
+ * independent lookups contend.
+ *
+ * <p>This class does not permit {@code null} strings.
+ *
+ * @since 1.7
+ */
+public class ConcurrentStringPool {
+    /*
+     * The structure follows that of ConcurrentHashMap: a power-of-two
+     * number of segments, each holding a chained hash table whose
+     * entries have final next fields, so that readers may traverse
+     * them without locking.  Removing an entry therefore clones the
+     * entries preceding it in its bin.
+     *
+     * Entries are WeakReferences to the pooled strings, registered
+     * with a per-segment ReferenceQueue.  Cleared entries are expunged
+     * whenever the segment is locked for an insertion (as WeakHashMap
+     * does on each access), and by purge().  Because removal and
+     * rehashing replace entries with clones, the queue may also yield
+     * entries that are no longer in the table; these are ignored.
+     * Readers simply skip entries whose referent has been cleared.
+     */
+
+    /* ---------------- Constants -------------- */
+
+    /**
+     * The default initial capacity for this pool, used when not
+     * otherwise specified in a constructor.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The default load factor for this pool, used when not otherwise
+     * specified in a constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The default concurrency level for this pool, used when not
+     * otherwise specified in a constructor.
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * The maximum capacity of a segment's table.  MUST be a power of
+     * two <= 1<<30.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The maximum number of segments to allow.
+     */
+    static final int MAX_SEGMENTS = 1 << 16;
+
+    /* ---------------- Fields -------------- */
+
+    /**
+     * Mask value for indexing into segments. The upper bits of a
+     * key's hash code are used to choose the segment.
+     */
+    final int segmentMask;
+
+    /**
+     * Shift value for indexing within segments.
+     */
+    final int segmentShift;
+
+    /**
+     * The segments, each of which is a specialized hash table.
+     */
+    final Segment[] segments;
+
+    /* ---------------- Small Utilities -------------- */
+
+    /**
+     * Applies a supplemental hash function to a given hashCode, which
+     * defends against poor quality hash functions.  This is the same
+     * function as is used by ConcurrentHashMap.
+     */
+    private static int hash(int h) {
+        h += (h <<  15) ^ 0xffffcd7d;
+        h ^= (h >>> 10);
+        h += (h <<   3);
+        h ^= (h >>>  6);
+        h += (h <<   2) + (h << 14);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the same value as String.hashCode would for a string
+     * holding the specified characters.
+     */
+    private static int hashCode(char[] chars, int offset, int length) {
+        int h = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++)
+            h = 31 * h + chars[i];
+        return h;
+    }
+
+    /**
+     * Returns the segment that should be used for a string with the
+     * given hash.
+     */
+    final Segment segmentFor(int hash) {
+        return segments[(hash >>> segmentShift) & segmentMask];
+    }
+
+    /* ---------------- Inner Classes -------------- */
+
+    /**
+     * A pooled string.  Apart from the referent, entries are
+     * immutable.
+     */
+    static final class Entry extends WeakReference<String> {
+        final int hash;
+        final Entry next;
+
+        Entry(String s, int hash, Entry next, ReferenceQueue<String> q) {
+            super(s, q);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Segments are specialized versions of hash tables.  This
+     * subclasses from ReentrantLock opportunistically, just to
+     * simplify some locking and avoid separate construction.
+     */
+    static final class Segment extends ReentrantLock {
+        private static final long serialVersionUID = 2249069246763182397L;
+
+        /**
+         * The number of entries in this segment's table, including
+         * any whose strings have been reclaimed but not yet expunged.
+         * Written only while holding the lock; read by lookups first,
+         * so that they see the table and entries it publishes.
+         */
+        transient volatile int count;
+
+        /**
+         * The table is rehashed when its size exceeds this threshold.
+         * (The value of this field is always
+         * <tt>(int)(capacity * loadFactor)</tt>.)
+         */
+        transient int threshold;
+
+        /**
+         * The per-segment table.
+         */
+        transient volatile Entry[] table;
+
+        /**
+         * The load factor for the hash table.
+         */
+        final float loadFactor;
+
+        /**
+         * Queue on which the entries of reclaimed strings appear.
+         */
+        final ReferenceQueue<String> queue = new ReferenceQueue<String>();
+
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+
+        Segment(int initialCapacity, float lf) {
+            loadFactor = lf;
+            setTable(new Entry[initialCapacity]);
+        }
+
+        /**
+         * Sets table to new Entry array.
+         * Call only while holding lock or in constructor.
+         */
+        void setTable(Entry[] newTable) {
+            threshold = (int)(newTable.length * loadFactor);
+            table = newTable;
+        }
+
+        /* Specialized implementations of pool methods */
+
+        String find(int hash, String s) {
+            if (count != 0) { // read-volatile
+                Entry[] tab = table;
+                for (Entry e = tab[hash & (tab.length - 1)];
+                     e != null;
+                     e = e.next) {
+                    if (e.hash == hash) {
+                        String v = e.get();
+                        if (v != null && v.equals(s))
+                            return v;
+                    }
+                }
+            }
+            return null;
+        }
+
+        String find(int hash, char[] chars, int offset, int length) {
+            if (count != 0) { // read-volatile
+                Entry[] tab = table;
+                for (Entry e = tab[hash & (tab.length - 1)];
+                     e != null;
+                     e = e.next) {
+                    if (e.hash == hash) {
+                        String v = e.get();
+                        if (v != null && matches(v, chars, offset, length))
+                            return v;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private static boolean matches(String s, char[] chars,
+                                       int offset, int length) {
+            if (s.length() != length)
+                return false;
+            for (int i = 0; i < length; i++) {
+                if (s.charAt(i) != chars[offset + i])
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Adds s unless an equal string was added since the caller's
+         * lookup, and returns the canonical string.
+         */
+        String add(int hash, String s) {
+            lock();
+            try {
+                expungeStaleEntries();
+                String v = find(hash, s);
+                if (v != null) {
+                    hits.increment();
+                    return v;
+                }
+                int c = count;
+                if (c++ > threshold) { // ensure capacity
+                    rehash();
+                    c = count + 1;
+                }
+                Entry[] tab = table;
+                int index = hash & (tab.length - 1);
+                tab[index] = new Entry(s, hash, tab[index], queue);
+                count = c; // write-volatile
+                misses.increment();
+                return s;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Removes the entries of reclaimed strings.  Call only while
+         * holding lock.
+         */
+        void expungeStaleEntries() {
+            Object x;
+            while ((x = queue.poll()) != null) {
+                Entry stale = (Entry)x;
+                Entry[] tab = table;
+                int index = stale.hash & (tab.length - 1);
+                Entry first = tab[index];
+                Entry e = first;
+                while (e != null && e != stale)
+                    e = e.next;
+                if (e == null)
+                    continue; // already replaced by a clone
+                // All entries following removed node can stay in list,
+                // but all preceding ones need to be cloned.
+                // Reclaimed entries met along the way are dropped too.
+                int removed = 1;
+                Entry newFirst = e.next;
+                for (Entry p = first; p != e; p = p.next) {
+                    String v = p.get();
+                    if (v != null)
+                        newFirst = new Entry(v, p.hash, newFirst, queue);
+                    else
+                        ++removed;
+                }
+                tab[index] = newFirst;
+                evictions.add(removed);
+                count = count - removed; // write-volatile
+            }
+        }
+
+        /**
+         * Doubles the table, dropping entries whose strings have been
+         * reclaimed.  Call only while holding lock.
+         */
+        void rehash() {
+            Entry[] oldTable = table;
+            int oldCapacity = oldTable.length;
+            if (oldCapacity >= MAXIMUM_CAPACITY)
+                return;
+
+            Entry[] newTable = new Entry[oldCapacity << 1];
+            int sizeMask = newTable.length - 1;
+            int n = 0;
+            for (int i = 0; i < oldCapacity ; i++) {
+                for (Entry e = oldTable[i]; e != null; e = e.next) {
+                    String v = e.get();
+                    if (v == null) {
+                        evictions.increment();
+                        continue;
+                    }
+                    int k = e.hash & sizeMask;
+                    newTable[k] = new Entry(v, e.hash, newTable[k], queue);
+                    n++;
+                }
+            }
+            setTable(newTable);
+            count = n;
+        }
+
+        void purge() {
+            lock();
+            try {
+                expungeStaleEntries();
+            } finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+            if (count != 0) {
+                lock();
+                try {
+                    Entry[] tab = table;
+                    for (int i = 0; i < tab.length ; i++)
+                        tab[i] = null;
+                    // Entries still on the queue are no longer in the
+                    // table, so will be ignored when polled.
+                    count = 0; // write-volatile
+                } finally {
+                    unlock();
+                }
+            }
+        }
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * Creates a new, empty pool with the specified initial
+     * capacity, load factor and concurrency level.
+     *
+     * @param initialCapacity the initial capacity. The implementation
+     * performs internal sizing to accommodate this many strings.
+     * @param loadFactor  the load factor threshold, used to control resizing.
+     * Resizing may be performed when the average number of strings per
+     * bin exceeds this threshold.
+     * @param concurrencyLevel the estimated number of concurrently
+     * adding threads. The implementation performs internal sizing
+     * to try to accommodate this many threads.
+     * @throws IllegalArgumentException if the initial capacity is
+     * negative or the load factor or concurrencyLevel are
+     * nonpositive.
+     */
+    public ConcurrentStringPool(int initialCapacity,
+                                float loadFactor, int concurrencyLevel) {
+        if (!(loadFactor > 0) || initialCapacity < 0 || concurrencyLevel <= 0)
+            throw new IllegalArgumentException();
+
+        if (concurrencyLevel > MAX_SEGMENTS)
+            concurrencyLevel = MAX_SEGMENTS;
+
+        // Find power-of-two sizes best matching arguments
+        int sshift = 0;
+        int ssize = 1;
+        while (ssize < concurrencyLevel) {
+            ++sshift;
+            ssize <<= 1;
+        }
+        segmentShift = 32 - sshift;
+        segmentMask = ssize - 1;
+        this.segments = new Segment[ssize];
+
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        int c = initialCapacity / ssize;
+        if (c * ssize < initialCapacity)
+            ++c;
+        int cap = 1;
+        while (cap < c)
+            cap <<= 1;
+
+        for (int i = 0; i < this.segments.length; ++i)
+            this.segments[i] = new Segment(cap, loadFactor);
+    }
+
+    /**
+     * Creates a new, empty pool with the specified initial capacity,
+     * and with default load factor (0.75) and concurrencyLevel (16).
+     *
+     * @param initialCapacity the initial capacity. The implementation
+     * performs internal sizing to accommodate this many strings.
+     * @throws IllegalArgumentException if the initial capacity of
+     * strings is negative.
+     */
+    public ConcurrentStringPool(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a new, empty pool with a default initial capacity (16),
+     * load factor (0.75) and concurrencyLevel (16).
+     */
+    public ConcurrentStringPool() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR,
+             DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Returns the canonical representation of the specified string.
+     * If the pool already holds a string equal to {@code s}, that
+     * string is returned; otherwise {@code s} is added to the pool and
+     * returned.
+     *
+     * @param s a string
+     * @return a string with the same contents as {@code s}, which is
+     *         the same object for all equal strings interned in this
+     *         pool while it is reachable
+     * @throws NullPointerException if the specified string is null
+     */
+    public String intern(String s) {
+        int hash = hash(s.hashCode());
+        Segment seg = segmentFor(hash);
+        String v = seg.find(hash, s);
+        if (v != null) {
+            seg.hits.increment();
+            return v;
+        }
+        return seg.add(hash, s);
+    }
+
+    /**
+     * Returns the canonical representation of the string holding the
+     * specified characters.  If the pool already holds such a string
+     * it is returned without allocating; otherwise a new string is
+     * created from the characters, added to the pool, and returned.
+     *
+     * @param chars the array holding the characters
+     * @param offset the index of the first character
+     * @param length the number of characters
+     * @return a string with the same contents as the specified
+     *         characters, which is the same object for all equal
+     *         strings interned in this pool while it is reachable
+     * @throws NullPointerException if the specified array is null
+     * @throws IndexOutOfBoundsException if {@code offset} or
+     *         {@code length} is negative, or {@code offset + length}
+     *         is greater than {@code chars.length}
+     */
+    public String intern(char[] chars, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > chars.length - length)
+            throw new IndexOutOfBoundsException();
+        int hash = hash(hashCode(chars, offset, length));
+        Segment seg = segmentFor(hash);
+        String v = seg.find(hash, chars, offset, length);
+        if (v != null) {
+            seg.hits.increment();
+            return v;
+        }
+        return seg.add(hash, new String(chars, offset, length));
+    }
+
+    /**
+     * Returns {@code true} if this pool holds a string equal to the
+     * specified string.
+     *
+     * @param s a string
+     * @return {@code true} if this pool holds a string equal to
+     *         {@code s}
+     * @throws NullPointerException if the specified string is null
+     */
+    public boolean contains(String s) {
+        int hash = hash(s.hashCode());
+        return segmentFor(hash).find(hash, s) != null;
+    }
+
+    /**
+     * Returns the number of strings in this pool.  The count may
+     * include strings that have been reclaimed but whose entries have
+     * not yet been removed; call {@link #purge} first for a more
+     * accurate figure.
+     *
+     * @return the number of strings in this pool
+     */
+    public int size() {
+        final Segment[] segments = this.segments;
+        long sum = 0;
+        for (int i = 0; i < segments.length; ++i)
+            sum += segments[i].count;
+        if (sum > Integer.MAX_VALUE)
+            return Integer.MAX_VALUE;
+        else
+            return (int)sum;
+    }
+
+    /**
+     * Removes the entries of all strings that have been reclaimed by
+     * the garbage collector.  Such entries are otherwise removed as
+     * strings are added to the affected parts of the pool.
+     */
+    public void purge() {
+        for (int i = 0; i < segments.length; ++i)
+            segments[i].purge();
+    }
+
+    /**
+     * Removes all of the strings from this pool.  Strings previously
+     * returned by this pool are no longer canonical for it.
+     */
+    public void clear() {
+        for (int i = 0; i < segments.length; ++i)
+            segments[i].clear();
+    }
+
+    /**
+     * Returns the number of lookups that were answered with a string
+     * already in this pool.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        long sum = 0;
+        for (int i = 0; i < segments.length; ++i)
+            sum += segments[i].hits.sum();
+        return sum;
+    }
+
+    /**
+     * Returns the number of lookups that added a new string to this
+     * pool.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        long sum = 0;
+        for (int i = 0; i < segments.length; ++i)
+            sum += segments[i].misses.sum();
+        return sum;
+    }
+
+    /**
+     * Returns the number of entries removed from this pool because
+     * their strings were reclaimed by the garbage collector.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        long sum = 0;
+        for (int i = 0; i < segments.length; ++i)
+            sum += segments[i].evictions.sum();
+        return sum;
+    }
+
+    /**
+     * Returns a string identifying this pool, as well as its
+     * approximate size and hit, miss and eviction counts.
+     *
+     * @return a string identifying this pool, as well as its statistics
+     */
+    public String toString() {
+        return super.toString() +
+            "[size = " + size() +
+            ", hits = " + getHitCount() +
+            ", misses = " + getMissCount() +
+            ", evictions = " + getEvictionCount() + "]";
+    }
+}
@@ -0,0 +1,1798 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An {@link ExecutorService} for running {@link ForkJoinTask}s.
+ * A {@code ForkJoinPool} provides the entry point for submissions
+ * from non-{@code ForkJoinTask} clients, as well as management and
+ * monitoring operations.
+ *
+ * <p>A {@code ForkJoinPool} differs from other kinds of {@link
+ * ExecutorService} mainly by virtue of employing
+ * <em>work-stealing</em>: all threads in the pool attempt to find and
+ * execute subtasks created by other active tasks (eventually blocking
+ * waiting for work if none exist). This enables efficient processing
+ * when most tasks spawn other subtasks (as do most {@code
+ * ForkJoinTask}s). Each worker thread maintains its own double-ended
+ * queue of tasks, so forking and running subtasks does not contend
+ * on any shared queue.  When setting <em>asyncMode</em> to true in
+ * constructors, {@code ForkJoinPool}s may also be appropriate for use
+ * with event-style tasks that are never joined.
+ *
+ * <p>A {@code ForkJoinPool} is constructed with a given target
+ * parallelism level; by default, equal to the number of available
+ * processors. The pool attempts to maintain enough active (or
+ * available) threads by dynamically adding, suspending, or resuming
+ * internal worker threads, even if some tasks are stalled waiting to
+ * join others. However, no such adjustments are guaranteed in the
+ * face of blocked IO or other unmanaged synchronization. The nested
+ * {@link ManagedBlocker} interface enables extension of the kinds of
+ * synchronization accommodated.
+ *
+ * <p>In addition to execution and lifecycle control methods, this
+ * class provides status check methods (for example
+ * {@link #getStealCount}) that are intended to aid in developing,
+ * tuning, and monitoring fork/join applications. Also, method
+ * {@link #toString} returns indications of pool state in a
+ * convenient form for informal monitoring.
+ *
+ * <p> As is the case with other ExecutorServices, there are three
+ * main task execution methods summarized in the following
+ * table. These are designed to be used by clients not already engaged
+ * in fork/join computations in the current pool.  The main forms of
+ * these methods accept instances of {@code ForkJoinTask}, but
+ * overloaded forms also allow mixed execution of plain {@code
+ * Runnable}- or {@code Callable}- based activities as well.  However,
+ * tasks that are already executing in a pool should normally
+ * <em>NOT</em> use these pool execution methods, but instead use the
+ * within-computation forms listed in the table.
+ *
+ * <table BORDER CELLPADDING=3 CELLSPACING=1>
+ *  <tr>
+ *    <td></td>
+ *    <td ALIGN=CENTER> <b>Call from non-fork/join clients</b></td>
+ *    <td ALIGN=CENTER> <b>Call from within fork/join computations</b></td>
+ *  </tr>
+ *  <tr>
+ *    <td> <b>Arrange async execution</td>
+ *    <td> {@link #execute(ForkJoinTask)}</td>
+ *    <td> {@link ForkJoinTask#fork}</td>
+ *  </tr>
+ *  <tr>
+ *    <td> <b>Await and obtain result</td>
+ *    <td> {@link #invoke(ForkJoinTask)}</td>
+ *    <td> {@link ForkJoinTask#invoke}</td>
+ *  </tr>
+ *  <tr>
+ *    <td> <b>Arrange exec and obtain Future</td>
+ *    <td> {@link #submit(ForkJoinTask)}</td>
+ *    <td> {@link ForkJoinTask#fork} (ForkJoinTasks <em>are</em> Futures)</td>
+ *  </tr>
+ * </table>
+ *
+ * <p><b>Sample Usage.</b> Normally a single {@code ForkJoinPool} is
+ * used for all parallel task execution in a program or subsystem.
+ * Otherwise, use would not usually outweigh the construction and
+ * bookkeeping overhead of creating a large set of threads. For
+ * example, a common pool could be used for the {@code SortTasks}
+ * illustrated in {@link RecursiveAction}. Because {@code
+ * ForkJoinPool} uses threads in {@linkplain java.lang.Thread#isDaemon
+ * daemon} mode, there is typically no need to explicitly {@link
+ * #shutdown} such a pool upon program exit.
+ *
+ * <pre> {@code
+ * static final ForkJoinPool mainPool = new ForkJoinPool();
+ * ...
+ * public void sort(long[] array) {
+ *   mainPool.invoke(new SortTask(array, 0, array.length));
+ * }}</pre>
+ *
+ * <p><b>Implementation notes</b>: This implementation restricts the
+ * maximum number of running threads to 32767. Attempts to create
+ * pools with greater than the maximum number result in
+ * {@code IllegalArgumentException}.
+ *
+ * <p>This implementation rejects submitted tasks (that is, by throwing
+ * {@link RejectedExecutionException}) only when the pool is shut down
+ * or internal resources have been exhausted.
+ *
+ * @since 1.7
+ * @author Doug Lea
+ */
+public class ForkJoinPool extends AbstractExecutorService {
+
+    /*
+     * Implementation Overview
+     *
+     * This class provides the central bookkeeping and control for a
+     * set of worker threads: Submissions from non-FJ threads enter
+     * into a lock-free submission queue. Workers take these tasks and
+     * typically split them into subtasks that may be stolen by other
+     * workers.
+     *
+     * WorkQueues.  Each worker owns a WorkQueue, a variant of the
+     * deques described in "Dynamic Circular Work-Stealing Deque" by
+     * Chase and Lev, SPAA 2005.  The owner pushes and pops tasks at
+     * "top" (or polls at "base" in asyncMode) and other workers
+     * steal at "base".  Pushes and pops by the owner require no CAS
+     * except to arbitrate a race on the last remaining element; steals
+     * claim a slot by CASing it to null and then advance base.  Array
+     * slots are read with volatile semantics, so a thief seeing a
+     * non-null slot at index base sees a fully constructed task.
+     *
+     * Idle workers.  Workers that cannot find any task to run push
+     * themselves onto a Treiber stack of waiters whose top is held in
+     * the low bits of field ctl, with a version count in the upper
+     * bits to avoid ABA problems, and then park.  After pushing,
+     * they rescan once more for tasks, which, together with the
+     * volatile write of a queue's top field preceding any signal,
+     * prevents lost wakeups.  Producers call signalWork, which pops
+     * and unparks the top waiter, or if there are none and fewer than
+     * the target parallelism level of workers exist, creates a new
+     * one.  A worker that steals a task from a queue that still holds
+     * others propagates the signal, so bursts of forks quickly
+     * activate all idle workers without every push paying for a
+     * wakeup.
+     *
+     * Joining.  A worker joining a task that is not done first tries
+     * to pop it if it is still at the top of its own queue.  Otherwise
+     * it helps by running its own remaining tasks or stealing others,
+     * and only when none are available does it wait on the task's
+     * monitor, using bounded timed waits so that it can resume helping
+     * if new tasks appear.  Because any task being joined is either
+     * queued somewhere or being run by another thread that is itself
+     * making progress, this guarantees progress without requiring
+     * spare threads.  Spare threads are created only for ManagedBlocker
+     * waits, and exit as soon as they become idle.
+     *
+     * Counts.  Field activeCount counts workers that are not parked
+     * (it is incremented on behalf of a waiter by the thread that
+     * pops it), which lets shutdown and helpQuiesce detect quiescence.
+     */
+
+    /**
+     * Factory for creating new {@link ForkJoinWorkerThread}s.
+     * A {@code ForkJoinWorkerThreadFactory} must be defined and used
+     * for {@code ForkJoinWorkerThread} subclasses that extend base
+     * functionality or initialize threads with different contexts.
+     */
+    public static interface ForkJoinWorkerThreadFactory {
+        /**
+         * Returns a new worker thread operating in the given pool.
+         *
+         * @param pool the pool this thread works in
+         * @throws NullPointerException if the pool is null
+         */
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool);
+    }
+
+    /**
+     * Default ForkJoinWorkerThreadFactory implementation; creates a
+     * new ForkJoinWorkerThread.
+     */
+    static class DefaultForkJoinWorkerThreadFactory
+        implements ForkJoinWorkerThreadFactory {
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            return new ForkJoinWorkerThread(pool);
+        }
+    }
+
+    /**
+     * Creates a new ForkJoinWorkerThread. This factory is used unless
+     * overridden in ForkJoinPool constructors.
+     */
+    public static final ForkJoinWorkerThreadFactory
+        defaultForkJoinWorkerThreadFactory =
+        new DefaultForkJoinWorkerThreadFactory();
+
+    /**
+     * Permission required for callers of methods that may start or
+     * kill threads.
+     */
+    private static final RuntimePermission modifyThreadPermission =
+        new RuntimePermission("modifyThread");
+
+    /**
+     * If there is a security manager, makes sure caller has
+     * permission to modify threads.
+     */
+    private static void checkPermission() {
+        SecurityManager security = System.getSecurityManager();
+        if (security != null)
+            security.checkPermission(modifyThreadPermission);
+    }
+
+    /**
+     * Generator for assigning sequence numbers as pool names.
+     */
+    private static int poolNumberGenerator;
+
+    /**
+     * Common (static) pool. Non-null for public use unless a static
+     * construction exception, but internal usages null-check on use
+     * to paranoically avoid potential initialization circularities
+     * as well as to simplify generated code.
+     */
+    static final ForkJoinPool common;
+
+    private static synchronized int nextPoolNumber() {
+        return ++poolNumberGenerator;
+    }
+
+    /**
+     * Absolute bound for parallelism level. Twice this number plus
+     * one must fit into the index field of ctl.
+     */
+    private static final int MAX_ID = 0x7fff;
+
+    /**
+     * Maximum number of spare threads that may be created to
+     * compensate for workers blocked in managedBlock.
+     */
+    private static final int MAX_SPARES = 256;
+
+    /**
+     * Initial and maximum time, in milliseconds, that a joining
+     * worker with nothing else to do waits before rescanning for
+     * tasks it could help with.
+     */
+    private static final long INITIAL_JOIN_WAIT = 1L;
+    private static final long MAX_JOIN_WAIT     = 16L;
+
+    // ctl field layout: version count in upper 32 bits, index+1 of
+    // top waiting worker (or zero if none) in lower 32 bits
+    private static final long INDEX_MASK    = 0xffffffffL;
+    private static final long VERSION_UNIT  = 1L << 32;
+    private static final long VERSION_MASK  = ~INDEX_MASK;
+
+    // runState values
+    private static final int RUNNING    = 0;
+    private static final int SHUTDOWN   = 1;
+    private static final int STOP       = 2;
+    private static final int TERMINATED = 3;
+
+    /**
+     * Queues supporting work-stealing as well as local task
+     * processing by their owning worker.
+     */
+    static final class WorkQueue {
+        /**
+         * Capacity of work-stealing queue array upon initialization.
+         * Must be a power of two; at least 4, but should be larger to
+         * reduce or eliminate cacheline sharing among queues.
+         */
+        static final int INITIAL_QUEUE_CAPACITY = 1 << 8;
+
+        /**
+         * Maximum size for queue arrays. Must be a power of two less
+         * than or equal to 1 << (31 - width of array entry) to ensure
+         * lack of wraparound of index calculations.
+         */
+        static final int MAXIMUM_QUEUE_CAPACITY = 1 << 24; // 16M
+
+        final ForkJoinPool pool;          // the containing pool
+        final ForkJoinWorkerThread owner; // owning thread
+        final boolean fifo;               // true if locally FIFO
+        final int poolIndex;              // index of this queue in pool
+        volatile ForkJoinTask<?>[] array; // the elements
+        volatile int base;                // index of next slot for poll
+        volatile int top;                 // index of next slot for push
+        volatile boolean parked;          // true while waiting for work
+        int nextWait;                     // encoded next waiter in stack
+        int nsteals;                      // number of steals
+        int seed;                         // for random scanning
+        boolean exiting;                  // true if count already released
+
+        WorkQueue(ForkJoinPool pool, ForkJoinWorkerThread owner,
+                  int poolIndex) {
+            this.pool = pool;
+            this.owner = owner;
+            this.fifo = pool.locallyFifo;
+            this.poolIndex = poolIndex;
+            this.seed = (poolIndex + 1) * 0x9e3779b9;
+            if (seed == 0)
+                seed = 1;
+        }
+
+        /**
+         * Returns the approximate number of tasks in the queue.
+         */
+        final int queueSize() {
+            int n = top - base;
+            return (n < 0) ? 0 : n;
+        }
+
+        /**
+         * Returns next pseudorandom value, for choosing steal victims.
+         */
+        final int nextSeed() {
+            int r = seed;
+            r ^= r << 13;
+            r ^= r >>> 17;
+            return seed = r ^ (r << 5);
+        }
+
+        /**
+         * Pushes a task. Call only by owner.
+         *
+         * @param task the task. Caller must ensure non-null.
+         * @throws RejectedExecutionException if array cannot be resized
+         */
+        final void push(ForkJoinTask<?> task) {
+            ForkJoinTask<?>[] a;
+            int s = top, n;
+            if ((a = array) == null)
+                a = growArray();
+            int m = a.length - 1;
+            UNSAFE.putOrderedObject(a, ((m & s) << ASHIFT) + ABASE, task);
+            top = s + 1;
+            if ((n = (s + 1) - base) <= 2)
+                pool.signalWork();
+            else if (n >= m)
+                growArray();
+        }
+
+        /**
+         * Initializes or doubles the capacity of array. Call only by
+         * owner.  Slots are transferred by CASing them out of the old
+         * array, so concurrent steals either obtain a task from the
+         * old array or find it in the new one.
+         */
+        final ForkJoinTask<?>[] growArray() {
+            ForkJoinTask<?>[] oldA = array;
+            int size = (oldA != null) ? oldA.length << 1 :
+                INITIAL_QUEUE_CAPACITY;
+            if (size > MAXIMUM_QUEUE_CAPACITY)
+                throw new RejectedExecutionException("Queue capacity exceeded");
+            ForkJoinTask<?>[] a = array = new ForkJoinTask<?>[size];
+            int oldMask, t = top, b = base;
+            if (oldA != null && (oldMask = oldA.length - 1) >= 0 &&
+                t - b > 0) {
+                int mask = size - 1;
+                do {
+                    long oldj = ((b & oldMask) << ASHIFT) + ABASE;
+                    long j    = ((b &    mask) << ASHIFT) + ABASE;
+                    ForkJoinTask<?> x = (ForkJoinTask<?>)
+                        UNSAFE.getObjectVolatile(oldA, oldj);
+                    if (x != null &&
+                        UNSAFE.compareAndSwapObject(oldA, oldj, x, null))
+                        UNSAFE.putObjectVolatile(a, j, x);
+                } while (++b != t);
+            }
+            return a;
+        }
+
+        /**
+         * Takes next task, if one exists, in LIFO order.  Call only
+         * by owner.
+         */
+        final ForkJoinTask<?> pop() {
+            ForkJoinTask<?>[] a; ForkJoinTask<?> t; int s;
+            while ((a = array) != null && (s = top - 1) - base >= 0) {
+                long j = (((a.length - 1) & s) << ASHIFT) + ABASE;
+                if ((t = (ForkJoinTask<?>)UNSAFE.getObject(a, j)) == null)
+                    break;
+                if (UNSAFE.compareAndSwapObject(a, j, t, null)) {
+                    top = s;
+                    return t;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Takes next task, if one exists, in FIFO order.  Used both
+         * by thieves and by owners in asyncMode.
+         */
+        final ForkJoinTask<?> poll() {
+            ForkJoinTask<?>[] a; int b;
+            while ((b = base) - top < 0 && (a = array) != null) {
+                long j = (((a.length - 1) & b) << ASHIFT) + ABASE;
+                ForkJoinTask<?> t = (ForkJoinTask<?>)
+                    UNSAFE.getObjectVolatile(a, j);
+                if (t != null) {
+                    if (base == b &&
+                        UNSAFE.compareAndSwapObject(a, j, t, null)) {
+                        base = b + 1;
+                        return t;
+                    }
+                }
+                else if (base == b) {
+                    if (b + 1 == top)
+                        break;     // owner is taking the last element
+                    Thread.yield(); // wait for lagging update
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Takes next task, if one exists, in order specified by mode.
+         */
+        final ForkJoinTask<?> nextLocalTask() {
+            return fifo ? poll() : pop();
+        }
+
+        /**
+         * Returns next task, if one exists, in order specified by mode.
+         */
+        final ForkJoinTask<?> peek() {
+            ForkJoinTask<?>[] a = array; int m;
+            if (a == null || (m = a.length - 1) < 0)
+                return null;
+            int i = fifo ? base : top - 1;
+            if (i - base < 0)
+                return null;
+            long j = ((i & m) << ASHIFT) + ABASE;
+            return (ForkJoinTask<?>)UNSAFE.getObjectVolatile(a, j);
+        }
+
+        /**
+         * Pops the given task only if it is at the current top.
+         * Call only by owner.
+         */
+        final boolean tryUnpush(ForkJoinTask<?> t) {
+            ForkJoinTask<?>[] a; int s;
+            if ((a = array) != null && (s = top) != base &&
+                UNSAFE.compareAndSwapObject
+                (a, (((a.length - 1) & --s) << ASHIFT) + ABASE, t, null)) {
+                top = s;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Runs the given (stolen or submitted) task, followed by any
+         * remaining local tasks.
+         */
+        final void runTask(ForkJoinTask<?> task) {
+            task.doExec();
+            for (ForkJoinTask<?> t; (t = nextLocalTask()) != null; )
+                t.doExec();
+        }
+
+        /**
+         * Removes and cancels all known tasks, ignoring any exceptions.
+         */
+        final void cancelAll() {
+            for (ForkJoinTask<?> t; (t = poll()) != null; )
+                t.cancelIgnoringExceptions();
+        }
+    }
+
+    // Fields
+
+    /**
+     * Main pool control: waiter stack and its version count.
+     */
+    volatile long ctl;
+
+    /**
+     * Number of workers that have been started but not yet
+     * terminated, including those being constructed.
+     */
+    volatile int workerCount;
+
+    /**
+     * Number of workers that are not waiting for work.
+     */
+    volatile int activeCount;
+
+    /**
+     * Number of workers blocked in managedBlock.
+     */
+    volatile int blockedCount;
+
+    /**
+     * Lifecycle control: RUNNING, SHUTDOWN, STOP, or TERMINATED.
+     */
+    volatile int runState;
+
+    /**
+     * Array holding the queues of all workers.  Array size must be a
+     * power of two.  Updated only under lock.
+     */
+    volatile WorkQueue[] workQueues;
+
+    /**
+     * Queue of tasks submitted by non-worker threads.
+     */
+    private final ConcurrentLinkedQueue<ForkJoinTask<?>> submissionQueue;
+
+    /**
+     * Lock guarding worker registration and termination signalling.
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * Condition for awaitTermination.
+     */
+    private final Condition termination;
+
+    /**
+     * The target parallelism level.
+     */
+    final int parallelism;
+
+    /**
+     * True if use local fifo, not default lifo, for local polling.
+     */
+    final boolean locallyFifo;
+
+    /**
+     * Creation factory for worker threads.
+     */
+    private final ForkJoinWorkerThreadFactory factory;
+
+    /**
+     * The uncaught exception handler used when any worker abruptly
+     * terminates.
+     */
+    final Thread.UncaughtExceptionHandler ueh;
+
+    /**
+     * Steal counts of terminated workers.  Updated only under lock.
+     */
+    private long stealCount;
+
+    /**
+     * Prefix for assigning names to worker threads.
+     */
+    private final String workerNamePrefix;
+
+    /**
+     * Sequence number for creating worker names.  Updated only
+     * under lock.
+     */
+    private int nextWorkerNumber;
+
+    // Constructors
+
+    /**
+     * Creates a {@code ForkJoinPool} with parallelism equal to {@link
+     * java.lang.Runtime#availableProcessors}, using the {@linkplain
+     * #defaultForkJoinWorkerThreadFactory default thread factory},
+     * no UncaughtExceptionHandler, and non-async LIFO processing mode.
+     *
+     * @throws SecurityException if a security manager exists and
+     *         the caller is not permitted to modify threads
+     *         because it does not hold {@link
+     *         java.lang.RuntimePermission}{@code ("modifyThread")}
+     */
+    public ForkJoinPool() {
+        this(Runtime.getRuntime().availableProcessors(),
+             defaultForkJoinWorkerThreadFactory, null, false);
+    }
+
+    /**
+     * Creates a {@code ForkJoinPool} with the indicated parallelism
+     * level, the {@linkplain
+     * #defaultForkJoinWorkerThreadFactory default thread factory},
+     * no UncaughtExceptionHandler, and non-async LIFO processing mode.
+     *
+     * @param parallelism the parallelism level
+     * @throws IllegalArgumentException if parallelism less than or
+     *         equal to zero, or greater than implementation limit
+     * @throws SecurityException if a security manager exists and
+     *         the caller is not permitted to modify threads
+     *         because it does not hold {@link
+     *         java.lang.RuntimePermission}{@code ("modifyThread")}
+     */
+    public ForkJoinPool(int parallelism) {
+        this(parallelism, defaultForkJoinWorkerThreadFactory, null, false);
+    }
+
+    /**
+     * Creates a {@code ForkJoinPool} with the given parameters.
+     *
+     * @param parallelism the parallelism level. For default value,
+     * use {@link java.lang.Runtime#availableProcessors}.
+     * @param factory the factory for creating new threads. For default value,
+     * use {@link #defaultForkJoinWorkerThreadFactory}.
+     * @param handler the handler for internal worker threads that
+     * terminate due to unrecoverable errors encountered while executing
+     * tasks. For default value, use {@code null}.
+     * @param asyncMode if true,
+     * establishes local first-in-first-out scheduling mode for forked
+     * tasks that are never joined. This mode may be more appropriate
+     * than default locally stack-based mode in applications in which
+     * worker threads only process event-style asynchronous tasks.
+     * For default value, use {@code false}.
+     * @throws IllegalArgumentException if parallelism less than or
+     *         equal to zero, or greater than implementation limit
+     * @throws NullPointerException if the factory is null
+     * @throws SecurityException if a security manager exists and
+     *         the caller is not permitted to modify threads
+     *         because it does not hold {@link
+     *         java.lang.RuntimePermission}{@code ("modifyThread")}
+     */
+    public ForkJoinPool(int parallelism,
+                        ForkJoinWorkerThreadFactory factory,
+                        Thread.UncaughtExceptionHandler handler,
+                        boolean asyncMode) {
+        this(checkParallelism(parallelism), checkFactory(factory),
+             handler, asyncMode,
+             "ForkJoinPool-" + nextPoolNumber() + "-worker-");
+    }
+
+    private static int checkParallelism(int parallelism) {
+        checkPermission();
+        if (parallelism <= 0 || parallelism > MAX_ID)
+            throw new IllegalArgumentException();
+        return parallelism;
+    }
+
+    private static ForkJoinWorkerThreadFactory checkFactory
+        (ForkJoinWorkerThreadFactory factory) {
+        if (factory == null)
+            throw new NullPointerException();
+        return factory;
+    }
+
+    /**
+     * Creates a {@code ForkJoinPool} with the given parameters, without
+     * any security checks or parameter validation.  Invoked directly by
+     * makeCommonPool.
+     */
+    private ForkJoinPool(int parallelism,
+                         ForkJoinWorkerThreadFactory factory,
+                         Thread.UncaughtExceptionHandler handler,
+                         boolean asyncMode,
+                         String workerNamePrefix) {
+        this.parallelism = parallelism;
+        this.factory = factory;
+        this.ueh = handler;
+        this.locallyFifo = asyncMode;
+        int n = 8;
+        while (n < (parallelism << 1))
+            n <<= 1;
+        this.workQueues = new WorkQueue[n];
+        this.submissionQueue = new ConcurrentLinkedQueue<ForkJoinTask<?>>();
+        this.lock = new ReentrantLock();
+        this.termination = lock.newCondition();
+        this.workerNamePrefix = workerNamePrefix;
+    }
+
+    /**
+     * Returns the common pool instance. This pool is statically
+     * constructed; its run state is unaffected by attempts to {@link
+     * #shutdown} or {@link #shutdownNow}.  It is used by default for
+     * parallel bulk operations of library classes, and may be used by
+     * any task that is not explicitly submitted to a specified pool.
+     * Using the common pool normally reduces resource usage, since
+     * its threads are shared by all such users rather than created
+     * per subsystem.
+     *
+     * @return the common pool instance
+     * @since 1.7
+     */
+    public static ForkJoinPool commonPool() {
+        return common;
+    }
+
+    /**
+     * Returns the targeted parallelism level of the common pool.
+     *
+     * @return the targeted parallelism level of the common pool
+     * @since 1.7
+     */
+    public static int getCommonPoolParallelism() {
+        return common.parallelism;
+    }
+
+    // Worker lifecycle
+
+    /**
+     * Returns a name for a new worker thread.  Callback from
+     * ForkJoinWorkerThread constructor.
+     */
+    final String nextWorkerName() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return workerNamePrefix.concat(Integer.toString(++nextWorkerNumber));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the given worker thread in the workQueues array and
+     * returns its new queue.  Callback from ForkJoinWorkerThread
+     * constructor.
+     */
+    final WorkQueue registerWorker(ForkJoinWorkerThread wt) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            WorkQueue[] ws = workQueues;
+            int n = ws.length, i = 0;
+            while (i < n && ws[i] != null)
+                ++i;
+            if (i == n) {
+                if (n > MAX_ID)
+                    throw new RejectedExecutionException("Too many workers");
+                workQueues = ws = Arrays.copyOf(ws, n << 1);
+            }
+            WorkQueue w = new WorkQueue(this, wt, i);
+            ws[i] = w;
+            workQueues = ws; // publish
+            return w;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Tries to construct and start a new worker. Assumes that
+     * workerCount and activeCount have already been incremented on
+     * behalf of the new worker.
+     */
+    private void addWorker() {
+        Throwable ex = null;
+        ForkJoinWorkerThread wt = null;
+        try {
+            if ((wt = factory.newThread(this)) != null) {
+                wt.start();
+                return;
+            }
+        } catch (Throwable e) {
+            ex = e;
+        }
+        if (wt != null && wt.workQueue != null)
+            deregisterWorker(wt, ex);
+        else {
+            decrementWorkerCounts();
+            tryTerminate(false);
+            if (ex != null)
+                ForkJoinTask.rethrow(ex);
+        }
+    }
+
+    /**
+     * Final callback from terminating worker, as well as upon failure
+     * to construct or start a worker.  Removes record of worker from
+     * array, and adjusts counts. If pool is shutting down, tries to
+     * complete termination, else replaces the worker if it was
+     * needed.
+     *
+     * @param wt the worker thread
+     * @param ex the exception causing failure, or null if none
+     */
+    final void deregisterWorker(ForkJoinWorkerThread wt, Throwable ex) {
+        WorkQueue w = wt.workQueue;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            WorkQueue[] ws = workQueues;
+            int idx = w.poolIndex;
+            if (idx < ws.length && ws[idx] == w)
+                ws[idx] = null;
+            stealCount += w.nsteals;
+        } finally {
+            lock.unlock();
+        }
+        if (!w.exiting)
+            decrementWorkerCounts();
+        else
+            decrementActiveCount();
+        w.cancelAll();
+        if (!tryTerminate(false) && ex != null && hasQueuedTasks())
+            signalWork();
+        if (ex != null)
+            ForkJoinTask.rethrow(ex);
+    }
+
+    /**
+     * Top-level runloop for workers, called by ForkJoinWorkerThread.run.
+     */
+    final void runWorker(WorkQueue w) {
+        w.growArray();
+        for (ForkJoinTask<?> t;;) {
+            if ((t = scan(w)) != null)
+                w.runTask(t);
+            else if (!awaitWork(w))
+                break;
+        }
+    }
+
+    /**
+     * Scans for and, if found, returns one task, else possibly
+     * inactivates the worker. Victim queues are traversed starting at
+     * a random index; the submission queue is checked last.  If a
+     * stolen-from queue still holds tasks, another worker is signalled
+     * to help with them.
+     *
+     * @param w the worker (via its WorkQueue)
+     * @return a task or null if none found
+     */
+    private ForkJoinTask<?> scan(WorkQueue w) {
+        WorkQueue[] ws = workQueues;
+        if (runState >= STOP || ws == null)
+            return null;
+        int n = ws.length, m = n - 1, r = w.nextSeed();
+        for (int j = 0; j < n; ++j) {
+            WorkQueue q = ws[(r + j) & m];
+            if (q != null && q != w && q.base - q.top < 0) {
+                ForkJoinTask<?> t = q.poll();
+                if (t != null) {
+                    ++w.nsteals;
+                    if (q.base - q.top < 0)
+                        signalWork();
+                    return t;
+                }
+            }
+        }
+        ForkJoinTask<?> t = submissionQueue.poll();
+        if (t != null && !submissionQueue.isEmpty())
+            signalWork();
+        return t;
+    }
+
+    /**
+     * Parks the worker until signalled.  Before parking, the worker
+     * is pushed onto the waiter stack and the pool is rechecked for
+     * tasks (so that no signal can be missed) and for quiescent
+     * shutdown.  Surplus workers beyond the target parallelism exit
+     * instead of waiting.
+     *
+     * @return false if the worker should terminate
+     */
+    private boolean awaitWork(WorkQueue w) {
+        if (runState >= STOP)
+            return false;
+        int wc = workerCount;
+        if (wc > parallelism &&
+            UNSAFE.compareAndSwapInt(this, workerCountOffset, wc, wc - 1)) {
+            w.exiting = true;
+            return false;
+        }
+        w.parked = true;
+        decrementActiveCount();
+        long c;
+        do {
+            c = ctl;
+            w.nextWait = (int)c;
+        } while (!UNSAFE.compareAndSwapLong
+                 (this, ctlOffset, c,
+                  ((c + VERSION_UNIT) & VERSION_MASK) | (w.poolIndex + 1)));
+        if (runState >= SHUTDOWN)
+            tryTerminate(false);
+        if (hasQueuedTasks())
+            signalWork();
+        while (w.parked) {
+            LockSupport.park(this);
+            Thread.interrupted(); // clear status; interrupts not used
+        }
+        return runState < STOP;
+    }
+
+    /**
+     * Wakes up an idle worker, or creates one if fewer than the
+     * target number of workers (plus spares for managed blocking)
+     * exist.
+     */
+    final void signalWork() {
+        long c; int i;
+        while ((i = (int)(c = ctl)) != 0) {
+            WorkQueue[] ws = workQueues; WorkQueue v;
+            if (i > ws.length || (v = ws[i - 1]) == null)
+                return;   // terminating
+            long nc = ((c + VERSION_UNIT) & VERSION_MASK) |
+                (v.nextWait & INDEX_MASK);
+            if (UNSAFE.compareAndSwapLong(this, ctlOffset, c, nc)) {
+                incrementActiveCount();
+                v.parked = false;
+                LockSupport.unpark(v.owner);
+                return;
+            }
+        }
+        int wc;
+        while (runState < STOP &&
+               (wc = workerCount) < parallelism +
+               Math.min(blockedCount, MAX_SPARES) &&
+               wc < MAX_ID) {
+            if (UNSAFE.compareAndSwapInt(this, workerCountOffset,
+                                         wc, wc + 1)) {
+                incrementActiveCount();
+                addWorker();
+                return;
+            }
+        }
+    }
+
+    // Counts
+
+    private void incrementActiveCount() {
+        int c;
+        do {} while (!UNSAFE.compareAndSwapInt
+                     (this, activeCountOffset, c = activeCount, c + 1));
+    }
+
+    private void decrementActiveCount() {
+        int c;
+        do {} while (!UNSAFE.compareAndSwapInt
+                     (this, activeCountOffset, c = activeCount, c - 1));
+    }
+
+    private void decrementWorkerCounts() {
+        int c;
+        do {} while (!UNSAFE.compareAndSwapInt
+                     (this, workerCountOffset, c = workerCount, c - 1));
+        decrementActiveCount();
+    }
+
+    private void adjustBlockedCount(int delta) {
+        int c;
+        do {} while (!UNSAFE.compareAndSwapInt
+                     (this, blockedCountOffset, c = blockedCount, c + delta));
+    }
+
+    /**
+     * Returns true if any worker queue or the submission queue
+     * appears to be nonempty.
+     */
+    private boolean hasQueuedTasks() {
+        if (!submissionQueue.isEmpty())
+            return true;
+        WorkQueue[] ws = workQueues;
+        for (int i = 0; i < ws.length; ++i) {
+            WorkQueue q = ws[i];
+            if (q != null && q.base - q.top < 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a cheap heuristic guide for task partitioning when
+     * programmers, frameworks, tools, or languages have little or no
+     * idea about task granularity.  In essence by offering this
+     * method, we ask users only about tradeoffs in overhead vs
+     * expected throughput and its variance, rather than how finely to
+     * partition tasks.
+     *
+     * @return an estimate of the number of idle workers that might
+     * steal locally queued tasks
+     */
+    final int idlePerActive() {
+        int pc = parallelism;
+        int ac = activeCount - blockedCount;
+        return ((ac > (pc >>>= 1)) ? 0 :
+                (ac > (pc >>>= 1)) ? 1 :
+                (ac > (pc >>>= 1)) ? 2 :
+                (ac > (pc >>>= 1)) ? 4 :
+                8);
+    }
+
+    // Joining and helping
+
+    /**
+     * Helps and/or blocks until the given task is done.  Tasks in
+     * the worker's own queue and then tasks stolen from other queues
+     * are run while waiting; if none are available, the worker waits
+     * on the task for progressively longer bounded intervals.
+     *
+     * @param w the joining worker's queue
+     * @param task the task to join
+     * @return task status on exit
+     */
+    final int awaitJoin(WorkQueue w, ForkJoinTask<?> task) {
+        int s;
+        long wait = INITIAL_JOIN_WAIT;
+        while ((s = task.status) >= 0) {
+            ForkJoinTask<?> t;
+            if ((t = w.nextLocalTask()) != null || (t = scan(w)) != null) {
+                t.doExec();
+                wait = INITIAL_JOIN_WAIT;
+            }
+            else {
+                task.timedAwaitDone(wait);
+                if (wait < MAX_JOIN_WAIT)
+                    wait <<= 1;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Gets and removes a local or stolen task for the given worker.
+     *
+     * @return a task, if available
+     */
+    final ForkJoinTask<?> nextTaskFor(WorkQueue w) {
+        ForkJoinTask<?> t;
+        if ((t = w.nextLocalTask()) == null)
+            t = scan(w);
+        return t;
+    }
+
+    /**
+     * Runs tasks until the pool is quiescent, that is, until no
+     * worker is active and no tasks are queued.  While it finds no
+     * tasks, the calling worker counts itself as inactive, so that
+     * several workers helping quiesce do not wait for each other.
+     */
+    final void helpQuiescePool(WorkQueue w) {
+        boolean active = true;
+        for (;;) {
+            ForkJoinTask<?> t;
+            if (active) {
+                if ((t = nextTaskFor(w)) != null)
+                    t.doExec();
+                else {
+                    active = false;
+                    decrementActiveCount();
+                }
+            }
+            else if (hasQueuedTasks()) {
+                active = true;
+                incrementActiveCount();
+            }
+            else if (activeCount <= 0) {
+                incrementActiveCount();
+                return;
+            }
+            else
+                Thread.yield();
+        }
+    }
+
+    // Submissions
+
+    /**
+     * Arranges for execution of the given task: pushes it on the
+     * local queue if called from a worker of this pool, else adds
+     * it to the submission queue.
+     *
+     * @param task the task. Caller must ensure non-null.
+     */
+    private void externalPush(ForkJoinTask<?> task) {
+        Thread t = Thread.currentThread();
+        if ((t instanceof ForkJoinWorkerThread) &&
+            ((ForkJoinWorkerThread)t).pool == this &&
+            runState < STOP) {
+            ((ForkJoinWorkerThread)t).workQueue.push(task);
+            return;
+        }
+        if (runState >= SHUTDOWN)
+            throw new RejectedExecutionException();
+        submissionQueue.offer(task);
+        if (runState >= SHUTDOWN && submissionQueue.remove(task)) {
+            tryTerminate(false);
+            throw new RejectedExecutionException();
+        }
+        signalWork();
+    }
+
+    /**
+     * Performs the given task, returning its result upon completion.
+     * If the computation encounters an unchecked Exception or Error,
+     * it is rethrown as the outcome of this invocation.  Rethrown
+     * exceptions behave in the same way as regular exceptions, but,
+     * when possible, contain stack traces (as displayed for example
+     * using {@code ex.printStackTrace()}) of both the current thread
+     * as well as the thread actually encountering the exception;
+     * minimally only the latter.
+     *
+     * @param task the task
+     * @return the task's result
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public <T> T invoke(ForkJoinTask<T> task) {
+        if (task == null)
+            throw new NullPointerException();
+        externalPush(task);
+        return task.join();
+    }
+
+    /**
+     * Arranges for (asynchronous) execution of the given task.
+     *
+     * @param task the task
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public void execute(ForkJoinTask<?> task) {
+        if (task == null)
+            throw new NullPointerException();
+        externalPush(task);
+    }
+
+    // AbstractExecutorService methods
+
+    /**
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public void execute(Runnable task) {
+        if (task == null)
+            throw new NullPointerException();
+        ForkJoinTask<?> job;
+        if (task instanceof ForkJoinTask<?>) // avoid re-wrap
+            job = (ForkJoinTask<?>) task;
+        else
+            job = new ForkJoinTask.AdaptedRunnable<Void>(task, null);
+        externalPush(job);
+    }
+
+    /**
+     * Submits a ForkJoinTask for execution.
+     *
+     * @param task the task to submit
+     * @return the task
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+        if (task == null)
+            throw new NullPointerException();
+        externalPush(task);
+        return task;
+    }
+
+    /**
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public <T> ForkJoinTask<T> submit(Callable<T> task) {
+        ForkJoinTask<T> job = new ForkJoinTask.AdaptedCallable<T>(task);
+        externalPush(job);
+        return job;
+    }
+
+    /**
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public <T> ForkJoinTask<T> submit(Runnable task, T result) {
+        ForkJoinTask<T> job = new ForkJoinTask.AdaptedRunnable<T>(task, result);
+        externalPush(job);
+        return job;
+    }
+
+    /**
+     * @throws NullPointerException if the task is null
+     * @throws RejectedExecutionException if the task cannot be
+     *         scheduled for execution
+     */
+    public ForkJoinTask<?> submit(Runnable task) {
+        if (task == null)
+            throw new NullPointerException();
+        ForkJoinTask<?> job;
+        if (task instanceof ForkJoinTask<?>) // avoid re-wrap
+            job = (ForkJoinTask<?>) task;
+        else
+            job = new ForkJoinTask.AdaptedRunnable<Void>(task, null);
+        externalPush(job);
+        return job;
+    }
+
+    /**
+     * @throws NullPointerException       {@inheritDoc}
+     * @throws RejectedExecutionException {@inheritDoc}
+     */
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) {
+        ArrayList<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        boolean done = false;
+        try {
+            for (Callable<T> t : tasks) {
+                ForkJoinTask<T> f = new ForkJoinTask.AdaptedCallable<T>(t);
+                futures.add(f);
+                externalPush(f);
+            }
+            for (int i = 0, size = futures.size(); i < size; i++)
+                ((ForkJoinTask<?>)futures.get(i)).quietlyJoin();
+            done = true;
+            return futures;
+        } finally {
+            if (!done)
+                for (int i = 0, size = futures.size(); i < size; i++)
+                    futures.get(i).cancel(false);
+        }
+    }
+
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new ForkJoinTask.AdaptedRunnable<T>(runnable, value);
+    }
+
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new ForkJoinTask.AdaptedCallable<T>(callable);
+    }
+
+    // Monitoring and status
+
+    /**
+     * Returns the factory used for constructing new workers.
+     *
+     * @return the factory used for constructing new workers
+     */
+    public ForkJoinWorkerThreadFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Returns the handler for internal worker threads that terminate
+     * due to unrecoverable errors encountered while executing tasks.
+     *
+     * @return the handler, or {@code null} if none
+     */
+    public Thread.UncaughtExceptionHandler getUncaughtExceptionHandler() {
+        return ueh;
+    }
+
+    /**
+     * Returns the targeted parallelism level of this pool.
+     *
+     * @return the targeted parallelism level of this pool
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the number of worker threads that have started but not
+     * yet terminated.  The result returned by this method may differ
+     * from {@link #getParallelism} when threads are created to
+     * maintain parallelism when others are cooperatively blocked.
+     *
+     * @return the number of worker threads
+     */
+    public int getPoolSize() {
+        return workerCount;
+    }
+
+    /**
+     * Returns {@code true} if this pool uses local first-in-first-out
+     * scheduling mode for forked tasks that are never joined.
+     *
+     * @return {@code true} if this pool uses async mode
+     */
+    public boolean getAsyncMode() {
+        return locallyFifo;
+    }
+
+    /**
+     * Returns an estimate of the number of worker threads that are
+     * not blocked waiting to join tasks or for other managed
+     * synchronization. This method may overestimate the
+     * number of running threads.
+     *
+     * @return the number of worker threads
+     */
+    public int getRunningThreadCount() {
+        int r = activeCount - blockedCount;
+        return (r <= 0) ? 0 : r;
+    }
+
+    /**
+     * Returns an estimate of the number of threads that are currently
+     * stealing or executing tasks. This method may overestimate the
+     * number of active threads.
+     *
+     * @return the number of active threads
+     */
+    public int getActiveThreadCount() {
+        int r = activeCount;
+        return (r <= 0) ? 0 : r;
+    }
+
+    /**
+     * Returns {@code true} if all worker threads are currently idle.
+     * An idle worker is one that cannot obtain a task to execute
+     * because none are available to steal from other threads, and
+     * there are no pending submissions to the pool. This method is
+     * conservative; it might not return {@code true} immediately upon
+     * idleness of all threads, but will eventually become true if
+     * threads remain inactive.
+     *
+     * @return {@code true} if all threads are currently idle
+     */
+    public boolean isQuiescent() {
+        return activeCount <= 0;
+    }
+
+    /**
+     * Returns an estimate of the total number of tasks stolen from
+     * one thread's work queue by another. The reported value
+     * underestimates the actual total number of steals when the pool
+     * is not quiescent. This value may be useful for monitoring and
+     * tuning fork/join programs: in general, steal counts should be
+     * high enough to keep threads busy, but low enough to avoid
+     * overhead and contention across threads.
+     *
+     * @return the number of steals
+     */
+    public long getStealCount() {
+        long count;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            count = stealCount;
+        } finally {
+            lock.unlock();
+        }
+        WorkQueue[] ws = workQueues;
+        for (int i = 0; i < ws.length; ++i) {
+            WorkQueue q = ws[i];
+            if (q != null)
+                count += q.nsteals;
+        }
+        return count;
+    }
+
+    /**
+     * Returns an estimate of the total number of tasks currently held
+     * in queues by worker threads (but not including tasks submitted
+     * to the pool that have not begun executing). This value is only
+     * an approximation, obtained by iterating across all threads in
+     * the pool. This method may be useful for tuning task
+     * granularities.
+     *
+     * @return the number of queued tasks
+     */
+    public long getQueuedTaskCount() {
+        long count = 0;
+        WorkQueue[] ws = workQueues;
+        for (int i = 0; i < ws.length; ++i) {
+            WorkQueue q = ws[i];
+            if (q != null)
+                count += q.queueSize();
+        }
+        return count;
+    }
+
+    /**
+     * Returns an estimate of the number of tasks submitted to this
+     * pool that have not yet begun executing.  This method may take
+     * time proportional to the number of submissions.
+     *
+     * @return the number of queued submissions
+     */
+    public int getQueuedSubmissionCount() {
+        return submissionQueue.size();
+    }
+
+    /**
+     * Returns {@code true} if there are any tasks submitted to this
+     * pool that have not yet begun executing.
+     *
+     * @return {@code true} if there are any queued submissions
+     */
+    public boolean hasQueuedSubmissions() {
+        return !submissionQueue.isEmpty();
+    }
+
+    /**
+     * Removes and returns the next unexecuted submission if one is
+     * available.  This method may be useful in extensions to this
+     * class that re-assign work in systems with multiple pools.
+     *
+     * @return the next submission, or {@code null} if none
+     */
+    protected ForkJoinTask<?> pollSubmission() {
+        return submissionQueue.poll();
+    }
+
+    /**
+     * Removes all available unexecuted submitted and forked tasks
+     * from scheduling queues and adds them to the given collection,
+     * without altering their execution status. These may include
+     * artificially generated or wrapped tasks. This method is
+     * designed to be invoked only when the pool is known to be
+     * quiescent. Invocations at other times may not remove all
+     * tasks. A failure encountered while attempting to add elements
+     * to collection {@code c} may result in elements being in
+     * neither, either or both collections when the associated
+     * exception is thrown.  The behavior of this operation is
+     * undefined if the specified collection is modified while the
+     * operation is in progress.
+     *
+     * @param c the collection to transfer elements into
+     * @return the number of elements transferred
+     */
+    protected int drainTasksTo(Collection<? super ForkJoinTask<?>> c) {
+        int count = 0;
+        for (ForkJoinTask<?> t; (t = submissionQueue.poll()) != null; ) {
+            c.add(t);
+            ++count;
+        }
+        WorkQueue[] ws = workQueues;
+        for (int i = 0; i < ws.length; ++i) {
+            WorkQueue q = ws[i];
+            if (q != null) {
+                for (ForkJoinTask<?> t; (t = q.poll()) != null; ) {
+                    c.add(t);
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a string identifying this pool, as well as its state,
+     * including indications of run state, parallelism level, and
+     * worker and task counts.
+     *
+     * @return a string identifying this pool, as well as its state
+     */
+    public String toString() {
+        long st = getStealCount();
+        long qt = getQueuedTaskCount();
+        long qs = getQueuedSubmissionCount();
+        int rs = runState;
+        String level =
+            (rs == RUNNING)  ? "Running" :
+            (rs == SHUTDOWN) ? "Shutting down" :
+            (rs == STOP)     ? "Terminating" :
+            "Terminated";
+        return super.toString() +
+            "[" + level +
+            ", parallelism = " + parallelism +
+            ", size = " + getPoolSize() +
+            ", active = " + getActiveThreadCount() +
+            ", running = " + getRunningThreadCount() +
+            ", steals = " + st +
+            ", tasks = " + qt +
+            ", submissions = " + qs +
+            "]";
+    }
+
+    // Shutdown and termination
+
+    /**
+     * Initiates an orderly shutdown in which previously submitted
+     * tasks are executed, but no new tasks will be accepted.
+     * Invocation has no effect on execution state if this is the
+     * {@link #commonPool()}, and no additional effect if already shut
+     * down.
+     * Tasks that are in the process of being submitted concurrently
+     * during the course of this method may or may not be rejected.
+     *
+     * @throws SecurityException if a security manager exists and
+     *         the caller is not permitted to modify threads
+     *         because it does not hold {@link
+     *         java.lang.RuntimePermission}{@code ("modifyThread")}
+     */
+    public void shutdown() {
+        checkPermission();
+        if (this != common) {
+            advanceRunState(SHUTDOWN);
+            tryTerminate(false);
+        }
+    }
+
+    /**
+     * Attempts to cancel and/or stop all tasks, and reject all
+     * subsequently submitted tasks.  Invocation has no effect on
+     * execution state if this is the {@link #commonPool()}.  Tasks that are in the process of
+     * being submitted or executed concurrently during the course of
+     * this method may or may not be rejected. This method cancels
+     * both existing and unexecuted tasks, in order to permit
+     * termination in the presence of task dependencies. So the method
+     * always returns an empty list (unlike the case for some other
+     * Executors).
+     *
+     * @return an empty list
+     * @throws SecurityException if a security manager exists and
+     *         the caller is not permitted to modify threads
+     *         because it does not hold {@link
+     *         java.lang.RuntimePermission}{@code ("modifyThread")}
+     */
+    public List<Runnable> shutdownNow() {
+        checkPermission();
+        if (this != common)
+            tryTerminate(true);
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns {@code true} if all tasks have completed following shut down.
+     *
+     * @return {@code true} if all tasks have completed following shut down
+     */
+    public boolean isTerminated() {
+        return runState == TERMINATED;
+    }
+
+    /**
+     * Returns {@code true} if the process of termination has
+     * commenced but not yet completed.  This method may be useful for
+     * debugging. A return of {@code true} reported a sufficient
+     * period after shutdown may indicate that submitted tasks have
+     * ignored or suppressed interruption, or are waiting for IO,
+     * causing this executor not to properly terminate. (See the
+     * advisory notes for class {@link ForkJoinTask} stating that
+     * tasks should not normally entail blocking operations.  But if
+     * they do, they must abort them on interrupt.)
+     *
+     * @return {@code true} if terminating but not yet terminated
+     */
+    public boolean isTerminating() {
+        int rs = runState;
+        return rs >= SHUTDOWN && rs < TERMINATED;
+    }
+
+    /**
+     * Returns {@code true} if this pool has been shut down.
+     *
+     * @return {@code true} if this pool has been shut down
+     */
+    public boolean isShutdown() {
+        return runState >= SHUTDOWN;
+    }
+
+    /**
+     * Blocks until all tasks have completed execution after a shutdown
+     * request, or the timeout occurs, or the current thread is
+     * interrupted, whichever happens first.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout argument
+     * @return {@code true} if this executor terminated and
+     *         {@code false} if the timeout elapsed before termination
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            for (;;) {
+                if (runState == TERMINATED)
+                    return true;
+                if (nanos <= 0)
+                    return false;
+                nanos = termination.awaitNanos(nanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets runState to at least the given value.
+     */
+    private void advanceRunState(int targetState) {
+        for (int rs;;) {
+            if ((rs = runState) >= targetState ||
+                UNSAFE.compareAndSwapInt(this, runStateOffset,
+                                         rs, targetState))
+                return;
+        }
+    }
+
+    /**
+     * Possibly initiates and/or completes termination.  A pool that
+     * is shut down moves to STOP once no worker is active and no
+     * tasks remain; on entering STOP all queued tasks are cancelled
+     * and all waiting workers released so that they exit.  The last
+     * exiting worker sets TERMINATED.
+     *
+     * @param now if true, unconditionally terminate, else only
+     * if shutdown and empty queue and no active workers
+     * @return true if now terminating or terminated
+     */
+    private boolean tryTerminate(boolean now) {
+        if (now)
+            advanceRunState(STOP);
+        int rs = runState;
+        if (rs == RUNNING)
+            return false;
+        if (rs == SHUTDOWN) {
+            if (activeCount > 0 || hasQueuedTasks())
+                return false;
+            advanceRunState(STOP);
+        }
+        if (runState == STOP) {
+            for (ForkJoinTask<?> t; (t = submissionQueue.poll()) != null; )
+                t.cancelIgnoringExceptions();
+            WorkQueue[] ws = workQueues;
+            for (int i = 0; i < ws.length; ++i) {
+                WorkQueue q = ws[i];
+                if (q != null) {
+                    q.cancelAll();
+                    if (now && q.owner != null) {
+                        try {
+                            q.owner.interrupt();
+                        } catch (SecurityException ignore) {
+                        }
+                    }
+                }
+            }
+            while ((int)ctl != 0)
+                signalWork();
+            if (workerCount <= 0) {
+                final ReentrantLock lock = this.lock;
+                lock.lock();
+                try {
+                    if (runState == STOP && workerCount <= 0) {
+                        runState = TERMINATED;
+                        termination.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Interface for extending managed parallelism for tasks running
+     * in {@link ForkJoinPool}s.
+     *
+     * <p>A {@code ManagedBlocker} provides two methods.  Method
+     * {@code isReleasable} must return {@code true} if blocking is
+     * not necessary. Method {@code block} blocks the current thread
+     * if necessary (perhaps internally invoking {@code isReleasable}
+     * before actually blocking). These actions are performed by any
+     * thread invoking {@link ForkJoinPool#managedBlock}.  The
+     * unusual methods in this API accommodate synchronizers that may,
+     * but don't usually, block for long periods. Similarly, they
+     * allow more efficient internal handling of cases in which
+     * additional workers may be, but usually are not, needed to
+     * ensure sufficient parallelism.  Toward this end,
+     * implementations of method {@code isReleasable} must be amenable
+     * to repeated invocation.
+     *
+     * <p>For example, here is a ManagedBlocker based on a
+     * ReentrantLock:
+     *  <pre> {@code
+     * class ManagedLocker implements ManagedBlocker {
+     *   final ReentrantLock lock;
+     *   boolean hasLock = false;
+     *   ManagedLocker(ReentrantLock lock) { this.lock = lock; }
+     *   public boolean block() {
+     *     if (!hasLock)
+     *       lock.lock();
+     *     return true;
+     *   }
+     *   public boolean isReleasable() {
+     *     return hasLock || (hasLock = lock.tryLock());
+     *   }
+     * }}</pre>
+     */
+    public static interface ManagedBlocker {
+        /**
+         * Possibly blocks the current thread, for example waiting for
+         * a lock or condition.
+         *
+         * @return {@code true} if no additional blocking is necessary
+         * (i.e., if isReleasable would return true)
+         * @throws InterruptedException if interrupted while waiting
+         * (the method is not required to do so, but is allowed to)
+         */
+        boolean block() throws InterruptedException;
+
+        /**
+         * Returns {@code true} if blocking is unnecessary.
+         */
+        boolean isReleasable();
+    }
+
+    /**
+     * Blocks in accord with the given blocker.  If the current thread
+     * is a {@link ForkJoinWorkerThread}, this method possibly
+     * arranges for a spare thread to be activated if necessary to
+     * ensure sufficient parallelism while the current thread is blocked.
+     *
+     * <p>If the caller is not a {@link ForkJoinTask}, this method is
+     * behaviorally equivalent to
+     *  <pre> {@code
+     * while (!blocker.isReleasable())
+     *   if (blocker.block())
+     *     return;
+     * }</pre>
+     *
+     * If the caller is a {@code ForkJoinTask}, then the pool may
+     * first be expanded to ensure parallelism, and later adjusted.
+     *
+     * @param blocker the blocker
+     * @throws InterruptedException if blocker.block did so
+     */
+    public static void managedBlock(ManagedBlocker blocker)
+        throws InterruptedException {
+        Thread t = Thread.currentThread();
+        if (t instanceof ForkJoinWorkerThread) {
+            ForkJoinPool p = ((ForkJoinWorkerThread)t).pool;
+            if (!blocker.isReleasable()) {
+                p.adjustBlockedCount(1);
+                try {
+                    if (p.hasQueuedTasks())
+                        p.signalWork();
+                    do {} while (!blocker.isReleasable() && !blocker.block());
+                } finally {
+                    p.adjustBlockedCount(-1);
+                }
+            }
+        }
+        else {
+            do {} while (!blocker.isReleasable() && !blocker.block());
+        }
+    }
+
+    // Unsafe mechanics
+
+    private static final sun.misc.Unsafe UNSAFE = sun.misc.Unsafe.getUnsafe();
+    private static final long ctlOffset =
+        objectFieldOffset("ctl", ForkJoinPool.class);
+    private static final long workerCountOffset =
+        objectFieldOffset("workerCount", ForkJoinPool.class);
+    private static final long activeCountOffset =
+        objectFieldOffset("activeCount", ForkJoinPool.class);
+    private static final long blockedCountOffset =
+        objectFieldOffset("blockedCount", ForkJoinPool.class);
+    private static final long runStateOffset =
+        objectFieldOffset("runState", ForkJoinPool.class);
+    private static final long ABASE =
+        UNSAFE.arrayBaseOffset(ForkJoinTask[].class);
+    private static final int ASHIFT;
+
+    static {
+        int s = UNSAFE.arrayIndexScale(ForkJoinTask[].class);
+        if ((s & (s-1)) != 0)
+            throw new Error("data type scale not a power of two");
+        ASHIFT = 31 - Integer.numberOfLeadingZeros(s);
+        common = makeCommonPool();
+    }
+
+    /**
+     * Creates and returns the common pool, respecting user settings
+     * specified via system property
+     * {@code java.util.concurrent.ForkJoinPool.common.parallelism}.
+     */
+    private static ForkJoinPool makeCommonPool() {
+        int parallelism = -1;
+        try {  // ignore exceptions in accessing/parsing the property
+            String pp = System.getProperty
+                ("java.util.concurrent.ForkJoinPool.common.parallelism");
+            if (pp != null)
+                parallelism = Integer.parseInt(pp);
+        } catch (Exception ignore) {
+        }
+        if (parallelism <= 0 && // default 1 less than #cores
+            (parallelism = Runtime.getRuntime().availableProcessors() - 1) <= 0)
+            parallelism = 1;
+        if (parallelism > MAX_ID)
+            parallelism = MAX_ID;
+        return new ForkJoinPool(parallelism, defaultForkJoinWorkerThreadFactory,
+                                null, false, "ForkJoinPool.commonPool-worker-");
+    }
+
+    private static long objectFieldOffset(String field, Class<?> klazz) {
+        try {
+            return UNSAFE.objectFieldOffset(klazz.getDeclaredField(field));
+        } catch (NoSuchFieldException e) {
+            // Convert Exception to corresponding Error
+            NoSuchFieldError error = new NoSuchFieldError(field);
+            error.initCause(e);
+            throw error;
+        }
+    }
+}
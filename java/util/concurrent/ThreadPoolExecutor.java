@@ -430,6 +430,13 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     private volatile ThreadFactory threadFactory;
 
+    /**
+     * Execution statistics, or null if not enabled. Set only while
+     * holding mainLock, but volatile so that execute and workers
+     * can check it without locking.
+     */
+    private volatile ThreadPoolStatistics statistics;
+
     /**
      * Tracks largest attained pool size.
      */
@@ -649,13 +656,22 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
     public void execute(Runnable command) {
         if (command == null)
             throw new NullPointerException();
+        ThreadPoolStatistics stats = statistics;
+        if (stats != null)
+            stats.submitted();
         if (poolSize >= corePoolSize || !addIfUnderCorePoolSize(command)) {
+            if (stats != null)
+                stats.queueing(command);
             if (runState == RUNNING && workQueue.offer(command)) {
                 if (runState != RUNNING || poolSize == 0)
                     ensureQueuedTaskHandled(command);
             }
-            else if (!addIfUnderMaximumPoolSize(command))
-                reject(command); // is shutdown or saturated
+            else {
+                if (stats != null)
+                    stats.dequeued(command);
+                if (!addIfUnderMaximumPoolSize(command))
+                    reject(command); // is shutdown or saturated
+            }
         }
     }
 
@@ -764,7 +780,11 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * Invokes the rejected execution handler for the given command.
      */
     void reject(Runnable command) {
-        handler.rejectedExecution(command, this);
+        RejectedExecutionHandler h = handler;
+        ThreadPoolStatistics stats = statistics;
+        if (stats != null)
+            stats.rejected(h, command);
+        h.rejectedExecution(command, this);
     }
 
 
@@ -882,6 +902,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                  */
                 boolean ran = false;
                 beforeExecute(thread, task);
+                ThreadPoolStatistics stats = statistics;
+                long started = (stats == null) ? 0L : stats.beforeRun(task);
                 try {
                     task.run();
                     ran = true;
@@ -891,6 +913,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                     if (!ran)
                         afterExecute(task, ex);
                     throw ex;
+                } finally {
+                    if (stats != null)
+                        stats.afterRun(started);
                 }
             } finally {
                 runLock.unlock();
@@ -904,7 +929,7 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             try {
                 Runnable task = firstTask;
                 firstTask = null;
-                while (task != null || (task = getTask()) != null) {
+                while (task != null || (task = awaitTask()) != null) {
                     runTask(task);
                     task = null;
                 }
@@ -916,6 +941,25 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
 
     /* Utilities for worker thread control */
 
+    /**
+     * Gets the next task for a worker thread via getTask, recording
+     * the time spent waiting for it as idle time if statistics are
+     * enabled.
+     *
+     * @return the task
+     */
+    private Runnable awaitTask() {
+        ThreadPoolStatistics stats = statistics;
+        if (stats == null)
+            return getTask();
+        long start = System.nanoTime();
+        try {
+            return getTask();
+        } finally {
+            stats.idle(System.nanoTime() - start);
+        }
+    }
+
     /**
      * Gets the next task for a worker thread to run.  The general
      * approach is similar to execute() in that worker threads trying
@@ -1039,6 +1083,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             if (state == STOP || state == SHUTDOWN) {
                 runState = TERMINATED;
                 termination.signalAll();
+                ThreadPoolStatistics stats = statistics;
+                if (stats != null)
+                    stats.unregister();
                 terminated();
             }
         }
@@ -1173,6 +1220,11 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
             }
 
             List<Runnable> tasks = drainQueue();
+            ThreadPoolStatistics stats = statistics;
+            if (stats != null) {
+                for (Runnable r : tasks)
+                    stats.dequeued(r);
+            }
             tryTerminate(); // Terminate now if pool and queue empty
             return tasks;
         } finally {
@@ -1546,7 +1598,11 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * @return true if the task was removed
      */
     public boolean remove(Runnable task) {
-        return getQueue().remove(task);
+        boolean removed = getQueue().remove(task);
+        ThreadPoolStatistics stats = statistics;
+        if (removed && stats != null)
+            stats.dequeued(task);
+        return removed;
     }
 
     /**
@@ -1567,8 +1623,12 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                 Runnable r = it.next();
                 if (r instanceof Future<?>) {
                     Future<?> c = (Future<?>)r;
-                    if (c.isCancelled())
+                    if (c.isCancelled()) {
                         it.remove();
+                        ThreadPoolStatistics stats = statistics;
+                        if (stats != null)
+                            stats.dequeued(r);
+                    }
                 }
             }
         }
@@ -1579,6 +1639,79 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
 
     /* Statistics */
 
+    /**
+     * Enables or disables collection of execution statistics for
+     * this pool. While enabled, the pool records queue wait and run
+     * time histograms, rejection counts per handler, and worker
+     * busy and idle times in striped counters, and exports them as a
+     * {@link java.lang.management.ThreadPoolMXBean} registered in
+     * the {@link java.lang.management.ManagementFactory#getPlatformMBeanServer
+     * platform MBeanServer} under the name
+     * {@link java.lang.management.ManagementFactory#THREAD_POOL_MXBEAN_DOMAIN_TYPE
+     * <tt>java.util.concurrent:type=ThreadPool</tt>}<tt>,name=</tt><i>pool's name</i>.
+     * The MXBean is unregistered when statistics are disabled or the
+     * pool terminates. Re-enabling statistics starts a new set of
+     * counters.
+     *
+     * <p>When disabled (the default), the only overhead is a
+     * volatile read per submitted task and per task run.
+     *
+     * @param value true to enable statistics, false to disable them
+     * @throws SecurityException if a security manager exists and the
+     * caller does not have {@link java.lang.management.ManagementPermission
+     * ManagementPermission}<tt>("control")</tt>
+     * @see #getStatistics
+     * @since 1.7
+     */
+    public void setStatisticsEnabled(boolean value) {
+        SecurityManager security = System.getSecurityManager();
+        if (security != null)
+            security.checkPermission(
+                new java.lang.management.ManagementPermission("control"));
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            ThreadPoolStatistics stats = statistics;
+            if (value && stats == null) {
+                statistics = stats = new ThreadPoolStatistics(this);
+                if (runState != TERMINATED)
+                    stats.register();
+            }
+            else if (!value && stats != null) {
+                statistics = null;
+                stats.unregister();
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if execution statistics are enabled for this pool.
+     *
+     * @return true if statistics are enabled
+     * @see #setStatisticsEnabled
+     * @since 1.7
+     */
+    public boolean isStatisticsEnabled() {
+        return statistics != null;
+    }
+
+    /**
+     * Returns the execution statistics of this pool, or
+     * <tt>null</tt> if statistics are not enabled. Unlike
+     * {@link #getActiveCount}, {@link #getCompletedTaskCount} and
+     * related methods, none of the methods of the returned object
+     * acquire locks, so they may be polled frequently under load.
+     *
+     * @return the statistics, or <tt>null</tt> if not enabled
+     * @see #setStatisticsEnabled
+     * @since 1.7
+     */
+    public java.lang.management.ThreadPoolMXBean getStatistics() {
+        return statistics;
+    }
+
     /**
      * Returns the current number of threads in the pool.
      *
@@ -1809,7 +1942,10 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
          */
         public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
             if (!e.isShutdown()) {
-                e.getQueue().poll();
+                Runnable oldest = e.getQueue().poll();
+                ThreadPoolStatistics stats = e.statistics;
+                if (stats != null)
+                    stats.dequeued(oldest);
                 e.execute(r);
             }
         }
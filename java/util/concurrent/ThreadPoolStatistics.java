@@ -0,0 +1,374 @@
+/*
+ * %W% %E%
+ *
+ * Copyright (c) 2006, Oracle and/or its affiliates. All rights reserved.
+ * ORACLE PROPRIETARY/CONFIDENTIAL. Use is subject to license terms.
+ */
+
+package java.util.concurrent;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.LongAdderTable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ManagementPermission;
+import java.lang.management.ThreadPoolMXBean;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Execution statistics of a {@link ThreadPoolExecutor}, exported as
+ * a {@link ThreadPoolMXBean}. An instance exists only while
+ * statistics are enabled for its pool, so a pool that never enables
+ * them pays only for a volatile read per task.
+ *
+ * <p>All updates are performed by submitting and worker threads
+ * using striped {@link LongAdder} counters, so workers recording
+ * statistics do not contend with each other, and readers never take
+ * the pool's mainLock.
+ *
+ * @since 1.7
+ */
+final class ThreadPoolStatistics implements ThreadPoolMXBean {
+    /*
+     * Queue wait times are measured without wrapping tasks (which
+     * would break comparators of priority queues, as well as
+     * ThreadPoolExecutor.remove): execute() records the enqueue time
+     * of a task in a side table just before offering it, and the
+     * worker that dequeues it removes the entry when it starts
+     * running it.  Entries for tasks that leave the queue by other
+     * means (remove, purge, shutdownNow, rejection after queuing,
+     * DiscardOldestPolicy) are removed by those paths.  Tasks can
+     * also leave the queue behind the pool's back, through the queue
+     * returned by getQueue, so about once per SWEEP_INTERVAL
+     * queueings the table is compared with the queue's size, and if
+     * it has grown well beyond it, entries older than a snapshot of
+     * the queue whose tasks are not in it are removed.  A task that
+     * is between the table and the queue, in either direction, when
+     * the snapshot is taken may lose its wait time to a sweep; it is
+     * then recorded as not having waited.  Tasks that are submitted
+     * more than once while still queued share a single entry holding
+     * the latest enqueue time, so are recorded with the shorter wait.
+     *
+     * Histogram buckets grow by powers of two starting at 1024ns
+     * (about a microsecond), so bucket i > 0 holds durations in
+     * [2^(i+9), 2^(i+10)) nanoseconds; the last bucket collects
+     * everything beyond about 18 minutes.
+     */
+
+    /** Number of histogram buckets */
+    static final int BUCKETS = 32;
+
+    /** log2 of the upper bound of the first histogram bucket */
+    private static final int BUCKET_SHIFT = 10;
+
+    /** Mean number of queueings between checks for stale entries */
+    private static final int SWEEP_INTERVAL = 1024;
+
+    /** Generates default pool names */
+    private static final AtomicInteger poolNumber = new AtomicInteger();
+
+    private final ThreadPoolExecutor pool;
+    private final String name;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder active = new LongAdder();
+    private final LongAdder queueWaitTime = new LongAdder();
+    private final LongAdder runTime = new LongAdder();
+    private final LongAdder idleTime = new LongAdder();
+    private final LongAdder[] queueWaitHistogram = newHistogram();
+    private final LongAdder[] runHistogram = newHistogram();
+    private final LongAdderTable<String> rejections =
+        new LongAdderTable<String>();
+    private final ConcurrentHashMap<Runnable, Long> enqueueTimes =
+        new ConcurrentHashMap<Runnable, Long>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    ThreadPoolStatistics(ThreadPoolExecutor pool) {
+        this.pool = pool;
+        this.name = "pool-" + poolNumber.incrementAndGet();
+    }
+
+    private static LongAdder[] newHistogram() {
+        LongAdder[] h = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i)
+            h[i] = new LongAdder();
+        return h;
+    }
+
+    /**
+     * Returns the histogram bucket for the given duration.
+     */
+    static int bucketFor(long nanos) {
+        if (nanos <= 0L)
+            return 0;
+        int b = 64 - Long.numberOfLeadingZeros(nanos >>> BUCKET_SHIFT);
+        return (b < BUCKETS) ? b : BUCKETS - 1;
+    }
+
+    /* Recording methods, called from ThreadPoolExecutor */
+
+    /**
+     * Records a call to execute.
+     */
+    void submitted() {
+        submitted.increment();
+    }
+
+    /**
+     * Records that the given task is about to be offered to the work
+     * queue.
+     */
+    void queueing(Runnable task) {
+        enqueueTimes.put(task, Long.valueOf(System.nanoTime()));
+        if (ThreadLocalRandom.current().nextInt(SWEEP_INTERVAL) == 0)
+            sweepIfStale();
+    }
+
+    /**
+     * Removes the enqueue times of tasks that have left the queue
+     * without the pool's knowledge, if the table has grown well
+     * beyond the queue.
+     */
+    private void sweepIfStale() {
+        BlockingQueue<Runnable> q = pool.getQueue();
+        if (enqueueTimes.size() <= 2 * q.size() + SWEEP_INTERVAL ||
+            !sweeping.compareAndSet(false, true))
+            return;
+        try {
+            long start = System.nanoTime();
+            Set<Object> queued = new HashSet<Object>(Arrays.asList(q.toArray()));
+            for (Map.Entry<Runnable, Long> e : enqueueTimes.entrySet()) {
+                Long queuedAt = e.getValue();
+                if (queuedAt.longValue() - start < 0L &&
+                    !queued.contains(e.getKey()))
+                    enqueueTimes.remove(e.getKey(), queuedAt);
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * Discards the enqueue time of a task that was not queued or
+     * has left the queue without being run.
+     */
+    void dequeued(Object task) {
+        if (task != null)
+            enqueueTimes.remove(task);
+    }
+
+    /**
+     * Records rejection of the given task by the given handler.
+     */
+    void rejected(RejectedExecutionHandler handler, Runnable task) {
+        dequeued(task);
+        rejections.increment(handler.getClass().getName());
+    }
+
+    /**
+     * Records the start of a task run, returning the start time to
+     * be passed to afterRun.
+     */
+    long beforeRun(Runnable task) {
+        Long queued = enqueueTimes.remove(task);
+        long now = System.nanoTime();
+        if (queued != null) {
+            long wait = now - queued.longValue();
+            if (wait < 0L)
+                wait = 0L;
+            queueWaitTime.add(wait);
+            queueWaitHistogram[bucketFor(wait)].increment();
+        }
+        else
+            queueWaitHistogram[0].increment();
+        active.increment();
+        return now;
+    }
+
+    /**
+     * Records the end of a task run started at the given time.
+     */
+    void afterRun(long started) {
+        long t = System.nanoTime() - started;
+        if (t < 0L)
+            t = 0L;
+        active.decrement();
+        runTime.add(t);
+        runHistogram[bucketFor(t)].increment();
+        completed.increment();
+    }
+
+    /**
+     * Records time spent by a worker waiting for a task.
+     */
+    void idle(long nanos) {
+        if (nanos > 0L)
+            idleTime.add(nanos);
+    }
+
+    /* Registration in the platform MBeanServer */
+
+    private ObjectName objectName() throws JMException {
+        return new ObjectName(ManagementFactory.THREAD_POOL_MXBEAN_DOMAIN_TYPE +
+                              ",name=" + name);
+    }
+
+    /**
+     * Registers this MXBean in the platform MBeanServer. Failures
+     * are ignored: statistics remain available via the pool.
+     */
+    void register() {
+        AccessController.doPrivileged(new PrivilegedAction<Void>() {
+            public Void run() {
+                try {
+                    MBeanServer server =
+                        ManagementFactory.getPlatformMBeanServer();
+                    server.registerMBean(ThreadPoolStatistics.this,
+                                         objectName());
+                } catch (JMException ignore) {
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Unregisters this MXBean from the platform MBeanServer, and
+     * discards any remaining enqueue times.
+     */
+    void unregister() {
+        enqueueTimes.clear();
+        AccessController.doPrivileged(new PrivilegedAction<Void>() {
+            public Void run() {
+                try {
+                    MBeanServer server =
+                        ManagementFactory.getPlatformMBeanServer();
+                    server.unregisterMBean(objectName());
+                } catch (JMException ignore) {
+                }
+                return null;
+            }
+        });
+    }
+
+    /* ThreadPoolMXBean */
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPoolSize() {
+        return pool.getPoolSize();
+    }
+
+    public int getCorePoolSize() {
+        return pool.getCorePoolSize();
+    }
+
+    public int getMaximumPoolSize() {
+        return pool.getMaximumPoolSize();
+    }
+
+    public int getActiveCount() {
+        long n = active.sum();
+        return (n <= 0L) ? 0 : (int)n;
+    }
+
+    public int getQueueSize() {
+        return pool.getQueue().size();
+    }
+
+    public long getSubmittedTaskCount() {
+        return submitted.sum();
+    }
+
+    public long getCompletedTaskCount() {
+        return completed.sum();
+    }
+
+    public long getRejectedTaskCount() {
+        return rejections.sumAll();
+    }
+
+    public Map<String, Long> getRejectedTaskCounts() {
+        Map<String, Long> m = new HashMap<String, Long>();
+        for (Map.Entry<String, LongAdder> e : rejections.entrySet())
+            m.put(e.getKey(), Long.valueOf(e.getValue().sum()));
+        return m;
+    }
+
+    public long getTotalQueueWaitTime() {
+        return queueWaitTime.sum();
+    }
+
+    public long getTotalRunTime() {
+        return runTime.sum();
+    }
+
+    public long getTotalIdleTime() {
+        return idleTime.sum();
+    }
+
+    public double getBusyRatio() {
+        double busy = (double)runTime.sum();
+        double total = busy + (double)idleTime.sum();
+        return (total <= 0.0) ? 0.0 : busy / total;
+    }
+
+    public long[] getHistogramBounds() {
+        long[] bounds = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS - 1; ++i)
+            bounds[i] = 1L << (BUCKET_SHIFT + i);
+        bounds[BUCKETS - 1] = Long.MAX_VALUE;
+        return bounds;
+    }
+
+    public long[] getQueueWaitTimeHistogram() {
+        return sums(queueWaitHistogram);
+    }
+
+    public long[] getRunTimeHistogram() {
+        return sums(runHistogram);
+    }
+
+    private static long[] sums(LongAdder[] h) {
+        long[] a = new long[h.length];
+        for (int i = 0; i < h.length; ++i)
+            a[i] = h[i].sum();
+        return a;
+    }
+
+    public void resetStatistics() {
+        SecurityManager sm = System.getSecurityManager();
+        if (sm != null)
+            sm.checkPermission(new ManagementPermission("control"));
+        submitted.reset();
+        completed.reset();
+        queueWaitTime.reset();
+        runTime.reset();
+        idleTime.reset();
+        rejections.resetAll();
+        for (int i = 0; i < BUCKETS; ++i) {
+            queueWaitHistogram[i].reset();
+            runHistogram[i].reset();
+        }
+    }
+
+    public String toString() {
+        return super.toString() + "[" + name +
+            ", submitted = " + getSubmittedTaskCount() +
+            ", completed = " + getCompletedTaskCount() +
+            ", rejected = " + getRejectedTaskCount() +
+            ", busy ratio = " + getBusyRatio() + "]";
+    }
+}